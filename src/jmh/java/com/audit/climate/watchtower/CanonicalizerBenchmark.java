@@ -0,0 +1,80 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonicalization of a seeder-shaped message: the former tree-based implementation
+ * against the streaming one. Run with ./gradlew jmh -Pjmh.includes=CanonicalizerBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CanonicalizerBenchmark {
+    private static final String SAMPLE = "{\"id\":\"7f1c2b1e-4d8e-4a8b-9a53-0d3c3f6f2b11\",\"type\":\"telemetry\","
+            + "\"module\":\"greenhouse-3\",\"deviceId\":\"dev-4821\",\"temperature\":23.4817265,"
+            + "\"humidity\":55.0192837,\"pressure\":731.2290134,\"ts\":\"2024-03-01T12:00:00Z\","
+            + "\"timestamp\":\"2024-03-01T12:00:00Z\"}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private Canonicalizer canonicalizer;
+    private Message message;
+
+    @Setup
+    public void setUp() {
+        canonicalizer = new Canonicalizer(mapper);
+        MessageProperties props = new MessageProperties();
+        props.setConsumerQueue("test.queue");
+        message = new Message(SAMPLE.getBytes(StandardCharsets.UTF_8), props);
+    }
+
+    @Benchmark
+    public CanonicalEvent tree() throws Exception {
+        return treeCanonicalize(new String(message.getBody(), StandardCharsets.UTF_8), message);
+    }
+
+    @Benchmark
+    public CanonicalEvent streaming() throws Exception {
+        return canonicalizer.canonicalize(message.getBody(), message);
+    }
+
+    // The canonicalizer as it was before the streaming rewrite
+    private CanonicalEvent treeCanonicalize(String rawJson, Message amqpMessage) throws Exception {
+        JsonNode node = mapper.readTree(rawJson);
+        String eventType = node.has("type") ? node.get("type").asText() : "weather";
+        Instant timestamp;
+        if (node.has("timestamp")) {
+            try {
+                timestamp = Instant.parse(node.get("timestamp").asText());
+            } catch (Exception ex) {
+                timestamp = Instant.now();
+            }
+        } else {
+            timestamp = Instant.now();
+        }
+        String channel = canonicalizer.extractChannel(amqpMessage);
+        Map<String, Object> payload = new HashMap<>();
+        if (node.has("module")) payload.put("module", mapper.treeToValue(node.get("module"), Object.class));
+        if (node.has("temperature")) payload.put("temperature", mapper.treeToValue(node.get("temperature"), Object.class));
+        if (node.has("humidity")) payload.put("humidity", mapper.treeToValue(node.get("humidity"), Object.class));
+        if (node.has("pressure")) payload.put("pressure", mapper.treeToValue(node.get("pressure"), Object.class));
+        return new CanonicalEvent(channel, eventType, timestamp, payload);
+    }
+}
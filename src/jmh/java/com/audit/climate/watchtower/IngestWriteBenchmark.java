@@ -0,0 +1,137 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.alerts.AlertService;
+import com.audit.climate.watchtower.ingest.EventWriter;
+import com.audit.climate.watchtower.ingest.IngestBatch;
+import com.audit.climate.watchtower.ingest.IngestPipeline;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.utility.DockerImageName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ingest write paths per event: the listener pipeline (single and batch)
+ * over the configured writer, the writer alone, and AlertService.persistAndPublish.
+ * Needs Docker; run with ./gradlew jmh -Pjmh.includes=IngestWriteBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class IngestWriteBenchmark {
+    private static final int BATCH = 100;
+
+    @Param({"jpa", "copy"})
+    public String writer;
+
+    private PostgreSQLContainer<?> postgres;
+    private RabbitMQContainer rabbit;
+    private ConfigurableApplicationContext context;
+
+    private IngestPipeline pipeline;
+    private EventWriter eventWriter;
+    private AlertService alertService;
+    private List<Message> messages;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        postgres = new PostgreSQLContainer<>(DockerImageName.parse("timescale/timescaledb:2.11.0-pg15")
+                .asCompatibleSubstituteFor("postgres"))
+                .withDatabaseName("watchtower_audit");
+        rabbit = new RabbitMQContainer("rabbitmq:3.12-management");
+        postgres.start();
+        rabbit.start();
+
+        context = new SpringApplicationBuilder(ClimateWatchmanApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=" + postgres.getJdbcUrl(),
+                        "spring.datasource.username=" + postgres.getUsername(),
+                        "spring.datasource.password=" + postgres.getPassword(),
+                        "spring.rabbitmq.host=" + rabbit.getHost(),
+                        "spring.rabbitmq.port=" + rabbit.getAmqpPort(),
+                        "spring.rabbitmq.username=" + rabbit.getAdminUsername(),
+                        "spring.rabbitmq.password=" + rabbit.getAdminPassword(),
+                        "app.rabbit.seed.enabled=false",
+                        "audit.persistence.writer=" + writer)
+                .run();
+
+        pipeline = context.getBean(IngestPipeline.class);
+        eventWriter = context.getBean(EventWriter.class);
+        alertService = context.getBean(AlertService.class);
+
+        // every event breaches one threshold so each carries exactly one alert
+        context.getBean(ThresholdConfig.class).setThreshold("bench", "temperature", null, 10.0);
+
+        messages = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            String json = "{\"id\":" + i + ",\"type\":\"telemetry\",\"module\":\"bench\",\"deviceId\":\"dev-1\","
+                    + "\"temperature\":21.5,\"humidity\":48.2,\"pressure\":731.4,\"ts\":\"2025-01-01T00:00:00Z\"}";
+            MessageProperties props = new MessageProperties();
+            props.setConsumerQueue("test.queue");
+            messages.add(new Message(json.getBytes(StandardCharsets.UTF_8), props));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (context != null) context.close();
+        if (rabbit != null) rabbit.stop();
+        if (postgres != null) postgres.stop();
+    }
+
+    private static List<Alert> freshAlerts() {
+        List<Alert> alerts = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            alerts.add(new Alert("bench", "temperature", 21.5, null, 10.0, "bench temperature out of range"));
+        }
+        return alerts;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void listenerSingle() {
+        for (Message message : messages) {
+            pipeline.process(message);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void listenerBatch() {
+        pipeline.processBatch(messages);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void writerAlertsOnly() {
+        eventWriter.write(new IngestBatch(List.of(), freshAlerts()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void alertServicePersistAndPublish() {
+        alertService.persistAndPublish(freshAlerts());
+    }
+}
@@ -0,0 +1,85 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Canonicalization throughput per wire encoding over seeder-shaped messages.
+ * The average encoded size is reported next to the score as the bytesPerEvent counter
+ * (run single-threaded; JMH sums event counters over threads).
+ * Run with ./gradlew jmh -Pjmh.includes=PayloadEncodingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PayloadEncodingBenchmark {
+    private static final int MESSAGES = 1024;
+
+    @Param({"json", "cbor", "smile"})
+    public String encoding;
+
+    private Canonicalizer canonicalizer;
+    private Message[] messages;
+    private int next;
+    private double bytesPerEvent;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Size {
+        public double bytesPerEvent;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        canonicalizer = new Canonicalizer(new ObjectMapper());
+        PayloadEncoding payloadEncoding = PayloadEncoding.fromTag(encoding);
+        ObjectMapper writer = payloadEncoding.newMapper();
+        Random rnd = new Random(1);
+        messages = new Message[MESSAGES];
+        long bytes = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            Map<String, Object> msg = new LinkedHashMap<>();
+            msg.put("id", i + 1);
+            msg.put("type", "telemetry");
+            msg.put("module", "green-" + rnd.nextInt(8));
+            msg.put("deviceId", "dev-" + (1000 + rnd.nextInt(9000)));
+            msg.put("temperature", 15 + rnd.nextDouble() * 20);
+            msg.put("humidity", 20 + rnd.nextDouble() * 60);
+            msg.put("pressure", 700 + rnd.nextDouble() * 50);
+            msg.put("ts", Instant.ofEpochSecond(1_700_000_000L + i).toString());
+            MessageProperties props = new MessageProperties();
+            props.setContentType(payloadEncoding.contentType());
+            props.setConsumerQueue("test.queue");
+            messages[i] = new Message(writer.writeValueAsBytes(msg), props);
+            bytes += messages[i].getBody().length;
+        }
+        bytesPerEvent = (double) bytes / MESSAGES;
+    }
+
+    @Benchmark
+    public CanonicalEvent canonicalize(Size size) throws Exception {
+        size.bytesPerEvent = bytesPerEvent;
+        Message message = messages[next++ & (MESSAGES - 1)];
+        return canonicalizer.canonicalize(message.getBody(), message);
+    }
+}
@@ -0,0 +1,115 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threshold lookup cost as the number of configured thresholds grows: the id-indexed
+ * snapshot against the former String-keyed map (module + ":" + metric per lookup).
+ * Each invocation looks up one event's worth of metrics for a random module, half of
+ * which have no threshold. scopedSnapshot adds a default and glob scopes on top, resolved
+ * once per module and then served from the snapshot's cache. Run with ./gradlew jmh -Pjmh.includes=ThresholdLookupBenchmark
+ * and -prof gc to see the allocation difference.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ThresholdLookupBenchmark {
+    private static final int METRICS_PER_MODULE = 10;
+    private static final int PROBES = 1024;
+
+    @Param({"100", "10000", "100000"})
+    public int thresholds;
+
+    private ThresholdSnapshot snapshot;
+    private ThresholdSnapshot scoped;
+    private final Map<String, ThresholdConfig.Range> byString = new ConcurrentHashMap<>();
+    private int[] probeModuleIds;
+    private String[] probeModules;
+    private int[] metricIds;
+    private String[] metrics;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        MetricDictionary dictionary = MetricDictionary.global();
+        metricIds = new int[METRICS_PER_MODULE];
+        metrics = new String[METRICS_PER_MODULE];
+        for (int m = 0; m < METRICS_PER_MODULE; m++) {
+            metrics[m] = "bench-metric-" + m;
+            metricIds[m] = dictionary.metricId(metrics[m]);
+        }
+
+        // modules carry thresholds on every other metric
+        int modules = Math.max(1, thresholds / (METRICS_PER_MODULE / 2));
+        ThresholdSnapshot.Builder builder = new ThresholdSnapshot.Builder();
+        ThresholdSnapshot.Builder scopedBuilder = new ThresholdSnapshot.Builder()
+                .scope("*", metricIds[1], new ThresholdConfig.Range(0.0, 100.0))
+                .scope("bench-module-1*", metricIds[3], new ThresholdConfig.Range(null, 50.0))
+                .scope("bench-module-?", metricIds[5], new ThresholdConfig.Range(null, 60.0));
+        for (int i = 0; i < modules; i++) {
+            String module = "bench-module-" + i;
+            int moduleId = dictionary.moduleId(module);
+            for (int m = 0; m < METRICS_PER_MODULE; m += 2) {
+                ThresholdConfig.Range range = new ThresholdConfig.Range(null, 30.0 + m);
+                builder.put(moduleId, metricIds[m], range);
+                scopedBuilder.put(moduleId, metricIds[m], range);
+                byString.put(module + ":" + metrics[m], range);
+            }
+        }
+        snapshot = builder.build(1);
+        scoped = scopedBuilder.build(1);
+
+        SplittableRandom random = new SplittableRandom(42);
+        probeModuleIds = new int[PROBES];
+        probeModules = new String[PROBES];
+        for (int p = 0; p < PROBES; p++) {
+            probeModules[p] = "bench-module-" + random.nextInt(modules);
+            probeModuleIds[p] = dictionary.findModule(probeModules[p]);
+        }
+    }
+
+    @Benchmark
+    public void snapshot(Blackhole bh) {
+        int p = next++ & (PROBES - 1);
+        int moduleId = probeModuleIds[p];
+        ThresholdSnapshot thresholds = snapshot;
+        for (int metricId : metricIds) {
+            bh.consume(thresholds.lookup(moduleId, metricId));
+        }
+    }
+
+    @Benchmark
+    public void scopedSnapshot(Blackhole bh) {
+        int p = next++ & (PROBES - 1);
+        int moduleId = probeModuleIds[p];
+        ThresholdSnapshot thresholds = scoped;
+        for (int metricId : metricIds) {
+            bh.consume(thresholds.lookup(moduleId, metricId));
+        }
+    }
+
+    @Benchmark
+    public void stringKeyedMap(Blackhole bh) {
+        int p = next++ & (PROBES - 1);
+        String module = probeModules[p];
+        for (String metric : metrics) {
+            bh.consume(byString.get(module + ":" + metric));
+        }
+    }
+}
@@ -1,16 +1,53 @@
 package com.audit.climate.watchtower.alerts;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
+import java.util.Locale;
 import java.util.UUID;
 
 @Entity
 @Table(name = "alerts")
-public class Alert {
+public class Alert implements Persistable<UUID> {
+    /** How far out of bounds a reading is; stored lowercase in alerts.severity. */
+    public enum Severity {
+        INFO, WARNING, CRITICAL;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** @throws IllegalArgumentException for unknown names */
+        public static Severity of(String tag) {
+            return valueOf(tag.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * Which transition of its (module, metric) series an alert reports; stored lowercase in alerts.state.
+     * EXPIRED closes a series that stopped reporting before it resolved.
+     */
+    public enum State {
+        OPENED, ONGOING, ESCALATED, RESOLVED, EXPIRED;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+
+        /** @throws IllegalArgumentException for unknown names */
+        public static State of(String tag) {
+            return valueOf(tag.trim().toUpperCase(Locale.ROOT));
+        }
+    }
+
     @Id
     private UUID id;
 
@@ -35,6 +72,17 @@ public class Alert {
     @Column(name = "description")
     private String description;
 
+    @Column(name = "severity", nullable = false)
+    private String severity = Severity.WARNING.tag();
+
+    @Column(name = "state", nullable = false)
+    private String state = State.OPENED.tag();
+
+    // id is assigned up front, so tell Spring Data whether to persist or merge
+    // instead of letting it issue a SELECT before every INSERT
+    @Transient
+    private boolean isNew = true;
+
     public Alert() {
         this.id = UUID.randomUUID();
         this.occurredAt = Instant.now();
@@ -50,10 +98,50 @@ public class Alert {
         this.description = description;
     }
 
+    public Alert(String module, String metric, double value, Double thresholdMin, Double thresholdMax, String description,
+                 Severity severity) {
+        this(module, metric, value, thresholdMin, thresholdMax, description);
+        this.severity = severity.tag();
+    }
+
+    public Alert(String module, String metric, double value, Double thresholdMin, Double thresholdMax, String description,
+                 Severity severity, State state) {
+        this(module, metric, value, thresholdMin, thresholdMax, description, severity);
+        this.state = state.tag();
+    }
+
+    /**
+     * An alert as read back by queries that bypass JPA.
+     */
+    static Alert stored(UUID id, Instant occurredAt, String module, String metric, double value,
+                        Double thresholdMin, Double thresholdMax, String description, String severity,
+                        String state) {
+        Alert a = new Alert(module, metric, value, thresholdMin, thresholdMax, description);
+        a.id = id;
+        a.occurredAt = occurredAt;
+        a.severity = severity;
+        a.state = state;
+        a.isNew = false;
+        return a;
+    }
+
+    @Override
     public UUID getId() {
         return id;
     }
 
+    @Override
+    @JsonIgnore
+    public boolean isNew() {
+        return isNew;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markNotNew() {
+        this.isNew = false;
+    }
+
     public Instant getOccurredAt() {
         return occurredAt;
     }
@@ -82,6 +170,14 @@ public class Alert {
         return description;
     }
 
+    public String getSeverity() {
+        return severity;
+    }
+
+    public String getState() {
+        return state;
+    }
+
     public void setModule(String module) {
         this.module = module;
     }
@@ -0,0 +1,59 @@
+package com.audit.climate.watchtower.alerts;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * AlertCursor is the position after the last alert of a page, keyed on (occurred_at, id).
+ * Alerts only page forward (older), so unlike the audit cursor it carries no direction.
+ * Tokens keep the audit cursor's "after" layout, which earlier alert pages handed out.
+ */
+public final class AlertCursor {
+    private static final char AFTER = 'a';
+    private static final char BEFORE = 'b';
+
+    private final Instant time;
+    private final UUID id;
+
+    private AlertCursor(Instant time, UUID id) {
+        this.time = time;
+        this.id = id;
+    }
+
+    /** Alerts older than this one (the next page). */
+    public static AlertCursor after(Instant occurredAt, UUID id) {
+        return new AlertCursor(occurredAt, id);
+    }
+
+    public Instant getTime() { return time; }
+    public UUID getId() { return id; }
+
+    public String encode() {
+        String raw = AFTER + time.toString() + '|' + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by encode(), including
+     *         audit cursors that page backwards
+     */
+    public static AlertCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int bar = raw.indexOf('|');
+            char dir = raw.charAt(0);
+            if (dir == BEFORE) {
+                throw new IllegalArgumentException("Alerts only page forward; use nextCursor");
+            }
+            if (bar < 0 || dir != AFTER) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new AlertCursor(Instant.parse(raw.substring(1, bar)), UUID.fromString(raw.substring(bar + 1)));
+        } catch (DateTimeParseException | StringIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.audit.climate.watchtower.alerts;
+
+import com.audit.climate.watchtower.config.RabbitConfig;
+import com.audit.climate.watchtower.incidents.Incident;
+import com.audit.climate.watchtower.incidents.IncidentCoalescer;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AlertOutboxRelay drains alert_outbox to the alerts exchange.
+ *
+ * Each round claims up to batch-size due rows with FOR UPDATE SKIP LOCKED and leases them:
+ * their available_at is moved lease-ms ahead and the claim commits at once, so any number of
+ * instances can relay side by side without sending the same row concurrently, and no
+ * transaction, row lock or connection is held while the broker confirms. The claimed alerts
+ * then go through AlertPublisher, and a second short transaction marks confirmed rows
+ * published and pushes the rest back with an exponential backoff (capped at max-backoff-ms)
+ * to be tried again, without a limit. Delivery is at least once: rows of an instance that
+ * dies mid-round are claimed again once their lease ran out, and a crash between confirm and
+ * commit sends those alerts again; consumers dedupe on the alert id.
+ *
+ * With incidents enabled the claimed alerts are folded into incidents (IncidentCoalescer) and
+ * the rows marked published in one transaction, instead of publishing the alerts. Incidents
+ * updated that way are then claimed and leased like rows, a snapshot of each is published to
+ * incidents.queue and each confirmed one is marked published on its own; an unconfirmed one
+ * is sent again, with its latest counts, once its lease ran out. No snapshot is published
+ * for alerts whose incident update could still roll back.
+ *
+ * Published rows are deleted after retention-hours by a scheduled cleanup.
+ *
+ * Metrics: watchtower.alerts.outbox.publish-lag (timer, commit to confirm per alert),
+ * watchtower.alerts.outbox.pending (gauge, as of the last cleanup), .published and .retries
+ * (counters; with incidents enabled the lag ends at the commit of the incident update and
+ * retries counts unconfirmed incidents).
+ */
+@Component
+public class AlertOutboxRelay implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(AlertOutboxRelay.class);
+
+    private static final String CLAIM =
+            "WITH claimed AS ("
+                    + "SELECT alert_id FROM alert_outbox "
+                    + "WHERE published_at IS NULL AND available_at <= now() "
+                    + "ORDER BY available_at LIMIT ? FOR UPDATE SKIP LOCKED), "
+                    + "leased AS ("
+                    + "UPDATE alert_outbox o SET available_at = clock_timestamp() + ? * interval '1 millisecond' "
+                    + "FROM claimed c WHERE o.alert_id = c.alert_id RETURNING o.alert_id, o.occurred_at) "
+                    + "SELECT l.alert_id, a.occurred_at, a.module, a.metric, a.value, a.threshold_min, "
+                    + "a.threshold_max, a.description, a.severity, a.state "
+                    + "FROM leased l LEFT JOIN alerts a ON a.id = l.alert_id AND a.occurred_at = l.occurred_at";
+
+    private final JdbcTemplate jdbc;
+    private final AlertPublisher publisher;
+    private final IncidentCoalescer incidents;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final long retryBackoffMs;
+    private final long maxBackoffMs;
+    private final long leaseMs;
+    private final long retentionHours;
+
+    private final Object signal = new Object();
+    private boolean woken;
+    private volatile boolean running = true;
+    private Thread relay;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private volatile Timer publishLag;
+
+    public AlertOutboxRelay(JdbcTemplate jdbc,
+                            AlertPublisher publisher,
+                            IncidentCoalescer incidents,
+                            PlatformTransactionManager transactionManager,
+                            @Value("${audit.alerts.outbox.relay-enabled:true}") boolean enabled,
+                            @Value("${audit.alerts.outbox.batch-size:200}") int batchSize,
+                            @Value("${audit.alerts.outbox.poll-interval-ms:1000}") long pollIntervalMs,
+                            @Value("${audit.alerts.outbox.retry-backoff-ms:500}") long retryBackoffMs,
+                            @Value("${audit.alerts.outbox.max-backoff-ms:60000}") long maxBackoffMs,
+                            @Value("${audit.alerts.outbox.lease-ms:60000}") long leaseMs,
+                            @Value("${audit.alerts.outbox.retention-hours:24}") long retentionHours) {
+        this.jdbc = jdbc;
+        this.publisher = publisher;
+        this.incidents = incidents;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.retryBackoffMs = retryBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        // a lease must outlast the wait for confirms, or another relay could claim the rows meanwhile
+        this.leaseMs = Math.max(leaseMs, publisher.getConfirmTimeoutMs() * 3);
+        this.retentionHours = retentionHours;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            log.info("Alert outbox relay disabled on this instance");
+            return;
+        }
+        relay = new Thread(this::run, "alert-outbox-relay");
+        relay.setDaemon(true);
+        relay.start();
+    }
+
+    /** Skip the rest of the current poll interval; called after alerts were committed. */
+    public void wakeUp() {
+        synchronized (signal) {
+            woken = true;
+            signal.notifyAll();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            int claimed = 0;
+            try {
+                claimed = drainOnce();
+            } catch (Exception ex) {
+                log.warn("Alert outbox relay round failed: {}", ex.getMessage());
+            }
+            if (claimed < batchSize) {
+                awaitWork();
+            }
+        }
+    }
+
+    private void awaitWork() {
+        synchronized (signal) {
+            long deadline = System.currentTimeMillis() + pollIntervalMs;
+            long left;
+            while (running && !woken && (left = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    signal.wait(left);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            woken = false;
+        }
+    }
+
+    /**
+     * One relay round: claim and lease a batch, publish it, then record the outcome. The relay
+     * thread calls this in a loop; it is public for tests.
+     * @return number of rows (and, with incidents enabled, incidents) claimed
+     */
+    public int drainOnce() {
+        List<Claimed> rows = transactionTemplate.execute(status -> jdbc.query(CLAIM, (rs, i) -> {
+            UUID id = rs.getObject(1, UUID.class);
+            Timestamp occurredAt = rs.getTimestamp(2);
+            if (occurredAt == null) {
+                // the alert itself is gone (retention); nothing left to send
+                return new Claimed(id, null);
+            }
+            return new Claimed(id, Alert.stored(id, occurredAt.toInstant(), rs.getString(3), rs.getString(4),
+                    rs.getDouble(5), (Double) rs.getObject(6), (Double) rs.getObject(7),
+                    rs.getString(8), rs.getString(9), rs.getString(10)));
+        }, batchSize, leaseMs));
+        int claimed = rows == null ? 0 : rows.size();
+        if (incidents.isEnabled()) {
+            if (claimed > 0) {
+                coalesce(rows);
+            }
+            // every round, so incidents left unconfirmed by an earlier one are sent again
+            claimed += publishIncidents();
+        } else if (claimed > 0) {
+            publishAlerts(rows);
+        }
+        return claimed;
+    }
+
+    private void publishAlerts(List<Claimed> rows) {
+        List<CompletableFuture<Void>> sends = new ArrayList<>(rows.size());
+        for (Claimed row : rows) {
+            sends.add(row.alert == null ? CompletableFuture.completedFuture(null) : publisher.publish(row.alert));
+        }
+        awaitConfirms(sends);
+
+        List<UUID> done = new ArrayList<>();
+        List<UUID> failed = new ArrayList<>();
+        String error = null;
+        for (int i = 0; i < rows.size(); i++) {
+            CompletableFuture<Void> send = sends.get(i);
+            if (send.isDone() && !send.isCompletedExceptionally()) {
+                done.add(rows.get(i).id);
+            } else {
+                failed.add(rows.get(i).id);
+                if (error == null) {
+                    error = send.isDone() ? send.handle((v, ex) -> ex.getMessage()).join() : "no confirm";
+                }
+            }
+        }
+        String firstError = error;
+        transactionTemplate.executeWithoutResult(status -> {
+            markPublished(done);
+            reschedule(failed, firstError);
+        });
+    }
+
+    /**
+     * Incident mode: fold the claimed alerts into their incidents and mark the rows published, in
+     * one transaction. The incidents touched become due for publishing (see publishIncidents).
+     */
+    private void coalesce(List<Claimed> rows) {
+        List<Alert> alerts = new ArrayList<>(rows.size());
+        List<UUID> ids = new ArrayList<>(rows.size());
+        for (Claimed row : rows) {
+            ids.add(row.id);
+            if (row.alert != null) {
+                alerts.add(row.alert);
+            }
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!alerts.isEmpty()) {
+                incidents.coalesce(alerts);
+            }
+            markPublished(ids);
+        });
+    }
+
+    /**
+     * Incident mode: claim and lease up to batch-size committed incidents due for publishing,
+     * publish a snapshot of each and mark every confirmed one published on its own. An
+     * unconfirmed incident is claimed again once its lease ran out.
+     * @return number of incidents claimed
+     */
+    private int publishIncidents() {
+        List<Incident> due = transactionTemplate.execute(status -> incidents.claimUnpublished(batchSize, leaseMs));
+        if (due == null || due.isEmpty()) {
+            return 0;
+        }
+        List<CompletableFuture<Void>> sends = new ArrayList<>(due.size());
+        for (Incident incident : due) {
+            sends.add(publisher.publish(incident.getId(), incident, RabbitConfig.INCIDENTS_ROUTING_KEY));
+        }
+        awaitConfirms(sends);
+
+        int failed = 0;
+        String error = null;
+        for (int i = 0; i < due.size(); i++) {
+            CompletableFuture<Void> send = sends.get(i);
+            if (send.isDone() && !send.isCompletedExceptionally()) {
+                incidents.markPublished(due.get(i));
+            } else {
+                failed++;
+                if (error == null) {
+                    error = send.isDone() ? send.handle((v, ex) -> ex.getMessage()).join() : "no confirm";
+                }
+            }
+        }
+        if (failed > 0) {
+            retries.addAndGet(failed);
+            log.warn("{} incidents not confirmed, retrying after the lease: {}", failed, error);
+        }
+        return due.size();
+    }
+
+    private void awaitConfirms(List<CompletableFuture<Void>> sends) {
+        // the publisher fails unconfirmed sends after its confirm timeout; allow for its sweep interval
+        long waitMs = publisher.getConfirmTimeoutMs() * 2;
+        try {
+            CompletableFuture.allOf(sends.toArray(new CompletableFuture[0])).get(waitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            // per-send outcome is read below
+        }
+    }
+
+    private void markPublished(List<UUID> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        List<Double> lagMs = jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "UPDATE alert_outbox SET published_at = clock_timestamp() WHERE alert_id = ANY (?) AND published_at IS NULL "
+                            + "RETURNING extract(epoch FROM published_at - created_at) * 1000");
+            ps.setArray(1, con.createArrayOf("uuid", ids.toArray()));
+            return ps;
+        }, (rs, i) -> rs.getDouble(1));
+        published.addAndGet(lagMs.size());
+        Timer timer = publishLag;
+        if (timer != null) {
+            for (double ms : lagMs) {
+                timer.record(Math.max(0, Math.round(ms)), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void reschedule(List<UUID> ids, String error) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        retries.addAndGet(ids.size());
+        log.warn("{} alerts not confirmed, retrying later: {}", ids.size(), error);
+        jdbc.update(con -> {
+            PreparedStatement ps = con.prepareStatement(
+                    "UPDATE alert_outbox SET attempts = attempts + 1, last_error = ?, "
+                            + "available_at = clock_timestamp() + least(? * power(2, least(attempts, 20)), ?) * interval '1 millisecond' "
+                            + "WHERE alert_id = ANY (?)");
+            ps.setString(1, error);
+            ps.setLong(2, retryBackoffMs);
+            ps.setLong(3, maxBackoffMs);
+            ps.setArray(4, con.createArrayOf("uuid", ids.toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Delete published rows past the retention and refresh the pending gauge.
+     */
+    @Scheduled(fixedDelayString = "${audit.alerts.outbox.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        try {
+            Instant cutoff = Instant.now().minusSeconds(TimeUnit.HOURS.toSeconds(retentionHours));
+            int removed = jdbc.update("DELETE FROM alert_outbox WHERE published_at < ?", Timestamp.from(cutoff));
+            if (removed > 0) {
+                log.debug("Removed {} published alert outbox rows", removed);
+            }
+            Long waiting = jdbc.queryForObject("SELECT count(*) FROM alert_outbox WHERE published_at IS NULL", Long.class);
+            pending.set(waiting == null ? 0 : waiting);
+        } catch (Exception ex) {
+            log.warn("Failed to clean up the alert outbox", ex);
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        wakeUp();
+        if (relay != null) {
+            relay.join(TimeUnit.SECONDS.toMillis(10) + publisher.getConfirmTimeoutMs() * 2);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        publishLag = Timer.builder("watchtower.alerts.outbox.publish-lag")
+                .description("Time from an alert's commit to its confirmed publish")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        Gauge.builder("watchtower.alerts.outbox.pending", pending, AtomicLong::get)
+                .description("Unpublished outbox rows as of the last cleanup")
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.outbox.published", published, AtomicLong::get)
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.outbox.retries", retries, AtomicLong::get)
+                .description("Outbox rows pushed back after a failed publish")
+                .register(registry);
+    }
+
+    private static final class Claimed {
+        final UUID id;
+        final Alert alert;
+
+        Claimed(UUID id, Alert alert) {
+            this.id = id;
+            this.alert = alert;
+        }
+    }
+}
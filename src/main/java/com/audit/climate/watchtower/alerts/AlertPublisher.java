@@ -0,0 +1,254 @@
+package com.audit.climate.watchtower.alerts;
+
+import com.audit.climate.watchtower.config.RabbitConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AlertPublisher sends alerts (and incidents) to the alerts exchange from its own thread, with
+ * publisher confirms. Callers only enqueue and get a future that completes once the broker
+ * confirmed the message.
+ *
+ * Every message carries CorrelationData and counts against a bounded in-flight window until
+ * the broker confirms it. A nack, an unroutable return or no confirm within confirm-timeout-ms
+ * fails the future, as does a full hand-off queue; retrying is up to the caller (the outbox
+ * relay keeps the alert and tries again later).
+ *
+ * Needs spring.rabbitmq.publisher-confirm-type=correlated and publisher-returns=true.
+ *
+ * Metrics: watchtower.alerts.publish.confirm-latency (timer), watchtower.alerts.publish.backlog
+ * and .in-flight (gauges), watchtower.alerts.publish.failed and .rejected (counters).
+ */
+@Component
+public class AlertPublisher implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(AlertPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<Pending> queue;
+    private final Semaphore window;
+    private final int maxInFlight;
+    private final long confirmTimeoutMs;
+
+    private final Map<String, Pending> inFlight = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "alert-publisher-timeout");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong confirmNanos = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    private volatile boolean running = true;
+    private Thread sender;
+
+    public AlertPublisher(ConnectionFactory connectionFactory,
+                          ObjectMapper objectMapper,
+                          @Value("${audit.alerts.publish.queue-capacity:10000}") int queueCapacity,
+                          @Value("${audit.alerts.publish.max-in-flight:256}") int maxInFlight,
+                          @Value("${audit.alerts.publish.confirm-timeout-ms:5000}") long confirmTimeoutMs) {
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.rabbitTemplate.setMandatory(true);
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.confirmTimeoutMs = confirmTimeoutMs;
+    }
+
+    public long getConfirmTimeoutMs() {
+        return confirmTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        sender = new Thread(this::runSender, "alert-publisher");
+        sender.setDaemon(true);
+        sender.start();
+        long sweep = Math.max(100, confirmTimeoutMs / 2);
+        scheduler.scheduleWithFixedDelay(this::expireUnconfirmed, sweep, sweep, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hand an alert over for publishing. Never blocks; the future completes when the broker
+     * has confirmed it and fails if it was not accepted.
+     */
+    public CompletableFuture<Void> publish(Alert alert) {
+        return publish(alert.getId(), alert, RabbitConfig.ALERTS_ROUTING_KEY);
+    }
+
+    /**
+     * Publish any message on the alerts exchange with the given routing key, same as publish(Alert).
+     */
+    public CompletableFuture<Void> publish(UUID id, Object message, String routingKey) {
+        Pending p;
+        try {
+            p = new Pending(id, objectMapper.writeValueAsString(message), routingKey);
+        } catch (Exception ex) {
+            failed.incrementAndGet();
+            return CompletableFuture.failedFuture(ex);
+        }
+        if (!running || !queue.offer(p)) {
+            rejected.incrementAndGet();
+            p.result.completeExceptionally(new IllegalStateException("Alert publish queue full"));
+        }
+        return p.result;
+    }
+
+    private void runSender() {
+        while (running || !queue.isEmpty()) {
+            Pending p = null;
+            try {
+                p = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (p == null) {
+                    continue;
+                }
+                window.acquire();
+            } catch (InterruptedException ex) {
+                if (p != null) {
+                    queue.offer(p);
+                }
+                if (!running) {
+                    return;
+                }
+                continue;
+            }
+            send(p);
+        }
+    }
+
+    private void send(Pending p) {
+        CorrelationData correlation = new CorrelationData(UUID.randomUUID().toString());
+        p.correlationId = correlation.getId();
+        p.sentAt = System.nanoTime();
+        inFlight.put(correlation.getId(), p);
+        correlation.getFuture().whenComplete((confirm, ex) -> {
+            boolean ok = ex == null && confirm.isAck() && correlation.getReturned() == null;
+            String reason = ex != null ? ex.getMessage()
+                    : !confirm.isAck() ? confirm.getReason()
+                    : correlation.getReturned() != null ? "unroutable: " + correlation.getReturned().getReplyText()
+                    : null;
+            settle(correlation.getId(), ok, reason);
+        });
+        try {
+            rabbitTemplate.convertAndSend(RabbitConfig.ALERTS_EXCHANGE, p.routingKey, p.payload, correlation);
+        } catch (Exception ex) {
+            settle(correlation.getId(), false, ex.getMessage());
+        }
+    }
+
+    // first outcome wins: a confirm arriving after the timeout fired finds nothing to settle
+    private void settle(String correlationId, boolean ok, String reason) {
+        Pending p = inFlight.remove(correlationId);
+        if (p == null) {
+            return;
+        }
+        window.release();
+        if (ok) {
+            confirmed.incrementAndGet();
+            confirmNanos.addAndGet(System.nanoTime() - p.sentAt);
+            log.debug("Published {} {}", p.routingKey, p.id);
+            p.result.complete(null);
+            return;
+        }
+        failed.incrementAndGet();
+        log.warn("{} {} not confirmed: {}", p.routingKey, p.id, reason);
+        p.result.completeExceptionally(new IllegalStateException("Alert not confirmed: " + reason));
+    }
+
+    private void expireUnconfirmed() {
+        long cutoff = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(confirmTimeoutMs);
+        for (Pending p : inFlight.values()) {
+            if (p.sentAt - cutoff < 0) {
+                settle(p.correlationId, false, "no confirm within " + confirmTimeoutMs + "ms");
+            }
+        }
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        // let the sender drain what is queued, then give outstanding confirms a moment
+        running = false;
+        if (sender != null) {
+            sender.join(TimeUnit.SECONDS.toMillis(10));
+            sender.interrupt();
+        }
+        window.tryAcquire(maxInFlight, confirmTimeoutMs, TimeUnit.MILLISECONDS);
+        scheduler.shutdownNow();
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.result.completeExceptionally(new IllegalStateException("Alert publisher stopped"));
+        }
+    }
+
+    /** Alerts waiting to be sent. */
+    public int backlog() {
+        return queue.size();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("watchtower.alerts.publish.confirm-latency", this,
+                        p -> p.confirmed.get(), p -> p.confirmNanos.get(), TimeUnit.NANOSECONDS)
+                .description("Time from send to broker confirm of published alerts")
+                .register(registry);
+        Gauge.builder("watchtower.alerts.publish.backlog", this, AlertPublisher::backlog)
+                .description("Alerts queued for publishing")
+                .register(registry);
+        Gauge.builder("watchtower.alerts.publish.in-flight", this, AlertPublisher::inFlight)
+                .description("Published alerts awaiting a broker confirm")
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.publish.failed", failed, AtomicLong::get)
+                .description("Sends nacked, returned or not confirmed in time")
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.publish.rejected", rejected, AtomicLong::get)
+                .description("Alerts not accepted because the hand-off queue was full")
+                .register(registry);
+    }
+
+    private static final class Pending {
+        final UUID id;
+        final String payload;
+        final String routingKey;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        volatile String correlationId;
+        volatile long sentAt;
+
+        Pending(UUID id, String payload, String routingKey) {
+            this.id = id;
+            this.payload = payload;
+            this.routingKey = routingKey;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.audit.climate.watchtower.alerts;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * AlertQueries reads alerts newest first with keyset pagination on (occurred_at, id).
+ * Each filter leads an (…, occurred_at DESC, id DESC) index (V10, V18): none, module,
+ * module + metric, metric, severity and module + severity, so a page of those is an index
+ * range scan (one per listed severity). Combinations beyond that, e.g. metric + severity, use
+ * the index of their module or metric and filter the rest. Time ranges let Timescale skip chunks.
+ */
+@Component
+public class AlertQueries {
+    private static final String COLUMNS =
+            "id, occurred_at, module, metric, value, threshold_min, threshold_max, description, severity, state";
+
+    private static final RowMapper<Alert> ROW = (rs, i) -> Alert.stored(
+            rs.getObject(1, UUID.class),
+            rs.getTimestamp(2).toInstant(),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getDouble(5),
+            rs.getObject(6, Double.class),
+            rs.getObject(7, Double.class),
+            rs.getString(8),
+            rs.getString(9),
+            rs.getString(10));
+
+    private final JdbcTemplate jdbc;
+
+    public AlertQueries(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Filters for alert queries; null or empty fields are not applied. from is inclusive, to exclusive.
+     */
+    public static final class Filter {
+        private final Instant from;
+        private final Instant to;
+        private final String module;
+        private final String metric;
+        private final Collection<Alert.Severity> severities;
+
+        public Filter(Instant from, Instant to, String module, String metric, Collection<Alert.Severity> severities) {
+            this.from = from;
+            this.to = to;
+            this.module = module;
+            this.metric = metric;
+            this.severities = severities == null ? List.of() : severities;
+        }
+    }
+
+    /**
+     * Up to limit + 1 alerts older than the cursor, newest first, so the caller can tell
+     * whether there is another page.
+     */
+    public List<Alert> page(Filter filter, AlertCursor after, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM alerts WHERE true");
+        appendFilter(filter, sql, args);
+        if (after != null) {
+            sql.append(" AND (occurred_at, id) < (?, ?)");
+            args.add(Timestamp.from(after.getTime()));
+            args.add(after.getId());
+        }
+        sql.append(" ORDER BY occurred_at DESC, id DESC LIMIT ?");
+        args.add(limit + 1);
+        return jdbc.query(sql.toString(), ROW, args.toArray());
+    }
+
+    /**
+     * Alert counts per module, metric and severity with the latest occurrence, largest first.
+     */
+    public List<Map<String, Object>> summary(Filter filter) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder(
+                "SELECT module, metric, severity, count(*) AS alerts, max(occurred_at) AS last_occurred_at FROM alerts WHERE true");
+        appendFilter(filter, sql, args);
+        sql.append(" GROUP BY module, metric, severity ORDER BY alerts DESC, module, metric, severity");
+        return jdbc.queryForList(sql.toString(), args.toArray());
+    }
+
+    private void appendFilter(Filter filter, StringBuilder sql, List<Object> args) {
+        if (filter.from != null) {
+            sql.append(" AND occurred_at >= ?");
+            args.add(Timestamp.from(filter.from));
+        }
+        if (filter.to != null) {
+            sql.append(" AND occurred_at < ?");
+            args.add(Timestamp.from(filter.to));
+        }
+        if (filter.module != null) {
+            sql.append(" AND module = ?");
+            args.add(filter.module);
+        }
+        if (filter.metric != null) {
+            sql.append(" AND metric = ?");
+            args.add(filter.metric);
+        }
+        if (!filter.severities.isEmpty()) {
+            sql.append(" AND severity IN (").append(String.join(", ", Collections.nCopies(filter.severities.size(), "?"))).append(')');
+            filter.severities.forEach(s -> args.add(s.tag()));
+        }
+    }
+}
@@ -1,38 +1,45 @@
 package com.audit.climate.watchtower.alerts;
 
-import com.audit.climate.watchtower.config.RabbitConfig;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.List;
 
 /**
  * AlertService is the single entry point for persisting and publishing alerts.
- * Centralizes save/publish logic with proper error handling.
+ * Alerts are stored with multi-row INSERTs together with their alert_outbox rows, in the
+ * same transaction; AlertOutboxRelay publishes from the outbox, so an alert is published
+ * if and only if it was committed.
  */
 @Service
 public class AlertService {
     private static final Logger log = LoggerFactory.getLogger(AlertService.class);
+    // rows per INSERT statement; 10 parameters each keeps us far below the 65535 bind limit
+    private static final int ROWS_PER_INSERT = 500;
 
-    private final AlertRepository alertRepository;
-    private final RabbitTemplate rabbitTemplate;
-    private final ObjectMapper objectMapper;
+    private final JdbcTemplate jdbc;
+    private final AlertOutboxRelay relay;
+    private final TransactionTemplate transactionTemplate;
 
-    public AlertService(AlertRepository alertRepository,
-                       RabbitTemplate rabbitTemplate,
-                       ObjectMapper objectMapper) {
-        this.alertRepository = alertRepository;
-        this.rabbitTemplate = rabbitTemplate;
-        this.objectMapper = objectMapper;
+    public AlertService(JdbcTemplate jdbc,
+                        AlertOutboxRelay relay,
+                        PlatformTransactionManager transactionManager) {
+        this.jdbc = jdbc;
+        this.relay = relay;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     /**
-     * Persist and publish all alerts.
-     * Persists to database first, then publishes to RabbitMQ.
-     * Continues on individual failures but logs errors.
+     * Persist all alerts in one transaction, then wake the outbox relay.
+     * Failures are logged and nothing is published.
      *
      * @param alerts list of alerts to persist and publish
      */
@@ -40,31 +47,88 @@ public class AlertService {
         if (alerts == null || alerts.isEmpty()) {
             return;
         }
+        try {
+            transactionTemplate.executeWithoutResult(status -> persist(alerts));
+        } catch (Exception ex) {
+            log.error("Failed to persist {} alerts", alerts.size(), ex);
+            return;
+        }
+        publish(alerts);
+    }
 
-        for (Alert alert : alerts) {
-            try {
-                // Persist to database
-                alertRepository.save(alert);
-                log.info("Persisted alert {} for module={} metric={} value={}",
-                    alert.getId(), alert.getModule(), alert.getMetric(), alert.getValue());
+    /**
+     * Persist alerts and their outbox rows as part of the caller's transaction.
+     * Unlike persistAndPublish, failures propagate so the caller can roll back.
+     *
+     * @param alerts list of alerts to persist
+     */
+    public void persist(List<Alert> alerts) {
+        if (alerts == null || alerts.isEmpty()) {
+            return;
+        }
+        for (int from = 0; from < alerts.size(); from += ROWS_PER_INSERT) {
+            List<Alert> rows = alerts.subList(from, Math.min(from + ROWS_PER_INSERT, alerts.size()));
+            insert(rows);
+            insertOutbox(rows);
+        }
+        log.debug("Persisted {} alerts", alerts.size());
+    }
 
-                // Publish to RabbitMQ
-                try {
-                    String payload = objectMapper.writeValueAsString(alert);
-                    rabbitTemplate.convertAndSend(
-                        RabbitConfig.ALERTS_EXCHANGE,
-                        "alerts.routing",
-                        payload
-                    );
-                    log.debug("Published alert {} to RabbitMQ", alert.getId());
-                } catch (Exception ex) {
-                    log.error("Failed to publish alert {} to RabbitMQ", alert.getId(), ex);
-                }
-            } catch (Exception ex) {
-                log.error("Failed to persist alert for module={} metric={}",
-                    alert.getModule(), alert.getMetric(), ex);
+    private void insert(List<Alert> rows) {
+        StringBuilder sql = new StringBuilder(
+                "INSERT INTO alerts (id, occurred_at, module, metric, value, threshold_min, threshold_max, description, severity, state) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        jdbc.update(sql.toString(), ps -> {
+            int i = 1;
+            for (Alert a : rows) {
+                ps.setObject(i++, a.getId());
+                ps.setTimestamp(i++, Timestamp.from(a.getOccurredAt()));
+                ps.setString(i++, a.getModule());
+                ps.setString(i++, a.getMetric());
+                ps.setDouble(i++, a.getValue());
+                setDouble(ps, i++, a.getThresholdMin());
+                setDouble(ps, i++, a.getThresholdMax());
+                ps.setString(i++, a.getDescription());
+                ps.setString(i++, a.getSeverity());
+                ps.setString(i++, a.getState());
             }
+        });
+    }
+
+    private void insertOutbox(List<Alert> rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO alert_outbox (alert_id, occurred_at) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
         }
+        jdbc.update(sql.toString(), ps -> {
+            int i = 1;
+            for (Alert a : rows) {
+                ps.setObject(i++, a.getId());
+                ps.setTimestamp(i++, Timestamp.from(a.getOccurredAt()));
+            }
+        });
     }
-}
 
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    /**
+     * Signal that committed alerts are waiting in the outbox, so the relay does not wait for
+     * its next poll. Returns immediately; the relay would pick them up anyway.
+     *
+     * @param alerts list of committed alerts
+     */
+    public void publish(List<Alert> alerts) {
+        if (alerts == null || alerts.isEmpty()) {
+            return;
+        }
+        relay.wakeUp();
+    }
+}
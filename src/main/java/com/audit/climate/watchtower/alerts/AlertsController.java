@@ -1,21 +1,106 @@
 package com.audit.climate.watchtower.alerts;
 
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api")
 public class AlertsController {
-    private final AlertRepository alertRepository;
+    private static final int MAX_PAGE_SIZE = 500;
 
-    public AlertsController(AlertRepository alertRepository) {
-        this.alertRepository = alertRepository;
+    private final AlertQueries queries;
+
+    public AlertsController(AlertQueries queries) {
+        this.queries = queries;
     }
 
+    // GET /api/alerts?size=50&module=...&metric=...&severity=warning,critical&from=...&to=...&cursor=...
+    // Newest first; follow nextCursor for older alerts
     @GetMapping("/alerts")
-    public List<Alert> listAlerts() {
-        return alertRepository.findAll().stream().collect(Collectors.toList());
+    public ResponseEntity<?> listAlerts(
+            @RequestParam(defaultValue = "50") int size,
+            @RequestParam(required = false) String module,
+            @RequestParam(required = false) String metric,
+            @RequestParam(required = false) List<String> severity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor
+    ) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        AlertCursor after = null;
+        Set<Alert.Severity> severities;
+        try {
+            severities = severities(severity);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body("Invalid severity");
+        }
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = AlertCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().body(ex.getMessage());
+            }
+        }
+
+        List<Alert> rows = queries.page(new AlertQueries.Filter(from, to, module, metric, severities), after, size);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("size", size);
+        if (rows.size() > size) {
+            rows = rows.subList(0, size);
+            Alert last = rows.get(size - 1);
+            out.put("nextCursor", AlertCursor.after(last.getOccurredAt(), last.getId()).encode());
+        } else {
+            out.put("nextCursor", null);
+        }
+        out.put("items", rows);
+        return ResponseEntity.ok(out);
+    }
+
+    // GET /api/alerts/summary?from=...&to=...&module=...&severity=critical
+    // Counts per module/metric/severity for the dashboard; defaults to the last 24 hours
+    @GetMapping("/alerts/summary")
+    public ResponseEntity<?> summary(
+            @RequestParam(required = false) String module,
+            @RequestParam(required = false) String metric,
+            @RequestParam(required = false) List<String> severity,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to
+    ) {
+        Set<Alert.Severity> severities;
+        try {
+            severities = severities(severity);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body("Invalid severity");
+        }
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("from", start.toString());
+        out.put("to", end.toString());
+        out.put("groups", queries.summary(new AlertQueries.Filter(start, end, module, metric, severities)));
+        return ResponseEntity.ok(out);
+    }
+
+    private static Set<Alert.Severity> severities(List<String> tags) {
+        Set<Alert.Severity> set = EnumSet.noneOf(Alert.Severity.class);
+        if (tags != null) {
+            for (String tag : tags) {
+                if (!tag.isBlank()) {
+                    set.add(Alert.Severity.of(tag));
+                }
+            }
+        }
+        return set;
     }
 }
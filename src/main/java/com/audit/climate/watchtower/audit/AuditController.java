@@ -1,56 +1,162 @@
 package com.audit.climate.watchtower.audit;
 
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/audit")
 public class AuditController {
-    private final RawEventRepository repository;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    private final RawEventQueries queries;
+    private final AuditExporter exporter;
     private final ObjectMapper mapper;
 
-    public AuditController(RawEventRepository repository, ObjectMapper mapper) {
-        this.repository = repository;
+    public AuditController(RawEventQueries queries, AuditExporter exporter, ObjectMapper mapper) {
+        this.queries = queries;
+        this.exporter = exporter;
         this.mapper = mapper;
     }
 
-    // GET /api/audit?page=0&size=20&sort=receivedAt,desc
+    // GET /api/audit?size=20&order=desc&from=...&to=...&module=...&channel=...&cursor=...&count=true
+    // Keyset pagination on (receivedAt, id): follow nextCursor/prevCursor from the previous response.
+    // count=true adds an estimated total (planner/statistics based, not an exact count).
     @GetMapping
-    public ResponseEntity<AuditPageDto> list(
-            @RequestParam(defaultValue = "0") int page,
+    public ResponseEntity<?> list(
             @RequestParam(defaultValue = "20") int size,
-            @RequestParam(defaultValue = "receivedAt,desc") String sort
+            @RequestParam(defaultValue = "desc") String order,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String module,
+            @RequestParam(required = false) String channel,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean count
     ) {
-        // parse sort param (e.g., receivedAt,desc)
-        String[] sortParts = sort.split(",");
-        String sortProp = sortParts[0];
-        Sort.Direction dir = Sort.Direction.DESC;
-        if (sortParts.length > 1 && "asc".equalsIgnoreCase(sortParts[1])) {
-            dir = Sort.Direction.ASC;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        boolean ascending;
+        if ("asc".equalsIgnoreCase(order)) {
+            ascending = true;
+        } else if ("desc".equalsIgnoreCase(order)) {
+            ascending = false;
+        } else {
+            return ResponseEntity.badRequest().body("order must be asc or desc");
+        }
+        AuditCursor position = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                position = AuditCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return ResponseEntity.badRequest().body("Invalid cursor");
+            }
+        }
+
+        RawEventQueries.Filter filter = new RawEventQueries.Filter(from, to, module, channel);
+        List<RawEvent> rows = queries.page(filter, position, ascending, size);
+        boolean more = rows.size() > size;
+        if (more) {
+            // the extra row is the one beyond the page, on the side we were reading towards
+            rows = position != null && position.isBefore() ? rows.subList(1, rows.size()) : rows.subList(0, size);
         }
-        PageRequest pr = PageRequest.of(page, size, Sort.by(dir, sortProp));
-        Page<RawEvent> p = repository.findAll(pr);
-        List<AuditDto> items = p.stream().map(e -> AuditDto.fromEntity(e, mapper)).collect(Collectors.toList());
+
         AuditPageDto dto = new AuditPageDto();
-        dto.setPage(p.getNumber());
-        dto.setSize(p.getSize());
-        dto.setTotalElements(p.getTotalElements());
-        dto.setTotalPages(p.getTotalPages());
-        dto.setItems(items);
+        dto.setSize(size);
+        dto.setItems(rows.stream().map(e -> AuditDto.fromEntity(e, mapper)).collect(Collectors.toList()));
+        if (!rows.isEmpty()) {
+            RawEvent first = rows.get(0);
+            RawEvent last = rows.get(rows.size() - 1);
+            boolean backwards = position != null && position.isBefore();
+            // a next page exists if we saw one more row going forward, or came back from one
+            if (backwards || more) {
+                dto.setNextCursor(AuditCursor.after(last.getReceivedAt(), last.getId()).encode());
+            }
+            if (backwards ? more : position != null) {
+                dto.setPrevCursor(AuditCursor.before(first.getReceivedAt(), first.getId()).encode());
+            }
+        }
+        if (count) {
+            dto.setEstimatedTotal(queries.estimate(filter));
+        }
         return ResponseEntity.ok(dto);
     }
 
+    // GET /api/audit/export?from=...&to=...&module=...&channel=...&format=ndjson|csv&gzip=true&cursor=...
+    // Streams every matching event in [from, to), oldest first. from is required, to defaults to now,
+    // and the range may span at most audit.export.max-range-days. Each row carries a cursor; pass the
+    // last one received as `cursor` (with the same range) to resume an interrupted export.
+    // The stream runs under its own async timeout (audit.export.timeout-ms), not the global one.
+    @GetMapping("/export")
+    public WebAsyncTask<ResponseEntity<?>> export(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String module,
+            @RequestParam(required = false) String channel,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) String cursor,
+            HttpServletResponse response
+    ) {
+        AuditExporter.Format fmt;
+        try {
+            fmt = AuditExporter.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            return badRequest("format must be ndjson or csv");
+        }
+        if (from == null) {
+            return badRequest("from is required");
+        }
+        Instant until = to != null ? to : Instant.now();
+        if (!until.isAfter(from)) {
+            return badRequest("to must be after from");
+        }
+        Duration maxRange = exporter.getMaxRange();
+        if (Duration.between(from, until).compareTo(maxRange) > 0) {
+            return badRequest("the range from..to may span at most " + maxRange.toDays() + " days");
+        }
+        AuditCursor after = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            try {
+                after = AuditCursor.decode(cursor);
+            } catch (IllegalArgumentException ex) {
+                return badRequest("Invalid cursor");
+            }
+        }
+        RawEventQueries.Filter filter = new RawEventQueries.Filter(from, until, module, channel);
+        AuditCursor resumeAfter = after;
+        String filename = "raw-events." + fmt.extension() + (gzip ? ".gz" : "");
+
+        // the response is written directly, so the task completes without a body of its own
+        return new WebAsyncTask<>(exporter.getTimeoutMs(), () -> {
+            response.setContentType(gzip ? "application/gzip" : fmt.contentType());
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"");
+            exporter.export(fmt, gzip, filter, resumeAfter, response.getOutputStream());
+            return null;
+        });
+    }
+
+    private static WebAsyncTask<ResponseEntity<?>> badRequest(String message) {
+        return new WebAsyncTask<>(() -> ResponseEntity.badRequest().body(message));
+    }
+
     public static class AuditDto {
         private String id;
         private String receivedAt;
@@ -59,11 +165,14 @@ public class AuditController {
         private Double temperature;
         private Double humidity;
         private Double pressure;
+        private String encoding;
+        private Map<String, Object> payload;
 
         public static AuditDto fromEntity(RawEvent e, ObjectMapper mapper) {
             AuditDto d = new AuditDto();
             d.id = e.getId().toString();
             d.receivedAt = e.getReceivedAt().toString();
+            d.encoding = e.getEncoding();
             try {
                 // first attempt: try to extract channel from classification (set by AuditService during preprocessing)
                 String cls = e.getClassification();
@@ -73,9 +182,10 @@ public class AuditController {
                     if (ch != null) d.channel = ch.toString();
                 }
 
-                String payloadStr = e.getPayload();
-                if (payloadStr != null) {
-                    Map<String,Object> payload = mapper.readValue(payloadStr, Map.class);
+                Map<String,Object> payload = readPayload(e, mapper);
+                if (payload != null) {
+                    // rendered as JSON whatever the wire encoding was
+                    d.payload = payload;
 
                     // fallback: if channel not in classification, check payload for channel key
                     if (d.channel == null) {
@@ -105,6 +215,19 @@ public class AuditController {
             return d;
         }
 
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> readPayload(RawEvent e, ObjectMapper mapper) throws IOException {
+            if (e.getPayload() != null) {
+                return mapper.readValue(e.getPayload(), Map.class);
+            }
+            if (e.getPayloadRaw() == null) {
+                return null;
+            }
+            try (JsonParser parser = PayloadEncoding.fromTag(e.getEncoding()).createParser(mapper, e.getPayloadRaw())) {
+                return mapper.readValue(parser, Map.class);
+            }
+        }
+
         public String getId() { return id; }
         public String getReceivedAt() { return receivedAt; }
         public String getChannel() { return channel; }
@@ -112,23 +235,25 @@ public class AuditController {
         public Double getTemperature() { return temperature; }
         public Double getHumidity() { return humidity; }
         public Double getPressure() { return pressure; }
+        public String getEncoding() { return encoding; }
+        public Map<String, Object> getPayload() { return payload; }
     }
 
     public static class AuditPageDto {
-        private int page;
         private int size;
-        private long totalElements;
-        private int totalPages;
+        private String nextCursor;
+        private String prevCursor;
+        private Long estimatedTotal;
         private List<AuditDto> items;
 
-        public int getPage() { return page; }
-        public void setPage(int page) { this.page = page; }
         public int getSize() { return size; }
         public void setSize(int size) { this.size = size; }
-        public long getTotalElements() { return totalElements; }
-        public void setTotalElements(long totalElements) { this.totalElements = totalElements; }
-        public int getTotalPages() { return totalPages; }
-        public void setTotalPages(int totalPages) { this.totalPages = totalPages; }
+        public String getNextCursor() { return nextCursor; }
+        public void setNextCursor(String nextCursor) { this.nextCursor = nextCursor; }
+        public String getPrevCursor() { return prevCursor; }
+        public void setPrevCursor(String prevCursor) { this.prevCursor = prevCursor; }
+        public Long getEstimatedTotal() { return estimatedTotal; }
+        public void setEstimatedTotal(Long estimatedTotal) { this.estimatedTotal = estimatedTotal; }
         public List<AuditDto> getItems() { return items; }
         public void setItems(List<AuditDto> items) { this.items = items; }
     }
@@ -0,0 +1,62 @@
+package com.audit.climate.watchtower.audit;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * AuditCursor is a position in the raw event ledger, keyed on (received_at, id), plus the
+ * direction to read from it. Clients only see it as an opaque token.
+ */
+public final class AuditCursor {
+    private static final char AFTER = 'a';
+    private static final char BEFORE = 'b';
+
+    private final Instant receivedAt;
+    private final UUID id;
+    private final boolean before;
+
+    private AuditCursor(Instant receivedAt, UUID id, boolean before) {
+        this.receivedAt = receivedAt;
+        this.id = id;
+        this.before = before;
+    }
+
+    /** Rows that come after this one in the requested order (the next page). */
+    public static AuditCursor after(Instant receivedAt, UUID id) {
+        return new AuditCursor(receivedAt, id, false);
+    }
+
+    /** Rows that come before this one in the requested order (the previous page). */
+    public static AuditCursor before(Instant receivedAt, UUID id) {
+        return new AuditCursor(receivedAt, id, true);
+    }
+
+    public Instant getReceivedAt() { return receivedAt; }
+    public UUID getId() { return id; }
+    public boolean isBefore() { return before; }
+
+    public String encode() {
+        String raw = (before ? BEFORE : AFTER) + receivedAt.toString() + '|' + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException when the token was not produced by encode()
+     */
+    public static AuditCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int bar = raw.indexOf('|');
+            char dir = raw.charAt(0);
+            if (bar < 0 || (dir != AFTER && dir != BEFORE)) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new AuditCursor(Instant.parse(raw.substring(1, bar)), UUID.fromString(raw.substring(bar + 1)), dir == BEFORE);
+        } catch (DateTimeParseException | StringIndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Invalid cursor", ex);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.audit.climate.watchtower.audit;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * AuditExporter writes the raw event ledger as NDJSON or CSV, optionally gzipped.
+ *
+ * Rows come from RawEventQueries.stream() and are written as they arrive, so memory use
+ * depends on the fetch size only. Payloads are exported verbatim (binary ones base64), and
+ * every row carries the cursor token that resumes an export right after it.
+ */
+@Component
+public class AuditExporter {
+    private static final int BUFFER_CHARS = 64 * 1024;
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() { return contentType; }
+        public String extension() { return extension; }
+    }
+
+    private final RawEventQueries queries;
+    private final ObjectMapper mapper;
+    private final int fetchSize;
+    private final Duration maxRange;
+    private final long timeoutMs;
+
+    public AuditExporter(RawEventQueries queries,
+                         ObjectMapper mapper,
+                         @Value("${audit.export.fetch-size:1000}") int fetchSize,
+                         @Value("${audit.export.max-range-days:31}") int maxRangeDays,
+                         @Value("${audit.export.timeout-ms:3600000}") long timeoutMs) {
+        this.queries = queries;
+        this.mapper = mapper;
+        this.fetchSize = fetchSize;
+        this.maxRange = Duration.ofDays(maxRangeDays);
+        this.timeoutMs = timeoutMs;
+    }
+
+    /** Longest from..to range a single export may cover. */
+    public Duration getMaxRange() { return maxRange; }
+
+    /** Async timeout of an export request, in ms. */
+    public long getTimeoutMs() { return timeoutMs; }
+
+    public void export(Format format, boolean gzip, RawEventQueries.Filter filter, AuditCursor after, OutputStream out)
+            throws IOException {
+        OutputStream target = gzip ? new GZIPOutputStream(out, BUFFER_CHARS) : out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(target, StandardCharsets.UTF_8), BUFFER_CHARS);
+        try {
+            if (format == Format.CSV) {
+                writer.write("id,received_at,encoding,payload,payload_raw,classification,cursor\n");
+                queries.stream(filter, after, fetchSize, e -> unchecked(() -> writeCsv(writer, e)));
+            } else {
+                JsonGenerator json = mapper.getFactory().createGenerator(writer);
+                json.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+                // flushing per row must not flush the buffered writer; lines are separated by hand
+                json.configure(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM, false);
+                json.setRootValueSeparator(null);
+                queries.stream(filter, after, fetchSize, e -> unchecked(() -> writeJson(json, writer, e)));
+                json.flush();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        writer.flush();
+        if (gzip) {
+            ((GZIPOutputStream) target).finish();
+        }
+    }
+
+    private void writeJson(JsonGenerator json, Writer writer, RawEvent e) throws IOException {
+        json.writeStartObject();
+        json.writeStringField("id", e.getId().toString());
+        json.writeStringField("receivedAt", e.getReceivedAt().toString());
+        json.writeStringField("encoding", e.getEncoding());
+        json.writeStringField("payload", e.getPayload());
+        if (e.getPayloadRaw() != null) {
+            json.writeBinaryField("payloadRaw", e.getPayloadRaw());
+        }
+        json.writeFieldName("classification");
+        if (e.getClassification() != null) {
+            // jsonb from the database, already valid JSON
+            json.writeRawValue(e.getClassification());
+        } else {
+            json.writeNull();
+        }
+        json.writeStringField("cursor", AuditCursor.after(e.getReceivedAt(), e.getId()).encode());
+        json.writeEndObject();
+        json.flush();
+        writer.write('\n');
+    }
+
+    private void writeCsv(Writer writer, RawEvent e) throws IOException {
+        writer.write(e.getId().toString());
+        writer.write(',');
+        writer.write(e.getReceivedAt().toString());
+        writer.write(',');
+        writeCsvField(writer, e.getEncoding());
+        writer.write(',');
+        writeCsvField(writer, e.getPayload());
+        writer.write(',');
+        if (e.getPayloadRaw() != null) {
+            writer.write(Base64.getEncoder().encodeToString(e.getPayloadRaw()));
+        }
+        writer.write(',');
+        writeCsvField(writer, e.getClassification());
+        writer.write(',');
+        writer.write(AuditCursor.after(e.getReceivedAt(), e.getId()).encode());
+        writer.write('\n');
+    }
+
+    // RFC 4180: quote fields with separators, quotes or line breaks; double embedded quotes
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+
+    private static void unchecked(IoAction action) {
+        try {
+            action.run();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -22,11 +22,19 @@ public class RawEvent {
     @Column(name = "received_at", nullable = false, updatable = false)
     private Instant receivedAt;
 
-    // original raw payload stored verbatim as text (JSON string)
+    // original raw payload stored verbatim as text (JSON string); null for binary encodings
     @Lob
-    @Column(name = "payload", columnDefinition = "text", nullable = false)
+    @Column(name = "payload", columnDefinition = "text")
     private String payload;
 
+    // original bytes of binary-encoded (CBOR/Smile) messages
+    @Column(name = "payload_raw", columnDefinition = "bytea")
+    private byte[] payloadRaw;
+
+    // wire encoding of the payload: json, cbor or smile
+    @Column(name = "encoding", nullable = false)
+    private String encoding = "json";
+
     // classification/normalized metadata stored as JSONB (mapped as String)
     @Column(name = "classification", columnDefinition = "jsonb")
     private String classification;
@@ -38,8 +46,41 @@ public class RawEvent {
         this.payload = payload;
     }
 
+    public RawEvent(byte[] payloadRaw, String encoding) {
+        this.payloadRaw = payloadRaw;
+        this.encoding = encoding;
+    }
+
+    /**
+     * An event as read back from the table by queries that bypass JPA.
+     */
+    static RawEvent stored(UUID id, Instant receivedAt, String payload, byte[] payloadRaw, String encoding, String classification) {
+        RawEvent e = new RawEvent(payload);
+        e.id = id;
+        e.receivedAt = receivedAt;
+        e.payloadRaw = payloadRaw;
+        e.encoding = encoding;
+        e.classification = classification;
+        return e;
+    }
+
+    /**
+     * A new event with the same original payload, for storing a message a second way.
+     */
+    public RawEvent copyPayload() {
+        RawEvent copy = new RawEvent(payload);
+        copy.payloadRaw = payloadRaw;
+        copy.encoding = encoding;
+        return copy;
+    }
+
     @PrePersist
     void onCreate() {
+        ensureIdentity();
+    }
+
+    // assigns id and receivedAt for writers that bypass JPA (e.g. COPY)
+    public void ensureIdentity() {
         if (this.id == null) this.id = UUID.randomUUID();
         if (this.receivedAt == null) this.receivedAt = Instant.now();
     }
@@ -47,6 +88,8 @@ public class RawEvent {
     public UUID getId() { return id; }
     public Instant getReceivedAt() { return receivedAt; }
     public String getPayload() { return payload; }
+    public byte[] getPayloadRaw() { return payloadRaw; }
+    public String getEncoding() { return encoding; }
     public String getClassification() { return classification; }
 
     public void setPayload(String payload) { this.payload = payload; }
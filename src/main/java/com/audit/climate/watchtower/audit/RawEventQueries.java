@@ -0,0 +1,181 @@
+package com.audit.climate.watchtower.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * RawEventQueries reads the raw event ledger with keyset pagination on (received_at, id).
+ *
+ * Each page is one index range scan from the cursor, whatever its depth, and the time range
+ * filters let Timescale exclude chunks up front. Module and channel filters match the
+ * classification jsonb with containment, which the GIN index serves. Totals are never
+ * counted exactly; estimate() asks the planner (or the table statistics) instead.
+ *
+ * stream() walks the same order with a server-side cursor for exports, holding at most
+ * one fetch of rows in memory.
+ */
+@Component
+public class RawEventQueries {
+    private static final String COLUMNS = "id, received_at, payload, payload_raw, encoding, classification";
+
+    private static final RowMapper<RawEvent> ROW = (rs, i) -> RawEvent.stored(
+            rs.getObject(1, UUID.class),
+            rs.getTimestamp(2).toInstant(),
+            rs.getString(3),
+            rs.getBytes(4),
+            rs.getString(5),
+            rs.getString(6));
+
+    private final JdbcTemplate jdbc;
+    private final ObjectMapper mapper;
+    private final TransactionTemplate readOnly;
+
+    public RawEventQueries(JdbcTemplate jdbc, ObjectMapper mapper, PlatformTransactionManager transactionManager) {
+        this.jdbc = jdbc;
+        this.mapper = mapper;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Filters for a ledger query; null fields are not applied. from is inclusive, to exclusive.
+     */
+    public static final class Filter {
+        private final Instant from;
+        private final Instant to;
+        private final String module;
+        private final String channel;
+
+        public Filter(Instant from, Instant to, String module, String channel) {
+            this.from = from;
+            this.to = to;
+            this.module = module;
+            this.channel = channel;
+        }
+
+        boolean isEmpty() {
+            return from == null && to == null && module == null && channel == null;
+        }
+    }
+
+    /**
+     * Up to limit + 1 rows in the requested order starting at the cursor (exclusive), so the
+     * caller can tell whether there is another page. Rows read backwards for a "before"
+     * cursor are returned in the requested order too.
+     */
+    public List<RawEvent> page(Filter filter, AuditCursor cursor, boolean ascending, int limit) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM raw_events WHERE true");
+        appendFilter(filter, sql, args);
+
+        // reading towards the previous page walks the index the other way
+        boolean forward = cursor == null || !cursor.isBefore();
+        boolean scanAscending = ascending == forward;
+        if (cursor != null) {
+            sql.append(scanAscending ? " AND (received_at, id) > (?, ?)" : " AND (received_at, id) < (?, ?)");
+            args.add(Timestamp.from(cursor.getReceivedAt()));
+            args.add(cursor.getId());
+        }
+        String dir = scanAscending ? "ASC" : "DESC";
+        sql.append(" ORDER BY received_at ").append(dir).append(", id ").append(dir).append(" LIMIT ?");
+        args.add(limit + 1);
+
+        List<RawEvent> rows = new ArrayList<>(jdbc.query(sql.toString(), ROW, args.toArray()));
+        if (!forward) {
+            Collections.reverse(rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Hand every matching row after the cursor, oldest first, to the consumer. The driver only
+     * uses a server-side cursor inside a transaction, hence the read-only one around the query.
+     * An exception thrown by the consumer (e.g. the client went away) ends the scan.
+     */
+    public void stream(Filter filter, AuditCursor after, int fetchSize, Consumer<RawEvent> consumer) {
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT ").append(COLUMNS).append(" FROM raw_events WHERE true");
+        appendFilter(filter, sql, args);
+        if (after != null) {
+            sql.append(" AND (received_at, id) > (?, ?)");
+            args.add(Timestamp.from(after.getReceivedAt()));
+            args.add(after.getId());
+        }
+        sql.append(" ORDER BY received_at ASC, id ASC");
+
+        readOnly.executeWithoutResult(status -> jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            for (int i = 0; i < args.size(); i++) {
+                ps.setObject(i + 1, args.get(i));
+            }
+            return ps;
+        }, (RowCallbackHandler) rs -> consumer.accept(ROW.mapRow(rs, 0))));
+    }
+
+    /**
+     * Estimated number of rows matching the filter, from the planner or, without filters,
+     * from the table statistics. Cheap, but only as fresh as the last ANALYZE.
+     */
+    public long estimate(Filter filter) {
+        if (filter.isEmpty()) {
+            Long n;
+            try {
+                n = jdbc.queryForObject("SELECT approximate_row_count('raw_events')", Long.class);
+            } catch (Exception ex) {
+                // plain Postgres
+                n = jdbc.queryForObject(
+                        "SELECT greatest(reltuples, 0)::bigint FROM pg_class WHERE oid = 'raw_events'::regclass", Long.class);
+            }
+            return n == null ? 0 : n;
+        }
+        List<Object> args = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("EXPLAIN (FORMAT JSON) SELECT 1 FROM raw_events WHERE true");
+        appendFilter(filter, sql, args);
+        String plan = jdbc.queryForObject(sql.toString(), String.class, args.toArray());
+        try {
+            return mapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Unreadable query plan", ex);
+        }
+    }
+
+    private void appendFilter(Filter filter, StringBuilder sql, List<Object> args) {
+        if (filter.from != null) {
+            sql.append(" AND received_at >= ?");
+            args.add(Timestamp.from(filter.from));
+        }
+        if (filter.to != null) {
+            sql.append(" AND received_at < ?");
+            args.add(Timestamp.from(filter.to));
+        }
+        if (filter.module != null || filter.channel != null) {
+            ObjectNode match = mapper.createObjectNode();
+            if (filter.module != null) {
+                match.put("module", filter.module);
+            }
+            if (filter.channel != null) {
+                match.put("channel", filter.channel);
+            }
+            sql.append(" AND classification @> ?::jsonb");
+            args.add(match.toString());
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package com.audit.climate.watchtower.canonical;
 
 import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
@@ -13,31 +20,151 @@ import java.util.Map;
 /**
  * Canonicalizer converts raw JSON messages into CanonicalEvent.
  * Single deterministic transformation - no optional behavior.
+ *
+ * Works in one streaming pass over the message bytes: envelope and metric fields are
+ * read straight off the token stream and everything else is skipped without being
+ * materialized. Which fields are read, and under which aliases, comes from the
+ * MetricSchemaRegistry; with the built-in schema the output matches the former
+ * tree-based implementation, except that `ts` now stands in for a missing `timestamp`.
  */
 @Component
 public class Canonicalizer {
     private final ObjectMapper mapper;
+    private final MetricSchemaRegistry schemas;
+    // with the default number handling scalars can be taken from the parser directly;
+    // otherwise defer to the mapper so coercion features still apply
+    private final boolean plainNumbers;
 
     public Canonicalizer(ObjectMapper mapper) {
+        this(mapper, MetricSchemaRegistry.builtIn());
+    }
+
+    @Autowired
+    public Canonicalizer(ObjectMapper mapper, MetricSchemaRegistry schemas) {
         this.mapper = mapper;
+        this.schemas = schemas;
+        this.plainNumbers = !mapper.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS)
+                && !mapper.isEnabled(DeserializationFeature.USE_BIG_INTEGER_FOR_INTS)
+                && !mapper.isEnabled(DeserializationFeature.USE_LONG_FOR_INTS);
     }
 
     /**
      * Canonicalize a raw JSON payload into a CanonicalEvent.
+     */
+    public CanonicalEvent canonicalize(String rawJson, Message amqpMessage) throws Exception {
+        try (JsonParser p = mapper.getFactory().createParser(rawJson)) {
+            return read(p, amqpMessage);
+        }
+    }
+
+    /**
+     * Canonicalize a raw message body into a CanonicalEvent.
      * Extracts channel from AMQP message, event type from payload or defaults to "weather",
      * timestamp from payload or defaults to now, and payload fields.
+     * CBOR and Smile bodies (by content_type) go through the same token stream as JSON.
      */
-    public CanonicalEvent canonicalize(String rawJson, Message amqpMessage) throws Exception {
-        JsonNode node = mapper.readTree(rawJson);
+    public CanonicalEvent canonicalize(byte[] body, Message amqpMessage) throws IOException {
+        PayloadEncoding encoding = PayloadEncoding.of(amqpMessage);
+        if (encoding.isBinary()) {
+            try (JsonParser p = encoding.createParser(mapper, body)) {
+                return read(p, amqpMessage);
+            }
+        }
+        if (needsTextPath(body)) {
+            return canonicalizeText(body, amqpMessage);
+        }
+        try (JsonParser p = mapper.getFactory().createParser(body)) {
+            return read(p, amqpMessage);
+        } catch (JsonProcessingException ex) {
+            // the body used to be decoded leniently (malformed UTF-8 becomes U+FFFD) before parsing;
+            // retry that way so such payloads are treated as before
+            return canonicalizeText(body, amqpMessage);
+        }
+    }
+
+    private CanonicalEvent canonicalizeText(byte[] body, Message amqpMessage) throws IOException {
+        String text = new String(body, StandardCharsets.UTF_8);
+        // a UTF-8 BOM decodes to U+FEFF, which the text parser would reject as content
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        try (JsonParser p = mapper.getFactory().createParser(text)) {
+            return read(p, amqpMessage);
+        }
+    }
+
+    // Jackson sniffs BOMs and UTF-16/32 from raw bytes, which the text decoding never did
+    private static boolean needsTextPath(byte[] body) {
+        if (body.length == 0) {
+            return false;
+        }
+        int first = body[0] & 0xFF;
+        if (first == 0xEF || first == 0xFE || first == 0xFF) {
+            return true;
+        }
+        for (int i = 0; i < Math.min(4, body.length); i++) {
+            if (body[i] == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-        // Extract event type (default: "weather")
-        String eventType = node.has("type") ? node.get("type").asText() : "weather";
+    private CanonicalEvent read(JsonParser p, Message amqpMessage) throws IOException {
+        CompiledSchemas table = schemas.current();
+        String eventType = "weather";
+        Object[] captured = null;
+        boolean[] seen = null;
+
+        JsonToken root = p.nextToken();
+        if (root == JsonToken.START_OBJECT) {
+            captured = new Object[table.slotCount()];
+            seen = new boolean[captured.length];
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken token = p.nextToken();
+                if ("type".equals(field)) {
+                    eventType = asText(p, token);
+                    continue;
+                }
+                int slot = table.slotOf(field);
+                if (slot < 0) {
+                    p.skipChildren();
+                } else {
+                    // the type may come last, so keep every candidate until the object is done
+                    captured[slot] = table.isText(slot) ? asText(p, token) : readValue(p, token);
+                    seen[slot] = true;
+                }
+            }
+        } else if (root != null) {
+            // arrays and scalars carry no fields; still validate the whole value
+            p.skipChildren();
+        }
+
+        String timestampText = null;
+        Map<String, Object> payload = new HashMap<>();
+        if (captured != null) {
+            CompiledSchemas.Layout layout = table.layoutFor(eventType);
+            for (int i = 0; i < layout.names.length; i++) {
+                for (int slot : layout.sources[i]) {
+                    if (!seen[slot]) {
+                        continue;
+                    }
+                    if (layout.roles[i] == CompiledSchemas.Role.TIMESTAMP) {
+                        timestampText = (String) captured[slot];
+                    } else {
+                        payload.put(layout.names[i], captured[slot]);
+                    }
+                    break;
+                }
+            }
+        }
 
         // Extract timestamp (default: now)
         Instant timestamp;
-        if (node.has("timestamp")) {
+        if (timestampText != null) {
             try {
-                timestamp = Instant.parse(node.get("timestamp").asText());
+                timestamp = Instant.parse(timestampText);
             } catch (Exception ex) {
                 timestamp = Instant.now();
             }
@@ -48,17 +175,13 @@ public class Canonicalizer {
         // Extract channel from AMQP message
         String channel = extractChannel(amqpMessage);
 
-        // Build payload map
-        Map<String, Object> payload = new HashMap<>();
-        if (node.has("module")) payload.put("module", mapper.treeToValue(node.get("module"), Object.class));
-        if (node.has("temperature")) payload.put("temperature", mapper.treeToValue(node.get("temperature"), Object.class));
-        if (node.has("humidity")) payload.put("humidity", mapper.treeToValue(node.get("humidity"), Object.class));
-        if (node.has("pressure")) payload.put("pressure", mapper.treeToValue(node.get("pressure"), Object.class));
-
         return new CanonicalEvent(channel, eventType, timestamp, payload);
     }
 
-    private String extractChannel(Message amqpMessage) {
+    /**
+     * Channel an AMQP message arrived on: routing key, then consumer queue, else "unknown".
+     */
+    public String extractChannel(Message amqpMessage) {
         if (amqpMessage.getMessageProperties() != null) {
             String channel = amqpMessage.getMessageProperties().getReceivedRoutingKey();
             if (channel != null) return channel;
@@ -67,5 +190,44 @@ public class Canonicalizer {
         }
         return "unknown";
     }
-}
 
+    // same text JsonNode.asText() would give for the value at the current token
+    private String asText(JsonParser p, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return p.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return plainNumbers ? String.valueOf(p.getNumberValue()) : mapper.<JsonNode>readTree(p).asText();
+            case VALUE_TRUE:
+                return "true";
+            case VALUE_FALSE:
+                return "false";
+            case VALUE_NULL:
+                return "null";
+            default:
+                // objects and arrays
+                p.skipChildren();
+                return "";
+        }
+    }
+
+    // same value ObjectMapper.treeToValue(node, Object.class) would give
+    private Object readValue(JsonParser p, JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return p.getText();
+            case VALUE_NUMBER_INT:
+            case VALUE_NUMBER_FLOAT:
+                return plainNumbers ? p.getNumberValue() : mapper.readValue(p, Object.class);
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return mapper.readValue(p, Object.class);
+        }
+    }
+}
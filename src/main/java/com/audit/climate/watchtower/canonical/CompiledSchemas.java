@@ -0,0 +1,196 @@
+package com.audit.climate.watchtower.canonical;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CompiledSchemas is the immutable dispatch table built from all metric schema rows.
+ *
+ * Every raw field name any schema mentions (names and aliases) gets one slot. While
+ * streaming a message the Canonicalizer does a single lookup per field to find its slot,
+ * whatever the number of registered types; once the event type is known, the type's
+ * layout picks the first present source for each declared field.
+ * Units are descriptive only and are not part of the table.
+ */
+public final class CompiledSchemas {
+    public static final String ANY_TYPE = "*";
+
+    public enum Role { MODULE, TIMESTAMP, METRIC }
+
+    private final Map<String, Integer> slots;
+    private final boolean[] textSlots;
+    private final Map<String, Layout> layouts;
+    private final Layout fallback;
+    private final int fieldCount;
+
+    private CompiledSchemas(Map<String, Integer> slots, boolean[] textSlots, Map<String, Layout> layouts,
+                            Layout fallback, int fieldCount) {
+        this.slots = slots;
+        this.textSlots = textSlots;
+        this.layouts = layouts;
+        this.fallback = fallback;
+        this.fieldCount = fieldCount;
+    }
+
+    /** Schema the Canonicalizer has always applied: module, timestamp (or ts) and the three weather metrics. */
+    public static List<MetricSchemaEntry> defaults() {
+        return List.of(
+                new MetricSchemaEntry(ANY_TYPE, "module", "MODULE", null, null),
+                new MetricSchemaEntry(ANY_TYPE, "timestamp", "TIMESTAMP", null, "ts"),
+                new MetricSchemaEntry(ANY_TYPE, "temperature", "METRIC", "C", null),
+                new MetricSchemaEntry(ANY_TYPE, "humidity", "METRIC", "%", null),
+                new MetricSchemaEntry(ANY_TYPE, "pressure", "METRIC", "hPa", null));
+    }
+
+    /**
+     * Compile schema rows into a dispatch table.
+     * @throws IllegalArgumentException when the rows are inconsistent
+     */
+    public static CompiledSchemas compile(Collection<MetricSchemaEntry> entries) {
+        Map<String, Map<String, Field>> byType = new LinkedHashMap<>();
+        for (MetricSchemaEntry e : entries) {
+            Field field = Field.of(e);
+            if (byType.computeIfAbsent(field.eventType, t -> new LinkedHashMap<>()).put(field.name, field) != null) {
+                throw new IllegalArgumentException("Duplicate field " + field.name + " for type " + field.eventType);
+            }
+        }
+
+        // one slot per raw name; a raw name must be read the same way in every type
+        Map<String, Integer> slots = new HashMap<>();
+        Map<String, Role> slotRoles = new HashMap<>();
+        for (Map<String, Field> fields : byType.values()) {
+            for (Field field : fields.values()) {
+                for (String source : field.sources) {
+                    if ("type".equals(source)) {
+                        throw new IllegalArgumentException("'type' selects the schema and cannot be extracted");
+                    }
+                    Role previous = slotRoles.putIfAbsent(source, field.role);
+                    if (previous != null && (previous == Role.TIMESTAMP) != (field.role == Role.TIMESTAMP)) {
+                        throw new IllegalArgumentException("Field " + source + " is a timestamp in one schema and a value in another");
+                    }
+                    slots.putIfAbsent(source, slots.size());
+                }
+            }
+        }
+        boolean[] textSlots = new boolean[slots.size()];
+        slotRoles.forEach((name, role) -> textSlots[slots.get(name)] = role == Role.TIMESTAMP);
+
+        Map<String, Field> common = byType.getOrDefault(ANY_TYPE, Map.of());
+        Map<String, Layout> layouts = new HashMap<>();
+        for (Map.Entry<String, Map<String, Field>> type : byType.entrySet()) {
+            if (ANY_TYPE.equals(type.getKey())) {
+                continue;
+            }
+            Map<String, Field> merged = new LinkedHashMap<>(common);
+            merged.putAll(type.getValue());
+            layouts.put(type.getKey(), Layout.of(merged.values(), slots));
+        }
+        int fieldCount = byType.values().stream().mapToInt(Map::size).sum();
+        return new CompiledSchemas(Map.copyOf(slots), textSlots, Map.copyOf(layouts),
+                Layout.of(common.values(), slots), fieldCount);
+    }
+
+    /** Slot for a raw field name, or -1 if no schema reads it. */
+    public int slotOf(String rawName) {
+        Integer slot = slots.get(rawName);
+        return slot != null ? slot : -1;
+    }
+
+    public int slotCount() {
+        return textSlots.length;
+    }
+
+    /** Whether the slot is read as text (timestamps) rather than as a value. */
+    public boolean isText(int slot) {
+        return textSlots[slot];
+    }
+
+    /** Layout for the event type: its own fields on top of "*". */
+    public Layout layoutFor(String eventType) {
+        Layout layout = layouts.get(eventType);
+        return layout != null ? layout : fallback;
+    }
+
+    public int typeCount() {
+        return layouts.size();
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /** Declared fields of one event type, each with its source slots in priority order. */
+    public static final class Layout {
+        final String[] names;
+        final Role[] roles;
+        final int[][] sources;
+
+        private Layout(String[] names, Role[] roles, int[][] sources) {
+            this.names = names;
+            this.roles = roles;
+            this.sources = sources;
+        }
+
+        static Layout of(Collection<Field> fields, Map<String, Integer> slots) {
+            int n = fields.size();
+            String[] names = new String[n];
+            Role[] roles = new Role[n];
+            int[][] sources = new int[n][];
+            int i = 0;
+            for (Field f : fields) {
+                names[i] = f.name;
+                roles[i] = f.role;
+                sources[i] = f.sources.stream().mapToInt(slots::get).toArray();
+                i++;
+            }
+            return new Layout(names, roles, sources);
+        }
+    }
+
+    private static final class Field {
+        final String eventType;
+        final String name;
+        final Role role;
+        final List<String> sources;
+
+        private Field(String eventType, String name, Role role, List<String> sources) {
+            this.eventType = eventType;
+            this.name = name;
+            this.role = role;
+            this.sources = sources;
+        }
+
+        static Field of(MetricSchemaEntry e) {
+            if (e.getEventType() == null || e.getEventType().isBlank() || e.getField() == null || e.getField().isBlank()) {
+                throw new IllegalArgumentException("Schema rows need an event type and a field");
+            }
+            Role role;
+            try {
+                role = Role.valueOf(e.getRole());
+            } catch (RuntimeException ex) {
+                throw new IllegalArgumentException("Unknown role " + e.getRole() + " for field " + e.getField());
+            }
+            // detection and storage know the module and the timestamp by these names; other spellings are aliases
+            if (role == Role.MODULE && !"module".equals(e.getField())
+                    || role == Role.TIMESTAMP && !"timestamp".equals(e.getField())) {
+                throw new IllegalArgumentException("A " + role + " field must be named "
+                        + (role == Role.MODULE ? "module" : "timestamp") + "; declare '" + e.getField() + "' as an alias instead");
+            }
+            List<String> sources = new ArrayList<>();
+            sources.add(e.getField());
+            if (e.getAliases() != null) {
+                for (String alias : e.getAliases().split(",")) {
+                    String a = alias.trim();
+                    if (!a.isEmpty() && !sources.contains(a)) {
+                        sources.add(a);
+                    }
+                }
+            }
+            return new Field(e.getEventType(), e.getField(), role, List.copyOf(sources));
+        }
+    }
+}
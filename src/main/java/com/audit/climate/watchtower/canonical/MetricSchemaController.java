@@ -0,0 +1,114 @@
+package com.audit.climate.watchtower.canonical;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/schemas")
+public class MetricSchemaController {
+    private final MetricSchemaRepository repository;
+    private final MetricSchemaRegistry registry;
+
+    public MetricSchemaController(MetricSchemaRepository repository, MetricSchemaRegistry registry) {
+        this.repository = repository;
+        this.registry = registry;
+    }
+
+    // List all schema fields
+    @GetMapping
+    public List<SchemaFieldDto> list() {
+        return repository.findAll().stream().map(SchemaFieldDto::fromEntity).collect(Collectors.toList());
+    }
+
+    // Create or update a field; the registry is recompiled and rejects inconsistent schemas
+    @PostMapping
+    @Transactional
+    public ResponseEntity<?> upsert(@RequestBody SchemaFieldDto req) {
+        if (req.getEventType() == null || req.getField() == null || req.getRole() == null) {
+            return ResponseEntity.badRequest().body("eventType, field and role are required");
+        }
+        String aliases = req.getAliases() == null || req.getAliases().isEmpty() ? null : String.join(",", req.getAliases());
+
+        // validate against the rest of the schema before touching anything
+        List<MetricSchemaEntry> candidate = new ArrayList<>(repository.findAll());
+        candidate.removeIf(e -> e.getEventType().equals(req.getEventType()) && e.getField().equals(req.getField()));
+        candidate.add(new MetricSchemaEntry(req.getEventType(), req.getField(), req.getRole(), req.getUnit(), aliases));
+        try {
+            CompiledSchemas.compile(candidate);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+
+        MetricSchemaEntry entry = repository.findByEventTypeAndField(req.getEventType(), req.getField())
+                .orElseGet(() -> new MetricSchemaEntry(req.getEventType(), req.getField(), req.getRole(), req.getUnit(), aliases));
+        entry.setRole(req.getRole());
+        entry.setUnit(req.getUnit());
+        entry.setAliases(aliases);
+        entry.touch();
+        repository.save(entry);
+        repository.flush();
+        registry.reload();
+
+        URI location = URI.create(String.format("/api/schemas?eventType=%s&field=%s", req.getEventType(), req.getField()));
+        return ResponseEntity.created(location).build();
+    }
+
+    // Delete a field
+    @DeleteMapping
+    @Transactional
+    public ResponseEntity<?> delete(@RequestParam String eventType, @RequestParam String field) {
+        repository.findByEventTypeAndField(eventType, field).ifPresent(repository::delete);
+        repository.flush();
+        registry.reload();
+        return ResponseEntity.noContent().build();
+    }
+
+    // Pick up changes made directly in the table
+    @PostMapping("/reload")
+    public ResponseEntity<?> reload() {
+        try {
+            CompiledSchemas compiled = registry.reload();
+            return ResponseEntity.ok(Map.of("types", compiled.typeCount(), "fields", compiled.fieldCount()));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+    public static class SchemaFieldDto {
+        private String eventType;
+        private String field;
+        private String role;
+        private String unit;
+        private List<String> aliases;
+
+        public SchemaFieldDto() {}
+
+        public static SchemaFieldDto fromEntity(MetricSchemaEntry e) {
+            SchemaFieldDto d = new SchemaFieldDto();
+            d.eventType = e.getEventType();
+            d.field = e.getField();
+            d.role = e.getRole();
+            d.unit = e.getUnit();
+            d.aliases = e.getAliases() == null ? List.of() : List.of(e.getAliases().split(","));
+            return d;
+        }
+
+        public String getEventType() { return eventType; }
+        public void setEventType(String eventType) { this.eventType = eventType; }
+        public String getField() { return field; }
+        public void setField(String field) { this.field = field; }
+        public String getRole() { return role; }
+        public void setRole(String role) { this.role = role; }
+        public String getUnit() { return unit; }
+        public void setUnit(String unit) { this.unit = unit; }
+        public List<String> getAliases() { return aliases; }
+        public void setAliases(List<String> aliases) { this.aliases = aliases; }
+    }
+}
@@ -0,0 +1,98 @@
+package com.audit.climate.watchtower.canonical;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * One field the Canonicalizer extracts for an event type ("*" for all types).
+ * Aliases are stored comma separated and tried in order after the field name itself.
+ */
+@Entity
+@Table(name = "metric_schemas", uniqueConstraints = {@UniqueConstraint(columnNames = {"event_type", "field"})})
+public class MetricSchemaEntry {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "event_type", nullable = false)
+    private String eventType;
+
+    @Column(name = "field", nullable = false)
+    private String field;
+
+    @Column(name = "role", nullable = false)
+    private String role;
+
+    @Column(name = "unit")
+    private String unit;
+
+    @Column(name = "aliases")
+    private String aliases;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public MetricSchemaEntry() {
+        this.id = UUID.randomUUID();
+        this.updatedAt = Instant.now();
+    }
+
+    public MetricSchemaEntry(String eventType, String field, String role, String unit, String aliases) {
+        this();
+        this.eventType = eventType;
+        this.field = field;
+        this.role = role;
+        this.unit = unit;
+        this.aliases = aliases;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getEventType() {
+        return eventType;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public void setRole(String role) {
+        this.role = role;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public void setUnit(String unit) {
+        this.unit = unit;
+    }
+
+    public String getAliases() {
+        return aliases;
+    }
+
+    public void setAliases(String aliases) {
+        this.aliases = aliases;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void touch() {
+        this.updatedAt = Instant.now();
+    }
+}
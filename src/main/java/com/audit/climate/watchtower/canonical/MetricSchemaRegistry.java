@@ -0,0 +1,65 @@
+package com.audit.climate.watchtower.canonical;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * MetricSchemaRegistry holds the compiled metric schemas used by the Canonicalizer.
+ * Schemas are read from the metric_schemas table at startup and on reload(); the swap
+ * is a single volatile write, so messages in flight finish with the table they started with.
+ * If the table is empty or unreadable the built-in defaults apply.
+ */
+@Component
+public class MetricSchemaRegistry {
+    private static final Logger log = LoggerFactory.getLogger(MetricSchemaRegistry.class);
+
+    private final MetricSchemaRepository repository;
+    private volatile CompiledSchemas current = CompiledSchemas.compile(CompiledSchemas.defaults());
+
+    public MetricSchemaRegistry(MetricSchemaRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Registry with only the built-in schema, for use outside the Spring context.
+     */
+    public static MetricSchemaRegistry builtIn() {
+        return new MetricSchemaRegistry(null);
+    }
+
+    public CompiledSchemas current() {
+        return current;
+    }
+
+    @PostConstruct
+    public void loadFromDb() {
+        try {
+            reload();
+        } catch (Exception ex) {
+            log.error("Failed to load metric schemas from DB, using built-in defaults", ex);
+        }
+    }
+
+    /**
+     * Recompile from the database. The previous table stays active if the rows do not compile.
+     * @throws IllegalArgumentException when the stored rows are inconsistent
+     */
+    public CompiledSchemas reload() {
+        if (repository == null) {
+            return current;
+        }
+        List<MetricSchemaEntry> entries = repository.findAll();
+        if (entries.isEmpty()) {
+            log.warn("No metric schemas in DB, using built-in defaults");
+            entries = CompiledSchemas.defaults();
+        }
+        CompiledSchemas compiled = CompiledSchemas.compile(entries);
+        current = compiled;
+        log.info("Loaded {} metric schema fields for {} event types", compiled.fieldCount(), compiled.typeCount());
+        return compiled;
+    }
+}
@@ -0,0 +1,12 @@
+package com.audit.climate.watchtower.canonical;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface MetricSchemaRepository extends JpaRepository<MetricSchemaEntry, UUID> {
+    Optional<MetricSchemaEntry> findByEventTypeAndField(String eventType, String field);
+}
@@ -0,0 +1,88 @@
+package com.audit.climate.watchtower.canonical;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.amqp.core.Message;
+
+import java.io.IOException;
+
+/**
+ * Wire encodings accepted on the ingest queues, selected by the AMQP content_type.
+ * Anything that is not a known binary type is treated as JSON, as before.
+ * The tag is what the ledger stores in raw_events.encoding.
+ */
+public enum PayloadEncoding {
+    JSON("json", "application/json", null),
+    CBOR("cbor", "application/cbor", new CBORFactory()),
+    SMILE("smile", "application/x-jackson-smile", new SmileFactory());
+
+    private final String tag;
+    private final String contentType;
+    private final JsonFactory factory;
+
+    PayloadEncoding(String tag, String contentType, JsonFactory factory) {
+        this.tag = tag;
+        this.contentType = contentType;
+        this.factory = factory;
+    }
+
+    public String tag() {
+        return tag;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public boolean isBinary() {
+        return factory != null;
+    }
+
+    /**
+     * Mapper writing this encoding, e.g. for producers and tests.
+     */
+    public ObjectMapper newMapper() {
+        return factory != null ? new ObjectMapper(factory.copy()) : new ObjectMapper();
+    }
+
+    /**
+     * Parser over a body in this encoding; JSON uses the mapper's own factory.
+     */
+    public JsonParser createParser(ObjectMapper mapper, byte[] body) throws IOException {
+        return factory != null ? factory.createParser(body) : mapper.getFactory().createParser(body);
+    }
+
+    public static PayloadEncoding of(Message message) {
+        return message.getMessageProperties() != null
+                ? fromContentType(message.getMessageProperties().getContentType())
+                : JSON;
+    }
+
+    public static PayloadEncoding fromContentType(String contentType) {
+        if (contentType == null) {
+            return JSON;
+        }
+        // ignore parameters such as "; charset=..."
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim();
+        if (type.equalsIgnoreCase("application/cbor")) {
+            return CBOR;
+        }
+        if (type.equalsIgnoreCase("application/x-jackson-smile") || type.equalsIgnoreCase("application/smile")) {
+            return SMILE;
+        }
+        return JSON;
+    }
+
+    public static PayloadEncoding fromTag(String tag) {
+        for (PayloadEncoding e : values()) {
+            if (e.tag.equals(tag)) {
+                return e;
+            }
+        }
+        return JSON;
+    }
+}
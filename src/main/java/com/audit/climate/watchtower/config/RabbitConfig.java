@@ -1,11 +1,14 @@
 package com.audit.climate.watchtower.config;
 
+import org.springframework.amqp.core.AnonymousQueue;
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.FanoutExchange;
 import org.springframework.amqp.core.Queue;
 import org.springframework.amqp.rabbit.core.RabbitAdmin;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -17,6 +20,12 @@ public class RabbitConfig {
     public static final String ALERTS_QUEUE = "alerts.queue";
     public static final String DEFAULT_EXCHANGE = ""; // default exchange
     public static final String ALERTS_EXCHANGE = "alerts.exchange";
+    public static final String ALERTS_ROUTING_KEY = "alerts.routing";
+    // coalesced alerts (see IncidentCoalescer) go to their own queue on the alerts exchange
+    public static final String INCIDENTS_QUEUE = "incidents.queue";
+    public static final String INCIDENTS_ROUTING_KEY = "incidents.routing";
+    // threshold changes are broadcast to every instance, each with its own auto-deleted queue
+    public static final String THRESHOLDS_EXCHANGE = "thresholds.fanout";
 
     @Bean
     public Queue testQueue() {
@@ -35,7 +44,36 @@ public class RabbitConfig {
 
     @Bean
     public Binding alertsBinding(Queue alertsQueue, DirectExchange alertsExchange) {
-        return BindingBuilder.bind(alertsQueue).to(alertsExchange).with("alerts.routing");
+        return BindingBuilder.bind(alertsQueue).to(alertsExchange).with(ALERTS_ROUTING_KEY);
+    }
+
+    @Bean
+    public Queue incidentsQueue() {
+        return new Queue(INCIDENTS_QUEUE, true);
+    }
+
+    @Bean
+    public Binding incidentsBinding(Queue incidentsQueue, DirectExchange alertsExchange) {
+        return BindingBuilder.bind(incidentsQueue).to(alertsExchange).with(INCIDENTS_ROUTING_KEY);
+    }
+
+    // threshold sync only; without it no instance publishes or listens for changes
+    @Bean
+    @ConditionalOnProperty(name = "audit.thresholds.sync.enabled", havingValue = "true", matchIfMissing = true)
+    public FanoutExchange thresholdsExchange() {
+        return new FanoutExchange(THRESHOLDS_EXCHANGE);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "audit.thresholds.sync.enabled", havingValue = "true", matchIfMissing = true)
+    public Queue thresholdDeltasQueue() {
+        return new AnonymousQueue();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "audit.thresholds.sync.enabled", havingValue = "true", matchIfMissing = true)
+    public Binding thresholdDeltasBinding(Queue thresholdDeltasQueue, FanoutExchange thresholdsExchange) {
+        return BindingBuilder.bind(thresholdDeltasQueue).to(thresholdsExchange);
     }
 
     // ensure queues/exchanges are declared on broker
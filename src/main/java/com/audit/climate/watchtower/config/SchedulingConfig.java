@@ -0,0 +1,12 @@
+package com.audit.climate.watchtower.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables @Scheduled housekeeping jobs (e.g. purging expired ingest fingerprints).
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,489 @@
+package com.audit.climate.watchtower.detection;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AlertStateTracker turns threshold violations into state transitions per (module, metric).
+ *
+ * A series opens on its first out-of-range reading and then stays active without further
+ * alerts, except for an escalation when it turns critical and an "ongoing" summary every
+ * summary-interval-ms. It clears only once a reading is back inside the range by the
+ * hysteresis band, and resolves on the first in-range reading after staying clear for
+ * cooldown-ms; a breach before that continues the series silently, so a flapping sensor
+ * produces one open and one resolve. All times are event times, so a backlog replayed
+ * after an outage produces the same transitions as the live stream did.
+ *
+ * Detection runs before its batch is committed, so it works on a Staged view: changes are
+ * kept aside and applied by Staged.commit() once the batch is stored. A batch that is
+ * rolled back and redelivered therefore finds the series as they were and reports the same
+ * transitions again. Batches detected concurrently do not see each other's staged changes.
+ *
+ * State lives in fixed-size open-addressing tables keyed by the packed module and metric ids,
+ * split into segments with their own lock, so memory is bounded by max-series no matter how
+ * many modules report. When a segment is full new series are not tracked and each of their
+ * violations is reported as before. Series without a reading for stale-after-ms, measured
+ * against the latest event time seen, are dropped by dropStale() and reported as expired.
+ */
+@Component
+public class AlertStateTracker implements MeterBinder {
+    private static final int SEGMENTS = 16;
+
+    private final boolean enabled;
+    private final double hysteresis;
+    private final long cooldownMs;
+    private final long summaryIntervalMs;
+    private final long staleAfterMs;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final AtomicLong suppressed = new AtomicLong();
+    private final AtomicLong untracked = new AtomicLong();
+    // latest committed event time, never ahead of the wall clock; staleness is measured against it
+    private final AtomicLong watermark = new AtomicLong(Long.MIN_VALUE);
+
+    public AlertStateTracker(@Value("${audit.alerts.suppression.enabled:true}") boolean enabled,
+                             @Value("${audit.alerts.suppression.hysteresis:0.05}") double hysteresis,
+                             @Value("${audit.alerts.suppression.cooldown-ms:300000}") long cooldownMs,
+                             @Value("${audit.alerts.suppression.summary-interval-ms:900000}") long summaryIntervalMs,
+                             @Value("${audit.alerts.suppression.stale-after-ms:3600000}") long staleAfterMs,
+                             @Value("${audit.alerts.suppression.max-series:65536}") int maxSeries) {
+        if (hysteresis < 0 || hysteresis >= 0.5) {
+            throw new IllegalArgumentException("audit.alerts.suppression.hysteresis must be in [0, 0.5)");
+        }
+        this.enabled = enabled;
+        this.hysteresis = hysteresis;
+        this.cooldownMs = cooldownMs;
+        this.summaryIntervalMs = summaryIntervalMs;
+        this.staleAfterMs = staleAfterMs;
+        int perSegment = Math.max(16, (maxSeries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(perSegment);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Share of the range (or of the bound, if open-ended) a reading must be back inside to clear. */
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    /** A view for detecting one batch; nothing changes until it is committed. */
+    public Staged stage() {
+        return new Staged();
+    }
+
+    /**
+     * Record an out-of-range reading and apply the change at once.
+     * @return the transition to report, or null when the reading is suppressed
+     */
+    public Transition breach(int moduleId, int metricId, double value, double excess, boolean critical, long atMs) {
+        Staged staged = stage();
+        Transition t = staged.breach(moduleId, metricId, value, excess, critical, atMs);
+        staged.commit();
+        return t;
+    }
+
+    /**
+     * Record an in-range reading and apply the change at once; clear is whether it is inside the hysteresis band.
+     * @return RESOLVED once the series has stayed clear for the cooldown, otherwise null
+     */
+    public Transition recover(int moduleId, int metricId, boolean clear, long atMs) {
+        Staged staged = stage();
+        Transition t = staged.recover(moduleId, metricId, clear, atMs);
+        staged.commit();
+        return t;
+    }
+
+    /** Series currently tracked (active or clearing). */
+    public int tracked() {
+        int n = 0;
+        for (Segment s : segments) {
+            n += s.size;
+        }
+        return n;
+    }
+
+    /**
+     * Drop the series without a reading for stale-after-ms before the latest event time seen.
+     * @return the dropped series, each with an EXPIRED transition
+     */
+    public List<Expired> dropStale() {
+        long latest = watermark.get();
+        if (latest == Long.MIN_VALUE) {
+            return List.of();
+        }
+        List<Expired> expired = new ArrayList<>();
+        for (Segment s : segments) {
+            s.dropSeenBefore(latest - staleAfterMs, expired);
+        }
+        return expired;
+    }
+
+    private Segment segment(int moduleId) {
+        return segments[(moduleId * 0x9E3779B9 >>> 28) & (SEGMENTS - 1)];
+    }
+
+    private static long key(int moduleId, int metricId) {
+        return ((long) moduleId << 32) | (metricId & 0xFFFFFFFFL);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("watchtower.alerts.suppression.tracked", this, AlertStateTracker::tracked)
+                .description("Alert series currently open")
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.suppression.suppressed", suppressed, AtomicLong::get)
+                .description("Out-of-range readings that did not produce an alert")
+                .register(registry);
+        FunctionCounter.builder("watchtower.alerts.suppression.untracked", untracked, AtomicLong::get)
+                .description("Violations reported unsuppressed because the state table was full")
+                .register(registry);
+    }
+
+    /** A state change worth an alert, with the series' figures so far. */
+    public static final class Transition {
+        public final Alert.State state;
+        public final long openedAtMs;
+        public final int readings;
+        public final double peak;
+
+        Transition(Alert.State state, long openedAtMs, int readings, double peak) {
+            this.state = state;
+            this.openedAtMs = openedAtMs;
+            this.readings = readings;
+            this.peak = peak;
+        }
+    }
+
+    /** A series dropped for want of readings. */
+    public static final class Expired {
+        public final int moduleId;
+        public final int metricId;
+        public final long lastSeenMs;
+        public final Transition transition;
+
+        Expired(int moduleId, int metricId, long lastSeenMs, Transition transition) {
+            this.moduleId = moduleId;
+            this.metricId = metricId;
+            this.lastSeenMs = lastSeenMs;
+            this.transition = transition;
+        }
+    }
+
+    /**
+     * The changes one batch makes, on top of the committed state. Series are copied in on
+     * first use; commit() writes them back. Safe to share between the lanes of a batch, which
+     * touch disjoint modules.
+     */
+    public final class Staged {
+        private final Map<Long, Series> changes = new ConcurrentHashMap<>();
+        private final AtomicLong latest = new AtomicLong(Long.MIN_VALUE);
+        private final Queue<Runnable> onCommit = new ConcurrentLinkedQueue<>();
+
+        private Staged() {
+        }
+
+        /** Note an event taken at atMs (event time); series go stale relative to the latest one. */
+        public void observe(long atMs) {
+            latest.accumulateAndGet(atMs, Math::max);
+        }
+
+        /**
+         * Stage an out-of-range reading taken at atMs (event time).
+         * @return the transition to report, or null when the reading is suppressed
+         */
+        public Transition breach(int moduleId, int metricId, double value, double excess, boolean crit, long atMs) {
+            latest.accumulateAndGet(atMs, Math::max);
+            long key = key(moduleId, metricId);
+            Series s = lookup(key, moduleId);
+            if (s == null || s.removed) {
+                if (!segment(moduleId).hasRoom()) {
+                    untracked.incrementAndGet();
+                    return new Transition(Alert.State.OPENED, atMs, 1, value);
+                }
+                changes.put(key, Series.open(value, excess, crit, atMs));
+                return new Transition(Alert.State.OPENED, atMs, 1, value);
+            }
+            // a clearing series only resolves on an in-range reading, so any breach continues it
+            s.phase = Series.ACTIVE;
+            s.lastSeen = Math.max(s.lastSeen, atMs);
+            s.readings++;
+            if (excess > s.peakExcess) {
+                s.peakExcess = excess;
+                s.peak = value;
+            }
+            if (crit && !s.critical) {
+                s.critical = true;
+                s.lastReportAt = atMs;
+                return new Transition(Alert.State.ESCALATED, s.openedAt, s.readings, s.peak);
+            }
+            if (atMs - s.lastReportAt >= summaryIntervalMs) {
+                s.lastReportAt = atMs;
+                return new Transition(Alert.State.ONGOING, s.openedAt, s.readings, s.peak);
+            }
+            suppressed.incrementAndGet();
+            return null;
+        }
+
+        /**
+         * Stage an in-range reading taken at atMs (event time); clear is whether it is inside the hysteresis band.
+         * @return RESOLVED once the series has stayed clear for the cooldown, otherwise null
+         */
+        public Transition recover(int moduleId, int metricId, boolean clear, long atMs) {
+            latest.accumulateAndGet(atMs, Math::max);
+            Series s = lookup(key(moduleId, metricId), moduleId);
+            if (s == null || s.removed) {
+                return null;
+            }
+            s.lastSeen = Math.max(s.lastSeen, atMs);
+            if (s.phase == Series.ACTIVE) {
+                if (!clear) {
+                    return null;
+                }
+                s.phase = Series.CLEARING;
+                s.clearedAt = atMs;
+            }
+            if (atMs - s.clearedAt < cooldownMs) {
+                return null;
+            }
+            s.removed = true;
+            return new Transition(Alert.State.RESOLVED, s.openedAt, s.readings, s.peak);
+        }
+
+        /** Run action on commit, for detector state kept outside the tracker (e.g. rate history). */
+        public void onCommit(Runnable action) {
+            onCommit.add(action);
+        }
+
+        /** Apply the staged changes; call once the batch they came from is stored. */
+        public void commit() {
+            changes.forEach((key, series) -> segment((int) (key >>> 32)).store(key, series));
+            changes.clear();
+            for (Runnable action; (action = onCommit.poll()) != null; ) {
+                action.run();
+            }
+            long seen = latest.get();
+            if (seen != Long.MIN_VALUE) {
+                // an event stamped in the future must not expire everything else
+                watermark.accumulateAndGet(Math.min(seen, System.currentTimeMillis()), Math::max);
+            }
+        }
+
+        private Series lookup(long key, int moduleId) {
+            Series s = changes.get(key);
+            if (s == null) {
+                s = segment(moduleId).load(key);
+                if (s != null) {
+                    changes.put(key, s);
+                }
+            }
+            return s;
+        }
+    }
+
+    /** One series' state, copied out of a segment while a batch is staged. */
+    private static final class Series {
+        static final byte ACTIVE = 1;
+        static final byte CLEARING = 2;
+
+        byte phase;
+        boolean critical;
+        long openedAt;
+        long lastReportAt;
+        long clearedAt;
+        long lastSeen;
+        int readings;
+        double peak;
+        double peakExcess;
+        boolean removed;
+
+        static Series open(double value, double excess, boolean crit, long at) {
+            Series s = new Series();
+            s.phase = ACTIVE;
+            s.critical = crit;
+            s.openedAt = at;
+            s.lastReportAt = at;
+            s.lastSeen = at;
+            s.readings = 1;
+            s.peak = value;
+            s.peakExcess = excess;
+            return s;
+        }
+    }
+
+    /**
+     * One lock's worth of series: linear probing over parallel primitive arrays,
+     * with backward-shift deletion so no tombstones accumulate.
+     */
+    private final class Segment {
+        private final int limit;
+        private final int mask;
+        private final long[] keys;
+        private final boolean[] used;
+        private final byte[] phase;
+        private final boolean[] critical;
+        private final long[] openedAt;
+        private final long[] lastReportAt;
+        private final long[] clearedAt;
+        private final long[] lastSeen;
+        private final int[] readings;
+        private final double[] peak;
+        private final double[] peakExcess;
+        volatile int size;
+
+        Segment(int limit) {
+            this.limit = limit;
+            int capacity = Integer.highestOneBit(limit * 2 - 1) << 1;
+            this.mask = capacity - 1;
+            keys = new long[capacity];
+            used = new boolean[capacity];
+            phase = new byte[capacity];
+            critical = new boolean[capacity];
+            openedAt = new long[capacity];
+            lastReportAt = new long[capacity];
+            clearedAt = new long[capacity];
+            lastSeen = new long[capacity];
+            readings = new int[capacity];
+            peak = new double[capacity];
+            peakExcess = new double[capacity];
+        }
+
+        boolean hasRoom() {
+            return size < limit;
+        }
+
+        Series load(long key) {
+            // most in-range readings belong to no open series; skip the lock while the segment is empty
+            if (size == 0) {
+                return null;
+            }
+            synchronized (this) {
+                int i = find(key);
+                if (i < 0) {
+                    return null;
+                }
+                Series s = new Series();
+                s.phase = phase[i];
+                s.critical = critical[i];
+                s.openedAt = openedAt[i];
+                s.lastReportAt = lastReportAt[i];
+                s.clearedAt = clearedAt[i];
+                s.lastSeen = lastSeen[i];
+                s.readings = readings[i];
+                s.peak = peak[i];
+                s.peakExcess = peakExcess[i];
+                return s;
+            }
+        }
+
+        synchronized void store(long key, Series s) {
+            int i = find(key);
+            if (s.removed) {
+                if (i >= 0) {
+                    remove(i);
+                }
+                return;
+            }
+            if (i < 0) {
+                i = insert(key);
+                if (i < 0) {
+                    // filled up by another batch since this one was staged
+                    untracked.incrementAndGet();
+                    return;
+                }
+            }
+            phase[i] = s.phase;
+            critical[i] = s.critical;
+            openedAt[i] = s.openedAt;
+            lastReportAt[i] = s.lastReportAt;
+            clearedAt[i] = s.clearedAt;
+            lastSeen[i] = s.lastSeen;
+            readings[i] = s.readings;
+            peak[i] = s.peak;
+            peakExcess[i] = s.peakExcess;
+        }
+
+        synchronized void dropSeenBefore(long cutoff, List<Expired> expired) {
+            for (int i = 0; i <= mask; i++) {
+                // removal shifts a later entry into i, so look at i again
+                while (used[i] && lastSeen[i] < cutoff) {
+                    expired.add(new Expired((int) (keys[i] >>> 32), (int) keys[i], lastSeen[i],
+                            new Transition(Alert.State.EXPIRED, openedAt[i], readings[i], peak[i])));
+                    remove(i);
+                }
+            }
+        }
+
+        private int slot(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private int find(long key) {
+            for (int i = slot(key); used[i]; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(long key) {
+            if (size >= limit) {
+                return -1;
+            }
+            int i = slot(key);
+            while (used[i]) {
+                i = (i + 1) & mask;
+            }
+            used[i] = true;
+            keys[i] = key;
+            size++;
+            return i;
+        }
+
+        private void remove(int i) {
+            int hole = i;
+            for (int j = (i + 1) & mask; used[j]; j = (j + 1) & mask) {
+                int home = slot(keys[j]);
+                // move j into the hole unless its home slot lies cyclically in (hole, j]
+                boolean stays = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+                if (!stays) {
+                    move(j, hole);
+                    hole = j;
+                }
+            }
+            used[hole] = false;
+            size--;
+        }
+
+        private void move(int from, int to) {
+            keys[to] = keys[from];
+            phase[to] = phase[from];
+            critical[to] = critical[from];
+            openedAt[to] = openedAt[from];
+            lastReportAt[to] = lastReportAt[from];
+            clearedAt[to] = clearedAt[from];
+            lastSeen[to] = lastSeen[from];
+            readings[to] = readings[from];
+            peak[to] = peak[from];
+            peakExcess[to] = peakExcess[from];
+        }
+    }
+}
@@ -6,6 +6,14 @@ import com.audit.climate.watchtower.preprocess.CanonicalEvent;
 import java.util.List;
 
 public interface Detector {
-    List<Alert> detect(CanonicalEvent event);
-}
+    /**
+     * Alerts for one event. Series state changes go to staged, which the caller commits once
+     * the event and its alerts are stored.
+     */
+    List<Alert> detect(CanonicalEvent event, AlertStateTracker.Staged staged);
 
+    /** The alert closing a series of this detector that expired, or null if the series is not its own. */
+    default Alert expired(AlertStateTracker.Expired series) {
+        return null;
+    }
+}
@@ -12,30 +12,47 @@ import java.util.List;
 /**
  * DetectorRegistry discovers and runs all registered detectors.
  * Collects all alerts from all detectors.
+ *
+ * Detection of a batch runs against stage(); commit the returned view once the batch is
+ * stored, so a batch that is rolled back and redelivered is detected the same way again.
  */
 @Component
 public class DetectorRegistry {
     private static final Logger log = LoggerFactory.getLogger(DetectorRegistry.class);
 
     private final List<Detector> detectors;
+    private final AlertStateTracker tracker;
 
-    public DetectorRegistry(List<Detector> detectors) {
+    public DetectorRegistry(List<Detector> detectors, AlertStateTracker tracker) {
         this.detectors = detectors;
+        this.tracker = tracker;
         log.info("DetectorRegistry initialized with {} detectors", detectors.size());
     }
 
+    /** A fresh view of the alert series for detecting one batch. */
+    public AlertStateTracker.Staged stage() {
+        return tracker.stage();
+    }
+
     /**
      * Run all detectors on the given canonical event.
      * @param event the canonical event
-     * @return list of all alerts from all detectors
+     * @param staged the batch's view of the alert series
+     * @return list of all alerts from all detectors (read-only; empty when nothing fired)
      */
-    public List<Alert> runDetectors(CanonicalEvent event) {
-        List<Alert> allAlerts = new ArrayList<>();
+    public List<Alert> runDetectors(CanonicalEvent event, AlertStateTracker.Staged staged) {
+        List<Alert> allAlerts = null;
+        if (event.getTimestamp() != null) {
+            staged.observe(event.getTimestamp().toEpochMilli());
+        }
 
         for (Detector detector : detectors) {
             try {
-                List<Alert> alerts = detector.detect(event);
+                List<Alert> alerts = detector.detect(event, staged);
                 if (alerts != null && !alerts.isEmpty()) {
+                    if (allAlerts == null) {
+                        allAlerts = new ArrayList<>(alerts.size());
+                    }
                     allAlerts.addAll(alerts);
                 }
             } catch (Exception ex) {
@@ -43,7 +60,7 @@ public class DetectorRegistry {
             }
         }
 
-        return allAlerts;
+        return allAlerts != null ? allAlerts : List.of();
     }
 }
 
@@ -0,0 +1,118 @@
+package com.audit.climate.watchtower.detection;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.rules.CompiledRule;
+import com.audit.climate.watchtower.rules.MetricHistory;
+import com.audit.climate.watchtower.rules.RuleEngine;
+import com.audit.climate.watchtower.rules.RuleSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RuleDetector evaluates the compiled multi-metric rules of RuleEngine. Only rules indexed
+ * under one of the event's metrics are evaluated. A rule's alerts go through
+ * AlertStateTracker like threshold alerts, as the series (module, rule): opened while the
+ * rule holds, resolved once it has stopped holding for the cooldown. Like the series, the
+ * readings kept for rate terms are timed by the event and recorded only once the batch is
+ * committed, so a redelivered event is evaluated against the same history.
+ */
+@Component
+public class RuleDetector implements Detector {
+    private static final Logger log = LoggerFactory.getLogger(RuleDetector.class);
+
+    private final RuleEngine engine;
+    private final AlertStateTracker tracker;
+
+    public RuleDetector(RuleEngine engine, AlertStateTracker tracker) {
+        this.engine = engine;
+        this.tracker = tracker;
+    }
+
+    @Override
+    public List<Alert> detect(CanonicalEvent event, AlertStateTracker.Staged staged) {
+        RuleSet rules = engine.rules();
+        // a module the dictionary had no room for has no compact view to evaluate
+        if (rules.isEmpty() || event.getModuleId() < 0) {
+            return List.of();
+        }
+        MetricHistory history = engine.history();
+        long now = event.getTimestamp() != null ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+        List<Alert> alerts = null;
+        try {
+            for (int metricId = event.nextMetric(0); metricId >= 0; metricId = event.nextMetric(metricId + 1)) {
+                for (CompiledRule rule : rules.triggeredBy(metricId)) {
+                    alerts = evaluate(event, staged, history, rule, now, alerts);
+                }
+            }
+            for (CompiledRule rule : rules.untriggered()) {
+                alerts = evaluate(event, staged, history, rule, now, alerts);
+            }
+            // rate terms compare against earlier, committed readings only
+            if (rules.hasRates()) {
+                staged.onCommit(() -> rules.record(event, history));
+            }
+        } catch (Exception ex) {
+            log.error("Error in RuleDetector", ex);
+        }
+        return alerts != null ? alerts : List.of();
+    }
+
+    private List<Alert> evaluate(CanonicalEvent event, AlertStateTracker.Staged staged, MetricHistory history,
+                                 CompiledRule rule, long now, List<Alert> alerts) {
+        AlertStateTracker.Transition t;
+        Alert.Severity severity = rule.getSeverity();
+        if (rule.getExpression().test(event, history)) {
+            t = tracker.isEnabled()
+                    ? staged.breach(event.getModuleId(), rule.getSeriesId(), 1.0, 0.0, severity == Alert.Severity.CRITICAL, now)
+                    : new AlertStateTracker.Transition(Alert.State.OPENED, now, 1, 1.0);
+        } else {
+            t = tracker.isEnabled() ? staged.recover(event.getModuleId(), rule.getSeriesId(), true, now) : null;
+            severity = Alert.Severity.INFO;
+        }
+        if (t == null) {
+            return alerts;
+        }
+        if (alerts == null) {
+            alerts = new ArrayList<>(2);
+        }
+        alerts.add(alert(event, history, rule, severity, t));
+        return alerts;
+    }
+
+    @Override
+    public Alert expired(AlertStateTracker.Expired series) {
+        CompiledRule rule = series.metricId < 0 ? engine.rules().bySeriesId(series.metricId) : null;
+        if (rule == null) {
+            return null;
+        }
+        String module = MetricDictionary.global().moduleName(series.moduleId);
+        AlertStateTracker.Transition t = series.transition;
+        String description = String.format("%s rule %s expired without readings since %s: %s (since %s, %d readings)",
+                module, rule.getName(), Instant.ofEpochMilli(series.lastSeenMs), rule.getExpression().getSource(),
+                Instant.ofEpochMilli(t.openedAtMs), t.readings);
+        log.debug("Rule series {}: {}", t.state.tag(), description);
+        return new Alert(module, "rule:" + rule.getName(), 0.0, null, null, description, Alert.Severity.INFO, t.state);
+    }
+
+    private Alert alert(CanonicalEvent event, MetricHistory history, CompiledRule rule, Alert.Severity severity,
+                        AlertStateTracker.Transition t) {
+        String terms = rule.getExpression().describeTerms(event, history);
+        String description = t.state == Alert.State.OPENED
+                ? String.format("%s rule %s holds: %s (%s)", event.getModule(), rule.getName(),
+                        rule.getExpression().getSource(), terms)
+                : String.format("%s rule %s %s: %s (%s, since %s, %d readings)", event.getModule(), rule.getName(),
+                        t.state == Alert.State.RESOLVED ? "no longer holds" : "still holds",
+                        rule.getExpression().getSource(), terms, Instant.ofEpochMilli(t.openedAtMs), t.readings);
+        log.debug("Rule series {}: {}", t.state.tag(), description);
+        double value = rule.getExpression().primaryValue(event, history);
+        return new Alert(event.getModule(), "rule:" + rule.getName(), Double.isNaN(value) ? 0.0 : value,
+                null, null, description, severity, t.state);
+    }
+}
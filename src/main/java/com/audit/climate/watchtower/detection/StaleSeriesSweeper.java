@@ -0,0 +1,51 @@
+package com.audit.climate.watchtower.detection;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.alerts.AlertService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * StaleSeriesSweeper drops alert series that stopped reporting (AlertStateTracker.dropStale)
+ * and stores an EXPIRED alert for each, built by the detector that owns the series, so no
+ * opened series is left without a closing alert.
+ */
+@Component
+public class StaleSeriesSweeper {
+    private static final Logger log = LoggerFactory.getLogger(StaleSeriesSweeper.class);
+
+    private final AlertStateTracker tracker;
+    private final List<Detector> detectors;
+    private final AlertService alertService;
+
+    public StaleSeriesSweeper(AlertStateTracker tracker, List<Detector> detectors, AlertService alertService) {
+        this.tracker = tracker;
+        this.detectors = detectors;
+        this.alertService = alertService;
+    }
+
+    @Scheduled(fixedDelayString = "${audit.alerts.suppression.sweep-interval-ms:60000}")
+    public void sweep() {
+        List<AlertStateTracker.Expired> expired = tracker.dropStale();
+        if (expired.isEmpty()) {
+            return;
+        }
+        List<Alert> alerts = new ArrayList<>(expired.size());
+        for (AlertStateTracker.Expired series : expired) {
+            for (Detector detector : detectors) {
+                Alert alert = detector.expired(series);
+                if (alert != null) {
+                    alerts.add(alert);
+                    break;
+                }
+            }
+        }
+        log.debug("Expired {} alert series without readings", expired.size());
+        alertService.persistAndPublish(alerts);
+    }
+}
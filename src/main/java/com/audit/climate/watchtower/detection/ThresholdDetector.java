@@ -2,103 +2,151 @@ package com.audit.climate.watchtower.detection;
 
 import com.audit.climate.watchtower.alerts.Alert;
 import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
 import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * ThresholdDetector checks weather metrics against configured thresholds.
  * Converted from WeatherEventProcessor - now pure detector with no persistence logic.
+ *
+ * Violations go through AlertStateTracker, so only transitions of a (module, metric) series
+ * (opened, escalated, ongoing, resolved, expired) become alerts; with suppression disabled
+ * every out-of-range reading is an alert. Series are timed by the events' own timestamps.
  */
 @Component
 public class ThresholdDetector implements Detector {
     private static final Logger log = LoggerFactory.getLogger(ThresholdDetector.class);
+    // beyond the bound by more than this share of the range (or of the bound, if open-ended): critical
+    private static final double CRITICAL_EXCESS = 0.25;
 
     private final ThresholdConfig thresholdConfig;
+    private final AlertStateTracker tracker;
+    private final MetricDictionary dictionary = MetricDictionary.global();
 
-    public ThresholdDetector(ThresholdConfig thresholdConfig) {
+    public ThresholdDetector(ThresholdConfig thresholdConfig, AlertStateTracker tracker) {
         this.thresholdConfig = thresholdConfig;
+        this.tracker = tracker;
     }
 
     @Override
-    public List<Alert> detect(CanonicalEvent event) {
-        List<Alert> alerts = new ArrayList<>();
+    public List<Alert> detect(CanonicalEvent event, AlertStateTracker.Staged staged) {
+        List<Alert> alerts = null;
 
         try {
-            Map<String, Object> payload = event.getPayload();
-            if (payload == null) {
-                return alerts;
-            }
-
-            // Determine module
-            String module = extractModule(payload, event.getChannel());
-
-            // Check each metric
-            if (payload.containsKey("temperature")) {
-                checkMetric(module, "temperature", toDouble(payload.get("temperature")), alerts);
-            }
-            if (payload.containsKey("humidity")) {
-                checkMetric(module, "humidity", toDouble(payload.get("humidity")), alerts);
-            }
-            if (payload.containsKey("pressure")) {
-                checkMetric(module, "pressure", toDouble(payload.get("pressure")), alerts);
+            // walk the present metrics by id; nothing is allocated unless a threshold is violated
+            int moduleId = event.getModuleId();
+            long at = event.getTimestamp() != null ? event.getTimestamp().toEpochMilli() : System.currentTimeMillis();
+            // one snapshot per event, so all its metrics are checked against the same thresholds
+            ThresholdSnapshot thresholds = thresholdConfig.snapshot();
+            for (int metricId = event.nextMetric(0); metricId >= 0; metricId = event.nextMetric(metricId + 1)) {
+                Alert alert = checkMetric(event, staged, thresholds, moduleId, metricId, at);
+                if (alert != null) {
+                    if (alerts == null) {
+                        alerts = new ArrayList<>(2);
+                    }
+                    alerts.add(alert);
+                }
             }
         } catch (Exception ex) {
             log.error("Error in ThresholdDetector", ex);
         }
 
-        return alerts;
+        return alerts != null ? alerts : List.of();
     }
 
-    private String extractModule(Map<String, Object> payload, String channel) {
-        Object moduleObj = payload.get("module");
-        if (moduleObj != null) {
-            String module = moduleObj.toString();
-            if (!module.isBlank()) {
-                return module;
-            }
+    private Alert checkMetric(CanonicalEvent event, AlertStateTracker.Staged staged, ThresholdSnapshot thresholds,
+                              int moduleId, int metricId, long at) {
+        double value = event.metricValue(metricId);
+        if (Double.isNaN(value)) {
+            return null;
         }
-        return channel != null ? channel : "unknown";
-    }
 
-    private double toDouble(Object obj) {
-        if (obj instanceof Number) {
-            return ((Number) obj).doubleValue();
+        ThresholdConfig.Range range = thresholds.lookup(moduleId, metricId);
+        if (range == null) {
+            return null;
         }
-        try {
-            return Double.parseDouble(obj.toString());
-        } catch (Exception ex) {
-            return Double.NaN;
+
+        boolean low = range.min != null && value < range.min;
+        boolean high = range.max != null && value > range.max;
+        if (!low && !high) {
+            if (!tracker.isEnabled()) {
+                return null;
+            }
+            AlertStateTracker.Transition t = staged.recover(moduleId, metricId, isClear(value, range), at);
+            return t == null ? null : alert(event, metricId, value, range, Alert.Severity.INFO, t);
         }
+
+        double bound = low ? range.min : range.max;
+        double excess = Math.abs(value - bound);
+        Alert.Severity severity = excess > CRITICAL_EXCESS * span(range, bound)
+                ? Alert.Severity.CRITICAL : Alert.Severity.WARNING;
+        AlertStateTracker.Transition t = tracker.isEnabled()
+                ? staged.breach(moduleId, metricId, value, excess, severity == Alert.Severity.CRITICAL, at)
+                : new AlertStateTracker.Transition(Alert.State.OPENED, at, 1, value);
+        return t == null ? null : alert(event, metricId, value, range, severity, t);
     }
 
-    private void checkMetric(String module, String metric, double value, List<Alert> alerts) {
-        if (Double.isNaN(value)) {
-            return;
+    private Alert alert(CanonicalEvent event, int metricId, double value, ThresholdConfig.Range range,
+                        Alert.Severity severity, AlertStateTracker.Transition t) {
+        String module = event.getModule();
+        String metric = dictionary.metricName(metricId);
+        String description = t.state == Alert.State.OPENED
+                ? String.format("%s %s out of range (value=%.2f, min=%s, max=%s)",
+                        module, metric, value, range.min, range.max)
+                : String.format("%s %s %s (value=%.2f, min=%s, max=%s, since %s, %d readings, peak=%.2f)",
+                        module, metric, describe(t.state), value, range.min, range.max,
+                        Instant.ofEpochMilli(t.openedAtMs), t.readings, t.peak);
+        log.debug("Threshold series {}: {}", t.state.tag(), description);
+        return new Alert(module, metric, value, range.min, range.max, description, severity, t.state);
+    }
+
+    @Override
+    public Alert expired(AlertStateTracker.Expired series) {
+        // rule series have negative ids; see RuleDetector
+        if (series.metricId < 0) {
+            return null;
         }
+        String module = dictionary.moduleName(series.moduleId);
+        String metric = dictionary.metricName(series.metricId);
+        ThresholdConfig.Range range = thresholdConfig.snapshot().lookup(series.moduleId, series.metricId);
+        Double min = range != null ? range.min : null;
+        Double max = range != null ? range.max : null;
+        AlertStateTracker.Transition t = series.transition;
+        String description = String.format("%s %s expired without readings since %s (since %s, %d readings, peak=%.2f)",
+                module, metric, Instant.ofEpochMilli(series.lastSeenMs), Instant.ofEpochMilli(t.openedAtMs),
+                t.readings, t.peak);
+        log.debug("Threshold series {}: {}", t.state.tag(), description);
+        return new Alert(module, metric, t.peak, min, max, description, Alert.Severity.INFO, t.state);
+    }
 
-        ThresholdConfig.Range range = thresholdConfig.getThreshold(module, metric);
-        if (range == null) {
-            return;
+    private static String describe(Alert.State state) {
+        switch (state) {
+            case ESCALATED: return "out of range, now critical";
+            case ONGOING: return "still out of range";
+            case RESOLVED: return "back in range";
+            default: return "out of range";
         }
+    }
 
-        boolean low = range.min != null && value < range.min;
-        boolean high = range.max != null && value > range.max;
+    // back inside the range by the hysteresis band on every bounded side
+    private boolean isClear(double value, ThresholdConfig.Range range) {
+        double h = tracker.getHysteresis();
+        return (range.min == null || value >= range.min + h * span(range, range.min))
+                && (range.max == null || value <= range.max - h * span(range, range.max));
+    }
 
-        if (low || high) {
-            String description = String.format(
-                "%s %s out of range (value=%.2f, min=%s, max=%s)",
-                module, metric, value, range.min, range.max
-            );
-            Alert alert = new Alert(module, metric, value, range.min, range.max, description);
-            alerts.add(alert);
-            log.debug("Detected threshold violation: {}", description);
-        }
+    // the range's width, or the bound's magnitude if the range is open-ended
+    private static double span(ThresholdConfig.Range range, double bound) {
+        return range.min != null && range.max != null && range.max > range.min
+                ? range.max - range.min
+                : Math.max(Math.abs(bound), 1.0);
     }
 }
-
@@ -0,0 +1,109 @@
+package com.audit.climate.watchtower.incidents;
+
+import com.audit.climate.watchtower.alerts.Alert;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Incident is a group of correlated alerts: the same group key (e.g. the same metric) with no
+ * more than the coalescing window between consecutive alerts. It is also the published message,
+ * carrying member counts and a sample of the modules and metrics involved.
+ */
+public class Incident {
+    static final int SAMPLE_SIZE = 20;
+
+    private final UUID id;
+    private final String groupBy;
+    private final String groupKey;
+    private Instant openedAt;
+    private Instant lastAlertAt;
+    private long alertCount;
+    private final Set<String> modules;
+    private final Set<String> metrics;
+    private Alert.Severity maxSeverity;
+    private int newAlerts;
+    private final boolean stored;
+
+    Incident(UUID id, String groupBy, String groupKey, Instant openedAt, Instant lastAlertAt, long alertCount,
+             Collection<String> modules, Collection<String> metrics, Alert.Severity maxSeverity, boolean stored) {
+        this.id = id;
+        this.groupBy = groupBy;
+        this.groupKey = groupKey;
+        this.openedAt = openedAt;
+        this.lastAlertAt = lastAlertAt;
+        this.alertCount = alertCount;
+        this.modules = new LinkedHashSet<>(modules);
+        this.metrics = new LinkedHashSet<>(metrics);
+        this.maxSeverity = maxSeverity;
+        this.stored = stored;
+    }
+
+    static Incident open(String groupBy, String groupKey, Alert first) {
+        return new Incident(UUID.randomUUID(), groupBy, groupKey, first.getOccurredAt(), first.getOccurredAt(), 0,
+                List.of(), List.of(), Alert.Severity.INFO, false);
+    }
+
+    void add(Alert alert) {
+        if (alert.getOccurredAt().isBefore(openedAt)) {
+            openedAt = alert.getOccurredAt();
+        }
+        if (alert.getOccurredAt().isAfter(lastAlertAt)) {
+            lastAlertAt = alert.getOccurredAt();
+        }
+        alertCount++;
+        newAlerts++;
+        modules.add(alert.getModule());
+        metrics.add(alert.getMetric());
+        Alert.Severity severity = Alert.Severity.of(alert.getSeverity());
+        if (severity.compareTo(maxSeverity) > 0) {
+            maxSeverity = severity;
+        }
+    }
+
+    public UUID getId() { return id; }
+    public String getGroupBy() { return groupBy; }
+    public String getGroupKey() { return groupKey; }
+    public Instant getOpenedAt() { return openedAt; }
+    public Instant getLastAlertAt() { return lastAlertAt; }
+    public long getAlertCount() { return alertCount; }
+    public int getModuleCount() { return modules.size(); }
+    public int getMetricCount() { return metrics.size(); }
+    public String getMaxSeverity() { return maxSeverity.tag(); }
+
+    /** Alerts added since the last snapshot that was confirmed published. */
+    public int getNewAlerts() { return newAlerts; }
+
+    /** Up to SAMPLE_SIZE module names, in order of first appearance. */
+    public List<String> getModules() { return sample(modules); }
+
+    public List<String> getMetrics() { return sample(metrics); }
+
+    Set<String> allModules() { return modules; }
+
+    Set<String> allMetrics() { return metrics; }
+
+    boolean isStored() { return stored; }
+
+    // a snapshot read for publishing: the alerts since the last confirmed one are new
+    Incident sincePublished(long publishedCount) {
+        newAlerts = (int) Math.max(0, alertCount - publishedCount);
+        return this;
+    }
+
+    private static List<String> sample(Set<String> names) {
+        List<String> out = new ArrayList<>(Math.min(names.size(), SAMPLE_SIZE));
+        for (String name : names) {
+            if (out.size() == SAMPLE_SIZE) {
+                break;
+            }
+            out.add(name);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,237 @@
+package com.audit.climate.watchtower.incidents;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * IncidentCoalescer folds alerts into incidents before they are published, so a storm that
+ * trips dozens of modules produces one message per incident and relay round instead of one
+ * per alert.
+ *
+ * Alerts are grouped by the configured group-by fields (module, metric, severity; e.g.
+ * "metric" groups the same metric across modules) and an incident stays open for its group
+ * while alerts keep arriving within window-ms of the previous one. Incidents are updated
+ * incrementally in the caller's transaction; an advisory lock per group keeps concurrent
+ * relays from opening the same incident twice. The locks of a batch are taken up front in
+ * lock id order, so two relays coalescing overlapping groups cannot deadlock.
+ *
+ * An updated incident is marked due for publishing (publish_at) in the same transaction.
+ * The relay claims due incidents, publishes their snapshots after the update committed and
+ * marks each one published once confirmed, so an incident is never published with alerts
+ * that could still be rolled back, and an unconfirmed snapshot is sent again later.
+ */
+@Component
+public class IncidentCoalescer {
+    private static final Logger log = LoggerFactory.getLogger(IncidentCoalescer.class);
+    private static final List<String> FIELDS = List.of("module", "metric", "severity");
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final List<String> groupBy;
+    private final String groupByName;
+    private final long windowMs;
+
+    public IncidentCoalescer(JdbcTemplate jdbc,
+                             @Value("${audit.incidents.enabled:true}") boolean enabled,
+                             @Value("${audit.incidents.group-by:metric}") List<String> groupBy,
+                             @Value("${audit.incidents.window-ms:60000}") long windowMs) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        List<String> fields = new ArrayList<>();
+        for (String field : groupBy) {
+            String f = field.trim().toLowerCase(Locale.ROOT);
+            if (!FIELDS.contains(f)) {
+                throw new IllegalArgumentException("audit.incidents.group-by must be made of " + FIELDS + ": " + field);
+            }
+            if (!fields.contains(f)) {
+                fields.add(f);
+            }
+        }
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("audit.incidents.group-by must not be empty");
+        }
+        this.groupBy = List.copyOf(fields);
+        this.groupByName = String.join(",", fields);
+        this.windowMs = windowMs;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Add the alerts to their incidents, opening new ones where needed, and mark them due for
+     * publishing. Must run in a transaction.
+     * @return a snapshot of every incident touched, in group key order
+     */
+    public List<Incident> coalesce(List<Alert> alerts) {
+        Map<String, List<Alert>> byKey = new TreeMap<>();
+        for (Alert alert : alerts) {
+            byKey.computeIfAbsent(groupKey(alert), k -> new ArrayList<>()).add(alert);
+        }
+        lockGroups(byKey.keySet());
+
+        List<Incident> touched = new ArrayList<>();
+        List<Object[]> members = new ArrayList<>(alerts.size());
+        for (Map.Entry<String, List<Alert>> group : byKey.entrySet()) {
+            List<Alert> sorted = group.getValue();
+            sorted.sort(Comparator.comparing(Alert::getOccurredAt));
+
+            Incident current = findOpen(group.getKey(), sorted.get(0).getOccurredAt());
+            for (Alert alert : sorted) {
+                if (current != null && alert.getOccurredAt().toEpochMilli() - current.getLastAlertAt().toEpochMilli() > windowMs) {
+                    save(current);
+                    touched.add(current);
+                    current = null;
+                }
+                if (current == null) {
+                    current = Incident.open(groupByName, group.getKey(), alert);
+                }
+                current.add(alert);
+                members.add(new Object[]{current.getId(), alert.getId(), Timestamp.from(alert.getOccurredAt())});
+            }
+            save(current);
+            touched.add(current);
+        }
+        jdbc.batchUpdate("INSERT INTO incident_alerts (incident_id, alert_id, occurred_at) VALUES (?, ?, ?) "
+                + "ON CONFLICT DO NOTHING", members);
+        log.debug("Coalesced {} alerts into {} incidents", alerts.size(), touched.size());
+        return touched;
+    }
+
+    // all at once and in lock id order, so concurrent callers wait on each other instead of deadlocking
+    private void lockGroups(Collection<String> keys) {
+        List<String> names = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            names.add("incident:" + groupByName + ":" + key);
+        }
+        jdbc.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT pg_advisory_xact_lock(h) FROM "
+                    + "(SELECT DISTINCT hashtext(k) AS h FROM unnest(?::text[]) AS k ORDER BY h) AS ordered");
+            ps.setArray(1, con.createArrayOf("text", names.toArray()));
+            return ps;
+        }, (rs, i) -> null);
+    }
+
+    /**
+     * Claim up to limit incidents due for publishing and lease them for leaseMs, so no other
+     * relay claims them meanwhile. Must run in a transaction, committed before publishing.
+     * @return snapshots whose newAlerts counts the alerts since the last confirmed one
+     */
+    public List<Incident> claimUnpublished(int limit, long leaseMs) {
+        return jdbc.query("WITH due AS (SELECT id FROM incidents WHERE publish_at <= now() "
+                        + "ORDER BY publish_at LIMIT ? FOR UPDATE SKIP LOCKED) "
+                        + "UPDATE incidents i SET publish_at = clock_timestamp() + ? * interval '1 millisecond' "
+                        + "FROM due WHERE i.id = due.id RETURNING i.id, i.group_by, i.group_key, i.opened_at, "
+                        + "i.last_alert_at, i.alert_count, i.modules, i.metrics, i.max_severity, i.published_count",
+                (rs, i) -> new Incident(
+                        rs.getObject(1, UUID.class),
+                        rs.getString(2),
+                        rs.getString(3),
+                        rs.getTimestamp(4).toInstant(),
+                        rs.getTimestamp(5).toInstant(),
+                        rs.getLong(6),
+                        Arrays.asList((String[]) rs.getArray(7).getArray()),
+                        Arrays.asList((String[]) rs.getArray(8).getArray()),
+                        Alert.Severity.of(rs.getString(9)),
+                        true).sincePublished(rs.getLong(10)),
+                limit, leaseMs);
+    }
+
+    /**
+     * Record that the snapshot was confirmed. The incident stays due if alerts were added
+     * after the snapshot was taken.
+     */
+    public void markPublished(Incident snapshot) {
+        jdbc.update("UPDATE incidents SET published_count = greatest(published_count, ?), "
+                        + "publish_at = CASE WHEN alert_count <= ? THEN NULL ELSE publish_at END WHERE id = ?",
+                snapshot.getAlertCount(), snapshot.getAlertCount(), snapshot.getId());
+    }
+
+    private String groupKey(Alert alert) {
+        if (groupBy.size() == 1) {
+            return field(alert, groupBy.get(0));
+        }
+        StringBuilder key = new StringBuilder();
+        for (String f : groupBy) {
+            if (key.length() > 0) {
+                key.append('/');
+            }
+            key.append(field(alert, f));
+        }
+        return key.toString();
+    }
+
+    private static String field(Alert alert, String name) {
+        switch (name) {
+            case "module": return alert.getModule();
+            case "metric": return alert.getMetric();
+            default: return alert.getSeverity();
+        }
+    }
+
+    // the group's latest incident, if its last alert is within the window of the given time
+    private Incident findOpen(String groupKey, Instant first) {
+        List<Incident> found = jdbc.query(
+                "SELECT id, opened_at, last_alert_at, alert_count, modules, metrics, max_severity FROM incidents "
+                        + "WHERE group_by = ? AND group_key = ? AND last_alert_at >= ? "
+                        + "ORDER BY last_alert_at DESC LIMIT 1",
+                (rs, i) -> new Incident(
+                        rs.getObject(1, UUID.class),
+                        groupByName,
+                        groupKey,
+                        rs.getTimestamp(2).toInstant(),
+                        rs.getTimestamp(3).toInstant(),
+                        rs.getLong(4),
+                        Arrays.asList((String[]) rs.getArray(5).getArray()),
+                        Arrays.asList((String[]) rs.getArray(6).getArray()),
+                        Alert.Severity.of(rs.getString(7)),
+                        true),
+                groupByName, groupKey, Timestamp.from(first.minusMillis(windowMs)));
+        return found.isEmpty() ? null : found.get(0);
+    }
+
+    private void save(Incident incident) {
+        jdbc.update(con -> {
+            PreparedStatement ps;
+            if (incident.isStored()) {
+                ps = con.prepareStatement("UPDATE incidents SET opened_at = ?, last_alert_at = ?, alert_count = ?, "
+                        + "modules = ?, metrics = ?, max_severity = ?, publish_at = now() WHERE id = ?");
+            } else {
+                ps = con.prepareStatement("INSERT INTO incidents (opened_at, last_alert_at, alert_count, modules, "
+                        + "metrics, max_severity, id, group_by, group_key, publish_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, now())");
+                ps.setString(8, incident.getGroupBy());
+                ps.setString(9, incident.getGroupKey());
+            }
+            Array modules = con.createArrayOf("text", incident.allModules().toArray());
+            Array metrics = con.createArrayOf("text", incident.allMetrics().toArray());
+            ps.setTimestamp(1, Timestamp.from(incident.getOpenedAt()));
+            ps.setTimestamp(2, Timestamp.from(incident.getLastAlertAt()));
+            ps.setLong(3, incident.getAlertCount());
+            ps.setArray(4, modules);
+            ps.setArray(5, metrics);
+            ps.setString(6, incident.getMaxSeverity());
+            ps.setObject(7, incident.getId());
+            return ps;
+        });
+    }
+}
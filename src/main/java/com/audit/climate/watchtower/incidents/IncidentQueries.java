@@ -0,0 +1,53 @@
+package com.audit.climate.watchtower.incidents;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read side of incidents for the API, newest first. An incident counts as open while its
+ * last alert is within the coalescing window.
+ */
+@Component
+public class IncidentQueries {
+    private static final RowMapper<Incident> ROW = (rs, i) -> new Incident(
+            rs.getObject(1, UUID.class),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getTimestamp(4).toInstant(),
+            rs.getTimestamp(5).toInstant(),
+            rs.getLong(6),
+            Arrays.asList((String[]) rs.getArray(7).getArray()),
+            Arrays.asList((String[]) rs.getArray(8).getArray()),
+            Alert.Severity.of(rs.getString(9)),
+            true);
+
+    private final JdbcTemplate jdbc;
+    private final long windowMs;
+
+    public IncidentQueries(JdbcTemplate jdbc, @Value("${audit.incidents.window-ms:60000}") long windowMs) {
+        this.jdbc = jdbc;
+        this.windowMs = windowMs;
+    }
+
+    public List<Incident> latest(boolean openOnly, int limit) {
+        Instant since = openOnly ? Instant.now().minusMillis(windowMs) : Instant.EPOCH;
+        return jdbc.query("SELECT id, group_by, group_key, opened_at, last_alert_at, alert_count, modules, metrics, "
+                        + "max_severity FROM incidents WHERE last_alert_at >= ? ORDER BY last_alert_at DESC LIMIT ?",
+                ROW, Timestamp.from(since), limit);
+    }
+
+    /** Ids of the incident's alerts, oldest first. */
+    public List<UUID> alertIds(UUID incidentId, int limit) {
+        return jdbc.queryForList("SELECT alert_id FROM incident_alerts WHERE incident_id = ? ORDER BY occurred_at LIMIT ?",
+                UUID.class, incidentId, limit);
+    }
+}
@@ -0,0 +1,39 @@
+package com.audit.climate.watchtower.incidents;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.UUID;
+
+@RestController
+@RequestMapping("/api/incidents")
+public class IncidentsController {
+    private static final int MAX_SIZE = 500;
+
+    private final IncidentQueries queries;
+
+    public IncidentsController(IncidentQueries queries) {
+        this.queries = queries;
+    }
+
+    // GET /api/incidents?size=50&open=true
+    // Latest incidents first; open=true keeps those still within the coalescing window
+    @GetMapping
+    public ResponseEntity<?> list(@RequestParam(defaultValue = "50") int size,
+                                  @RequestParam(defaultValue = "false") boolean open) {
+        if (size < 1 || size > MAX_SIZE) {
+            return ResponseEntity.badRequest().body("size must be between 1 and " + MAX_SIZE);
+        }
+        return ResponseEntity.ok(queries.latest(open, size));
+    }
+
+    // GET /api/incidents/{id}/alerts?size=500
+    // Member alert ids, oldest first
+    @GetMapping("/{id}/alerts")
+    public ResponseEntity<?> alerts(@PathVariable UUID id, @RequestParam(defaultValue = "500") int size) {
+        if (size < 1 || size > 10_000) {
+            return ResponseEntity.badRequest().body("size must be between 1 and 10000");
+        }
+        return ResponseEntity.ok(queries.alertIds(id, size));
+    }
+}
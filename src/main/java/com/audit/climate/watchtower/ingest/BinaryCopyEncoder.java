@@ -0,0 +1,104 @@
+package com.audit.climate.watchtower.ingest;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * BinaryCopyEncoder writes rows in PostgreSQL's COPY binary format
+ * (header, length-prefixed fields per tuple, -1 trailer).
+ */
+public class BinaryCopyEncoder {
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+    // 2000-01-01T00:00:00Z, the PostgreSQL timestamp epoch, in microseconds since the Unix epoch
+    private static final long PG_EPOCH_MICROS = 946_684_800_000_000L;
+    private static final byte JSONB_VERSION = 1;
+
+    private final DataOutputStream out;
+
+    public BinaryCopyEncoder(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.out.write(SIGNATURE);
+        this.out.writeInt(0); // flags
+        this.out.writeInt(0); // header extension length
+    }
+
+    public void startRow(int fieldCount) throws IOException {
+        out.writeShort(fieldCount);
+    }
+
+    public void writeNull() throws IOException {
+        out.writeInt(-1);
+    }
+
+    public void writeUuid(UUID value) throws IOException {
+        out.writeInt(16);
+        out.writeLong(value.getMostSignificantBits());
+        out.writeLong(value.getLeastSignificantBits());
+    }
+
+    public void writeTimestamptz(Instant value) throws IOException {
+        long micros = Math.addExact(Math.multiplyExact(value.getEpochSecond(), 1_000_000L), value.getNano() / 1_000);
+        out.writeInt(8);
+        out.writeLong(micros - PG_EPOCH_MICROS);
+    }
+
+    public void writeText(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public void writeBytea(byte[] value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    public void writeJsonb(String value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length + 1);
+        out.writeByte(JSONB_VERSION);
+        out.write(bytes);
+    }
+
+    public void writeInt4(int value) throws IOException {
+        out.writeInt(4);
+        out.writeInt(value);
+    }
+
+    public void writeFloat8(double value) throws IOException {
+        out.writeInt(8);
+        out.writeDouble(value);
+    }
+
+    public void writeFloat8(Double value) throws IOException {
+        if (value == null) {
+            writeNull();
+            return;
+        }
+        writeFloat8(value.doubleValue());
+    }
+
+    /**
+     * Write the trailer and close the underlying stream, which ends the COPY.
+     */
+    public void finish() throws IOException {
+        out.writeShort(-1);
+        out.close();
+    }
+}
@@ -0,0 +1,403 @@
+package com.audit.climate.watchtower.ingest;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.audit.RawEvent;
+import com.audit.climate.watchtower.measurements.Measurement;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * CopyEventWriter streams raw events, alerts (with their outbox rows) and measurements into Postgres
+ * with COPY ... FROM STDIN (FORMAT binary).
+ *
+ * Callers hand their batch to a bounded staging buffer and block until it is committed.
+ * A single flusher thread drains the buffer every flush interval (or as soon as max-rows
+ * are waiting) and writes everything it took in one transaction, so the number of
+ * round trips per event shrinks as load grows. When a combined flush fails, the
+ * flusher retries each caller's batch on its own so only the faulty one is failed.
+ * Anything thrown while flushing, errors included, fails the batches involved instead of
+ * the flusher; should the flusher still die, staged and later batches fail fast as
+ * unavailable so they are redelivered rather than waited on forever.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.persistence.writer", havingValue = "copy")
+public class CopyEventWriter implements EventWriter {
+    private static final Logger log = LoggerFactory.getLogger(CopyEventWriter.class);
+
+    static final String RAW_EVENTS_COPY =
+            "COPY raw_events (id, received_at, payload, payload_raw, encoding, classification) FROM STDIN (FORMAT binary)";
+    static final String FINGERPRINTS_COPY =
+            "COPY ingest_fingerprints (fingerprint, first_seen) FROM STDIN (FORMAT binary)";
+    static final String ALERTS_COPY =
+            "COPY alerts (id, occurred_at, module, metric, value, threshold_min, threshold_max, description, severity, state) FROM STDIN (FORMAT binary)";
+    static final String ALERT_OUTBOX_COPY =
+            "COPY alert_outbox (alert_id, occurred_at) FROM STDIN (FORMAT binary)";
+    static final String MEASUREMENTS_COPY =
+            "COPY measurements (ts, module_id, metric_id, value) FROM STDIN (FORMAT binary)";
+    private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final BlockingQueue<Pending> staging;
+    private final int maxRows;
+    private final long flushIntervalMs;
+    private final long waitCheckMs;
+
+    private volatile boolean running = true;
+    private volatile Throwable flusherDied;
+    private Thread flusher;
+
+    public CopyEventWriter(JdbcTemplate jdbc,
+                           PlatformTransactionManager transactionManager,
+                           @Value("${audit.persistence.copy.buffer-capacity:1000}") int bufferCapacity,
+                           @Value("${audit.persistence.copy.max-rows:5000}") int maxRows,
+                           @Value("${audit.persistence.copy.flush-interval-ms:20}") long flushIntervalMs,
+                           @Value("${audit.persistence.copy.wait-check-ms:5000}") long waitCheckMs) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.staging = new ArrayBlockingQueue<>(bufferCapacity);
+        this.maxRows = maxRows;
+        this.flushIntervalMs = flushIntervalMs;
+        this.waitCheckMs = waitCheckMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher = new Thread(this::runFlusher, "copy-event-writer");
+        flusher.setDaemon(true);
+        flusher.start();
+        log.info("COPY event writer started (bufferCapacity={}, maxRows={}, flushIntervalMs={})",
+                staging.remainingCapacity(), maxRows, flushIntervalMs);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        // fail anything left so callers do not ack it
+        Pending p;
+        while ((p = staging.poll()) != null) {
+            p.future.completeExceptionally(new IllegalStateException("COPY event writer stopped"));
+        }
+    }
+
+    @Override
+    public void write(IngestBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (!running) {
+            throw new IllegalStateException("COPY event writer stopped");
+        }
+        if (flusherDied != null) {
+            throw unavailable();
+        }
+        Pending pending = new Pending(batch);
+        try {
+            staging.put(pending);
+            await(pending);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for COPY flush", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // wait for the flush, checking now and then that the flusher is still there to do it
+    private void await(Pending pending) throws InterruptedException, ExecutionException {
+        while (true) {
+            try {
+                pending.future.get(waitCheckMs, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException ex) {
+                // a batch still staged was never flushed, so failing it cannot lose or duplicate rows;
+                // one already taken by a live flusher is waited for
+                if (flusherDied != null && staging.remove(pending)) {
+                    throw unavailable();
+                }
+                if (!flusher.isAlive() && !pending.future.isDone()) {
+                    throw unavailable();
+                }
+            }
+        }
+    }
+
+    private DataAccessResourceFailureException unavailable() {
+        return new DataAccessResourceFailureException("COPY event writer flusher died", flusherDied);
+    }
+
+    @Override
+    public void probe(IngestBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // on the caller's thread: a probe must never share a transaction with other callers' batches
+        transactionTemplate.executeWithoutResult(status -> {
+            copy(List.of(new Pending(batch)));
+            status.setRollbackOnly();
+        });
+    }
+
+    private void runFlusher() {
+        List<Pending> drained = new ArrayList<>();
+        try {
+            while (running || !staging.isEmpty()) {
+                try {
+                    Pending first = staging.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    drained.add(first);
+                    int rows = first.batch.rowCount();
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                    while (rows < maxRows) {
+                        long remaining = deadline - System.nanoTime();
+                        Pending next = remaining > 0 ? staging.poll(remaining, TimeUnit.NANOSECONDS) : staging.poll();
+                        if (next == null) {
+                            break;
+                        }
+                        drained.add(next);
+                        rows += next.batch.rowCount();
+                    }
+                    flush(drained);
+                } catch (InterruptedException ex) {
+                    // stop() interrupts us: flush what we hold, the loop drains the rest
+                    if (!drained.isEmpty()) {
+                        flush(drained);
+                    }
+                } finally {
+                    drained.clear();
+                }
+            }
+        } catch (Throwable ex) {
+            flusherDied = ex;
+            log.error("COPY event writer flusher died; failing staged batches", ex);
+            Pending p;
+            while ((p = staging.poll()) != null) {
+                p.future.completeExceptionally(unavailable());
+            }
+            throw ex;
+        }
+    }
+
+    private void flush(List<Pending> drained) {
+        try {
+            copyInTransaction(drained);
+            drained.forEach(p -> p.future.complete(null));
+            return;
+        } catch (Throwable ex) {
+            if (drained.size() == 1) {
+                drained.get(0).future.completeExceptionally(ex);
+                return;
+            }
+            log.warn("COPY flush of {} batches failed, retrying them one by one", drained.size(), ex);
+        }
+        for (Pending p : drained) {
+            try {
+                copyInTransaction(List.of(p));
+                p.future.complete(null);
+            } catch (Throwable ex) {
+                p.future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void copyInTransaction(List<Pending> pending) {
+        transactionTemplate.executeWithoutResult(status -> copy(pending));
+    }
+
+    private void copy(List<Pending> pending) {
+        jdbc.execute((ConnectionCallback<Void>) con -> {
+            try {
+                copyFingerprints(con, pending);
+                copyRawEvents(con, pending);
+                copyAlerts(con, pending);
+                copyAlertOutbox(con, pending);
+                copyMeasurements(con, pending);
+            } catch (IOException ex) {
+                // surface driver errors as SQLException so they get translated like any other
+                if (ex.getCause() instanceof SQLException) {
+                    throw (SQLException) ex.getCause();
+                }
+                throw new UncheckedIOException(ex);
+            }
+            return null;
+        });
+    }
+
+    private void copyFingerprints(Connection con, List<Pending> pending) throws SQLException, IOException {
+        if (pending.stream().allMatch(p -> p.batch.getFingerprints().isEmpty())) {
+            return;
+        }
+        Instant now = Instant.now();
+        PGCopyOutputStream stream = new PGCopyOutputStream(con.unwrap(PGConnection.class), FINGERPRINTS_COPY, COPY_BUFFER_BYTES);
+        try {
+            BinaryCopyEncoder encoder = new BinaryCopyEncoder(stream);
+            for (Pending p : pending) {
+                for (UUID fp : p.batch.getFingerprints()) {
+                    encoder.startRow(2);
+                    encoder.writeUuid(fp);
+                    encoder.writeTimestamptz(now);
+                }
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException ex) {
+            cancel(stream);
+            throw ex;
+        }
+    }
+
+    private void copyRawEvents(Connection con, List<Pending> pending) throws SQLException, IOException {
+        if (pending.stream().allMatch(p -> p.batch.getRawEvents().isEmpty())) {
+            return;
+        }
+        PGCopyOutputStream stream = new PGCopyOutputStream(con.unwrap(PGConnection.class), RAW_EVENTS_COPY, COPY_BUFFER_BYTES);
+        try {
+            BinaryCopyEncoder encoder = new BinaryCopyEncoder(stream);
+            for (Pending p : pending) {
+                for (RawEvent e : p.batch.getRawEvents()) {
+                    e.ensureIdentity();
+                    encoder.startRow(6);
+                    encoder.writeUuid(e.getId());
+                    encoder.writeTimestamptz(e.getReceivedAt());
+                    encoder.writeText(e.getPayload());
+                    encoder.writeBytea(e.getPayloadRaw());
+                    encoder.writeText(e.getEncoding());
+                    encoder.writeJsonb(e.getClassification());
+                }
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException ex) {
+            cancel(stream);
+            throw ex;
+        }
+    }
+
+    private void copyAlerts(Connection con, List<Pending> pending) throws SQLException, IOException {
+        if (pending.stream().allMatch(p -> p.batch.getAlerts().isEmpty())) {
+            return;
+        }
+        PGCopyOutputStream stream = new PGCopyOutputStream(con.unwrap(PGConnection.class), ALERTS_COPY, COPY_BUFFER_BYTES);
+        try {
+            BinaryCopyEncoder encoder = new BinaryCopyEncoder(stream);
+            for (Pending p : pending) {
+                for (Alert a : p.batch.getAlerts()) {
+                    encoder.startRow(10);
+                    encoder.writeUuid(a.getId());
+                    encoder.writeTimestamptz(a.getOccurredAt());
+                    encoder.writeText(a.getModule());
+                    encoder.writeText(a.getMetric());
+                    encoder.writeFloat8(a.getValue());
+                    encoder.writeFloat8(a.getThresholdMin());
+                    encoder.writeFloat8(a.getThresholdMax());
+                    encoder.writeText(a.getDescription());
+                    encoder.writeText(a.getSeverity());
+                    encoder.writeText(a.getState());
+                }
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException ex) {
+            cancel(stream);
+            throw ex;
+        }
+    }
+
+    private void copyAlertOutbox(Connection con, List<Pending> pending) throws SQLException, IOException {
+        if (pending.stream().allMatch(p -> p.batch.getAlerts().isEmpty())) {
+            return;
+        }
+        PGCopyOutputStream stream = new PGCopyOutputStream(con.unwrap(PGConnection.class), ALERT_OUTBOX_COPY, COPY_BUFFER_BYTES);
+        try {
+            BinaryCopyEncoder encoder = new BinaryCopyEncoder(stream);
+            for (Pending p : pending) {
+                for (Alert a : p.batch.getAlerts()) {
+                    encoder.startRow(2);
+                    encoder.writeUuid(a.getId());
+                    encoder.writeTimestamptz(a.getOccurredAt());
+                }
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException ex) {
+            cancel(stream);
+            throw ex;
+        }
+    }
+
+    private void copyMeasurements(Connection con, List<Pending> pending) throws SQLException, IOException {
+        if (pending.stream().allMatch(p -> p.batch.getMeasurements().isEmpty())) {
+            return;
+        }
+        PGCopyOutputStream stream = new PGCopyOutputStream(con.unwrap(PGConnection.class), MEASUREMENTS_COPY, COPY_BUFFER_BYTES);
+        try {
+            BinaryCopyEncoder encoder = new BinaryCopyEncoder(stream);
+            for (Pending p : pending) {
+                for (Measurement m : p.batch.getMeasurements()) {
+                    encoder.startRow(4);
+                    encoder.writeTimestamptz(m.getTs());
+                    encoder.writeInt4(m.getModuleId());
+                    encoder.writeInt4(m.getMetricId());
+                    encoder.writeFloat8(m.getValue());
+                }
+            }
+            encoder.finish();
+        } catch (IOException | RuntimeException ex) {
+            cancel(stream);
+            throw ex;
+        }
+    }
+
+    // leave the connection usable for the rollback if the COPY did not complete
+    private void cancel(PGCopyOutputStream stream) {
+        try {
+            if (stream.isActive()) {
+                stream.cancelCopy();
+            }
+        } catch (SQLException ex) {
+            log.warn("Failed to cancel COPY", ex);
+        }
+    }
+
+    private static final class Pending {
+        final IngestBatch batch;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Pending(IngestBatch batch) {
+            this.batch = batch;
+        }
+    }
+}
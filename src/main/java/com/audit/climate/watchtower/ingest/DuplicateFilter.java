@@ -0,0 +1,227 @@
+package com.audit.climate.watchtower.ingest;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DuplicateFilter recognizes redelivered messages so they are not stored, detected and
+ * published a second time.
+ *
+ * A message's fingerprint is a SHA-256, truncated to a UUID, of an identity the publisher gave
+ * it: the AMQP message id when set, else the payload's top-level id together with its device
+ * timestamp (timestamp or ts). A message with neither is not deduplicated at all, since two
+ * byte-identical readings without an identity may well be two legitimate readings. Committed fingerprints go into
+ * ingest_fingerprints, whose primary key is the final word, and into a time-partitioned Bloom
+ * filter so the common case (a message never seen) needs no database round trip. Only when the
+ * filter reports a possible hit is the table consulted.
+ *
+ * Metrics: watchtower.ingest.duplicates, watchtower.ingest.dedup.lookups,
+ * watchtower.ingest.dedup.false-positives (counters), watchtower.ingest.dedup.bloom.bytes
+ * and watchtower.ingest.dedup.bloom.fpp (estimated false-positive rate).
+ */
+@Component
+public class DuplicateFilter implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(DuplicateFilter.class);
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final long retentionHours;
+    private final TimePartitionedBloomFilter bloom;
+
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    public DuplicateFilter(JdbcTemplate jdbc,
+                           @Value("${audit.ingest.dedup.enabled:true}") boolean enabled,
+                           @Value("${audit.ingest.dedup.window-minutes:60}") long windowMinutes,
+                           @Value("${audit.ingest.dedup.partitions:6}") int partitions,
+                           @Value("${audit.ingest.dedup.expected-per-partition:100000}") long expectedPerPartition,
+                           @Value("${audit.ingest.dedup.fpp:0.01}") double fpp,
+                           @Value("${audit.ingest.dedup.retention-hours:24}") long retentionHours) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.retentionHours = retentionHours;
+        long partitionMillis = Math.max(1, TimeUnit.MINUTES.toMillis(windowMinutes) / partitions);
+        this.bloom = enabled
+                ? new TimePartitionedBloomFilter(partitions, partitionMillis, expectedPerPartition, fpp, System.currentTimeMillis())
+                : null;
+        if (enabled) {
+            log.info("Duplicate filter enabled ({} partitions x {}ms, {} hashes, {} KiB)",
+                    partitions, partitionMillis, bloom.hashCount(), bloom.sizeInBytes() / 1024);
+        }
+    }
+
+    /**
+     * Fingerprint of a message, or null when duplicate detection is disabled or the message
+     * carries no identity to deduplicate on.
+     */
+    public UUID fingerprint(Message message) {
+        if (!enabled) {
+            return null;
+        }
+        String messageId = message.getMessageProperties() != null ? message.getMessageProperties().getMessageId() : null;
+        String identity = messageId != null ? "message-id\0" + messageId : payloadIdentity(message);
+        if (identity == null) {
+            return null;
+        }
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        ByteBuffer hash = ByteBuffer.wrap(digest.digest(identity.getBytes(StandardCharsets.UTF_8)));
+        return new UUID(hash.getLong(), hash.getLong());
+    }
+
+    // "payload\0<id>\0<timestamp>" from the top-level fields, or null unless both are there
+    private static String payloadIdentity(Message message) {
+        String id = null;
+        String timestamp = null;
+        try (JsonParser p = PayloadEncoding.of(message).createParser(JSON, message.getBody())) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (p.nextToken() == JsonToken.FIELD_NAME) {
+                String field = p.currentName();
+                JsonToken token = p.nextToken();
+                if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+                    if ("id".equals(field)) {
+                        id = p.getText();
+                    } else if ("timestamp".equals(field) || ("ts".equals(field) && timestamp == null)) {
+                        timestamp = p.getText();
+                    }
+                } else {
+                    p.skipChildren();
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            // not parseable: the Canonicalizer records why; there is nothing to deduplicate on
+            return null;
+        }
+        return id != null && timestamp != null ? "payload\0" + id + "\0" + timestamp : null;
+    }
+
+    /**
+     * Whether the fingerprint belongs to a message that has already been committed.
+     * Duplicates are counted here; callers just drop the message.
+     */
+    public boolean isDuplicate(UUID fingerprint) {
+        if (fingerprint == null) {
+            return false;
+        }
+        if (!bloom.mightContain(fingerprint.getMostSignificantBits(), fingerprint.getLeastSignificantBits(),
+                System.currentTimeMillis())) {
+            return false;
+        }
+        if (isRecorded(fingerprint)) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        falsePositives.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Check the table directly, e.g. after an insert was rejected by the fingerprint key.
+     * Counts a duplicate when found.
+     */
+    public boolean confirmDuplicate(UUID fingerprint) {
+        if (fingerprint != null && isRecorded(fingerprint)) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /** Count a copy caught before reaching the table, e.g. twice in one batch. */
+    public void countDuplicate() {
+        duplicates.incrementAndGet();
+    }
+
+    /**
+     * Remember fingerprints whose messages have been committed.
+     */
+    public void remember(Iterable<UUID> fingerprints) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (UUID fp : fingerprints) {
+            bloom.put(fp.getMostSignificantBits(), fp.getLeastSignificantBits(), now);
+        }
+    }
+
+    private boolean isRecorded(UUID fingerprint) {
+        lookups.incrementAndGet();
+        Boolean found = jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM ingest_fingerprints WHERE fingerprint = ?)", Boolean.class, fingerprint);
+        return Boolean.TRUE.equals(found);
+    }
+
+    /**
+     * Drop fingerprints past the retention; redeliveries happen within minutes, not days.
+     */
+    @Scheduled(fixedDelayString = "${audit.ingest.dedup.cleanup-interval-ms:600000}")
+    public void purgeExpired() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Instant cutoff = Instant.now().minusSeconds(TimeUnit.HOURS.toSeconds(retentionHours));
+            int removed = jdbc.update("DELETE FROM ingest_fingerprints WHERE first_seen < ?", Timestamp.from(cutoff));
+            if (removed > 0) {
+                log.debug("Purged {} expired ingest fingerprints", removed);
+            }
+        } catch (Exception ex) {
+            log.warn("Failed to purge expired ingest fingerprints", ex);
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("watchtower.ingest.duplicates", duplicates, AtomicLong::get)
+                .description("Redelivered messages dropped as duplicates")
+                .register(registry);
+        FunctionCounter.builder("watchtower.ingest.dedup.lookups", lookups, AtomicLong::get)
+                .description("Fingerprint table lookups after a possible Bloom filter hit")
+                .register(registry);
+        FunctionCounter.builder("watchtower.ingest.dedup.false-positives", falsePositives, AtomicLong::get)
+                .description("Bloom filter hits the fingerprint table did not confirm")
+                .register(registry);
+        if (bloom != null) {
+            Gauge.builder("watchtower.ingest.dedup.bloom.bytes", bloom, TimePartitionedBloomFilter::sizeInBytes)
+                    .baseUnit("bytes")
+                    .register(registry);
+            Gauge.builder("watchtower.ingest.dedup.bloom.fpp", bloom, TimePartitionedBloomFilter::estimatedFalsePositiveRate)
+                    .description("Estimated false-positive rate from the current fill of the filter")
+                    .register(registry);
+        }
+    }
+}
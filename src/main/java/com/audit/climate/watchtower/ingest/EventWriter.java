@@ -0,0 +1,19 @@
+package com.audit.climate.watchtower.ingest;
+
+/**
+ * EventWriter persists ingest output (raw events and alerts).
+ * Selected with audit.persistence.writer (jpa or copy).
+ */
+public interface EventWriter {
+    /**
+     * Write the batch in a single transaction. Returns once it has been committed;
+     * throws if it was rolled back.
+     */
+    void write(IngestBatch batch);
+
+    /**
+     * Write the batch in a transaction that is always rolled back. Throws what write would
+     * have thrown, so callers can find the rows that make a batch fail without committing any.
+     */
+    void probe(IngestBatch batch);
+}
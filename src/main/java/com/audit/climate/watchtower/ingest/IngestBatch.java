@@ -0,0 +1,48 @@
+package com.audit.climate.watchtower.ingest;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.audit.RawEvent;
+import com.audit.climate.watchtower.measurements.Measurement;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * IngestBatch groups the rows produced by one or more messages that must be written atomically.
+ * Fingerprints go to ingest_fingerprints; a key violation there means a message is a duplicate.
+ * Measurements are the typed metric values of the raw events, one row per value.
+ */
+public class IngestBatch {
+    private final List<RawEvent> rawEvents;
+    private final List<Alert> alerts;
+    private final List<UUID> fingerprints;
+    private final List<Measurement> measurements;
+
+    public IngestBatch(List<RawEvent> rawEvents, List<Alert> alerts) {
+        this(rawEvents, alerts, List.of());
+    }
+
+    public IngestBatch(List<RawEvent> rawEvents, List<Alert> alerts, List<UUID> fingerprints) {
+        this(rawEvents, alerts, fingerprints, List.of());
+    }
+
+    public IngestBatch(List<RawEvent> rawEvents, List<Alert> alerts, List<UUID> fingerprints, List<Measurement> measurements) {
+        this.rawEvents = rawEvents;
+        this.alerts = alerts;
+        this.fingerprints = fingerprints;
+        this.measurements = measurements;
+    }
+
+    public List<RawEvent> getRawEvents() { return rawEvents; }
+    public List<Alert> getAlerts() { return alerts; }
+    public List<UUID> getFingerprints() { return fingerprints; }
+    public List<Measurement> getMeasurements() { return measurements; }
+
+    public int rowCount() {
+        return rawEvents.size() + alerts.size() + fingerprints.size() + measurements.size();
+    }
+
+    public boolean isEmpty() {
+        return rawEvents.isEmpty() && alerts.isEmpty() && fingerprints.isEmpty() && measurements.isEmpty();
+    }
+}
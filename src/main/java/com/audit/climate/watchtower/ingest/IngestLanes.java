@@ -0,0 +1,183 @@
+package com.audit.climate.watchtower.ingest;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IngestLanes is a fixed set of single-threaded worker lanes. A key (module, or channel when
+ * there is no module) always hashes to the same lane, so work for one key runs strictly in
+ * submission order while different lanes run in parallel.
+ *
+ * Lane queues are bounded; a full lane blocks the submitting consumer thread, which in turn
+ * stops pulling from RabbitMQ. Disabled by default, in which case callers run work inline.
+ *
+ * In virtual-thread mode each lane is backed by a virtual thread, so lanes are cheap enough to
+ * run many more of them than there are cores (VIRTUAL_LANES by default): a lane blocked on the
+ * database no longer holds up the keys of every other module hashed to it. A fair semaphore
+ * caps how many lane tasks run at once (the connection pool size by default), so the extra
+ * lanes queue for a permit instead of piling onto the pool's connection timeout.
+ *
+ * Virtual-thread mode requires lanes; enabling it without them fails startup.
+ *
+ * Metrics (virtual-thread mode): watchtower.ingest.lanes.active and .waiting (gauges, tasks
+ * holding and queued for a permit) and watchtower.ingest.lanes.wait (timer, time a task
+ * waited for its permit); a growing wait means the database has become the limit.
+ */
+@Component
+public class IngestLanes implements MeterBinder {
+    private static final Logger log = LoggerFactory.getLogger(IngestLanes.class);
+
+    static final int VIRTUAL_LANES = 256;
+
+    private final ThreadPoolExecutor[] lanes;
+    private final Semaphore permits; // null = lanes run unthrottled
+    private final int maxConcurrency;
+    private volatile Timer permitWait;
+
+    public IngestLanes(@Value("${audit.ingest.lanes.enabled:false}") boolean enabled,
+                       @Value("${audit.ingest.lanes.count:0}") int count,
+                       @Value("${audit.ingest.lanes.queue-capacity:1000}") int queueCapacity,
+                       @Value("${audit.ingest.virtual-threads:false}") boolean virtualThreads,
+                       @Value("${audit.ingest.virtual-threads.max-concurrency:0}") int maxConcurrency,
+                       @Value("${spring.datasource.hikari.maximum-pool-size:10}") int poolSize) {
+        if (!enabled) {
+            if (virtualThreads) {
+                throw new IllegalArgumentException(
+                        "audit.ingest.virtual-threads requires audit.ingest.lanes.enabled=true");
+            }
+            this.lanes = new ThreadPoolExecutor[0];
+            this.permits = null;
+            this.maxConcurrency = 0;
+            return;
+        }
+        int laneCount = count > 0 ? count
+                : virtualThreads ? VIRTUAL_LANES : Runtime.getRuntime().availableProcessors();
+        this.maxConcurrency = virtualThreads ? (maxConcurrency > 0 ? maxConcurrency : poolSize) : 0;
+        this.permits = virtualThreads ? new Semaphore(this.maxConcurrency, true) : null;
+        this.lanes = new ThreadPoolExecutor[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            String name = "ingest-lane-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    virtualThreads ? Thread.ofVirtual().name(name).factory() : r -> {
+                        Thread t = new Thread(r, name);
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    BLOCK_WHEN_FULL);
+        }
+        log.info("Ingest lanes enabled (lanes={}, queueCapacity={}, virtualThreads={}, maxConcurrency={})",
+                laneCount, queueCapacity, virtualThreads, virtualThreads ? this.maxConcurrency : laneCount);
+    }
+
+    public boolean isEnabled() {
+        return lanes.length > 0;
+    }
+
+    public int laneCount() {
+        return lanes.length;
+    }
+
+    public int laneOf(String key) {
+        if (lanes.length == 0) {
+            return 0;
+        }
+        int h = key != null ? key.hashCode() : 0;
+        // spread the bits so keys that differ only in high bits still land on different lanes
+        h ^= (h >>> 16);
+        return Math.floorMod(h, lanes.length);
+    }
+
+    /**
+     * Run the task on the given lane. Runs inline when lanes are disabled.
+     */
+    public CompletableFuture<Void> submit(int lane, Runnable task) {
+        if (lanes.length == 0) {
+            try {
+                task.run();
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+        return CompletableFuture.runAsync(permits != null ? throttled(task) : task, lanes[lane]);
+    }
+
+    private Runnable throttled(Runnable task) {
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a lane permit", ex);
+            }
+            Timer timer = permitWait;
+            if (timer != null) {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        };
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        if (permits == null) {
+            return;
+        }
+        Gauge.builder("watchtower.ingest.lanes.active", permits, p -> maxConcurrency - p.availablePermits())
+                .description("Lane tasks currently holding a permit")
+                .register(registry);
+        Gauge.builder("watchtower.ingest.lanes.waiting", permits, Semaphore::getQueueLength)
+                .description("Lane tasks waiting for a permit")
+                .register(registry);
+        permitWait = Timer.builder("watchtower.ingest.lanes.wait")
+                .description("Time a lane task waited for a permit")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+        for (ThreadPoolExecutor lane : lanes) {
+            if (!lane.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Ingest lane did not drain within 10s");
+            }
+        }
+    }
+
+    // keeps order and applies backpressure instead of dropping or running on the caller
+    private static final RejectedExecutionHandler BLOCK_WHEN_FULL = (r, executor) -> {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Ingest lane is shut down");
+        }
+        try {
+            executor.getQueue().put(r);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for lane capacity", ex);
+        }
+    };
+}
@@ -0,0 +1,421 @@
+package com.audit.climate.watchtower.ingest;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.alerts.AlertService;
+import com.audit.climate.watchtower.audit.RawEvent;
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
+import com.audit.climate.watchtower.detection.AlertStateTracker;
+import com.audit.climate.watchtower.detection.DetectorRegistry;
+import com.audit.climate.watchtower.measurements.Measurement;
+import com.audit.climate.watchtower.measurements.MeasurementKeys;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * IngestPipeline runs the per-message work of the audit listener:
+ * 1. Canonicalize into CanonicalEvent (failures are recorded as classification)
+ * 2. Drop redeliveries of messages already committed (see DuplicateFilter)
+ * 3. Run detectors to get alerts
+ * 4. Insert the raw event, classification included, together with its alerts, measurements and fingerprint
+ * 5. Publish alerts once committed
+ *
+ * Batches are canonicalized and detected in memory, then raw events and alerts
+ * are written in a single transaction. Detection stages its alert series changes, which are
+ * applied only once the batch is handled; a batch that throws to be redelivered leaves the
+ * series as they were, so the redelivery reports the same transitions. A failed batch is probed in halves, in transactions
+ * that are rolled back, until the offending messages are isolated; the rest is then committed
+ * together with the quarantined payloads, so one bad message does not sink the rest. Messages
+ * stored without their alerts (quarantined) or dropped as duplicates must not move the series
+ * either, so the stored ones are then detected again on a fresh view and only that is committed.
+ */
+@Component
+public class IngestPipeline {
+    private static final Logger log = LoggerFactory.getLogger(IngestPipeline.class);
+
+    private final EventWriter eventWriter;
+    private final Canonicalizer canonicalizer;
+    private final DetectorRegistry detectorRegistry;
+    private final AlertService alertService;
+    private final ObjectMapper objectMapper;
+    private final IngestLanes lanes;
+    private final DuplicateFilter duplicates;
+    private final MeasurementKeys measurementKeys;
+
+    public IngestPipeline(EventWriter eventWriter,
+                          Canonicalizer canonicalizer,
+                          DetectorRegistry detectorRegistry,
+                          AlertService alertService,
+                          ObjectMapper objectMapper,
+                          IngestLanes lanes,
+                          DuplicateFilter duplicates,
+                          MeasurementKeys measurementKeys) {
+        this.eventWriter = eventWriter;
+        this.canonicalizer = canonicalizer;
+        this.detectorRegistry = detectorRegistry;
+        this.alertService = alertService;
+        this.objectMapper = objectMapper;
+        this.lanes = lanes;
+        this.duplicates = duplicates;
+        this.measurementKeys = measurementKeys;
+    }
+
+    /**
+     * Process a single message. The raw event is inserted once with its classification
+     * already set; errors are logged and the message is considered handled.
+     */
+    public void process(Message message) {
+        try {
+            PreparedEvent event = canonicalize(message);
+            if (duplicates.isDuplicate(event.fingerprint)) {
+                return;
+            }
+            AlertStateTracker.Staged staged = detectorRegistry.stage();
+            detect(event, staged);
+            persistIsolating(List.of(event), staged).commit();
+        } catch (Exception ex) {
+            log.error("Failed to process message", ex);
+        }
+    }
+
+    /**
+     * Lane mode: canonicalize on the calling consumer thread, then detect and persist on the
+     * lane that owns the event's module, so each module is handled strictly in order.
+     * The future completes once the lane is done with the message; it fails only when the
+     * database is unreachable and the message should be redelivered.
+     */
+    public CompletableFuture<Void> processAsync(Message message) {
+        PreparedEvent event = canonicalize(message);
+        return lanes.submit(lanes.laneOf(event.laneKey), () -> {
+            try {
+                if (duplicates.isDuplicate(event.fingerprint)) {
+                    return;
+                }
+                AlertStateTracker.Staged staged = detectorRegistry.stage();
+                detect(event, staged);
+                persistIsolating(List.of(event), staged).commit();
+            } catch (RuntimeException ex) {
+                if (isTransient(ex)) {
+                    throw ex;
+                }
+                log.error("Failed to process message", ex);
+            }
+        });
+    }
+
+    /**
+     * Process a batch of messages. Returns normally once every message has either been
+     * committed or isolated and logged, so the caller can ack the whole batch.
+     * Throws when the database is unreachable so the batch is redelivered instead of dropped.
+     * With lanes enabled detection is split per lane, keeping each module's messages in order;
+     * the batch is still committed as a whole once every lane has finished its share.
+     */
+    public void processBatch(List<Message> messages) {
+        List<PreparedEvent> prepared = new ArrayList<>(messages.size());
+        Set<UUID> fingerprints = new HashSet<>();
+        for (Message message : messages) {
+            PreparedEvent event = canonicalize(message);
+            // a copy may arrive in the same batch as its original, before either is committed
+            if (event.fingerprint != null && !fingerprints.add(event.fingerprint)) {
+                duplicates.countDuplicate();
+                continue;
+            }
+            if (!duplicates.isDuplicate(event.fingerprint)) {
+                prepared.add(event);
+            }
+        }
+
+        AlertStateTracker.Staged staged = detectorRegistry.stage();
+        AlertStateTracker.Staged stored;
+        if (!lanes.isEnabled()) {
+            prepared.forEach(event -> detect(event, staged));
+            stored = persistIsolating(prepared, staged);
+        } else {
+            List<List<PreparedEvent>> byLane = new ArrayList<>(lanes.laneCount());
+            for (int i = 0; i < lanes.laneCount(); i++) {
+                byLane.add(new ArrayList<>());
+            }
+            for (PreparedEvent event : prepared) {
+                byLane.get(lanes.laneOf(event.laneKey)).add(event);
+            }
+
+            // lanes only detect; the whole delivery is then committed in one transaction, so a
+            // failing lane cannot leave the other lanes' shares committed behind a redelivery
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int lane = 0; lane < byLane.size(); lane++) {
+                List<PreparedEvent> share = byLane.get(lane);
+                if (!share.isEmpty()) {
+                    futures.add(lanes.submit(lane, () -> share.forEach(event -> detect(event, staged))));
+                }
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+            stored = persistIsolating(prepared, staged);
+        }
+        stored.commit();
+        log.debug("Processed batch of {} messages", messages.size());
+    }
+
+    /**
+     * Canonicalize in memory. Canonicalization failures are recorded on the
+     * raw event's classification so the payload still lands in the ledger.
+     */
+    PreparedEvent canonicalize(Message message) {
+        PayloadEncoding encoding = PayloadEncoding.of(message);
+        RawEvent rawEvent;
+        if (encoding.isBinary()) {
+            log.debug("Received {} message of {} bytes", encoding.tag(), message.getBody().length);
+            rawEvent = new RawEvent(message.getBody(), encoding.tag());
+        } else {
+            String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+            log.debug("Received raw message: {}", payload);
+            rawEvent = new RawEvent(payload);
+        }
+        UUID fingerprint = duplicates.fingerprint(message);
+
+        try {
+            CanonicalEvent canonicalEvent = canonicalizer.canonicalize(message.getBody(), message);
+            rawEvent.setClassification(classify(canonicalEvent));
+            return new PreparedEvent(rawEvent, canonicalEvent, canonicalEvent.getModule(), fingerprint);
+        } catch (Exception ex) {
+            log.error("Failed to canonicalize raw message", ex);
+            rawEvent.setClassification(failure("canonicalization_failed", ex));
+            return new PreparedEvent(rawEvent, null, canonicalizer.extractChannel(message), fingerprint);
+        }
+    }
+
+    /**
+     * Run detectors for a canonicalized event. Must run on the event's lane when lanes are enabled.
+     */
+    void detect(PreparedEvent event, AlertStateTracker.Staged staged) {
+        if (event.canonicalEvent != null) {
+            event.alerts = detectorRegistry.runDetectors(event.canonicalEvent, staged);
+        }
+    }
+
+    /**
+     * Store the events with their alerts, isolating the ones the database rejects.
+     * @param staged the view the events were detected on
+     * @return the view to commit: staged when every event was stored with its alerts, otherwise
+     *         one holding only the stored events' detection
+     */
+    private AlertStateTracker.Staged persistIsolating(List<PreparedEvent> events, AlertStateTracker.Staged staged) {
+        try {
+            persist(events);
+            return staged;
+        } catch (RuntimeException ex) {
+            if (isTransient(ex)) {
+                throw ex;
+            }
+            if (events.size() == 1) {
+                if (!isDuplicate(events.get(0), ex)) {
+                    quarantine(events.get(0), ex);
+                }
+                return detectorRegistry.stage();
+            }
+            log.warn("Batch of {} failed to persist, splitting to isolate the offending messages", events.size());
+        }
+
+        // Probe halves in rolled-back transactions and commit only once the offenders are known:
+        // a transient failure at any point then leaves nothing committed, so redelivering the
+        // whole batch cannot store any of it twice.
+        Map<PreparedEvent, RuntimeException> rejected = new LinkedHashMap<>();
+        findRejected(events, rejected);
+        List<PreparedEvent> accepted = new ArrayList<>(events.size());
+        List<RawEvent> quarantined = new ArrayList<>(rejected.size());
+        List<UUID> quarantinedFingerprints = new ArrayList<>(rejected.size());
+        for (PreparedEvent event : events) {
+            RuntimeException cause = rejected.get(event);
+            if (cause == null) {
+                accepted.add(event);
+            } else if (!isDuplicate(event, cause)) {
+                quarantined.add(quarantined(event, cause));
+                if (event.fingerprint != null) {
+                    quarantinedFingerprints.add(event.fingerprint);
+                }
+            }
+        }
+        AlertStateTracker.Staged restaged = staged;
+        if (!rejected.isEmpty()) {
+            // the rejected events' transitions are mixed into series the others share; detect the
+            // others again without them (the lanes are done with this batch, so in order on this thread)
+            AlertStateTracker.Staged view = detectorRegistry.stage();
+            accepted.forEach(event -> detect(event, view));
+            restaged = view;
+        }
+        try {
+            persist(accepted, quarantined, quarantinedFingerprints);
+        } catch (RuntimeException ex) {
+            if (isTransient(ex) || quarantined.isEmpty()) {
+                throw ex;
+            }
+            // a quarantine row was rejected as well; store the healthy messages without them
+            rejected.forEach((event, cause) -> log.error("Dropping message that cannot be persisted: {}",
+                    describe(event.rawEvent), cause));
+            persist(accepted);
+            return restaged;
+        }
+        quarantined.forEach(rawEvent -> log.error("Isolated message failed to persist; stored raw event {} without alerts",
+                rawEvent.getId()));
+        return restaged;
+    }
+
+    private void findRejected(List<PreparedEvent> events, Map<PreparedEvent, RuntimeException> rejected) {
+        int mid = events.size() / 2;
+        for (List<PreparedEvent> half : List.of(events.subList(0, mid), events.subList(mid, events.size()))) {
+            try {
+                eventWriter.probe(batchOf(half, List.of(), List.of()));
+            } catch (RuntimeException ex) {
+                if (isTransient(ex)) {
+                    throw ex;
+                }
+                if (half.size() == 1) {
+                    rejected.put(half.get(0), ex);
+                } else {
+                    findRejected(half, rejected);
+                }
+            }
+        }
+    }
+
+    // the fingerprint key rejected it: another delivery of this message got there first
+    private boolean isDuplicate(PreparedEvent event, RuntimeException cause) {
+        if (cause instanceof DataIntegrityViolationException && duplicates.confirmDuplicate(event.fingerprint)) {
+            log.info("Dropped duplicate delivery of an already committed message");
+            return true;
+        }
+        return false;
+    }
+
+    private void persist(List<PreparedEvent> events) {
+        persist(events, List.of(), List.of());
+    }
+
+    private void persist(List<PreparedEvent> events, List<RawEvent> quarantined, List<UUID> quarantinedFingerprints) {
+        IngestBatch batch = batchOf(events, quarantined, quarantinedFingerprints);
+        eventWriter.write(batch);
+        duplicates.remember(batch.getFingerprints());
+
+        // The alerts' outbox rows were committed with the batch; let the relay pick them up now
+        alertService.publish(batch.getAlerts());
+    }
+
+    private IngestBatch batchOf(List<PreparedEvent> events, List<RawEvent> quarantined, List<UUID> quarantinedFingerprints) {
+        List<RawEvent> rawEvents = new ArrayList<>(events.size() + quarantined.size());
+        List<Alert> alerts = new ArrayList<>();
+        List<UUID> fingerprints = new ArrayList<>(events.size() + quarantinedFingerprints.size());
+        List<Measurement> measurements = new ArrayList<>();
+        for (PreparedEvent event : events) {
+            rawEvents.add(event.rawEvent);
+            alerts.addAll(event.alerts);
+            if (event.fingerprint != null) {
+                fingerprints.add(event.fingerprint);
+            }
+            if (event.canonicalEvent != null) {
+                measurementKeys.collect(event.canonicalEvent, measurements);
+            }
+        }
+        rawEvents.addAll(quarantined);
+        fingerprints.addAll(quarantinedFingerprints);
+        return new IngestBatch(rawEvents, alerts, fingerprints, measurements);
+    }
+
+    /**
+     * A single message that still fails on its own: keep the raw payload in the ledger
+     * without its alerts or measurements. If even that is rejected the message is logged and dropped.
+     */
+    private void quarantine(PreparedEvent event, Exception cause) {
+        RawEvent rawEvent = quarantined(event, cause);
+        try {
+            // keep the fingerprint so redeliveries of a poison message are not quarantined again
+            List<UUID> fingerprints = event.fingerprint != null ? List.of(event.fingerprint) : List.of();
+            eventWriter.write(new IngestBatch(List.of(rawEvent), List.of(), fingerprints));
+            duplicates.remember(fingerprints);
+            log.error("Isolated message failed to persist; stored raw event {} without alerts", rawEvent.getId(), cause);
+        } catch (RuntimeException ex) {
+            if (isTransient(ex)) {
+                throw ex;
+            }
+            log.error("Dropping message that cannot be persisted: {}", describe(event.rawEvent), ex);
+        }
+    }
+
+    private RawEvent quarantined(PreparedEvent event, Exception cause) {
+        RawEvent rawEvent = event.rawEvent.copyPayload();
+        rawEvent.setClassification(failure("persist_failed", cause));
+        return rawEvent;
+    }
+
+    private static String describe(RawEvent rawEvent) {
+        return rawEvent.getPayload() != null
+                ? rawEvent.getPayload()
+                : rawEvent.getEncoding() + " payload of " + rawEvent.getPayloadRaw().length + " bytes";
+    }
+
+    private boolean isTransient(Throwable ex) {
+        return ex instanceof TransientDataAccessException
+                || ex instanceof DataAccessResourceFailureException
+                || ex instanceof CannotCreateTransactionException;
+    }
+
+    private String classify(CanonicalEvent canonicalEvent) throws Exception {
+        Map<String, Object> classification = new HashMap<>();
+        classification.put("eventType", canonicalEvent.getEventType());
+        classification.put("channel", canonicalEvent.getChannel());
+        classification.put("module", canonicalEvent.getModule());
+        classification.put("timestamp", canonicalEvent.getTimestamp().toString());
+        classification.put("payloadKeys", canonicalEvent.getPayload().keySet());
+        return objectMapper.writeValueAsString(classification);
+    }
+
+    private String failure(String status, Exception ex) {
+        try {
+            return objectMapper.writeValueAsString(
+                Map.of("status", status, "message", String.valueOf(ex.getMessage()))
+            );
+        } catch (Exception jsonEx) {
+            return "{\"status\":\"" + status + "\"}";
+        }
+    }
+
+    static final class PreparedEvent {
+        final RawEvent rawEvent;
+        final CanonicalEvent canonicalEvent; // null when canonicalization failed
+        final String laneKey;
+        final UUID fingerprint; // null when duplicate detection is disabled
+        List<Alert> alerts = List.of();
+
+        PreparedEvent(RawEvent rawEvent, CanonicalEvent canonicalEvent, String laneKey, UUID fingerprint) {
+            this.rawEvent = rawEvent;
+            this.canonicalEvent = canonicalEvent;
+            this.laneKey = laneKey;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.audit.climate.watchtower.ingest;
+
+import com.audit.climate.watchtower.alerts.AlertService;
+import com.audit.climate.watchtower.audit.RawEventRepository;
+import com.audit.climate.watchtower.measurements.Measurement;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * JpaEventWriter writes through the Spring Data repositories. Default writer.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.persistence.writer", havingValue = "jpa", matchIfMissing = true)
+public class JpaEventWriter implements EventWriter {
+    private final RawEventRepository rawEventRepository;
+    private final AlertService alertService;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+
+    public JpaEventWriter(RawEventRepository rawEventRepository,
+                          AlertService alertService,
+                          JdbcTemplate jdbc,
+                          PlatformTransactionManager transactionManager) {
+        this.rawEventRepository = rawEventRepository;
+        this.alertService = alertService;
+        this.jdbc = jdbc;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Override
+    public void write(IngestBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> insert(batch));
+    }
+
+    @Override
+    public void probe(IngestBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            insert(batch);
+            // surface constraint violations now rather than at a commit that never happens
+            rawEventRepository.flush();
+            status.setRollbackOnly();
+        });
+    }
+
+    private void insert(IngestBatch batch) {
+        // fingerprints first, so a duplicate fails the transaction before anything else is flushed
+        insertFingerprints(batch.getFingerprints());
+        rawEventRepository.saveAll(batch.getRawEvents());
+        alertService.persist(batch.getAlerts());
+        insertMeasurements(batch.getMeasurements());
+    }
+
+    private void insertFingerprints(List<UUID> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+        Timestamp now = Timestamp.from(Instant.now());
+        jdbc.batchUpdate("INSERT INTO ingest_fingerprints (fingerprint, first_seen) VALUES (?, ?)",
+                fingerprints, fingerprints.size(), (ps, fp) -> {
+                    ps.setObject(1, fp);
+                    ps.setTimestamp(2, now);
+                });
+    }
+
+    private void insertMeasurements(List<Measurement> measurements) {
+        if (measurements.isEmpty()) {
+            return;
+        }
+        jdbc.batchUpdate("INSERT INTO measurements (ts, module_id, metric_id, value) VALUES (?, ?, ?, ?)",
+                measurements, measurements.size(), (ps, m) -> {
+                    ps.setTimestamp(1, Timestamp.from(m.getTs()));
+                    ps.setInt(2, m.getModuleId());
+                    ps.setInt(3, m.getMetricId());
+                    ps.setDouble(4, m.getValue());
+                });
+    }
+}
@@ -1,57 +1,52 @@
 package com.audit.climate.watchtower.ingest;
 
-import com.audit.climate.watchtower.alerts.Alert;
-import com.audit.climate.watchtower.alerts.AlertService;
-import com.audit.climate.watchtower.audit.RawEvent;
-import com.audit.climate.watchtower.audit.RawEventRepository;
-import com.audit.climate.watchtower.canonical.Canonicalizer;
-import com.audit.climate.watchtower.detection.DetectorRegistry;
-import com.audit.climate.watchtower.preprocess.CanonicalEvent;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rabbitmq.client.Channel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AcknowledgeMode;
+import org.springframework.amqp.core.BatchMessageListener;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.connection.ConnectionFactory;
 import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.api.ChannelAwareMessageListener;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.nio.charset.StandardCharsets;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
- * MultiQueueAuditListener orchestrates the complete pipeline:
- * 1. Persist raw event
- * 2. Canonicalize into CanonicalEvent
- * 3. Run detectors to get alerts
- * 4. Persist and publish alerts
+ * MultiQueueAuditListener wires the audit queues to the IngestPipeline.
+ * In single mode every message runs through the pipeline on its own.
+ * In batch mode up to audit.listener.batch.size messages (or whatever arrived within
+ * audit.listener.batch.max-wait-ms) are processed together and acked once after commit.
+ *
+ * With audit.ingest.lanes.enabled the work fans out to IngestLanes keyed by module. The
+ * container keeps a single consumer so delivery order is preserved up to the lanes. In batch
+ * mode the lanes only run detection and the batch commits as one; in single mode acks become
+ * manual and are sent only after the message's lane is done with it.
+ *
+ * Bodies are passed on untouched; the content_type decides whether they are read as JSON,
+ * CBOR or Smile (see PayloadEncoding).
  */
 @Component
 public class MultiQueueAuditListener {
     private static final Logger log = LoggerFactory.getLogger(MultiQueueAuditListener.class);
 
     private final SimpleMessageListenerContainer container;
-    private final RawEventRepository rawEventRepository;
-    private final Canonicalizer canonicalizer;
-    private final DetectorRegistry detectorRegistry;
-    private final AlertService alertService;
-    private final ObjectMapper objectMapper;
+    private final IngestPipeline pipeline;
     private final String[] queues;
 
-    public MultiQueueAuditListener(RawEventRepository rawEventRepository,
-                                   Canonicalizer canonicalizer,
-                                   DetectorRegistry detectorRegistry,
-                                   AlertService alertService,
-                                   ObjectMapper objectMapper,
+    public MultiQueueAuditListener(IngestPipeline pipeline,
+                                   IngestLanes lanes,
                                    ConnectionFactory connectionFactory,
-                                   @Value("${audit.queues:test.queue}") String queuesCsv) {
-        this.rawEventRepository = rawEventRepository;
-        this.canonicalizer = canonicalizer;
-        this.detectorRegistry = detectorRegistry;
-        this.alertService = alertService;
-        this.objectMapper = objectMapper;
+                                   @Value("${audit.queues:test.queue}") String queuesCsv,
+                                   @Value("${audit.listener.batch.enabled:false}") boolean batchEnabled,
+                                   @Value("${audit.listener.batch.size:100}") int batchSize,
+                                   @Value("${audit.listener.batch.max-wait-ms:500}") long batchMaxWaitMs,
+                                   @Value("${audit.ingest.lanes.prefetch:250}") int lanePrefetch) {
+        this.pipeline = pipeline;
 
         this.queues = Arrays.stream(queuesCsv.split(","))
                 .map(String::trim)
@@ -64,53 +59,51 @@ public class MultiQueueAuditListener {
         this.container.setQueueNames(this.queues);
         this.container.setMissingQueuesFatal(false);
 
-        this.container.setMessageListener((org.springframework.amqp.core.Message message) -> {
-            String payload = new String(message.getBody(), StandardCharsets.UTF_8);
-            log.debug("Received raw message: {}", payload);
-
-            try {
-                // Step 1: Persist raw event
-                RawEvent rawEvent = new RawEvent(payload);
-                rawEventRepository.save(rawEvent);
-                log.debug("Persisted raw event id={}", rawEvent.getId());
-
-                // Step 2: Canonicalize
-                CanonicalEvent canonicalEvent;
+        if (batchEnabled) {
+            // The container acks the whole batch once the listener returns, i.e. after commit.
+            // If the listener throws, the batch is rejected and redelivered.
+            this.container.setConsumerBatchEnabled(true);
+            this.container.setBatchSize(batchSize);
+            this.container.setBatchReceiveTimeout(batchMaxWaitMs);
+            this.container.setMessageListener((BatchMessageListener) pipeline::processBatch);
+            log.info("Audit listener in batch mode (size={}, maxWaitMs={})", batchSize, batchMaxWaitMs);
+        } else if (lanes.isEnabled()) {
+            this.container.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+            this.container.setPrefetchCount(lanePrefetch);
+            this.container.setMessageListener((ChannelAwareMessageListener) (message, channel) -> {
+                long deliveryTag = message.getMessageProperties().getDeliveryTag();
+                CompletableFuture<Void> done;
                 try {
-                    canonicalEvent = canonicalizer.canonicalize(payload, message);
-
-                    // Store classification metadata
-                    Map<String, Object> classification = new HashMap<>();
-                    classification.put("eventType", canonicalEvent.getEventType());
-                    classification.put("channel", canonicalEvent.getChannel());
-                    classification.put("timestamp", canonicalEvent.getTimestamp().toString());
-                    classification.put("payloadKeys", canonicalEvent.getPayload().keySet());
-                    rawEvent.setClassification(objectMapper.writeValueAsString(classification));
-                    rawEventRepository.save(rawEvent);
-                } catch (Exception ex) {
-                    log.error("Failed to canonicalize raw event {}", rawEvent.getId(), ex);
-                    rawEvent.setClassification(objectMapper.writeValueAsString(
-                        Map.of("status", "canonicalization_failed", "message", ex.getMessage())
-                    ));
-                    rawEventRepository.save(rawEvent);
-                    return;
+                    done = pipeline.processAsync(message);
+                } catch (RuntimeException ex) {
+                    // e.g. lanes shutting down; nothing ran, so hand the message back
+                    done = CompletableFuture.failedFuture(ex);
                 }
-
-                // Step 3: Run detectors
-                List<Alert> alerts = detectorRegistry.runDetectors(canonicalEvent);
-
-                // Step 4: Persist and publish alerts
-                alertService.persistAndPublish(alerts);
-
-            } catch (Exception ex) {
-                log.error("Failed to process message", ex);
-            }
-        });
+                done.whenComplete((ok, ex) -> acknowledge(channel, deliveryTag, ex));
+            });
+            log.info("Audit listener dispatching to {} ingest lanes (prefetch={})", lanes.laneCount(), lanePrefetch);
+        } else {
+            this.container.setMessageListener((Message message) -> pipeline.process(message));
+        }
 
         // Start the container
         container.setAutoStartup(true);
         container.start();
         log.info("Started audit listener for queues: {}", String.join(",", queues));
     }
-}
 
+    // requeue only when the lane gave up because the database was unreachable
+    private void acknowledge(Channel channel, long deliveryTag, Throwable failure) {
+        try {
+            if (failure == null) {
+                channel.basicAck(deliveryTag, false);
+            } else {
+                log.warn("Requeueing message {} after lane failure", deliveryTag, failure);
+                channel.basicNack(deliveryTag, false, true);
+            }
+        } catch (IOException | RuntimeException ex) {
+            // the channel is gone (e.g. AlreadyClosedException); the broker redelivers unacked messages
+            log.error("Failed to acknowledge message {}", deliveryTag, ex);
+        }
+    }
+}
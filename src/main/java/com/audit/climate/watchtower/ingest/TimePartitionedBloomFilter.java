@@ -0,0 +1,133 @@
+package com.audit.climate.watchtower.ingest;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * TimePartitionedBloomFilter remembers 128-bit fingerprints for a sliding window.
+ *
+ * The window is split into a ring of equally sized Bloom filters. Inserts go to the newest
+ * one; lookups check all of them. When the newest partition has covered its share of the
+ * window the oldest is cleared and reused, so memory stays fixed no matter the traffic.
+ * Bits are set with CAS, lookups and inserts never lock; only rotation does.
+ */
+public class TimePartitionedBloomFilter {
+    private final AtomicLongArray[] partitions;
+    private final int bitsPerPartition;
+    private final int hashes;
+    private final long partitionMillis;
+
+    private volatile int current;
+    private volatile long currentStartedAt;
+
+    /**
+     * @param partitions number of partitions the window is split into
+     * @param partitionMillis time each partition takes inserts for
+     * @param expectedPerPartition insertions a partition is sized for
+     * @param fpp target false-positive rate of one full partition
+     */
+    public TimePartitionedBloomFilter(int partitions, long partitionMillis, long expectedPerPartition, double fpp, long now) {
+        if (partitions < 1 || partitionMillis < 1 || expectedPerPartition < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter sizing");
+        }
+        // standard sizing: m = -n ln p / (ln 2)^2, k = m/n ln 2; m rounded up to whole words
+        long bits = (long) Math.ceil(-expectedPerPartition * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        long words = Math.max(1, (bits + 63) / 64);
+        if (words > Integer.MAX_VALUE / 64) {
+            throw new IllegalArgumentException("Bloom filter partition too large");
+        }
+        this.bitsPerPartition = (int) (words * 64);
+        this.hashes = Math.max(1, (int) Math.round((double) bitsPerPartition / expectedPerPartition * Math.log(2)));
+        this.partitionMillis = partitionMillis;
+        this.partitions = new AtomicLongArray[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new AtomicLongArray((int) words);
+        }
+        this.currentStartedAt = now;
+    }
+
+    public boolean mightContain(long hi, long lo, long now) {
+        rotateIfDue(now);
+        for (AtomicLongArray partition : partitions) {
+            if (contains(partition, hi, lo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void put(long hi, long lo, long now) {
+        rotateIfDue(now);
+        AtomicLongArray partition = partitions[current];
+        // Kirsch-Mitzenmacher: the i-th probe is h1 + i*h2
+        long combined = hi;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(combined, bitsPerPartition);
+            int word = bit >>> 6;
+            long mask = 1L << bit;
+            long prev = partition.get(word);
+            while ((prev & mask) == 0 && !partition.compareAndSet(word, prev, prev | mask)) {
+                prev = partition.get(word);
+            }
+            combined += lo;
+        }
+    }
+
+    private boolean contains(AtomicLongArray partition, long hi, long lo) {
+        long combined = hi;
+        for (int i = 0; i < hashes; i++) {
+            int bit = (int) Long.remainderUnsigned(combined, bitsPerPartition);
+            if ((partition.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+            combined += lo;
+        }
+        return true;
+    }
+
+    private void rotateIfDue(long now) {
+        if (now - currentStartedAt < partitionMillis) {
+            return;
+        }
+        synchronized (this) {
+            // after a long pause several partitions may have expired at once
+            int steps = 0;
+            while (now - currentStartedAt >= partitionMillis && steps < partitions.length) {
+                int next = (current + 1) % partitions.length;
+                AtomicLongArray oldest = partitions[next];
+                for (int i = 0; i < oldest.length(); i++) {
+                    oldest.set(i, 0L);
+                }
+                current = next;
+                currentStartedAt += partitionMillis;
+                steps++;
+            }
+            if (now - currentStartedAt >= partitionMillis) {
+                currentStartedAt = now;
+            }
+        }
+    }
+
+    /**
+     * Probability that a fingerprint never inserted is reported as present,
+     * estimated from how full each partition currently is.
+     */
+    public double estimatedFalsePositiveRate() {
+        double miss = 1.0;
+        for (AtomicLongArray partition : partitions) {
+            long set = 0;
+            for (int i = 0; i < partition.length(); i++) {
+                set += Long.bitCount(partition.get(i));
+            }
+            miss *= 1.0 - Math.pow((double) set / bitsPerPartition, hashes);
+        }
+        return 1.0 - miss;
+    }
+
+    public long sizeInBytes() {
+        return (long) partitions.length * bitsPerPartition / 8;
+    }
+
+    public int hashCount() {
+        return hashes;
+    }
+}
@@ -0,0 +1,26 @@
+package com.audit.climate.watchtower.measurements;
+
+import java.time.Instant;
+
+/**
+ * One row of the measurements hypertable: a single metric value of a module at a point in time.
+ * Module and metric are the stable ids of module_names and metric_names (see MeasurementKeys).
+ */
+public final class Measurement {
+    private final Instant ts;
+    private final int moduleId;
+    private final int metricId;
+    private final double value;
+
+    public Measurement(Instant ts, int moduleId, int metricId, double value) {
+        this.ts = ts;
+        this.moduleId = moduleId;
+        this.metricId = metricId;
+        this.value = value;
+    }
+
+    public Instant getTs() { return ts; }
+    public int getModuleId() { return moduleId; }
+    public int getMetricId() { return metricId; }
+    public double getValue() { return value; }
+}
@@ -0,0 +1,104 @@
+package com.audit.climate.watchtower.measurements;
+
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * MeasurementKeys turns canonical events into measurement rows.
+ *
+ * MetricDictionary ids only live as long as the process, so rows are keyed by the ids of
+ * module_names and metric_names instead. The mapping is cached in arrays indexed by the
+ * dictionary id; a miss registers the name with an upsert and happens once per name.
+ * Lookups run outside the ingest transaction so a rolled back batch cannot leave the
+ * cache pointing at an id that was never committed.
+ */
+@Component
+public class MeasurementKeys {
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final MetricDictionary dictionary = MetricDictionary.global();
+    private final KeyCache modules = new KeyCache("module_names");
+    private final KeyCache metrics = new KeyCache("metric_names");
+
+    public MeasurementKeys(JdbcTemplate jdbc,
+                           @Value("${audit.measurements.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Append one row per numeric metric of the event. Metrics whose value is missing or
+     * not a finite number are skipped; the raw event still has them.
+     */
+    public void collect(CanonicalEvent event, List<Measurement> out) {
+        if (!enabled) {
+            return;
+        }
+        int module = 0;
+        for (int m = event.nextMetric(0); m >= 0; m = event.nextMetric(m + 1)) {
+            double value = event.metricValue(m);
+            if (!Double.isFinite(value)) {
+                continue;
+            }
+            if (module == 0) {
+                module = modules.key(event.getModuleId(), event.getModule());
+            }
+            out.add(new Measurement(event.getTimestamp(), module, metrics.key(m, dictionary.metricName(m)), value));
+        }
+    }
+
+    /** Stable id of a module name, or -1 if it was never recorded. */
+    public int findModule(String name) {
+        return find("module_names", name);
+    }
+
+    /** Stable id of a metric name, or -1 if it was never recorded. */
+    public int findMetric(String name) {
+        return find("metric_names", name);
+    }
+
+    private int find(String table, String name) {
+        List<Integer> ids = jdbc.queryForList("SELECT id FROM " + table + " WHERE name = ?", Integer.class, name);
+        return ids.isEmpty() ? -1 : ids.get(0);
+    }
+
+    private final class KeyCache {
+        private final String upsert;
+        // dictionary id -> table id, 0 where not resolved yet (serial ids start at 1)
+        private volatile int[] keys = new int[16];
+
+        KeyCache(String table) {
+            // DO UPDATE rather than DO NOTHING so RETURNING also yields the id of an existing row
+            this.upsert = "INSERT INTO " + table + " (name) VALUES (?) ON CONFLICT (name) DO UPDATE SET name = EXCLUDED.name RETURNING id";
+        }
+
+        int key(int dictionaryId, String name) {
+            int[] current = keys;
+            if (dictionaryId < current.length && current[dictionaryId] != 0) {
+                return current[dictionaryId];
+            }
+            Integer id = jdbc.queryForObject(upsert, Integer.class, name);
+            synchronized (this) {
+                int[] grown = keys;
+                if (dictionaryId >= grown.length) {
+                    grown = Arrays.copyOf(grown, Math.max(dictionaryId + 1, grown.length * 2));
+                } else {
+                    grown = grown.clone();
+                }
+                grown[dictionaryId] = id;
+                keys = grown;
+            }
+            return id;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.audit.climate.watchtower.measurements;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.bind.annotation.*;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/measurements")
+public class MeasurementsController {
+    private static final int MAX_LIMIT = 10_000;
+
+    private final JdbcTemplate jdbc;
+    private final MeasurementKeys keys;
+
+    public MeasurementsController(JdbcTemplate jdbc, MeasurementKeys keys) {
+        this.jdbc = jdbc;
+        this.keys = keys;
+    }
+
+    // GET /api/measurements?module=green-1&metric=temperature&from=...&to=...&limit=1000
+    // Newest first; defaults to the last 24 hours
+    @GetMapping
+    public ResponseEntity<?> series(
+            @RequestParam String module,
+            @RequestParam String metric,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1000") int limit
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(1, ChronoUnit.DAYS);
+        if (!start.isBefore(end) || limit < 1 || limit > MAX_LIMIT) {
+            return ResponseEntity.badRequest().body("from must be before to and limit between 1 and " + MAX_LIMIT);
+        }
+        int moduleId = keys.findModule(module);
+        int metricId = keys.findMetric(metric);
+        if (moduleId < 0 || metricId < 0) {
+            return ResponseEntity.ok(List.of());
+        }
+        List<Map<String, Object>> rows = jdbc.query(
+                "SELECT ts, value FROM measurements WHERE module_id = ? AND metric_id = ? AND ts >= ? AND ts < ? "
+                        + "ORDER BY ts DESC LIMIT ?",
+                (rs, i) -> Map.of("ts", rs.getTimestamp(1).toInstant().toString(), "value", rs.getDouble(2)),
+                moduleId, metricId, Timestamp.from(start), Timestamp.from(end), limit);
+        return ResponseEntity.ok(rows);
+    }
+
+    // Modules and metrics that have measurements
+    @GetMapping("/series")
+    public Map<String, List<String>> names() {
+        return Map.of(
+                "modules", jdbc.queryForList("SELECT name FROM module_names ORDER BY name", String.class),
+                "metrics", jdbc.queryForList("SELECT name FROM metric_names ORDER BY name", String.class));
+    }
+}
@@ -0,0 +1,75 @@
+package com.audit.climate.watchtower.measurements;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Resolutions of the measurement continuous aggregates, finest first.
+ */
+public enum Resolution {
+    MINUTE("measurements_1m", Duration.ofMinutes(1)),
+    HOUR("measurements_1h", Duration.ofHours(1)),
+    DAY("measurements_1d", Duration.ofDays(1));
+
+    private final String view;
+    private final Duration width;
+
+    Resolution(String view, Duration width) {
+        this.view = view;
+        this.width = width;
+    }
+
+    public String view() {
+        return view;
+    }
+
+    public Duration width() {
+        return width;
+    }
+
+    /**
+     * Coarsest resolution whose buckets tile the step exactly, or null if the step is not
+     * a whole number of minutes.
+     */
+    public static Resolution coarsestFor(Duration step) {
+        Resolution[] all = values();
+        for (int i = all.length - 1; i >= 0; i--) {
+            if (step.compareTo(all[i].width) >= 0 && step.toMillis() % all[i].width.toMillis() == 0) {
+                return all[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parse a step such as "15m", "1h", "1d", "1w" or an ISO-8601 duration ("PT15M").
+     * @throws IllegalArgumentException when the text is neither
+     */
+    public static Duration parseStep(String text) {
+        String s = text.trim().toLowerCase(Locale.ROOT);
+        if (s.startsWith("p")) {
+            try {
+                return Duration.parse(s.toUpperCase(Locale.ROOT));
+            } catch (DateTimeParseException ex) {
+                throw new IllegalArgumentException("Invalid step: " + text);
+            }
+        }
+        if (s.length() < 2) {
+            throw new IllegalArgumentException("Invalid step: " + text);
+        }
+        long amount;
+        try {
+            amount = Long.parseLong(s.substring(0, s.length() - 1));
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid step: " + text);
+        }
+        switch (s.charAt(s.length() - 1)) {
+            case 'm': return Duration.ofMinutes(amount);
+            case 'h': return Duration.ofHours(amount);
+            case 'd': return Duration.ofDays(amount);
+            case 'w': return Duration.ofDays(7 * amount);
+            default: throw new IllegalArgumentException("Invalid step: " + text);
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.audit.climate.watchtower.measurements;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RollupService answers aggregate queries over measurements from the continuous aggregates
+ * (measurements_1m/1h/1d). A query reads the coarsest aggregate whose buckets tile the
+ * requested step and merges them (see Stats.merge), so the work depends on the number of
+ * buckets, not on the number of raw measurements. Where the aggregates do not exist (plain
+ * Postgres) the same queries run against measurements directly.
+ *
+ * Bucket boundaries follow time_bucket's default origin (Monday 2000-01-03 UTC).
+ */
+@Component
+public class RollupService {
+    private static final Logger log = LoggerFactory.getLogger(RollupService.class);
+    private static final Instant ORIGIN = Instant.parse("2000-01-03T00:00:00Z");
+
+    // aggregate buckets are read as they are and merged here; see Stats.merge
+    private static final String BUCKET_COLUMNS =
+            "min_value, max_value, avg_value, sample_count, stddev_value";
+    private static final String RAW_COLUMNS =
+            "min(value), max(value), avg(value), count(*), stddev_samp(value)";
+
+    private final JdbcTemplate jdbc;
+    private volatile Boolean aggregates;
+
+    public RollupService(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Buckets of the given step over [from, to), oldest first. from is aligned down to the step.
+     * @return the resolution read (null when computed from raw measurements) and the buckets
+     */
+    public Rollup series(int moduleId, int metricId, Instant from, Instant to, Duration step) {
+        Instant start = alignDown(from, step);
+        Resolution resolution = hasAggregates() ? Resolution.coarsestFor(step) : null;
+        String interval = step.getSeconds() + " seconds";
+        List<Stats> buckets;
+        if (resolution != null) {
+            List<Stats> merged = new ArrayList<>();
+            jdbc.query("SELECT time_bucket(?::interval, bucket) AS b, " + BUCKET_COLUMNS
+                            + " FROM " + resolution.view()
+                            + " WHERE module_id = ? AND metric_id = ? AND bucket >= ? AND bucket < ? ORDER BY bucket",
+                    (RowCallbackHandler) rs -> {
+                        Stats bucket = STATS.mapRow(rs, 0);
+                        Stats last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+                        if (last != null && last.start.equals(bucket.start)) {
+                            last.merge(bucket);
+                        } else {
+                            merged.add(bucket);
+                        }
+                    },
+                    interval, moduleId, metricId, Timestamp.from(start), Timestamp.from(to));
+            buckets = merged;
+        } else {
+            buckets = jdbc.query("SELECT date_bin(?::interval, ts, TIMESTAMPTZ '2000-01-03') AS b, " + RAW_COLUMNS
+                            + " FROM measurements"
+                            + " WHERE module_id = ? AND metric_id = ? AND ts >= ? AND ts < ? GROUP BY b ORDER BY b",
+                    STATS, interval, moduleId, metricId, Timestamp.from(start), Timestamp.from(to));
+        }
+        return new Rollup(resolution, buckets);
+    }
+
+    /**
+     * The last full period before now against the one before it, e.g. this week against last
+     * week. Both windows end on an hour boundary (a minute one for periods under a day) and
+     * are read in one query.
+     */
+    public Comparison compare(int moduleId, int metricId, Duration period, Instant now) {
+        Resolution resolution = period.compareTo(Duration.ofDays(1)) >= 0 ? Resolution.HOUR : Resolution.MINUTE;
+        Instant end = alignDown(now, resolution.width());
+        Instant split = end.minus(period);
+        Instant start = split.minus(period);
+
+        Stats[] windows = new Stats[2];
+        RowCallbackHandler merge = rs -> {
+            Stats s = stats(rs, 2);
+            int w = rs.getBoolean(1) ? 0 : 1;
+            if (windows[w] == null) {
+                windows[w] = s;
+            } else {
+                windows[w].merge(s);
+            }
+        };
+        if (hasAggregates()) {
+            jdbc.query("SELECT bucket >= ? AS current, " + BUCKET_COLUMNS + " FROM " + resolution.view()
+                            + " WHERE module_id = ? AND metric_id = ? AND bucket >= ? AND bucket < ?",
+                    merge, Timestamp.from(split), moduleId, metricId, Timestamp.from(start), Timestamp.from(end));
+        } else {
+            jdbc.query("SELECT ts >= ? AS current, " + RAW_COLUMNS + " FROM measurements"
+                            + " WHERE module_id = ? AND metric_id = ? AND ts >= ? AND ts < ? GROUP BY 1",
+                    merge, Timestamp.from(split), moduleId, metricId, Timestamp.from(start), Timestamp.from(end));
+        }
+        return new Comparison(split, end, windows[0], start, split, windows[1]);
+    }
+
+    private boolean hasAggregates() {
+        Boolean has = aggregates;
+        if (has == null) {
+            try {
+                has = jdbc.queryForObject("SELECT to_regclass('measurements_1d') IS NOT NULL", Boolean.class);
+            } catch (Exception ex) {
+                log.warn("Could not check for measurement aggregates: {}", ex.getMessage());
+                return false;
+            }
+            if (!Boolean.TRUE.equals(has)) {
+                log.info("Measurement continuous aggregates not found; rollups are computed from raw measurements");
+            }
+            aggregates = has;
+        }
+        return has;
+    }
+
+    static Instant alignDown(Instant t, Duration step) {
+        long stepMillis = step.toMillis();
+        long offset = Math.floorMod(t.toEpochMilli() - ORIGIN.toEpochMilli(), stepMillis);
+        return t.minusMillis(offset);
+    }
+
+    private static final RowMapper<Stats> STATS = (rs, i) -> {
+        Stats s = stats(rs, 2);
+        s.start = rs.getTimestamp(1).toInstant();
+        return s;
+    };
+
+    // columns from `first`: min, max, avg, count, sample stddev
+    private static Stats stats(ResultSet rs, int first) throws SQLException {
+        double stddev = rs.getDouble(first + 4);
+        return Stats.of(rs.getDouble(first), rs.getDouble(first + 1), rs.getDouble(first + 2), rs.getLong(first + 3),
+                rs.wasNull() ? null : stddev);
+    }
+
+    public static final class Stats {
+        private Instant start;
+        private double min;
+        private double max;
+        private double avg;
+        private long count;
+        private Double stddev;
+
+        /** Summary of `count` samples; stddev is the sample standard deviation, null for one sample. */
+        public static Stats of(double min, double max, double avg, long count, Double stddev) {
+            Stats s = new Stats();
+            s.min = min;
+            s.max = max;
+            s.avg = avg;
+            s.count = count;
+            s.stddev = count > 1 ? (stddev != null ? stddev : 0.0) : null;
+            return s;
+        }
+
+        /**
+         * Fold in the summary of another, disjoint set of samples. Averages are weighted by
+         * count and the squared deviations are combined pairwise (Chan et al.), which stays
+         * accurate where a sum of squares minus n * avg^2 would cancel, e.g. for pressure.
+         */
+        public Stats merge(Stats other) {
+            if (other.count == 0) {
+                return this;
+            }
+            long n = count + other.count;
+            double delta = other.avg - avg;
+            double m2 = squaredDeviations() + other.squaredDeviations() + delta * delta * count * other.count / n;
+            min = count == 0 ? other.min : Math.min(min, other.min);
+            max = count == 0 ? other.max : Math.max(max, other.max);
+            avg += delta * other.count / n;
+            count = n;
+            stddev = n > 1 ? Math.sqrt(m2 / (n - 1)) : null;
+            return this;
+        }
+
+        private double squaredDeviations() {
+            return stddev != null ? stddev * stddev * (count - 1) : 0.0;
+        }
+
+        public Instant getStart() { return start; }
+        public double getMin() { return min; }
+        public double getMax() { return max; }
+        public double getAvg() { return avg; }
+        public long getCount() { return count; }
+        public Double getStddev() { return stddev; }
+    }
+
+    public static final class Rollup {
+        private final Resolution resolution;
+        private final List<Stats> buckets;
+
+        Rollup(Resolution resolution, List<Stats> buckets) {
+            this.resolution = resolution;
+            this.buckets = buckets;
+        }
+
+        public Resolution getResolution() { return resolution; }
+        public List<Stats> getBuckets() { return buckets; }
+    }
+
+    public static final class Comparison {
+        private final Instant currentFrom;
+        private final Instant currentTo;
+        private final Stats current;
+        private final Instant previousFrom;
+        private final Instant previousTo;
+        private final Stats previous;
+
+        Comparison(Instant currentFrom, Instant currentTo, Stats current,
+                   Instant previousFrom, Instant previousTo, Stats previous) {
+            this.currentFrom = currentFrom;
+            this.currentTo = currentTo;
+            this.current = current;
+            this.previousFrom = previousFrom;
+            this.previousTo = previousTo;
+            this.previous = previous;
+        }
+
+        public Instant getCurrentFrom() { return currentFrom; }
+        public Instant getCurrentTo() { return currentTo; }
+        /** Null when the window has no measurements. */
+        public Stats getCurrent() { return current; }
+        public Instant getPreviousFrom() { return previousFrom; }
+        public Instant getPreviousTo() { return previousTo; }
+        /** Null when the window has no measurements. */
+        public Stats getPrevious() { return previous; }
+
+        /** Change of the average from the previous window, or null if either is empty. */
+        public Double getAvgDelta() {
+            return current != null && previous != null ? current.avg - previous.avg : null;
+        }
+    }
+}
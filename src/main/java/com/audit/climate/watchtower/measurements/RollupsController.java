@@ -0,0 +1,90 @@
+package com.audit.climate.watchtower.measurements;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/rollups")
+public class RollupsController {
+    private static final long MAX_BUCKETS = 10_000;
+
+    private final RollupService rollups;
+    private final MeasurementKeys keys;
+
+    public RollupsController(RollupService rollups, MeasurementKeys keys) {
+        this.rollups = rollups;
+        this.keys = keys;
+    }
+
+    // GET /api/rollups?module=green-1&metric=temperature&from=...&to=...&step=1h
+    // min/max/avg/count/stddev per step, read from the coarsest aggregate that fits the step
+    @GetMapping
+    public ResponseEntity<?> series(
+            @RequestParam String module,
+            @RequestParam String metric,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(defaultValue = "1h") String step
+    ) {
+        Instant end = to != null ? to : Instant.now();
+        Duration stepDuration;
+        try {
+            stepDuration = Resolution.parseStep(step);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+        if (stepDuration.isNegative() || stepDuration.isZero() || !from.isBefore(end)) {
+            return ResponseEntity.badRequest().body("step must be positive and from before to");
+        }
+        if (Duration.between(from, end).toMillis() / stepDuration.toMillis() > MAX_BUCKETS) {
+            return ResponseEntity.badRequest().body("Range too large for step, at most " + MAX_BUCKETS + " buckets");
+        }
+
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("module", module);
+        out.put("metric", metric);
+        out.put("step", stepDuration.toString());
+        int moduleId = keys.findModule(module);
+        int metricId = keys.findMetric(metric);
+        if (moduleId < 0 || metricId < 0) {
+            out.put("buckets", List.of());
+            return ResponseEntity.ok(out);
+        }
+        RollupService.Rollup rollup = rollups.series(moduleId, metricId, from, end, stepDuration);
+        out.put("resolution", rollup.getResolution() != null ? rollup.getResolution().view() : "measurements");
+        out.put("buckets", rollup.getBuckets());
+        return ResponseEntity.ok(out);
+    }
+
+    // GET /api/rollups/compare?module=green-1&metric=temperature&period=1w
+    // Last full period against the one before it, e.g. week over week
+    @GetMapping("/compare")
+    public ResponseEntity<?> compare(
+            @RequestParam String module,
+            @RequestParam String metric,
+            @RequestParam(defaultValue = "1w") String period
+    ) {
+        Duration periodDuration;
+        try {
+            periodDuration = Resolution.parseStep(period);
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+        if (periodDuration.compareTo(Duration.ofMinutes(1)) < 0) {
+            return ResponseEntity.badRequest().body("period must be at least one minute");
+        }
+        int moduleId = keys.findModule(module);
+        int metricId = keys.findMetric(metric);
+        if (moduleId < 0 || metricId < 0) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(rollups.compare(moduleId, metricId, periodDuration, Instant.now()));
+    }
+}
@@ -1,24 +1,131 @@
 package com.audit.climate.watchtower.preprocess;
 
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Map;
 
+/**
+ * CanonicalEvent is the normalized form of an incoming message.
+ *
+ * Besides the payload map it carries a compact view for detection: the interned module
+ * id and the metric values in a double array indexed by metric id, with a bitmask of
+ * which metrics were present. Both come from MetricDictionary and are computed once here,
+ * so detectors can read them without boxing or string lookups. Only numeric values take part:
+ * a field whose value is not a number is left in the payload but never interned, and so is
+ * everything once the dictionary is full (the module id is then -1 and no metric is present).
+ */
 public class CanonicalEvent {
+    private static final double[] NO_VALUES = new double[0];
+    private static final long[] NO_BITS = new long[0];
+
     private final String channel;
     private final String eventType;
     private final Instant timestamp;
     private final Map<String, Object> payload;
 
+    private final String module;
+    private final int moduleId;
+    private final double[] metricValues;
+    private final long[] present;
+
     public CanonicalEvent(String channel, String eventType, Instant timestamp, Map<String, Object> payload) {
         this.channel = channel;
         this.eventType = eventType;
         this.timestamp = timestamp;
         this.payload = payload;
+
+        MetricDictionary dictionary = MetricDictionary.global();
+        this.module = resolveModule(payload, channel);
+        this.moduleId = dictionary.moduleId(module);
+
+        double[] values = NO_VALUES;
+        long[] bits = NO_BITS;
+        if (payload != null && moduleId >= 0) {
+            for (Map.Entry<String, Object> entry : payload.entrySet()) {
+                if ("module".equals(entry.getKey())) {
+                    continue;
+                }
+                double value = toDouble(entry.getValue());
+                if (Double.isNaN(value)) {
+                    continue;
+                }
+                int id = dictionary.metricId(entry.getKey());
+                if (id < 0) {
+                    continue;
+                }
+                if (id >= values.length) {
+                    values = Arrays.copyOf(values, Math.max(id + 1, dictionary.metricCount()));
+                }
+                if ((id >> 6) >= bits.length) {
+                    bits = Arrays.copyOf(bits, (values.length + 63) >> 6);
+                }
+                values[id] = value;
+                bits[id >> 6] |= 1L << id;
+            }
+        }
+        this.metricValues = values;
+        this.present = bits;
     }
 
     public String getChannel() { return channel; }
     public String getEventType() { return eventType; }
     public Instant getTimestamp() { return timestamp; }
     public Map<String, Object> getPayload() { return payload; }
-}
 
+    /** Module the event belongs to: the payload's module, else the channel. */
+    public String getModule() { return module; }
+    public int getModuleId() { return moduleId; }
+
+    public boolean hasMetric(int metricId) {
+        int word = metricId >> 6;
+        return word < present.length && (present[word] & (1L << metricId)) != 0;
+    }
+
+    /** Value of a present metric. */
+    public double metricValue(int metricId) {
+        return metricValues[metricId];
+    }
+
+    /** Next present metric id at or after fromId, or -1 if there is none. */
+    public int nextMetric(int fromId) {
+        int word = fromId >> 6;
+        if (word >= present.length) {
+            return -1;
+        }
+        long bits = present[word] & (-1L << fromId);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == present.length) {
+                return -1;
+            }
+            bits = present[word];
+        }
+    }
+
+    private static String resolveModule(Map<String, Object> payload, String channel) {
+        Object moduleObj = payload != null ? payload.get("module") : null;
+        if (moduleObj != null) {
+            String m = moduleObj.toString();
+            if (!m.isBlank()) {
+                return m;
+            }
+        }
+        return channel != null ? channel : "unknown";
+    }
+
+    private static double toDouble(Object obj) {
+        if (obj instanceof Number) {
+            return ((Number) obj).doubleValue();
+        }
+        if (obj == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(obj.toString());
+        } catch (NumberFormatException ex) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.audit.climate.watchtower.preprocess;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MetricDictionary interns module and metric names to small dense int ids so the
+ * detection path can index arrays instead of hashing strings.
+ *
+ * There is one process-wide instance. Ids are never reused or reassigned; the built-in
+ * metrics always get the same ids, everything else is numbered in order of first use.
+ * Since ids are never freed, both tables are capped (MAX_MODULES, MAX_METRICS): once one is
+ * full, interning a new name returns -1 and callers leave that name out of the compact view.
+ */
+public final class MetricDictionary {
+    public static final int TEMPERATURE = 0;
+    public static final int HUMIDITY = 1;
+    public static final int PRESSURE = 2;
+
+    public static final int MAX_MODULES = 1 << 20;
+    public static final int MAX_METRICS = 4096;
+
+    private static final MetricDictionary GLOBAL = new MetricDictionary();
+
+    private final Names modules = new Names(MAX_MODULES);
+    private final Names metrics = new Names(MAX_METRICS);
+
+    private MetricDictionary() {
+        metrics.intern("temperature");
+        metrics.intern("humidity");
+        metrics.intern("pressure");
+    }
+
+    public static MetricDictionary global() {
+        return GLOBAL;
+    }
+
+    /** Id for the module, assigning a new one on first use; -1 if the table is full. */
+    public int moduleId(String module) {
+        return modules.intern(module);
+    }
+
+    /** Id for the module, or -1 if it has never been seen. */
+    public int findModule(String module) {
+        return modules.find(module);
+    }
+
+    public String moduleName(int id) {
+        return modules.name(id);
+    }
+
+    /** Id for the metric, assigning a new one on first use; -1 if the table is full. */
+    public int metricId(String metric) {
+        return metrics.intern(metric);
+    }
+
+    /** Id for the metric, or -1 if it has never been seen. */
+    public int findMetric(String metric) {
+        return metrics.find(metric);
+    }
+
+    public String metricName(int id) {
+        return metrics.name(id);
+    }
+
+    /** Upper bound (exclusive) of the metric ids handed out so far. */
+    public int metricCount() {
+        return metrics.size();
+    }
+
+    private static final class Names {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final int max;
+        // grown by doubling; only the first size entries are in use
+        private volatile String[] names = new String[16];
+        private volatile int size;
+
+        Names(int max) {
+            this.max = max;
+        }
+
+        int find(String name) {
+            Integer id = ids.get(name);
+            return id != null ? id : -1;
+        }
+
+        int intern(String name) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            synchronized (this) {
+                id = ids.get(name);
+                if (id == null) {
+                    if (size == max) {
+                        return -1;
+                    }
+                    id = size;
+                    String[] current = names;
+                    if (id == current.length) {
+                        current = Arrays.copyOf(current, Math.min(current.length * 2, max));
+                    }
+                    current[id] = name;
+                    // publish the name before the id so readers of the id always find it
+                    names = current;
+                    size = id + 1;
+                    ids.put(name, id);
+                }
+                return id;
+            }
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+
+        int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.audit.climate.watchtower.processing;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+
+import java.util.UUID;
+
+@Entity
+@Table(name = "module_tags", uniqueConstraints = {@UniqueConstraint(columnNames = {"module", "tag"})})
+public class ModuleTagEntry {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "module", nullable = false)
+    private String module;
+
+    @Column(name = "tag", nullable = false)
+    private String tag;
+
+    public ModuleTagEntry() {
+        this.id = UUID.randomUUID();
+    }
+
+    public ModuleTagEntry(String module, String tag) {
+        this();
+        this.module = module;
+        this.tag = tag;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+}
@@ -0,0 +1,14 @@
+package com.audit.climate.watchtower.processing;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface ModuleTagRepository extends JpaRepository<ModuleTagEntry, UUID> {
+    List<ModuleTagEntry> findByModule(String module);
+
+    void deleteByModule(String module);
+}
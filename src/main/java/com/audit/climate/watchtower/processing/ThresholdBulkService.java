@@ -0,0 +1,324 @@
+package com.audit.climate.watchtower.processing;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * ThresholdBulkService imports and exports the whole threshold set.
+ *
+ * An import is validated up front and written in one transaction as multi-row
+ * INSERT ... ON CONFLICT (module, metric) DO UPDATE statements; the in-memory snapshot is
+ * reloaded once after commit and the other instances are told to reload as well. Within one
+ * import the last row for a (module, metric) wins. A replacing import must not be empty, so
+ * an empty upload cannot wipe every threshold.
+ *
+ * Exports stream from a server-side cursor in a read-only transaction, holding at most one
+ * fetch of rows in memory (as AuditExporter does).
+ */
+@Component
+public class ThresholdBulkService {
+    private static final Logger log = LoggerFactory.getLogger(ThresholdBulkService.class);
+    // 6 parameters per row keeps a statement far below the 65535 bind limit
+    private static final int ROWS_PER_INSERT = 1000;
+    private static final String CSV_HEADER = "module,metric,min,max";
+
+    private final JdbcTemplate jdbc;
+    private final ThresholdConfig config;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnly;
+    private final int fetchSize;
+
+    public ThresholdBulkService(JdbcTemplate jdbc,
+                                ThresholdConfig config,
+                                ObjectMapper objectMapper,
+                                PlatformTransactionManager transactionManager,
+                                @Value("${audit.export.fetch-size:1000}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.config = config;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.fetchSize = fetchSize;
+    }
+
+    /** One threshold as imported and exported. */
+    public static class Row {
+        private String module;
+        private String metric;
+        private Double min;
+        private Double max;
+
+        public Row() {}
+
+        public Row(String module, String metric, Double min, Double max) {
+            this.module = module;
+            this.metric = metric;
+            this.min = min;
+            this.max = max;
+        }
+
+        public String getModule() { return module; }
+        public void setModule(String module) { this.module = module; }
+        public String getMetric() { return metric; }
+        public void setMetric(String metric) { this.metric = metric; }
+        public Double getMin() { return min; }
+        public void setMin(Double min) { this.min = min; }
+        public Double getMax() { return max; }
+        public void setMax(Double max) { this.max = max; }
+    }
+
+    /**
+     * Upsert all rows; with replace, thresholds missing from the import are deleted.
+     * @return number of distinct thresholds written
+     * @throws IllegalArgumentException naming the first invalid row, or for an empty replacing
+     *         import; nothing is written then
+     */
+    public int importAll(List<Row> rows, boolean replace) {
+        Collection<Row> unique = validate(rows);
+        if (unique.isEmpty()) {
+            if (replace) {
+                throw new IllegalArgumentException("replace requires at least one threshold");
+            }
+            return 0;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (replace) {
+                jdbc.update("DELETE FROM thresholds");
+            }
+            List<Row> list = new ArrayList<>(unique);
+            Timestamp now = Timestamp.from(Instant.now());
+            for (int from = 0; from < list.size(); from += ROWS_PER_INSERT) {
+                upsert(list.subList(from, Math.min(from + ROWS_PER_INSERT, list.size())), now);
+            }
+            config.bulkChanged();
+        });
+        log.info("Imported {} thresholds{}", unique.size(), replace ? " (replacing all)" : "");
+        return unique.size();
+    }
+
+    private static Collection<Row> validate(List<Row> rows) {
+        Map<String, Row> unique = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            if (row == null || isBlank(row.module) || isBlank(row.metric)) {
+                throw new IllegalArgumentException("row " + (i + 1) + ": module and metric are required");
+            }
+            try {
+                ThresholdScope.parse(row.module);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("row " + (i + 1) + ": " + ex.getMessage());
+            }
+            if (row.min != null && row.max != null && row.min > row.max) {
+                throw new IllegalArgumentException("row " + (i + 1) + ": min must be <= max");
+            }
+            // ON CONFLICT cannot touch the same row twice in one statement
+            unique.put(row.module + '\u0000' + row.metric, row);
+        }
+        return unique.values();
+    }
+
+    private void upsert(List<Row> rows, Timestamp now) {
+        StringBuilder sql = new StringBuilder("INSERT INTO thresholds (id, module, metric, min, max, updated_at) VALUES ");
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(" ON CONFLICT (module, metric) DO UPDATE SET min = excluded.min, max = excluded.max, "
+                + "updated_at = excluded.updated_at");
+        jdbc.update(sql.toString(), ps -> {
+            int i = 1;
+            for (Row r : rows) {
+                ps.setObject(i++, UUID.randomUUID());
+                ps.setString(i++, r.module);
+                ps.setString(i++, r.metric);
+                setDouble(ps, i++, r.min);
+                setDouble(ps, i++, r.max);
+                ps.setTimestamp(i++, now);
+            }
+        });
+    }
+
+    private static void setDouble(PreparedStatement ps, int index, Double value) throws SQLException {
+        if (value == null) {
+            ps.setNull(index, Types.DOUBLE);
+        } else {
+            ps.setDouble(index, value);
+        }
+    }
+
+    /**
+     * Parse CSV with a module,metric,min,max header; empty min or max means unbounded.
+     */
+    public List<Row> parseCsv(Reader input) throws IOException {
+        BufferedReader reader = new BufferedReader(input);
+        List<Row> rows = new ArrayList<>();
+        String line = reader.readLine();
+        if (line == null) {
+            return rows;
+        }
+        if (!line.trim().equalsIgnoreCase(CSV_HEADER)) {
+            throw new IllegalArgumentException("CSV header must be " + CSV_HEADER);
+        }
+        int lineNo = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> f;
+            try {
+                f = splitCsv(line);
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("line " + lineNo + ": " + ex.getMessage());
+            }
+            if (f.size() != 4) {
+                throw new IllegalArgumentException("line " + lineNo + ": expected 4 fields");
+            }
+            try {
+                rows.add(new Row(f.get(0), f.get(1), number(f.get(2)), number(f.get(3))));
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("line " + lineNo + ": min and max must be numbers");
+            }
+        }
+        return rows;
+    }
+
+    // RFC 4180 fields on one line: quoted fields may contain commas and doubled quotes and keep
+    // their whitespace; unquoted ones are trimmed
+    private static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean wasQuoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == ',') {
+                fields.add(wasQuoted ? field.toString() : field.toString().trim());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '"' && !wasQuoted && field.toString().isBlank()) {
+                // whitespace before the opening quote is not part of the field
+                field.setLength(0);
+                quoted = true;
+                wasQuoted = true;
+            } else if (!wasQuoted) {
+                field.append(c);
+            } else if (!Character.isWhitespace(c)) {
+                throw new IllegalArgumentException("unexpected text after a quoted field");
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        fields.add(wasQuoted ? field.toString() : field.toString().trim());
+        return fields;
+    }
+
+    private static Double number(String s) {
+        return s.isEmpty() ? null : Double.valueOf(s);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.isBlank();
+    }
+
+    /**
+     * Write every threshold, ordered by module and metric, as a JSON array or as CSV that
+     * importAll accepts back.
+     */
+    public void export(boolean csv, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        JsonGenerator json = csv ? null : objectMapper.getFactory().createGenerator(writer);
+        try {
+            if (csv) {
+                writer.write(CSV_HEADER);
+                writer.write('\n');
+            } else {
+                json.writeStartArray();
+            }
+            readOnly.executeWithoutResult(status -> jdbc.query(con -> {
+                PreparedStatement ps = con.prepareStatement("SELECT module, metric, min, max FROM thresholds "
+                        + "ORDER BY module, metric", ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                Row row = new Row(rs.getString(1), rs.getString(2), rs.getObject(3, Double.class), rs.getObject(4, Double.class));
+                try {
+                    if (csv) {
+                        writeCsv(writer, row);
+                    } else {
+                        json.writeObject(row);
+                    }
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            }));
+            if (json != null) {
+                json.writeEndArray();
+                json.flush();
+            }
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        writer.flush();
+    }
+
+    private static void writeCsv(Writer writer, Row row) throws IOException {
+        writer.write(csvField(row.module));
+        writer.write(',');
+        writer.write(csvField(row.metric));
+        writer.write(',');
+        writer.write(row.min == null ? "" : row.min.toString());
+        writer.write(',');
+        writer.write(row.max == null ? "" : row.max.toString());
+        writer.write('\n');
+    }
+
+    private static String csvField(String value) {
+        // quoted when parseCsv would otherwise split or trim it
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.equals(value.trim())) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
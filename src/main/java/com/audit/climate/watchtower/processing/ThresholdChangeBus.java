@@ -0,0 +1,75 @@
+package com.audit.climate.watchtower.processing;
+
+import com.audit.climate.watchtower.config.RabbitConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * ThresholdChangeBus numbers threshold changes with the cluster-wide version in the
+ * threshold_version table and broadcasts them on the thresholds fanout exchange.
+ *
+ * The version is bumped by a row update in the change's own transaction, so versions are
+ * gapless and follow commit order; a delta that does not arrive is noticed by the next one
+ * (or by the periodic version check) and answered with a full reload. When disabled every
+ * instance only sees its own changes.
+ */
+@Component
+public class ThresholdChangeBus {
+    private static final Logger log = LoggerFactory.getLogger(ThresholdChangeBus.class);
+
+    private final JdbcTemplate jdbc;
+    private final RabbitTemplate rabbitTemplate;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+
+    public ThresholdChangeBus(JdbcTemplate jdbc,
+                              ConnectionFactory connectionFactory,
+                              ObjectMapper objectMapper,
+                              @Value("${audit.thresholds.sync.enabled:true}") boolean enabled) {
+        this.jdbc = jdbc;
+        this.rabbitTemplate = new RabbitTemplate(connectionFactory);
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Take the next version; must run in the transaction making the change. */
+    public long nextVersion() {
+        Long version = jdbc.queryForObject(
+                "UPDATE threshold_version SET version = version + 1 RETURNING version", Long.class);
+        return version == null ? 0 : version;
+    }
+
+    public long currentVersion() {
+        Long version = jdbc.queryForObject("SELECT version FROM threshold_version", Long.class);
+        return version == null ? 0 : version;
+    }
+
+    /**
+     * Broadcast a committed change. Failures are logged only: the other instances catch up
+     * on their next version check.
+     */
+    public void publish(ThresholdDelta delta) {
+        try {
+            rabbitTemplate.convertAndSend(RabbitConfig.THRESHOLDS_EXCHANGE, "", objectMapper.writeValueAsString(delta));
+        } catch (Exception ex) {
+            log.warn("Failed to broadcast threshold change {} ({}:{}): {}",
+                    delta.getVersion(), delta.getModule(), delta.getMetric(), ex.getMessage());
+        }
+    }
+
+    public ThresholdDelta parse(byte[] body) throws IOException {
+        return objectMapper.readValue(body, ThresholdDelta.class);
+    }
+}
@@ -1,27 +1,52 @@
 package com.audit.climate.watchtower.processing;
 
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
 import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * ThresholdConfig now persists thresholds to the DB using ThresholdRepository.
+ *
+ * In memory thresholds live in an immutable ThresholdSnapshot indexed by MetricDictionary
+ * ids, swapped atomically on change, so the detection path reads them without locks or
+ * allocation. Changes are written to the DB first and the new snapshot is published only
+ * once that transaction committed; a failed write leaves memory untouched and propagates.
+ *
+ * Every change carries the next cluster-wide version and is broadcast through
+ * ThresholdChangeBus; all instances (this one included) apply deltas strictly in version
+ * order and reload everything when they see a gap or a newer version in the database.
+ *
+ * Thresholds may be scoped (see ThresholdScope): a module column of "*", a glob such as
+ * "green-*" or "tag:coastal" applies to every matching module unless a more specific
+ * threshold exists. Scopes are resolved per module inside the snapshot, not per event.
  */
 @Component
 public class ThresholdConfig {
     private static final Logger log = LoggerFactory.getLogger(ThresholdConfig.class);
 
-    // keys: module:metric (e.g. "green-medium:temperature")
-    private final Map<String, Range> thresholds = new ConcurrentHashMap<>();
+    private final MetricDictionary dictionary = MetricDictionary.global();
+    private final AtomicReference<ThresholdSnapshot> snapshot = new AtomicReference<>(ThresholdSnapshot.EMPTY);
 
     private final ThresholdRepository repository;
+    private final ModuleTagRepository tagRepository;
+    private final ThresholdChangeBus bus;
 
-    public ThresholdConfig(ThresholdRepository repository) {
+    public ThresholdConfig(ThresholdRepository repository, ModuleTagRepository tagRepository, ThresholdChangeBus bus) {
         this.repository = repository;
+        this.tagRepository = tagRepository;
+        this.bus = bus;
     }
 
     public static class Range {
@@ -37,46 +62,195 @@ public class ThresholdConfig {
     @PostConstruct
     public void loadFromDb() {
         try {
-            repository.findAll().forEach(e -> {
-                thresholds.put(key(e.getModule(), e.getMetric()), new Range(e.getMin(), e.getMax()));
-            });
-            log.info("Loaded {} thresholds from DB", thresholds.size());
+            reload();
         } catch (Exception ex) {
             log.error("Failed to load thresholds from DB", ex);
         }
     }
 
+    /**
+     * Replace the snapshot with the database state. The version is read before the rows, so
+     * the rows are at least that new; deltas after it are absolute and reapply cleanly.
+     */
+    public synchronized void reload() {
+        long version = bus.isEnabled() ? bus.currentVersion() : snapshot.get().getVersion() + 1;
+        ThresholdSnapshot.Builder builder = new ThresholdSnapshot.Builder();
+        for (ThresholdEntry e : repository.findAll()) {
+            Range range = new Range(e.getMin(), e.getMax());
+            int metricId = dictionary.metricId(e.getMetric());
+            int moduleId = ThresholdScope.isExact(e.getModule()) ? dictionary.moduleId(e.getModule()) : 0;
+            if (metricId < 0 || moduleId < 0) {
+                log.warn("Metric dictionary is full; ignoring threshold {}/{}", e.getModule(), e.getMetric());
+            } else if (ThresholdScope.isExact(e.getModule())) {
+                builder.put(moduleId, metricId, range);
+            } else {
+                builder.scope(e.getModule(), metricId, range);
+            }
+        }
+        tagRepository.findAll().forEach(t -> builder.tag(t.getModule(), t.getTag()));
+        ThresholdSnapshot loaded = builder.build(version);
+        snapshot.set(loaded);
+        log.info("Loaded {} thresholds from DB (version {})", loaded.size(), loaded.getVersion());
+    }
+
+    /** The current thresholds; hold on to it for a consistent view across several lookups. */
+    public ThresholdSnapshot snapshot() {
+        return snapshot.get();
+    }
+
+    @Transactional
     public void setThreshold(String module, String metric, Double min, Double max) {
-        String k = key(module, metric);
-        thresholds.put(k, new Range(min, max));
+        ThresholdEntry entry = repository.findByModuleAndMetric(module, metric)
+                .orElseGet(() -> new ThresholdEntry(module, metric, min, max));
+        entry.setMin(min);
+        entry.setMax(max);
+        entry.touch();
+        repository.save(entry);
+        afterCommit(new ThresholdDelta(nextVersion(), module, metric, min, max, false));
+    }
 
-        try {
-            ThresholdEntry entry = repository.findByModuleAndMetric(module, metric)
-                    .orElseGet(() -> new ThresholdEntry(module, metric, min, max));
-            entry.setMin(min);
-            entry.setMax(max);
-            entry.touch();
-            repository.save(entry);
-        } catch (Exception ex) {
-            log.error("Failed to persist threshold to DB", ex);
+    @Transactional
+    public void deleteThreshold(String module, String metric) {
+        repository.findByModuleAndMetric(module, metric).ifPresent(repository::delete);
+        afterCommit(new ThresholdDelta(nextVersion(), module, metric, null, null, true));
+    }
+
+    /**
+     * Record a bulk change written in the caller's transaction (see ThresholdBulkService):
+     * one version for the whole batch, and a single reload on every instance after commit.
+     */
+    public void bulkChanged() {
+        afterCommit(ThresholdDelta.reload(nextVersion()));
+    }
+
+    /**
+     * Replace the tags of a module. Tags feed "tag:" scopes, so every instance reloads.
+     */
+    @Transactional
+    public void setModuleTags(String module, Collection<String> tags) {
+        tagRepository.deleteByModule(module);
+        // the deletes must reach the database before inserts reusing the same (module, tag)
+        tagRepository.flush();
+        for (String tag : new LinkedHashSet<>(tags)) {
+            tagRepository.save(new ModuleTagEntry(module, tag));
         }
+        bulkChanged();
     }
 
-    public void deleteThreshold(String module, String metric) {
-        String k = key(module, metric);
-        thresholds.remove(k);
+    public Set<String> getModuleTags(String module) {
+        List<ModuleTagEntry> entries = tagRepository.findByModule(module);
+        Set<String> tags = new LinkedHashSet<>();
+        entries.forEach(t -> tags.add(t.getTag()));
+        return tags;
+    }
+
+    /**
+     * The threshold in effect for a module name, scopes included; null if none applies. A
+     * module not seen yet is neither added to the dictionary nor cached in the snapshot.
+     */
+    public Range getThreshold(String module, String metric) {
+        int metricId = dictionary.findMetric(metric);
+        if (metricId < 0) {
+            return null;
+        }
+        int moduleId = dictionary.findModule(module);
+        ThresholdSnapshot current = snapshot.get();
+        return moduleId < 0 ? current.lookupUnknown(module, metricId) : current.lookup(moduleId, metricId);
+    }
+
+    /**
+     * Threshold by MetricDictionary ids, scopes included; null if none applies.
+     */
+    public Range getThreshold(int moduleId, int metricId) {
+        return snapshot.get().lookup(moduleId, metricId);
+    }
+
+    /**
+     * Apply a committed change, from this instance or another one. Old versions are ignored;
+     * a version gap means a delta was missed and triggers a reload, as does a bulk change.
+     */
+    public synchronized void onDelta(ThresholdDelta delta) {
+        long current = snapshot.get().getVersion();
+        if (delta.getVersion() <= current) {
+            return;
+        }
+        if (delta.getVersion() > current + 1) {
+            log.info("Threshold version gap ({} -> {}), reloading", current, delta.getVersion());
+            reload();
+            return;
+        }
+        if (delta.isReload()) {
+            reload();
+            return;
+        }
+        apply(delta);
+    }
+
+    /**
+     * Safety net for deltas lost while disconnected: compare with the database version.
+     */
+    @Scheduled(fixedDelayString = "${audit.thresholds.sync.check-interval-ms:60000}")
+    public void checkVersion() {
+        if (!bus.isEnabled()) {
+            return;
+        }
         try {
-            repository.findByModuleAndMetric(module, metric).ifPresent(repository::delete);
+            if (bus.currentVersion() != snapshot.get().getVersion()) {
+                reload();
+            }
         } catch (Exception ex) {
-            log.error("Failed to delete threshold from DB", ex);
+            log.warn("Threshold version check failed: {}", ex.getMessage());
         }
     }
 
-    public Range getThreshold(String module, String metric) {
-        return thresholds.get(key(module, metric));
+    // without sync, changes stay local and are numbered once committed (see committed())
+    private long nextVersion() {
+        return bus.isEnabled() ? bus.nextVersion() : -1;
     }
 
-    private String key(String module, String metric) {
-        return module + ":" + metric;
+    private void afterCommit(ThresholdDelta delta) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed(delta);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed(delta);
+            }
+        });
+    }
+
+    private void committed(ThresholdDelta delta) {
+        if (!bus.isEnabled()) {
+            synchronized (this) {
+                if (delta.isReload()) {
+                    reload();
+                    return;
+                }
+                delta.setVersion(snapshot.get().getVersion() + 1);
+                apply(delta);
+            }
+            return;
+        }
+        bus.publish(delta);
+        onDelta(delta);
+    }
+
+    private void apply(ThresholdDelta delta) {
+        int metricId = dictionary.metricId(delta.getMetric());
+        int moduleId = ThresholdScope.isExact(delta.getModule()) ? dictionary.moduleId(delta.getModule()) : 0;
+        if (metricId < 0 || moduleId < 0) {
+            log.warn("Metric dictionary is full; ignoring threshold {}/{}", delta.getModule(), delta.getMetric());
+            return;
+        }
+        Range range = delta.isDeleted() ? null : new Range(delta.getMin(), delta.getMax());
+        ThresholdSnapshot next;
+        if (ThresholdScope.isExact(delta.getModule())) {
+            next = snapshot.updateAndGet(current -> current.with(moduleId, metricId, range, delta.getVersion()));
+        } else {
+            next = snapshot.updateAndGet(current -> current.withScope(delta.getModule(), metricId, range, delta.getVersion()));
+        }
+        log.debug("Thresholds now at version {} ({} entries)", next.getVersion(), next.size());
     }
 }
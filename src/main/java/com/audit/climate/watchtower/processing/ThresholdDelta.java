@@ -0,0 +1,48 @@
+package com.audit.climate.watchtower.processing;
+
+/**
+ * One committed threshold change as broadcast to all instances. Values are absolute (the
+ * new min/max, or deleted), so applying a delta twice is harmless. A reload delta (bulk
+ * import) names no threshold; receivers reload everything from the database instead.
+ */
+public class ThresholdDelta {
+    private long version;
+    private String module;
+    private String metric;
+    private Double min;
+    private Double max;
+    private boolean deleted;
+    private boolean reload;
+
+    public ThresholdDelta() {}
+
+    public ThresholdDelta(long version, String module, String metric, Double min, Double max, boolean deleted) {
+        this.version = version;
+        this.module = module;
+        this.metric = metric;
+        this.min = min;
+        this.max = max;
+        this.deleted = deleted;
+    }
+
+    static ThresholdDelta reload(long version) {
+        ThresholdDelta delta = new ThresholdDelta(version, null, null, null, null, false);
+        delta.reload = true;
+        return delta;
+    }
+
+    public long getVersion() { return version; }
+    public void setVersion(long version) { this.version = version; }
+    public String getModule() { return module; }
+    public void setModule(String module) { this.module = module; }
+    public String getMetric() { return metric; }
+    public void setMetric(String metric) { this.metric = metric; }
+    public Double getMin() { return min; }
+    public void setMin(Double min) { this.min = min; }
+    public Double getMax() { return max; }
+    public void setMax(Double max) { this.max = max; }
+    public boolean isDeleted() { return deleted; }
+    public void setDeleted(boolean deleted) { this.deleted = deleted; }
+    public boolean isReload() { return reload; }
+    public void setReload(boolean reload) { this.reload = reload; }
+}
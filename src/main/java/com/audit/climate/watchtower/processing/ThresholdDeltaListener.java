@@ -0,0 +1,60 @@
+package com.audit.climate.watchtower.processing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+/**
+ * ThresholdDeltaListener consumes threshold changes broadcast by any instance from this
+ * instance's own queue on the thresholds fanout and hands them to ThresholdConfig. A single
+ * consumer keeps deltas in the order they were published.
+ *
+ * Only present with audit.thresholds.sync.enabled. The container is started with the other
+ * lifecycle beans once the context is refreshed, and stopped before the context closes.
+ */
+@Component
+@ConditionalOnProperty(name = "audit.thresholds.sync.enabled", havingValue = "true", matchIfMissing = true)
+public class ThresholdDeltaListener implements SmartLifecycle {
+    private static final Logger log = LoggerFactory.getLogger(ThresholdDeltaListener.class);
+
+    private final SimpleMessageListenerContainer container;
+
+    public ThresholdDeltaListener(ThresholdConfig config,
+                                  ThresholdChangeBus bus,
+                                  ConnectionFactory connectionFactory,
+                                  Queue thresholdDeltasQueue) {
+        this.container = new SimpleMessageListenerContainer(connectionFactory);
+        this.container.setQueueNames(thresholdDeltasQueue.getName());
+        this.container.setConcurrentConsumers(1);
+        this.container.setMessageListener((Message message) -> {
+            try {
+                config.onDelta(bus.parse(message.getBody()));
+            } catch (Exception ex) {
+                // a dropped delta shows up as a version gap on the next one
+                log.warn("Ignoring unreadable threshold change: {}", ex.getMessage());
+            }
+        });
+    }
+
+    @Override
+    public void start() {
+        container.start();
+        log.info("Listening for threshold changes on {}", container.getQueueNames()[0]);
+    }
+
+    @Override
+    public void stop() {
+        container.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return container.isRunning();
+    }
+}
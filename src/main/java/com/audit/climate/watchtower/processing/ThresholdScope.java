@@ -0,0 +1,101 @@
+package com.audit.climate.watchtower.processing;
+
+import java.util.Comparator;
+import java.util.Set;
+
+/**
+ * ThresholdScope is the module side of a threshold. The module column holds either an exact
+ * module name or a selector:
+ *   "*"          default for the metric on every module
+ *   "green-*"    glob over module names ('*' any run, '?' one character); prefixes are "prefix*"
+ *   "tag:coastal" every module carrying the tag (module_tags)
+ *
+ * When several apply, the most specific wins: exact, then tag, then glob, then default. Among
+ * globs the one with more literal characters wins ("green-north-*" over "green-*"); remaining
+ * ties are broken by selector text so every instance resolves the same way.
+ */
+public final class ThresholdScope {
+    public static final String DEFAULT = "*";
+    public static final String TAG_PREFIX = "tag:";
+
+    enum Kind { DEFAULT, GLOB, TAG, EXACT }
+
+    /** Least specific first; resolving in this order lets later scopes overwrite earlier ones. */
+    static final Comparator<ThresholdScope> SPECIFICITY = Comparator
+            .comparing((ThresholdScope s) -> s.kind)
+            .thenComparingInt(s -> s.literals)
+            .thenComparing(s -> s.selector, Comparator.reverseOrder());
+
+    final String selector;
+    final Kind kind;
+    private final int literals;
+
+    private ThresholdScope(String selector, Kind kind, int literals) {
+        this.selector = selector;
+        this.kind = kind;
+        this.literals = literals;
+    }
+
+    /**
+     * @throws IllegalArgumentException for a blank selector or an empty tag
+     */
+    public static ThresholdScope parse(String module) {
+        if (module == null || module.isBlank()) {
+            throw new IllegalArgumentException("module is required");
+        }
+        if (module.equals(DEFAULT)) {
+            return new ThresholdScope(module, Kind.DEFAULT, 0);
+        }
+        if (module.startsWith(TAG_PREFIX)) {
+            if (module.length() == TAG_PREFIX.length()) {
+                throw new IllegalArgumentException("tag selector needs a tag name: " + module);
+            }
+            return new ThresholdScope(module, Kind.TAG, 0);
+        }
+        int literals = 0;
+        for (int i = 0; i < module.length(); i++) {
+            char c = module.charAt(i);
+            if (c != '*' && c != '?') {
+                literals++;
+            }
+        }
+        return new ThresholdScope(module, literals == module.length() ? Kind.EXACT : Kind.GLOB, literals);
+    }
+
+    /** True for a plain module name, which is looked up directly rather than resolved. */
+    public static boolean isExact(String module) {
+        return parse(module).kind == Kind.EXACT;
+    }
+
+    boolean matches(String module, Set<String> tags) {
+        switch (kind) {
+            case DEFAULT: return true;
+            case TAG: return tags.contains(selector.substring(TAG_PREFIX.length()));
+            case GLOB: return glob(selector, module);
+            default: return selector.equals(module);
+        }
+    }
+
+    // iterative glob match, backtracking only to the last '*'
+    static boolean glob(String pattern, String s) {
+        int p = 0, i = 0, star = -1, mark = 0;
+        while (i < s.length()) {
+            if (p < pattern.length() && (pattern.charAt(p) == '?' || pattern.charAt(p) == s.charAt(i))) {
+                p++;
+                i++;
+            } else if (p < pattern.length() && pattern.charAt(p) == '*') {
+                star = p++;
+                mark = i;
+            } else if (star >= 0) {
+                p = star + 1;
+                i = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '*') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+}
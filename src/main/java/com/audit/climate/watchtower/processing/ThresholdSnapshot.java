@@ -0,0 +1,247 @@
+package com.audit.climate.watchtower.processing;
+
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * ThresholdSnapshot is an immutable, versioned view of all thresholds, indexed by
+ * MetricDictionary ids as [moduleId][metricId]. A lookup is two bounds-checked array reads
+ * and allocates nothing. Changes produce a new snapshot that shares every untouched row.
+ *
+ * Scoped thresholds (defaults, globs, tags; see ThresholdScope) are compiled per module: the
+ * first lookup for a module resolves every scope against it once and caches the resulting
+ * row, so later lookups are the same two array reads. The cache belongs to the snapshot and
+ * is therefore dropped by any change.
+ *
+ * The version is the cluster-wide threshold version the snapshot reflects (see ThresholdChangeBus).
+ */
+public final class ThresholdSnapshot {
+    public static final ThresholdSnapshot EMPTY =
+            new ThresholdSnapshot(0, new ThresholdConfig.Range[0][], 0, new Rule[0], Map.of());
+
+    private static final ThresholdConfig.Range[] NO_RANGES = new ThresholdConfig.Range[0];
+
+    private final long version;
+    private final ThresholdConfig.Range[][] byModule;
+    private final int exactSize;
+    // scoped thresholds, least specific first
+    private final Rule[] rules;
+    private final Map<String, Set<String>> tagsByModule;
+
+    private final Object cacheLock = new Object();
+    private volatile AtomicReferenceArray<ThresholdConfig.Range[]> resolved;
+
+    private ThresholdSnapshot(long version, ThresholdConfig.Range[][] byModule, int exactSize,
+                              Rule[] rules, Map<String, Set<String>> tagsByModule) {
+        this.version = version;
+        this.byModule = byModule;
+        this.exactSize = exactSize;
+        this.rules = rules;
+        this.tagsByModule = tagsByModule;
+        this.resolved = new AtomicReferenceArray<>(rules.length == 0 ? 0 : 64);
+    }
+
+    private static final class Rule {
+        final ThresholdScope scope;
+        final int metricId;
+        final ThresholdConfig.Range range;
+
+        Rule(ThresholdScope scope, int metricId, ThresholdConfig.Range range) {
+            this.scope = scope;
+            this.metricId = metricId;
+            this.range = range;
+        }
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /** Number of configured thresholds, exact and scoped. */
+    public int size() {
+        return exactSize + rules.length;
+    }
+
+    /** Threshold by MetricDictionary ids, after scope resolution; null if none applies. */
+    public ThresholdConfig.Range lookup(int moduleId, int metricId) {
+        ThresholdConfig.Range[] metrics;
+        if (rules.length == 0) {
+            ThresholdConfig.Range[][] modules = byModule;
+            if (moduleId < 0 || moduleId >= modules.length) {
+                return null;
+            }
+            metrics = modules[moduleId];
+        } else {
+            metrics = resolvedRow(moduleId);
+        }
+        return metrics != null && metricId >= 0 && metricId < metrics.length ? metrics[metricId] : null;
+    }
+
+    /**
+     * Threshold for a module the dictionary has never seen, from the scopes alone: it cannot
+     * have exact thresholds. Resolved on every call and not cached, for one-off lookups.
+     */
+    public ThresholdConfig.Range lookupUnknown(String module, int metricId) {
+        Set<String> tags = tagsByModule.getOrDefault(module, Set.of());
+        ThresholdConfig.Range range = null;
+        for (Rule rule : rules) {
+            if (rule.metricId == metricId && rule.scope.matches(module, tags)) {
+                range = rule.range;
+            }
+        }
+        return range;
+    }
+
+    private ThresholdConfig.Range[] resolvedRow(int moduleId) {
+        if (moduleId < 0) {
+            return NO_RANGES;
+        }
+        AtomicReferenceArray<ThresholdConfig.Range[]> cache = resolved;
+        if (moduleId < cache.length()) {
+            ThresholdConfig.Range[] row = cache.get(moduleId);
+            if (row != null) {
+                return row;
+            }
+        }
+        ThresholdConfig.Range[] row = resolve(moduleId);
+        synchronized (cacheLock) {
+            cache = resolved;
+            if (moduleId >= cache.length()) {
+                AtomicReferenceArray<ThresholdConfig.Range[]> grown =
+                        new AtomicReferenceArray<>(Math.max(moduleId + 1, cache.length() * 2));
+                for (int i = 0; i < cache.length(); i++) {
+                    grown.set(i, cache.get(i));
+                }
+                resolved = cache = grown;
+            }
+            cache.set(moduleId, row);
+        }
+        return row;
+    }
+
+    // every scope that matches the module, most specific last, then the module's exact thresholds
+    private ThresholdConfig.Range[] resolve(int moduleId) {
+        ThresholdConfig.Range[] exact = moduleId < byModule.length && byModule[moduleId] != null
+                ? byModule[moduleId] : NO_RANGES;
+        String module = MetricDictionary.global().moduleName(moduleId);
+        if (module == null) {
+            return exact;
+        }
+        Set<String> tags = tagsByModule.getOrDefault(module, Set.of());
+        ThresholdConfig.Range[] row = null;
+        for (Rule rule : rules) {
+            if (rule.scope.matches(module, tags)) {
+                if (row == null || rule.metricId >= row.length) {
+                    row = row == null ? new ThresholdConfig.Range[rule.metricId + 1] : Arrays.copyOf(row, rule.metricId + 1);
+                }
+                row[rule.metricId] = rule.range;
+            }
+        }
+        if (row == null) {
+            return exact;
+        }
+        if (exact.length > row.length) {
+            row = Arrays.copyOf(row, exact.length);
+        }
+        for (int m = 0; m < exact.length; m++) {
+            if (exact[m] != null) {
+                row[m] = exact[m];
+            }
+        }
+        return row;
+    }
+
+    /**
+     * A copy at the given version with one exact threshold set, or removed when range is null.
+     */
+    public ThresholdSnapshot with(int moduleId, int metricId, ThresholdConfig.Range range, long nextVersion) {
+        ThresholdConfig.Range previous = moduleId >= 0 && moduleId < byModule.length && byModule[moduleId] != null
+                && metricId < byModule[moduleId].length ? byModule[moduleId][metricId] : null;
+        if (range == null && previous == null) {
+            return new ThresholdSnapshot(nextVersion, byModule, exactSize, rules, tagsByModule);
+        }
+        ThresholdConfig.Range[][] nextByModule = moduleId < byModule.length
+                ? byModule.clone() : Arrays.copyOf(byModule, moduleId + 1);
+        ThresholdConfig.Range[] metrics = nextByModule[moduleId] != null ? nextByModule[moduleId] : NO_RANGES;
+        ThresholdConfig.Range[] nextMetrics = metricId < metrics.length ? metrics.clone() : Arrays.copyOf(metrics, metricId + 1);
+        nextMetrics[metricId] = range;
+        nextByModule[moduleId] = nextMetrics;
+        int nextSize = exactSize + (previous == null ? 1 : 0) - (range == null ? 1 : 0);
+        return new ThresholdSnapshot(nextVersion, nextByModule, nextSize, rules, tagsByModule);
+    }
+
+    /**
+     * A copy at the given version with one scoped threshold set, or removed when range is null.
+     */
+    public ThresholdSnapshot withScope(String selector, int metricId, ThresholdConfig.Range range, long nextVersion) {
+        List<Rule> next = new ArrayList<>(rules.length + 1);
+        for (Rule rule : rules) {
+            if (rule.metricId != metricId || !rule.scope.selector.equals(selector)) {
+                next.add(rule);
+            }
+        }
+        if (range != null) {
+            next.add(new Rule(ThresholdScope.parse(selector), metricId, range));
+        }
+        return new ThresholdSnapshot(nextVersion, byModule, exactSize, sorted(next), tagsByModule);
+    }
+
+    private static Rule[] sorted(List<Rule> rules) {
+        rules.sort((a, b) -> ThresholdScope.SPECIFICITY.compare(a.scope, b.scope));
+        return rules.toArray(new Rule[0]);
+    }
+
+    /** Collects thresholds and module tags for a bulk load without copying per entry. */
+    public static final class Builder {
+        private ThresholdConfig.Range[][] byModule = new ThresholdConfig.Range[16][];
+        private int size;
+        private final Map<String, Rule> rules = new HashMap<>();
+        private final Map<String, Set<String>> tags = new HashMap<>();
+
+        public Builder put(int moduleId, int metricId, ThresholdConfig.Range range) {
+            if (moduleId >= byModule.length) {
+                byModule = Arrays.copyOf(byModule, Math.max(moduleId + 1, byModule.length * 2));
+            }
+            ThresholdConfig.Range[] metrics = byModule[moduleId];
+            if (metrics == null || metricId >= metrics.length) {
+                metrics = metrics == null ? new ThresholdConfig.Range[metricId + 1] : Arrays.copyOf(metrics, metricId + 1);
+                byModule[moduleId] = metrics;
+            }
+            if (metrics[metricId] == null) {
+                size++;
+            }
+            metrics[metricId] = range;
+            return this;
+        }
+
+        /** A scoped threshold; selector as in ThresholdScope. */
+        public Builder scope(String selector, int metricId, ThresholdConfig.Range range) {
+            rules.put(selector + '\u0000' + metricId, new Rule(ThresholdScope.parse(selector), metricId, range));
+            return this;
+        }
+
+        public Builder tag(String module, String tag) {
+            tags.computeIfAbsent(module, m -> new HashSet<>()).add(tag);
+            return this;
+        }
+
+        public ThresholdSnapshot build(long version) {
+            int modules = byModule.length;
+            while (modules > 0 && byModule[modules - 1] == null) {
+                modules--;
+            }
+            Map<String, Set<String>> frozenTags = new HashMap<>();
+            tags.forEach((module, set) -> frozenTags.put(module, Set.copyOf(set)));
+            return new ThresholdSnapshot(version, Arrays.copyOf(byModule, modules), size,
+                    sorted(new ArrayList<>(rules.values())), Map.copyOf(frozenTags));
+        }
+    }
+}
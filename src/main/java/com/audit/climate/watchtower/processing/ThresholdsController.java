@@ -1,10 +1,17 @@
 package com.audit.climate.watchtower.processing;
 
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.net.URI;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
@@ -12,10 +19,12 @@ import java.util.stream.Collectors;
 public class ThresholdsController {
     private final ThresholdRepository repository;
     private final ThresholdConfig config;
+    private final ThresholdBulkService bulk;
 
-    public ThresholdsController(ThresholdRepository repository, ThresholdConfig config) {
+    public ThresholdsController(ThresholdRepository repository, ThresholdConfig config, ThresholdBulkService bulk) {
         this.repository = repository;
         this.config = config;
+        this.bulk = bulk;
     }
 
     // List all thresholds
@@ -32,7 +41,8 @@ public class ThresholdsController {
                 .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
-    // Create or update a threshold
+    // Create or update a threshold. module is a module name or a scope: "*" (all modules),
+    // a glob such as "green-*", or "tag:<tag>"; the most specific one applies.
     @PostMapping
     public ResponseEntity<?> upsert(@RequestBody UpsertRequest req) {
         if (req.getModule() == null || req.getMetric() == null) {
@@ -41,6 +51,11 @@ public class ThresholdsController {
         if (req.getMin() != null && req.getMax() != null && req.getMin() > req.getMax()) {
             return ResponseEntity.badRequest().body("min must be <= max");
         }
+        try {
+            ThresholdScope.parse(req.getModule());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
         config.setThreshold(req.getModule(), req.getMetric(), req.getMin(), req.getMax());
         // Return location of resource (convention)
         URI location = URI.create(String.format("/api/thresholds?module=%s&metric=%s", req.getModule(), req.getMetric()));
@@ -54,6 +69,77 @@ public class ThresholdsController {
         return ResponseEntity.noContent().build();
     }
 
+    // Threshold in effect for a module after scope resolution
+    @GetMapping("/effective")
+    public ResponseEntity<?> effective(@RequestParam String module, @RequestParam String metric) {
+        ThresholdConfig.Range range = config.getThreshold(module, metric);
+        if (range == null) {
+            return ResponseEntity.notFound().build();
+        }
+        ThresholdBulkService.Row row = new ThresholdBulkService.Row(module, metric, range.min, range.max);
+        return ResponseEntity.ok(row);
+    }
+
+    // Tags of a module, used by "tag:" scopes
+    @GetMapping("/tags")
+    public Set<String> tags(@RequestParam String module) {
+        return config.getModuleTags(module);
+    }
+
+    // Replace the tags of a module
+    @PutMapping("/tags")
+    public ResponseEntity<?> setTags(@RequestParam String module, @RequestBody List<String> tags) {
+        if (module.isBlank() || tags.stream().anyMatch(t -> t == null || t.isBlank())) {
+            return ResponseEntity.badRequest().body("module and tags must not be blank");
+        }
+        config.setModuleTags(module, tags);
+        return ResponseEntity.noContent().build();
+    }
+
+    // POST /api/thresholds/bulk?replace=false with a JSON array of {module, metric, min, max}
+    // Upserts all of them in one transaction; replace=true also deletes thresholds not listed.
+    @PostMapping(path = "/bulk", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> bulkJson(@RequestBody List<ThresholdBulkService.Row> rows,
+                                      @RequestParam(defaultValue = "false") boolean replace) {
+        return bulkImport(rows, replace);
+    }
+
+    // Same as above with text/csv: a module,metric,min,max header, empty min/max for unbounded
+    @PostMapping(path = "/bulk", consumes = "text/csv")
+    public ResponseEntity<?> bulkCsv(@RequestBody String csv,
+                                     @RequestParam(defaultValue = "false") boolean replace) throws IOException {
+        List<ThresholdBulkService.Row> rows;
+        try {
+            rows = bulk.parseCsv(new StringReader(csv));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+        return bulkImport(rows, replace);
+    }
+
+    private ResponseEntity<?> bulkImport(List<ThresholdBulkService.Row> rows, boolean replace) {
+        try {
+            return ResponseEntity.ok(Map.of("imported", bulk.importAll(rows, replace)));
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+    }
+
+    // GET /api/thresholds/export?format=json|csv
+    // Streams every threshold in a form the bulk endpoint accepts back.
+    @GetMapping("/export")
+    public ResponseEntity<?> export(@RequestParam(defaultValue = "json") String format) {
+        if (!format.equalsIgnoreCase("json") && !format.equalsIgnoreCase("csv")) {
+            return ResponseEntity.badRequest().body("format must be json or csv");
+        }
+        boolean csv = format.equalsIgnoreCase("csv");
+        StreamingResponseBody body = out -> bulk.export(csv, out);
+        return ResponseEntity.ok()
+                .contentType(csv ? MediaType.parseMediaType("text/csv") : MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"thresholds." + (csv ? "csv" : "json") + "\"")
+                .body(body);
+    }
+
     public static class UpsertRequest {
         private String module;
         private String metric;
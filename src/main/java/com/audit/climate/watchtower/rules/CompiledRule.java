@@ -0,0 +1,35 @@
+package com.audit.climate.watchtower.rules;
+
+import com.audit.climate.watchtower.alerts.Alert;
+
+import java.util.UUID;
+
+/**
+ * A rule ready for evaluation. seriesId keys the rule's alert series in AlertStateTracker;
+ * it is negative so it never collides with a metric id, and unique among all rules (see
+ * RuleEngine), so no two rules share a series.
+ */
+public final class CompiledRule {
+    private final UUID id;
+    private final String name;
+    private final Alert.Severity severity;
+    private final RuleExpression expression;
+    private final int seriesId;
+
+    public CompiledRule(UUID id, int seriesId, String name, Alert.Severity severity, RuleExpression expression) {
+        if (seriesId >= 0) {
+            throw new IllegalArgumentException("series id must be negative: " + seriesId);
+        }
+        this.id = id;
+        this.seriesId = seriesId;
+        this.name = name;
+        this.severity = severity;
+        this.expression = expression;
+    }
+
+    public UUID getId() { return id; }
+    public String getName() { return name; }
+    public Alert.Severity getSeverity() { return severity; }
+    public RuleExpression getExpression() { return expression; }
+    public int getSeriesId() { return seriesId; }
+}
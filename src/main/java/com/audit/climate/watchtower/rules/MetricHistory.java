@@ -0,0 +1,133 @@
+package com.audit.climate.watchtower.rules;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * MetricHistory keeps recent readings per (module, metric) for rate terms such as
+ * pressure_drop_1h. Only metrics some rule takes a rate of are recorded, at most one sample
+ * per resolution-ms bucket, so a series holds window / resolution samples. Series are ring
+ * buffers indexed by MetricDictionary ids and grow only as far as the longest window in use.
+ */
+public final class MetricHistory {
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final long resolutionMs;
+    private final Object growLock = new Object();
+    private volatile AtomicReferenceArray<Series[]> byModule = new AtomicReferenceArray<>(64);
+
+    public MetricHistory(long resolutionMs) {
+        if (resolutionMs <= 0) {
+            throw new IllegalArgumentException("resolution must be positive");
+        }
+        this.resolutionMs = resolutionMs;
+    }
+
+    /** Record a reading, keeping samples for at least retainMs. */
+    public void record(int moduleId, int metricId, long timeMs, double value, long retainMs) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        series(moduleId, metricId).record(timeMs, value, retainMs);
+    }
+
+    /**
+     * Current value minus the latest reading at least windowMs old; NaN until the series
+     * covers the window.
+     */
+    public double change(int moduleId, int metricId, long windowMs, long nowMs, double current) {
+        Series[] metrics = row(moduleId);
+        Series s = metrics != null && metricId < metrics.length ? metrics[metricId] : null;
+        return s == null ? Double.NaN : current - s.valueAt(nowMs - windowMs);
+    }
+
+    private Series[] row(int moduleId) {
+        AtomicReferenceArray<Series[]> modules = byModule;
+        return moduleId < modules.length() ? modules.get(moduleId) : null;
+    }
+
+    private Series series(int moduleId, int metricId) {
+        Series[] metrics = row(moduleId);
+        if (metrics != null && metricId < metrics.length && metrics[metricId] != null) {
+            return metrics[metricId];
+        }
+        synchronized (growLock) {
+            AtomicReferenceArray<Series[]> modules = byModule;
+            if (moduleId >= modules.length()) {
+                AtomicReferenceArray<Series[]> grown =
+                        new AtomicReferenceArray<>(Math.max(moduleId + 1, modules.length() * 2));
+                for (int i = 0; i < modules.length(); i++) {
+                    grown.set(i, modules.get(i));
+                }
+                byModule = modules = grown;
+            }
+            metrics = modules.get(moduleId);
+            if (metrics != null && metricId < metrics.length && metrics[metricId] != null) {
+                return metrics[metricId];
+            }
+            // copy-on-write: readers never see a row being filled in
+            Series[] next = metrics == null ? new Series[metricId + 1]
+                    : Arrays.copyOf(metrics, Math.max(metricId + 1, metrics.length));
+            next[metricId] = new Series();
+            modules.set(moduleId, next);
+            return next[metricId];
+        }
+    }
+
+    private final class Series {
+        private long[] times = new long[INITIAL_CAPACITY];
+        private double[] values = new double[INITIAL_CAPACITY];
+        private int head;
+        private int count;
+
+        synchronized void record(long timeMs, double value, long retainMs) {
+            if (count > 0) {
+                int last = (head + count - 1) % times.length;
+                if (timeMs < times[last]) {
+                    return;
+                }
+                if (timeMs / resolutionMs == times[last] / resolutionMs) {
+                    times[last] = timeMs;
+                    values[last] = value;
+                    return;
+                }
+            }
+            if (count == times.length) {
+                // the oldest sample can go once the next one is old enough to answer the window
+                if (times[(head + 1) % times.length] <= timeMs - retainMs) {
+                    head = (head + 1) % times.length;
+                    count--;
+                } else {
+                    grow();
+                }
+            }
+            int slot = (head + count) % times.length;
+            times[slot] = timeMs;
+            values[slot] = value;
+            count++;
+        }
+
+        synchronized double valueAt(long timeMs) {
+            for (int i = count - 1; i >= 0; i--) {
+                int slot = (head + i) % times.length;
+                if (times[slot] <= timeMs) {
+                    return values[slot];
+                }
+            }
+            return Double.NaN;
+        }
+
+        private void grow() {
+            long[] nextTimes = new long[times.length * 2];
+            double[] nextValues = new double[times.length * 2];
+            for (int i = 0; i < count; i++) {
+                int slot = (head + i) % times.length;
+                nextTimes[i] = times[slot];
+                nextValues[i] = values[slot];
+            }
+            times = nextTimes;
+            values = nextValues;
+            head = 0;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.audit.climate.watchtower.rules;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * RuleEngine owns the compiled rule set. Rules are stored in detection_rules and compiled once
+ * per change into a RuleSet that RuleDetector reads lock-free; an invalid stored rule is
+ * logged and skipped rather than failing the whole set.
+ *
+ * Changes made through this instance recompile immediately; the others notice them at the
+ * next refresh-interval-ms check of the table's row count and latest update.
+ *
+ * Each rule gets a series id for AlertStateTracker the first time it is compiled: -1, -2 and
+ * so on in order of first sight. It is kept across recompiles and not reused after the rule
+ * is deleted, so a rule's open series survive rule changes and never pass to another rule.
+ */
+@Component
+public class RuleEngine {
+    private static final Logger log = LoggerFactory.getLogger(RuleEngine.class);
+
+    private final RuleRepository repository;
+    private final long maxWindowMs;
+    private final MetricHistory history;
+
+    private volatile RuleSet rules = RuleSet.EMPTY;
+    private String fingerprint;
+    private final Map<UUID, Integer> seriesIds = new HashMap<>();
+
+    public RuleEngine(RuleRepository repository,
+                      @Value("${audit.rules.history.resolution-ms:60000}") long resolutionMs,
+                      @Value("${audit.rules.max-window-ms:86400000}") long maxWindowMs) {
+        this.repository = repository;
+        this.maxWindowMs = maxWindowMs;
+        this.history = new MetricHistory(resolutionMs);
+    }
+
+    @PostConstruct
+    public void loadFromDb() {
+        try {
+            reload();
+        } catch (Exception ex) {
+            log.error("Failed to load detection rules from DB", ex);
+        }
+    }
+
+    public RuleSet rules() {
+        return rules;
+    }
+
+    public MetricHistory history() {
+        return history;
+    }
+
+    public synchronized void reload() {
+        String current = fingerprint();
+        install(repository.findAll());
+        fingerprint = current;
+    }
+
+    /** Compile and swap in the enabled rules among the given ones. */
+    public synchronized void install(Collection<RuleEntry> entries) {
+        List<CompiledRule> compiled = new ArrayList<>(entries.size());
+        for (RuleEntry entry : entries) {
+            if (!entry.isEnabled()) {
+                continue;
+            }
+            try {
+                RuleExpression expression = compile(entry.getExpression());
+                int seriesId = seriesIds.computeIfAbsent(entry.getId(), id -> -(seriesIds.size() + 1));
+                compiled.add(new CompiledRule(entry.getId(), seriesId, entry.getName(),
+                        Alert.Severity.of(entry.getSeverity()), expression));
+            } catch (IllegalArgumentException ex) {
+                log.warn("Skipping rule {}: {}", entry.getName(), ex.getMessage());
+            }
+        }
+        rules = RuleSet.of(compiled);
+        log.info("Compiled {} detection rules", compiled.size());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression does not compile or looks back too far
+     */
+    public RuleExpression compile(String expression) {
+        validate(expression);
+        return RuleExpression.compile(expression);
+    }
+
+    /**
+     * Check an expression without interning its metric names, which only installing it does.
+     * @throws IllegalArgumentException if the expression does not compile or looks back too far
+     */
+    public void validate(String expression) {
+        if (RuleExpression.check(expression).maxWindowMs() > maxWindowMs) {
+            throw new IllegalArgumentException("rate windows are limited to " + maxWindowMs + "ms");
+        }
+    }
+
+    /**
+     * Create or update a rule and recompile.
+     * @throws IllegalArgumentException for an invalid expression or severity; nothing is stored then
+     */
+    public void save(String name, String expression, String severity, boolean enabled) {
+        validate(expression);
+        String tag = Alert.Severity.of(severity).tag();
+        RuleEntry entry = repository.findByName(name)
+                .orElseGet(() -> new RuleEntry(name, expression, tag, enabled));
+        entry.setExpression(expression);
+        entry.setSeverity(tag);
+        entry.setEnabled(enabled);
+        entry.touch();
+        repository.save(entry);
+        reload();
+    }
+
+    public void delete(String name) {
+        repository.findByName(name).ifPresent(repository::delete);
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${audit.rules.refresh-interval-ms:10000}")
+    public void refresh() {
+        try {
+            if (!Objects.equals(fingerprint(), fingerprint)) {
+                reload();
+            }
+        } catch (Exception ex) {
+            log.warn("Detection rule refresh failed: {}", ex.getMessage());
+        }
+    }
+
+    // changes with every insert, update and delete: deletes lower the count, the rest move the latest update
+    private String fingerprint() {
+        return repository.count() + ":" + repository.findTopByOrderByUpdatedAtDesc()
+                .map(RuleEntry::getUpdatedAt).orElse(null);
+    }
+}
@@ -0,0 +1,85 @@
+package com.audit.climate.watchtower.rules;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "detection_rules")
+public class RuleEntry {
+
+    @Id
+    private UUID id;
+
+    @Column(name = "name", nullable = false, unique = true)
+    private String name;
+
+    @Column(name = "expression", nullable = false)
+    private String expression;
+
+    @Column(name = "severity", nullable = false)
+    private String severity;
+
+    @Column(name = "enabled", nullable = false)
+    private boolean enabled;
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    public RuleEntry() {
+        this.id = UUID.randomUUID();
+        this.updatedAt = Instant.now();
+    }
+
+    public RuleEntry(String name, String expression, String severity, boolean enabled) {
+        this();
+        this.name = name;
+        this.expression = expression;
+        this.severity = severity;
+        this.enabled = enabled;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    public void setExpression(String expression) {
+        this.expression = expression;
+    }
+
+    public String getSeverity() {
+        return severity;
+    }
+
+    public void setSeverity(String severity) {
+        this.severity = severity;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void touch() {
+        this.updatedAt = Instant.now();
+    }
+}
@@ -0,0 +1,460 @@
+package com.audit.climate.watchtower.rules;
+
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+
+import java.time.Instant;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * RuleExpression compiles a rule such as "humidity > 90 && pressure_drop_1h > 4" into a tree
+ * of closures over MetricDictionary ids, so evaluating it reads metric values straight from
+ * the CanonicalEvent without parsing, string lookups or boxing.
+ *
+ * Grammar, loosest binding first:
+ *   expr       := and ('||' and)*
+ *   and        := not ('&&' not)*
+ *   not        := '!' not | comparison
+ *   comparison := sum (('>' | '>=' | '<' | '<=' | '==' | '!=') sum)?
+ *   sum        := product (('+' | '-') product)*
+ *   product    := unary (('*' | '/') unary)*
+ *   unary      := '-' unary | number | term | '(' expr ')'
+ *
+ * A term is a metric name (backquoted if it is not a plain identifier) or a rate over a
+ * window: metric_rise_1h (current minus the reading an hour ago), metric_drop_30m (the
+ * opposite) and metric_delta_15m (same as rise); windows are in s, m or h. A comparison with
+ * a metric missing from the event, or a rate without enough history, is false.
+ */
+public final class RuleExpression {
+    private static final Pattern RATE = Pattern.compile("(.+)_(rise|drop|delta)_(\\d+)([smh])");
+
+    /** A numeric subexpression. */
+    interface Value {
+        double eval(CanonicalEvent event, MetricHistory history);
+    }
+
+    /** A boolean subexpression. */
+    interface Condition {
+        boolean test(CanonicalEvent event, MetricHistory history);
+    }
+
+    private final String source;
+    private final Condition condition;
+    private final BitSet required;
+    private final BitSet rateMetrics;
+    private final long maxWindowMs;
+    private final Map<String, Value> terms;
+
+    private RuleExpression(String source, Condition condition, BitSet required, BitSet rateMetrics,
+                           long maxWindowMs, Map<String, Value> terms) {
+        this.source = source;
+        this.condition = condition;
+        this.required = required;
+        this.rateMetrics = rateMetrics;
+        this.maxWindowMs = maxWindowMs;
+        this.terms = terms;
+    }
+
+    /**
+     * Metric names new to MetricDictionary are interned only once the whole expression has
+     * been checked, so an invalid one leaves no ids behind.
+     * @throws IllegalArgumentException with the position of the first error
+     */
+    public static RuleExpression compile(String source) {
+        check(source);
+        return parse(source, true);
+    }
+
+    /**
+     * Check an expression without interning its metric names. The result is only good for
+     * inspecting (e.g. maxWindowMs), not for evaluation: unseen metrics get placeholder ids.
+     * @throws IllegalArgumentException with the position of the first error
+     */
+    static RuleExpression check(String source) {
+        return parse(source, false);
+    }
+
+    private static RuleExpression parse(String source, boolean intern) {
+        if (source == null || source.isBlank()) {
+            throw new IllegalArgumentException("expression is required");
+        }
+        Parser parser = new Parser(source, intern);
+        Node root = parser.expr();
+        parser.expectEnd();
+        if (root.condition == null) {
+            throw new IllegalArgumentException("expression must be a condition, e.g. humidity > 90");
+        }
+        return new RuleExpression(source, root.condition, root.required, parser.rateMetrics,
+                parser.maxWindowMs, parser.terms);
+    }
+
+    public boolean test(CanonicalEvent event, MetricHistory history) {
+        return condition.test(event, history);
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * A metric that must be present for the rule to hold, or -1 if there is none (e.g. for
+     * "a > 1 || b > 1"). Rules are indexed under it and skipped for events without it.
+     */
+    public int triggerMetric() {
+        // the highest id: the built-in metrics have the lowest ids and are in nearly every event
+        return required.length() - 1;
+    }
+
+    /** Metrics whose history rate terms read. */
+    BitSet rateMetrics() {
+        return rateMetrics;
+    }
+
+    long maxWindowMs() {
+        return maxWindowMs;
+    }
+
+    /** Every term's current value, for alert descriptions. */
+    public String describeTerms(CanonicalEvent event, MetricHistory history) {
+        StringBuilder out = new StringBuilder();
+        for (Map.Entry<String, Value> term : terms.entrySet()) {
+            if (out.length() > 0) {
+                out.append(", ");
+            }
+            out.append(term.getKey()).append('=')
+                    .append(String.format(Locale.ROOT, "%.2f", term.getValue().eval(event, history)));
+        }
+        return out.toString();
+    }
+
+    /** The first term's value, reported as the alert's value. */
+    public double primaryValue(CanonicalEvent event, MetricHistory history) {
+        return terms.isEmpty() ? 1.0 : terms.values().iterator().next().eval(event, history);
+    }
+
+    private static long timeOf(CanonicalEvent event) {
+        Instant ts = event.getTimestamp();
+        return ts != null ? ts.toEpochMilli() : System.currentTimeMillis();
+    }
+
+    // a compiled subexpression: exactly one of value and condition is set
+    private static final class Node {
+        final Value value;
+        final Condition condition;
+        // metrics that must be present for a condition to hold, or referenced by a value
+        final BitSet required;
+
+        Node(Value value, Condition condition, BitSet required) {
+            this.value = value;
+            this.condition = condition;
+            this.required = required;
+        }
+    }
+
+    private static final class Parser {
+        private final String src;
+        private final MetricDictionary dictionary = MetricDictionary.global();
+        private final boolean intern;
+        // check mode: placeholder ids, past the dictionary's range, for metrics not seen yet
+        private final Map<String, Integer> unseen = new LinkedHashMap<>();
+        private int pos;
+        final BitSet rateMetrics = new BitSet();
+        long maxWindowMs;
+        final Map<String, Value> terms = new LinkedHashMap<>();
+
+        Parser(String src, boolean intern) {
+            this.src = src;
+            this.intern = intern;
+        }
+
+        Node expr() {
+            Node left = and();
+            while (accept("||")) {
+                Condition a = condition(left, "||");
+                Node right = and();
+                Condition b = condition(right, "||");
+                // either side may hold alone, so only metrics both need are required
+                BitSet required = (BitSet) left.required.clone();
+                required.and(right.required);
+                left = new Node(null, (e, h) -> a.test(e, h) || b.test(e, h), required);
+            }
+            return left;
+        }
+
+        Node and() {
+            Node left = not();
+            while (accept("&&")) {
+                Condition a = condition(left, "&&");
+                Node right = not();
+                Condition b = condition(right, "&&");
+                BitSet required = (BitSet) left.required.clone();
+                required.or(right.required);
+                left = new Node(null, (e, h) -> a.test(e, h) && b.test(e, h), required);
+            }
+            return left;
+        }
+
+        Node not() {
+            if (peek("!") && !peek("!=")) {
+                pos++;
+                Condition c = condition(not(), "!");
+                // a negation holds when its operand is missing, so it requires nothing
+                return new Node(null, (e, h) -> !c.test(e, h), new BitSet());
+            }
+            return comparison();
+        }
+
+        Node comparison() {
+            Node left = sum();
+            String op = null;
+            for (String candidate : new String[]{">=", "<=", "==", "!=", ">", "<"}) {
+                if (accept(candidate)) {
+                    op = candidate;
+                    break;
+                }
+            }
+            if (op == null) {
+                return left;
+            }
+            Value a = value(left, op);
+            Node right = sum();
+            Value b = value(right, op);
+            BitSet required = (BitSet) left.required.clone();
+            required.or(right.required);
+            Condition c;
+            switch (op) {
+                case ">": c = (e, h) -> a.eval(e, h) > b.eval(e, h); break;
+                case ">=": c = (e, h) -> a.eval(e, h) >= b.eval(e, h); break;
+                case "<": c = (e, h) -> a.eval(e, h) < b.eval(e, h); break;
+                case "<=": c = (e, h) -> a.eval(e, h) <= b.eval(e, h); break;
+                case "==": c = (e, h) -> a.eval(e, h) == b.eval(e, h); break;
+                default: c = (e, h) -> {
+                    double x = a.eval(e, h);
+                    double y = b.eval(e, h);
+                    // unlike Java's !=, a missing value does not make the comparison true
+                    return x != y && !Double.isNaN(x) && !Double.isNaN(y);
+                };
+            }
+            return new Node(null, c, required);
+        }
+
+        Node sum() {
+            Node left = product();
+            while (true) {
+                char op = peekChar();
+                if (op != '+' && op != '-') {
+                    return left;
+                }
+                pos++;
+                left = arithmetic(left, op, product());
+            }
+        }
+
+        Node product() {
+            Node left = unary();
+            while (true) {
+                char op = peekChar();
+                if (op != '*' && op != '/') {
+                    return left;
+                }
+                pos++;
+                left = arithmetic(left, op, unary());
+            }
+        }
+
+        private Node arithmetic(Node left, char op, Node right) {
+            Value a = value(left, String.valueOf(op));
+            Value b = value(right, String.valueOf(op));
+            BitSet required = (BitSet) left.required.clone();
+            required.or(right.required);
+            Value v;
+            switch (op) {
+                case '+': v = (e, h) -> a.eval(e, h) + b.eval(e, h); break;
+                case '-': v = (e, h) -> a.eval(e, h) - b.eval(e, h); break;
+                case '*': v = (e, h) -> a.eval(e, h) * b.eval(e, h); break;
+                default: v = (e, h) -> a.eval(e, h) / b.eval(e, h);
+            }
+            return new Node(v, null, required);
+        }
+
+        Node unary() {
+            skipSpace();
+            if (pos >= src.length()) {
+                throw error("unexpected end of expression");
+            }
+            char c = src.charAt(pos);
+            if (c == '-') {
+                pos++;
+                Node operand = unary();
+                Value v = value(operand, "-");
+                return new Node((e, h) -> -v.eval(e, h), null, operand.required);
+            }
+            if (c == '(') {
+                pos++;
+                Node inner = expr();
+                if (!accept(")")) {
+                    throw error("expected ')'");
+                }
+                return inner;
+            }
+            if (Character.isDigit(c) || c == '.') {
+                return number();
+            }
+            if (c == '`' || Character.isLetter(c) || c == '_') {
+                return term();
+            }
+            throw error("unexpected '" + c + "'");
+        }
+
+        private Node number() {
+            int start = pos;
+            while (pos < src.length() && (Character.isDigit(src.charAt(pos)) || src.charAt(pos) == '.'
+                    || src.charAt(pos) == 'e' || src.charAt(pos) == 'E'
+                    || ((src.charAt(pos) == '+' || src.charAt(pos) == '-')
+                        && (src.charAt(pos - 1) == 'e' || src.charAt(pos - 1) == 'E')))) {
+                pos++;
+            }
+            double constant;
+            try {
+                constant = Double.parseDouble(src.substring(start, pos));
+            } catch (NumberFormatException ex) {
+                pos = start;
+                throw error("invalid number");
+            }
+            return new Node((e, h) -> constant, null, new BitSet());
+        }
+
+        private Node term() {
+            int start = pos;
+            String name;
+            boolean quoted = src.charAt(pos) == '`';
+            if (quoted) {
+                int end = src.indexOf('`', pos + 1);
+                if (end < 0) {
+                    throw error("unterminated `");
+                }
+                name = src.substring(pos + 1, end);
+                pos = end + 1;
+            } else {
+                while (pos < src.length() && (Character.isLetterOrDigit(src.charAt(pos)) || src.charAt(pos) == '_'
+                        || src.charAt(pos) == '.')) {
+                    pos++;
+                }
+                name = src.substring(start, pos);
+            }
+            if (name.isEmpty()) {
+                pos = start;
+                throw error("empty metric name");
+            }
+
+            BitSet required = new BitSet();
+            Matcher rate = quoted ? null : RATE.matcher(name);
+            Value v;
+            if (rate != null && rate.matches()) {
+                int metricId = metricId(rate.group(1), start);
+                long windowMs = Long.parseLong(rate.group(3)) * unitMs(rate.group(4));
+                if (windowMs <= 0) {
+                    pos = start;
+                    throw error("window must be positive");
+                }
+                double sign = rate.group(2).equals("drop") ? -1 : 1;
+                v = (e, h) -> {
+                    if (!e.hasMetric(metricId)) {
+                        return Double.NaN;
+                    }
+                    return sign * h.change(e.getModuleId(), metricId, windowMs, timeOf(e), e.metricValue(metricId));
+                };
+                required.set(metricId);
+                rateMetrics.set(metricId);
+                maxWindowMs = Math.max(maxWindowMs, windowMs);
+            } else {
+                int metricId = metricId(name, start);
+                v = (e, h) -> e.hasMetric(metricId) ? e.metricValue(metricId) : Double.NaN;
+                required.set(metricId);
+            }
+            terms.putIfAbsent(name, v);
+            return new Node(v, null, required);
+        }
+
+        private int metricId(String name, int start) {
+            int metricId = dictionary.findMetric(name);
+            if (metricId < 0) {
+                if (intern) {
+                    metricId = dictionary.metricId(name);
+                } else if (unseen.containsKey(name)) {
+                    metricId = unseen.get(name);
+                } else if (dictionary.metricCount() + unseen.size() < MetricDictionary.MAX_METRICS) {
+                    metricId = MetricDictionary.MAX_METRICS + unseen.size();
+                    unseen.put(name, metricId);
+                }
+            }
+            if (metricId < 0) {
+                pos = start;
+                throw error("too many distinct metrics, cannot add " + name);
+            }
+            return metricId;
+        }
+
+        private static long unitMs(String unit) {
+            switch (unit) {
+                case "s": return 1000L;
+                case "m": return 60_000L;
+                default: return 3_600_000L;
+            }
+        }
+
+        private Condition condition(Node node, String op) {
+            if (node.condition == null) {
+                throw error("'" + op + "' needs conditions on both sides, e.g. a > 1 " + op + " b < 2");
+            }
+            return node.condition;
+        }
+
+        private Value value(Node node, String op) {
+            if (node.value == null) {
+                throw error("'" + op + "' needs numbers on both sides");
+            }
+            return node.value;
+        }
+
+        void expectEnd() {
+            skipSpace();
+            if (pos < src.length()) {
+                throw error("unexpected '" + src.charAt(pos) + "'");
+            }
+        }
+
+        private boolean accept(String token) {
+            if (peek(token)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean peek(String token) {
+            skipSpace();
+            return src.startsWith(token, pos);
+        }
+
+        private char peekChar() {
+            skipSpace();
+            return pos < src.length() ? src.charAt(pos) : 0;
+        }
+
+        private void skipSpace() {
+            while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + (pos + 1));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.audit.climate.watchtower.rules;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface RuleRepository extends JpaRepository<RuleEntry, UUID> {
+    Optional<RuleEntry> findByName(String name);
+
+    Optional<RuleEntry> findTopByOrderByUpdatedAtDesc();
+}
@@ -0,0 +1,134 @@
+package com.audit.climate.watchtower.rules;
+
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * RuleSet is an immutable set of compiled rules indexed by trigger metric (see
+ * RuleExpression.triggerMetric): an event only evaluates the rules filed under one of its
+ * present metrics, plus the few rules without a trigger. Every rule is filed exactly once,
+ * so no rule is evaluated twice for an event. Rules are also indexed by their dense series
+ * id (-1, -2, ...) to map expired alert series back to them.
+ */
+public final class RuleSet {
+    private static final CompiledRule[] NO_RULES = new CompiledRule[0];
+
+    public static final RuleSet EMPTY = of(List.of());
+
+    private final CompiledRule[][] byTrigger;
+    private final CompiledRule[] untriggered;
+    // by -(seriesId + 1)
+    private final CompiledRule[] bySeries;
+    private final int[] rateMetrics;
+    private final long maxWindowMs;
+    private final int size;
+
+    private RuleSet(CompiledRule[][] byTrigger, CompiledRule[] untriggered, CompiledRule[] bySeries,
+                    int[] rateMetrics, long maxWindowMs, int size) {
+        this.byTrigger = byTrigger;
+        this.untriggered = untriggered;
+        this.bySeries = bySeries;
+        this.rateMetrics = rateMetrics;
+        this.maxWindowMs = maxWindowMs;
+        this.size = size;
+    }
+
+    /**
+     * @throws IllegalArgumentException if two rules share a series id
+     */
+    public static RuleSet of(List<CompiledRule> rules) {
+        List<List<CompiledRule>> byTrigger = new ArrayList<>();
+        CompiledRule[] bySeries = NO_RULES;
+        List<CompiledRule> untriggered = new ArrayList<>();
+        BitSet rateMetrics = new BitSet();
+        long maxWindowMs = 0;
+        for (CompiledRule rule : rules) {
+            int slot = -(rule.getSeriesId() + 1);
+            if (slot >= bySeries.length) {
+                bySeries = Arrays.copyOf(bySeries, Math.max(slot + 1, bySeries.length * 2));
+            }
+            if (bySeries[slot] != null) {
+                throw new IllegalArgumentException("rules " + bySeries[slot].getName() + " and " + rule.getName()
+                        + " share series id " + rule.getSeriesId());
+            }
+            bySeries[slot] = rule;
+            int trigger = rule.getExpression().triggerMetric();
+            if (trigger < 0) {
+                untriggered.add(rule);
+            } else {
+                while (byTrigger.size() <= trigger) {
+                    byTrigger.add(null);
+                }
+                if (byTrigger.get(trigger) == null) {
+                    byTrigger.set(trigger, new ArrayList<>());
+                }
+                byTrigger.get(trigger).add(rule);
+            }
+            rateMetrics.or(rule.getExpression().rateMetrics());
+            maxWindowMs = Math.max(maxWindowMs, rule.getExpression().maxWindowMs());
+        }
+        CompiledRule[][] index = new CompiledRule[byTrigger.size()][];
+        for (int m = 0; m < index.length; m++) {
+            index[m] = byTrigger.get(m) == null ? NO_RULES : byTrigger.get(m).toArray(NO_RULES);
+        }
+        return new RuleSet(index, untriggered.toArray(NO_RULES), bySeries, rateMetrics.stream().toArray(),
+                maxWindowMs, rules.size());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Rules filed under a metric; evaluate them when the event carries it. */
+    public CompiledRule[] triggeredBy(int metricId) {
+        return metricId < byTrigger.length ? byTrigger[metricId] : NO_RULES;
+    }
+
+    /** Rules without a trigger metric, evaluated for every event. */
+    public CompiledRule[] untriggered() {
+        return untriggered;
+    }
+
+    /** The rule whose alert series has this id, or null if it is no longer in the set. */
+    public CompiledRule bySeriesId(int seriesId) {
+        int slot = -(seriesId + 1);
+        return slot >= 0 && slot < bySeries.length ? bySeries[slot] : null;
+    }
+
+    /** Number of rules an event evaluates. */
+    public int candidates(CanonicalEvent event) {
+        int n = untriggered.length;
+        for (int m = event.nextMetric(0); m >= 0; m = event.nextMetric(m + 1)) {
+            n += triggeredBy(m).length;
+        }
+        return n;
+    }
+
+    /** True if any rule has a rate term, so readings must be recorded. */
+    public boolean hasRates() {
+        return rateMetrics.length > 0;
+    }
+
+    /** Add the event's readings of metrics that rate terms look back on. */
+    public void record(CanonicalEvent event, MetricHistory history) {
+        if (rateMetrics.length == 0) {
+            return;
+        }
+        Instant ts = event.getTimestamp();
+        long timeMs = ts != null ? ts.toEpochMilli() : System.currentTimeMillis();
+        for (int metricId : rateMetrics) {
+            if (event.hasMetric(metricId)) {
+                history.record(event.getModuleId(), metricId, timeMs, event.metricValue(metricId), maxWindowMs);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.audit.climate.watchtower.rules;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/rules")
+public class RulesController {
+    private final RuleRepository repository;
+    private final RuleEngine engine;
+
+    public RulesController(RuleRepository repository, RuleEngine engine) {
+        this.repository = repository;
+        this.engine = engine;
+    }
+
+    // List all rules, enabled or not
+    @GetMapping
+    public List<RuleDto> list() {
+        return repository.findAll().stream().map(RuleDto::fromEntity).collect(Collectors.toList());
+    }
+
+    // Get a single rule by name
+    @GetMapping(params = "name")
+    public ResponseEntity<RuleDto> get(@RequestParam String name) {
+        return repository.findByName(name)
+                .map(e -> ResponseEntity.ok(RuleDto.fromEntity(e)))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    // Create or update a rule, e.g. {"name": "storm", "expression": "humidity > 90 && pressure_drop_1h > 4",
+    // "severity": "critical"}. The expression is compiled first; errors come back with their position.
+    @PostMapping
+    public ResponseEntity<?> upsert(@RequestBody UpsertRequest req) {
+        if (req.getName() == null || req.getName().isBlank() || req.getExpression() == null) {
+            return ResponseEntity.badRequest().body("name and expression are required");
+        }
+        try {
+            engine.save(req.getName(), req.getExpression(),
+                    req.getSeverity() != null ? req.getSeverity() : "warning", req.getEnabled() == null || req.getEnabled());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.badRequest().body(ex.getMessage());
+        }
+        URI location = URI.create("/api/rules?name=" + URLEncoder.encode(req.getName(), StandardCharsets.UTF_8));
+        return ResponseEntity.created(location).build();
+    }
+
+    // Delete a rule
+    @DeleteMapping
+    public ResponseEntity<?> delete(@RequestParam String name) {
+        engine.delete(name);
+        return ResponseEntity.noContent().build();
+    }
+
+    public static class UpsertRequest {
+        private String name;
+        private String expression;
+        private String severity;
+        private Boolean enabled;
+
+        public UpsertRequest() {}
+
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public String getExpression() { return expression; }
+        public void setExpression(String expression) { this.expression = expression; }
+        public String getSeverity() { return severity; }
+        public void setSeverity(String severity) { this.severity = severity; }
+        public Boolean getEnabled() { return enabled; }
+        public void setEnabled(Boolean enabled) { this.enabled = enabled; }
+    }
+
+    public static class RuleDto {
+        private String name;
+        private String expression;
+        private String severity;
+        private boolean enabled;
+        private String updatedAt;
+
+        public static RuleDto fromEntity(RuleEntry e) {
+            RuleDto d = new RuleDto();
+            d.name = e.getName();
+            d.expression = e.getExpression();
+            d.severity = e.getSeverity();
+            d.enabled = e.isEnabled();
+            d.updatedAt = e.getUpdatedAt() != null ? e.getUpdatedAt().toString() : null;
+            return d;
+        }
+
+        public String getName() { return name; }
+        public String getExpression() { return expression; }
+        public String getSeverity() { return severity; }
+        public boolean isEnabled() { return enabled; }
+        public String getUpdatedAt() { return updatedAt; }
+    }
+}
@@ -1,8 +1,11 @@
 package com.audit.climate.watchtower.seed;
 
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.event.EventListener;
@@ -46,7 +49,13 @@ public class RabbitSeedRunner {
     @Value("${app.rabbit.seed.modules:green-medium}")
     private String modules;
 
+    // wire encoding of seeded messages: json, cbor or smile (sent with the matching content_type)
+    @Value("${app.rabbit.seed.encoding:json}")
+    private String encoding;
+
     private String[] modulesArray;
+    private PayloadEncoding payloadEncoding;
+    private ObjectMapper encodingMapper;
 
     // Flag and thread reference so we can stop cleanly on context shutdown
     private volatile boolean running = true;
@@ -64,6 +73,8 @@ public class RabbitSeedRunner {
         } else {
             modulesArray = new String[]{"green-medium"};
         }
+        payloadEncoding = PayloadEncoding.fromTag(encoding);
+        encodingMapper = payloadEncoding.newMapper();
 
         log.info("ApplicationReadyEvent received — starting seeder in background thread (mode={}).", mode);
         Thread t = new Thread(() -> {
@@ -135,6 +146,14 @@ public class RabbitSeedRunner {
             msg.put("pressure", 700 + rnd.nextDouble() * 50);
             msg.put("ts", Instant.now().toString());
 
+            if (payloadEncoding.isBinary()) {
+                MessageProperties props = new MessageProperties();
+                props.setContentType(payloadEncoding.contentType());
+                Message message = new Message(encodingMapper.writeValueAsBytes(msg), props);
+                rabbitTemplate.send(exchange == null ? "" : exchange, routingKey, message);
+                return;
+            }
+
             String payload = objectMapper.writeValueAsString(msg);
             if (exchange == null || exchange.isEmpty()) {
                 rabbitTemplate.convertAndSend(routingKey, payload); // default exchange -> routingKey is queue name
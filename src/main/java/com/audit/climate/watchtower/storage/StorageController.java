@@ -0,0 +1,27 @@
+package com.audit.climate.watchtower.storage;
+
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/storage")
+public class StorageController {
+    private final TimescalePolicyManager policies;
+
+    public StorageController(TimescalePolicyManager policies) {
+        this.policies = policies;
+    }
+
+    // Chunk counts, compression ratio and size per managed table
+    @GetMapping
+    public Map<String, Object> status() {
+        return policies.status();
+    }
+
+    // Re-apply the configured policies without a restart
+    @PostMapping("/apply")
+    public Map<String, String> apply() {
+        return policies.applyAll();
+    }
+}
@@ -0,0 +1,106 @@
+package com.audit.climate.watchtower.storage;
+
+import org.springframework.core.env.PropertyResolver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * StoragePolicy is the chunking, compression and retention setup for one hypertable,
+ * read from audit.storage.&lt;table&gt;.* properties. Intervals are Postgres interval literals
+ * ("1 day", "12 hours"); an empty compress-after or drop-after disables that policy.
+ *
+ * Names end up in DDL, so tables and columns are checked against a plain identifier pattern.
+ */
+public final class StoragePolicy {
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z_][a-z0-9_]*");
+    private static final Pattern ORDER_ITEM = Pattern.compile("[a-z_][a-z0-9_]*( (asc|desc))?( nulls (first|last))?");
+    private static final Pattern INTERVAL = Pattern.compile("\\d+ ?[a-z]+( \\d+ ?[a-z]+)*");
+
+    private final String table;
+    private final String chunkInterval;
+    private final List<String> segmentBy;
+    private final List<String> orderBy;
+    private final String compressAfter;
+    private final String dropAfter;
+
+    public StoragePolicy(String table, String chunkInterval, String segmentBy, String orderBy,
+                         String compressAfter, String dropAfter) {
+        this.table = identifier(table, "table");
+        this.chunkInterval = interval(chunkInterval, "chunk-interval");
+        this.segmentBy = split(segmentBy, IDENTIFIER, "segment-by");
+        this.orderBy = split(orderBy, ORDER_ITEM, "order-by");
+        this.compressAfter = interval(compressAfter, "compress-after");
+        this.dropAfter = interval(dropAfter, "drop-after");
+    }
+
+    public static StoragePolicy from(PropertyResolver env, String table) {
+        String prefix = "audit.storage." + table + ".";
+        return new StoragePolicy(table,
+                env.getProperty(prefix + "chunk-interval"),
+                env.getProperty(prefix + "segment-by"),
+                env.getProperty(prefix + "order-by"),
+                env.getProperty(prefix + "compress-after"),
+                env.getProperty(prefix + "drop-after"));
+    }
+
+    private String identifier(String value, String what) {
+        String v = value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+        if (!IDENTIFIER.matcher(v).matches()) {
+            throw new IllegalArgumentException("Invalid " + what + " name: " + value);
+        }
+        return v;
+    }
+
+    private String interval(String value, String what) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        if (!INTERVAL.matcher(v).matches()) {
+            throw new IllegalArgumentException("Invalid " + what + " for " + table + ": " + value);
+        }
+        return v;
+    }
+
+    private List<String> split(String value, Pattern pattern, String what) {
+        if (value == null || value.isBlank()) {
+            return List.of();
+        }
+        List<String> items = new ArrayList<>();
+        for (String raw : value.split(",")) {
+            String item = raw.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+            if (!pattern.matcher(item).matches()) {
+                throw new IllegalArgumentException("Invalid " + what + " entry for " + table + ": " + raw.trim());
+            }
+            items.add(item);
+        }
+        return Collections.unmodifiableList(items);
+    }
+
+    public String getTable() { return table; }
+    public String getChunkInterval() { return chunkInterval; }
+    public List<String> getSegmentBy() { return segmentBy; }
+    public List<String> getOrderBy() { return orderBy; }
+    public String getCompressAfter() { return compressAfter; }
+    public String getDropAfter() { return dropAfter; }
+
+    public boolean compresses() {
+        return compressAfter != null;
+    }
+
+    /** ALTER TABLE statement enabling native compression with this policy's layout. */
+    String compressionDdl() {
+        StringBuilder sql = new StringBuilder("ALTER TABLE ").append(table).append(" SET (timescaledb.compress");
+        if (!segmentBy.isEmpty()) {
+            sql.append(", timescaledb.compress_segmentby = '").append(String.join(", ", segmentBy)).append('\'');
+        }
+        if (!orderBy.isEmpty()) {
+            sql.append(", timescaledb.compress_orderby = '").append(String.join(", ", orderBy)).append('\'');
+        }
+        return sql.append(')').toString();
+    }
+}
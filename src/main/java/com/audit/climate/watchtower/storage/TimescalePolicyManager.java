@@ -0,0 +1,227 @@
+package com.audit.climate.watchtower.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TimescalePolicyManager applies the configured StoragePolicy of each hypertable at startup:
+ * chunk time interval, native compression (segment-by/order-by), a compression policy and a
+ * retention policy. Every step compares against what the catalog already has, so restarts
+ * are no-ops and a changed horizon replaces the old job instead of adding a second one.
+ *
+ * Compression settings are only (re)applied while a table has no compressed chunks, as
+ * Timescale refuses to change them afterwards. Without the timescaledb extension nothing is
+ * applied and status() reports plain table sizes.
+ */
+@Component
+public class TimescalePolicyManager {
+    private static final Logger log = LoggerFactory.getLogger(TimescalePolicyManager.class);
+
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final List<StoragePolicy> policies;
+
+    public TimescalePolicyManager(JdbcTemplate jdbc, Environment env,
+                                  @Value("${audit.storage.policies.enabled:true}") boolean enabled,
+                                  @Value("${audit.storage.tables:raw_events,alerts,measurements}") List<String> tables) {
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        List<StoragePolicy> list = new ArrayList<>();
+        for (String table : tables) {
+            if (!table.isBlank()) {
+                list.add(StoragePolicy.from(env, table.trim()));
+            }
+        }
+        this.policies = Collections.unmodifiableList(list);
+    }
+
+    public List<StoragePolicy> getPolicies() {
+        return policies;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) {
+            log.info("Storage policies disabled");
+            return;
+        }
+        try {
+            applyAll();
+        } catch (Exception ex) {
+            log.warn("Applying storage policies failed (continuing)", ex);
+        }
+    }
+
+    /**
+     * Apply every configured policy. Failures are per table, so one bad table does not
+     * keep the others unmanaged.
+     * @return table name to outcome ("applied", "skipped: ..." or "failed: ...")
+     */
+    public Map<String, String> applyAll() {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (!hasTimescale()) {
+            log.info("timescaledb extension not installed; storage policies not applied");
+            for (StoragePolicy p : policies) {
+                result.put(p.getTable(), "skipped: timescaledb not installed");
+            }
+            return result;
+        }
+        for (StoragePolicy policy : policies) {
+            try {
+                if (!isHypertable(policy.getTable())) {
+                    log.warn("{} is not a hypertable; skipping storage policy", policy.getTable());
+                    result.put(policy.getTable(), "skipped: not a hypertable");
+                    continue;
+                }
+                apply(policy);
+                result.put(policy.getTable(), "applied");
+            } catch (Exception ex) {
+                log.warn("Failed to apply storage policy for {}: {}", policy.getTable(), ex.getMessage());
+                result.put(policy.getTable(), "failed: " + ex.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private void apply(StoragePolicy policy) {
+        String table = policy.getTable();
+
+        if (policy.getChunkInterval() != null) {
+            Boolean same = jdbc.queryForObject(
+                    "SELECT coalesce(bool_and(time_interval = ?::interval), false) FROM timescaledb_information.dimensions "
+                            + "WHERE hypertable_name = ? AND dimension_number = 1",
+                    Boolean.class, policy.getChunkInterval(), table);
+            if (!Boolean.TRUE.equals(same)) {
+                jdbc.queryForObject("SELECT set_chunk_time_interval(?::regclass, ?::interval)", Object.class,
+                        table, policy.getChunkInterval());
+                log.info("{}: chunk interval set to {} (applies to new chunks)", table, policy.getChunkInterval());
+            }
+        }
+
+        if (policy.compresses()) {
+            long compressed = compressedChunks(table);
+            if (compressed == 0) {
+                jdbc.execute(policy.compressionDdl());
+                log.debug("{}: compression enabled (segmentby={}, orderby={})", table, policy.getSegmentBy(), policy.getOrderBy());
+            } else {
+                log.debug("{}: {} chunks already compressed; keeping existing compression settings", table, compressed);
+            }
+        }
+        ensureJob(table, "policy_compression", "compress_after", policy.getCompressAfter(),
+                "add_compression_policy", "remove_compression_policy");
+        ensureJob(table, "policy_retention", "drop_after", policy.getDropAfter(),
+                "add_retention_policy", "remove_retention_policy");
+    }
+
+    /**
+     * Make the table's background job of the given kind match the horizon: add it when
+     * missing, replace it when the horizon changed, remove it when no horizon is configured.
+     */
+    private void ensureJob(String table, String proc, String key, String horizon, String add, String remove) {
+        List<String> existing = jdbc.queryForList(
+                "SELECT config ->> ? FROM timescaledb_information.jobs WHERE proc_name = ? AND hypertable_name = ?",
+                String.class, key, proc, table);
+        if (horizon == null) {
+            if (!existing.isEmpty()) {
+                jdbc.queryForObject("SELECT " + remove + "(?::regclass, if_exists => true)", Object.class, table);
+                log.info("{}: removed {}", table, proc);
+            }
+            return;
+        }
+        if (existing.size() == 1 && existing.get(0) != null) {
+            Boolean same = jdbc.queryForObject("SELECT ?::interval = ?::interval", Boolean.class, existing.get(0), horizon);
+            if (Boolean.TRUE.equals(same)) {
+                return;
+            }
+        }
+        if (!existing.isEmpty()) {
+            jdbc.queryForObject("SELECT " + remove + "(?::regclass, if_exists => true)", Object.class, table);
+        }
+        jdbc.queryForObject("SELECT " + add + "(?::regclass, ?::interval)", Object.class, table, horizon);
+        log.info("{}: {} set to {}", table, proc, horizon);
+    }
+
+    /**
+     * Per-table chunk counts, compression ratio and size, with the configured policy.
+     */
+    public Map<String, Object> status() {
+        boolean timescale = hasTimescale();
+        Map<String, Object> tables = new LinkedHashMap<>();
+        for (StoragePolicy policy : policies) {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("chunkInterval", policy.getChunkInterval());
+            s.put("segmentBy", policy.getSegmentBy());
+            s.put("orderBy", policy.getOrderBy());
+            s.put("compressAfter", policy.getCompressAfter());
+            s.put("dropAfter", policy.getDropAfter());
+            try {
+                if (timescale && isHypertable(policy.getTable())) {
+                    hypertableStatus(policy.getTable(), s);
+                } else {
+                    s.put("hypertable", false);
+                    s.put("totalBytes", jdbc.queryForObject(
+                            "SELECT pg_total_relation_size(to_regclass(?))", Long.class, policy.getTable()));
+                }
+            } catch (Exception ex) {
+                s.put("error", ex.getMessage());
+            }
+            tables.put(policy.getTable(), s);
+        }
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("timescale", timescale);
+        out.put("tables", tables);
+        return out;
+    }
+
+    private void hypertableStatus(String table, Map<String, Object> s) {
+        s.put("hypertable", true);
+        s.put("chunks", jdbc.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.chunks WHERE hypertable_name = ?", Long.class, table));
+        s.put("compressedChunks", compressedChunks(table));
+        s.put("totalBytes", jdbc.queryForObject("SELECT hypertable_size(?::regclass)", Long.class, table));
+        Map<String, Object> stats = jdbc.queryForMap(
+                "SELECT coalesce(sum(before_compression_total_bytes), 0) AS before_bytes, "
+                        + "coalesce(sum(after_compression_total_bytes), 0) AS after_bytes "
+                        + "FROM hypertable_compression_stats(?::regclass)", table);
+        long before = ((Number) stats.get("before_bytes")).longValue();
+        long after = ((Number) stats.get("after_bytes")).longValue();
+        s.put("beforeCompressionBytes", before);
+        s.put("afterCompressionBytes", after);
+        s.put("compressionRatio", after > 0 ? (double) before / after : null);
+    }
+
+    private long compressedChunks(String table) {
+        Long n = jdbc.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.chunks WHERE hypertable_name = ? AND is_compressed",
+                Long.class, table);
+        return n == null ? 0 : n;
+    }
+
+    private boolean hasTimescale() {
+        try {
+            return Boolean.TRUE.equals(jdbc.queryForObject(
+                    "SELECT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'timescaledb')", Boolean.class));
+        } catch (Exception ex) {
+            log.debug("Could not check for timescaledb: {}", ex.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isHypertable(String table) {
+        Integer count = jdbc.queryForObject(
+                "SELECT count(*) FROM timescaledb_information.hypertables WHERE hypertable_name = ?", Integer.class, table);
+        return count != null && count > 0;
+    }
+}
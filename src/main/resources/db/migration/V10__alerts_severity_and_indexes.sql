@@ -0,0 +1,11 @@
+ALTER TABLE alerts ADD COLUMN IF NOT EXISTS severity text NOT NULL DEFAULT 'warning';
+
+-- Keyset pagination on (occurred_at, id), unfiltered and per module/metric or severity
+CREATE INDEX IF NOT EXISTS idx_alerts_occurred_at_id
+ON alerts (occurred_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_alerts_module_metric_occurred_at
+ON alerts (module, metric, occurred_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_alerts_severity_occurred_at
+ON alerts (severity, occurred_at DESC, id DESC);
@@ -0,0 +1,17 @@
+-- Transactional outbox: one row per alert, written in the alert's transaction and drained by AlertOutboxRelay
+CREATE TABLE IF NOT EXISTS alert_outbox (
+  alert_id UUID PRIMARY KEY,
+  occurred_at timestamptz NOT NULL,
+  created_at timestamptz NOT NULL DEFAULT now(),
+  available_at timestamptz NOT NULL DEFAULT now(),
+  attempts integer NOT NULL DEFAULT 0,
+  last_error text,
+  published_at timestamptz
+);
+
+-- The relay only ever looks at unpublished rows that are due
+CREATE INDEX IF NOT EXISTS idx_alert_outbox_due
+ON alert_outbox (available_at) WHERE published_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_alert_outbox_published_at
+ON alert_outbox (published_at) WHERE published_at IS NOT NULL;
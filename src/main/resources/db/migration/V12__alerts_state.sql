@@ -0,0 +1,2 @@
+-- Alerts now report transitions of a (module, metric) series: opened, ongoing, escalated, resolved
+ALTER TABLE alerts ADD COLUMN IF NOT EXISTS state text NOT NULL DEFAULT 'opened';
@@ -0,0 +1,26 @@
+-- Incidents group correlated alerts (see IncidentCoalescer); one row per group and time window
+CREATE TABLE IF NOT EXISTS incidents (
+  id UUID PRIMARY KEY,
+  group_by text NOT NULL,
+  group_key text NOT NULL,
+  opened_at timestamptz NOT NULL,
+  last_alert_at timestamptz NOT NULL,
+  alert_count bigint NOT NULL,
+  modules text[] NOT NULL,
+  metrics text[] NOT NULL,
+  max_severity text NOT NULL
+);
+
+-- Finding the open incident of a group, and listing the latest incidents
+CREATE INDEX IF NOT EXISTS idx_incidents_group_last_alert
+ON incidents (group_by, group_key, last_alert_at DESC);
+
+CREATE INDEX IF NOT EXISTS idx_incidents_last_alert
+ON incidents (last_alert_at DESC);
+
+CREATE TABLE IF NOT EXISTS incident_alerts (
+  incident_id UUID NOT NULL,
+  alert_id UUID NOT NULL,
+  occurred_at timestamptz NOT NULL,
+  PRIMARY KEY (incident_id, alert_id)
+);
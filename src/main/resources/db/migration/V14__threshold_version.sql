@@ -0,0 +1,8 @@
+-- Cluster-wide threshold version: bumped in the transaction of every threshold change, so
+-- instances can apply published deltas in order and spot the ones they missed
+CREATE TABLE IF NOT EXISTS threshold_version (
+  id boolean PRIMARY KEY DEFAULT true CHECK (id),
+  version bigint NOT NULL
+);
+
+INSERT INTO threshold_version (id, version) VALUES (true, 0) ON CONFLICT DO NOTHING;
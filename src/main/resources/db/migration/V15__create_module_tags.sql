@@ -0,0 +1,9 @@
+-- Tags group modules for scoped thresholds: a threshold whose module is "tag:<tag>" applies to
+-- every module carrying that tag (see ThresholdScope)
+CREATE TABLE IF NOT EXISTS module_tags (
+  id UUID PRIMARY KEY,
+  module text NOT NULL,
+  tag text NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS module_tags_module_tag_idx ON module_tags(module, tag);
@@ -0,0 +1,12 @@
+-- Multi-metric detection rules (see RuleExpression for the expression language); compiled by
+-- RuleEngine on every instance and evaluated by RuleDetector
+CREATE TABLE IF NOT EXISTS detection_rules (
+  id UUID PRIMARY KEY,
+  name text NOT NULL,
+  expression text NOT NULL,
+  severity text NOT NULL DEFAULT 'warning',
+  enabled boolean NOT NULL DEFAULT true,
+  updated_at timestamptz NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS detection_rules_name_idx ON detection_rules(name);
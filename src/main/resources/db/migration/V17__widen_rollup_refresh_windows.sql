@@ -0,0 +1,27 @@
+-- The refresh policies of V8 only re-materialize the last 2 hours (1m) and 3 days (1h, 1d), so a
+-- reading that arrives later than that never reaches the materialized buckets, and real-time
+-- aggregation does not cover them either. Widen every window to the 7 days after which measurements
+-- are compressed (audit.storage.measurements.compress-after). A refresh only recomputes buckets
+-- invalidated by new writes, so the wider window costs nothing when no late data arrives.
+DO $$
+DECLARE
+    r record;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'timescaledb') THEN
+      RETURN;
+    END IF;
+
+    FOR r IN SELECT * FROM (VALUES
+        ('measurements_1m', '7 days', '1 minute', '1 minute'),
+        ('measurements_1h', '7 days', '1 hour', '30 minutes'),
+        ('measurements_1d', '7 days', '1 day', '1 hour')
+    ) AS v(view_name, start_offset, end_offset, schedule)
+    LOOP
+      PERFORM remove_continuous_aggregate_policy(r.view_name::regclass, if_exists => TRUE);
+      PERFORM add_continuous_aggregate_policy(r.view_name::regclass,
+        start_offset => r.start_offset::interval,
+        end_offset => r.end_offset::interval,
+        schedule_interval => r.schedule::interval,
+        if_not_exists => TRUE);
+    END LOOP;
+END$$;
@@ -0,0 +1,6 @@
+-- Keyset pagination for the alert filters V10 left to a filtered scan: metric alone, and module with severity
+CREATE INDEX IF NOT EXISTS idx_alerts_metric_occurred_at
+ON alerts (metric, occurred_at DESC, id DESC);
+
+CREATE INDEX IF NOT EXISTS idx_alerts_module_severity_occurred_at
+ON alerts (module, severity, occurred_at DESC, id DESC);
@@ -0,0 +1,11 @@
+-- Incidents are committed before their snapshots are published (see AlertOutboxRelay): published_count is
+-- the alert_count of the last confirmed snapshot, publish_at when the next one is due (NULL: up to date).
+ALTER TABLE incidents ADD COLUMN IF NOT EXISTS published_count bigint;
+UPDATE incidents SET published_count = alert_count WHERE published_count IS NULL;
+ALTER TABLE incidents ALTER COLUMN published_count SET DEFAULT 0;
+ALTER TABLE incidents ALTER COLUMN published_count SET NOT NULL;
+
+ALTER TABLE incidents ADD COLUMN IF NOT EXISTS publish_at timestamptz;
+
+CREATE INDEX IF NOT EXISTS idx_incidents_publish_due
+ON incidents (publish_at) WHERE publish_at IS NOT NULL;
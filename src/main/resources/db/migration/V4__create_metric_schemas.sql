@@ -0,0 +1,20 @@
+CREATE TABLE IF NOT EXISTS metric_schemas (
+  id UUID PRIMARY KEY,
+  event_type text NOT NULL,
+  field text NOT NULL,
+  role text NOT NULL,
+  unit text,
+  aliases text,
+  updated_at timestamptz NOT NULL
+);
+
+CREATE UNIQUE INDEX IF NOT EXISTS metric_schemas_type_field_idx ON metric_schemas(event_type, field);
+
+-- '*' applies to every event type; type-specific rows add to it or override fields by name
+INSERT INTO metric_schemas (id, event_type, field, role, unit, aliases, updated_at) VALUES
+  (gen_random_uuid(), '*', 'module', 'MODULE', NULL, NULL, now()),
+  (gen_random_uuid(), '*', 'timestamp', 'TIMESTAMP', NULL, 'ts', now()),
+  (gen_random_uuid(), '*', 'temperature', 'METRIC', 'C', NULL, now()),
+  (gen_random_uuid(), '*', 'humidity', 'METRIC', '%', NULL, now()),
+  (gen_random_uuid(), '*', 'pressure', 'METRIC', 'hPa', NULL, now())
+ON CONFLICT DO NOTHING;
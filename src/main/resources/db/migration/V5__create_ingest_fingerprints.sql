@@ -0,0 +1,7 @@
+-- One row per committed message; the key rejects a redelivered copy
+CREATE TABLE IF NOT EXISTS ingest_fingerprints (
+  fingerprint UUID PRIMARY KEY,
+  first_seen timestamptz NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS ingest_fingerprints_first_seen_idx ON ingest_fingerprints(first_seen);
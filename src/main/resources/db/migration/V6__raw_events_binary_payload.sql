@@ -0,0 +1,5 @@
+-- Binary-encoded messages (CBOR/Smile) keep their original bytes in payload_raw; payload stays
+-- the verbatim text of JSON messages and is NULL for binary ones.
+ALTER TABLE raw_events ADD COLUMN IF NOT EXISTS payload_raw bytea;
+ALTER TABLE raw_events ADD COLUMN IF NOT EXISTS encoding text NOT NULL DEFAULT 'json';
+ALTER TABLE raw_events ALTER COLUMN payload DROP NOT NULL;
@@ -0,0 +1,28 @@
+-- Stable ids for the module and metric names used by measurements
+CREATE TABLE IF NOT EXISTS module_names (
+  id serial PRIMARY KEY,
+  name text NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS metric_names (
+  id serial PRIMARY KEY,
+  name text NOT NULL UNIQUE
+);
+
+-- One row per metric value, written in the same transaction as its raw event
+DO $$
+BEGIN
+    CREATE TABLE IF NOT EXISTS measurements (
+      ts timestamptz NOT NULL,
+      module_id integer NOT NULL,
+      metric_id integer NOT NULL,
+      value double precision NOT NULL
+    );
+
+    IF EXISTS (SELECT 1 FROM pg_proc WHERE proname = 'create_hypertable') THEN
+      PERFORM create_hypertable('measurements', 'ts', if_not_exists => TRUE, create_default_indexes => FALSE);
+    END IF;
+END$$;
+
+CREATE INDEX IF NOT EXISTS idx_measurements_module_metric_ts
+ON measurements (module_id, metric_id, ts DESC);
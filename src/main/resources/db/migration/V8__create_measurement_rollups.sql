@@ -0,0 +1,43 @@
+-- Continuous aggregates over measurements at 1 minute, 1 hour and 1 day per module and metric.
+-- Created WITH NO DATA so they can be built inside the migration transaction; the refresh policies
+-- fill them in the background, and real-time aggregation covers what is not materialized yet.
+-- Skipped on plain Postgres, where the rollup API aggregates measurements directly.
+DO $$
+DECLARE
+    r record;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_extension WHERE extname = 'timescaledb') THEN
+      RETURN;
+    END IF;
+
+    FOR r IN SELECT * FROM (VALUES
+        ('measurements_1m', '1 minute', '2 hours', '1 minute', '1 minute'),
+        ('measurements_1h', '1 hour', '3 days', '1 hour', '30 minutes'),
+        ('measurements_1d', '1 day', '3 days', '1 day', '1 hour')
+    ) AS v(view_name, bucket_width, start_offset, end_offset, schedule)
+    LOOP
+      EXECUTE format(
+        'CREATE MATERIALIZED VIEW IF NOT EXISTS %I
+         WITH (timescaledb.continuous, timescaledb.materialized_only = false) AS
+         SELECT time_bucket(%L::interval, ts) AS bucket,
+                module_id,
+                metric_id,
+                min(value) AS min_value,
+                max(value) AS max_value,
+                avg(value) AS avg_value,
+                count(*) AS sample_count,
+                stddev_samp(value) AS stddev_value
+         FROM measurements
+         GROUP BY 1, 2, 3
+         WITH NO DATA', r.view_name, r.bucket_width);
+
+      EXECUTE format('CREATE INDEX IF NOT EXISTS %I ON %I (module_id, metric_id, bucket DESC)',
+        'idx_' || r.view_name || '_series', r.view_name);
+
+      PERFORM add_continuous_aggregate_policy(r.view_name::regclass,
+        start_offset => r.start_offset::interval,
+        end_offset => r.end_offset::interval,
+        schedule_interval => r.schedule::interval,
+        if_not_exists => TRUE);
+    END LOOP;
+END$$;
@@ -0,0 +1,3 @@
+-- Serves keyset pagination of the audit ledger on (received_at, id), in either direction
+CREATE INDEX IF NOT EXISTS idx_raw_events_received_at_id
+ON raw_events (received_at DESC, id DESC);
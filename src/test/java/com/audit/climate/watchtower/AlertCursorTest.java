@@ -0,0 +1,34 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.AlertCursor;
+import com.audit.climate.watchtower.audit.AuditCursor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class AlertCursorTest {
+
+    @Test
+    public void tokensRoundTrip() {
+        Instant at = Instant.parse("2024-03-01T12:00:00.123456Z");
+        UUID id = UUID.randomUUID();
+
+        AlertCursor next = AlertCursor.decode(AlertCursor.after(at, id).encode());
+        Assertions.assertEquals(at, next.getTime());
+        Assertions.assertEquals(id, next.getId());
+        // pages handed out before alerts had their own cursor still continue
+        Assertions.assertEquals(at, AlertCursor.decode(AuditCursor.after(at, id).encode()).getTime());
+    }
+
+    @Test
+    public void rejectsBackwardAndForeignTokens() {
+        String previous = AuditCursor.before(Instant.parse("2024-03-01T12:00:00Z"), UUID.randomUUID()).encode();
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> AlertCursor.decode(previous));
+        Assertions.assertTrue(ex.getMessage().contains("forward"), ex.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AlertCursor.decode("not a cursor"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AlertCursor.decode("eDIwMjQ"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AlertCursor.decode(""));
+    }
+}
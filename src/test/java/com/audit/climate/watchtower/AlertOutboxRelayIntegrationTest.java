@@ -0,0 +1,139 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.alerts.AlertOutboxRelay;
+import com.audit.climate.watchtower.alerts.AlertPublisher;
+import com.audit.climate.watchtower.alerts.AlertService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        // drainOnce is driven by the tests, not by the relay thread
+        "audit.alerts.outbox.relay-enabled=false",
+        "audit.incidents.enabled=false"
+})
+public class AlertOutboxRelayIntegrationTest {
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("timescale/timescaledb:2.9.0-pg15").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("watchtower_audit")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Container
+    public static RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3.12-management");
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry reg) {
+        reg.add("spring.datasource.url", postgres::getJdbcUrl);
+        reg.add("spring.datasource.username", postgres::getUsername);
+        reg.add("spring.datasource.password", postgres::getPassword);
+        reg.add("spring.rabbitmq.host", rabbit::getHost);
+        reg.add("spring.rabbitmq.port", () -> rabbit.getAmqpPort());
+        reg.add("spring.rabbitmq.username", rabbit::getAdminUsername);
+        reg.add("spring.rabbitmq.password", rabbit::getAdminPassword);
+    }
+
+    @MockitoBean
+    private AlertPublisher publisher;
+
+    @Autowired
+    private AlertOutboxRelay relay;
+
+    @Autowired
+    private AlertService alertService;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        jdbc.update("DELETE FROM alert_outbox");
+        jdbc.update("DELETE FROM alerts");
+    }
+
+    private Alert commit(String module) {
+        Alert alert = new Alert(module, "temperature", 42.0, null, 30.0, "too warm", Alert.Severity.WARNING);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> alertService.persist(List.of(alert)));
+        return alert;
+    }
+
+    private Map<String, Object> outboxRow(Alert alert) {
+        return jdbc.queryForMap("SELECT published_at, attempts, last_error, available_at > now() AS delayed "
+                + "FROM alert_outbox WHERE alert_id = ?", alert.getId());
+    }
+
+    @Test
+    public void confirmedRowsArePublishedAndTheRestBackOff() {
+        Alert confirmed = commit("relay-ok");
+        Alert nacked = commit("relay-nack");
+        when(publisher.publish(any(Alert.class))).thenAnswer(inv -> {
+            Alert alert = inv.getArgument(0);
+            return alert.getId().equals(confirmed.getId())
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.failedFuture(new IllegalStateException("nack"));
+        });
+
+        Assertions.assertEquals(2, relay.drainOnce());
+
+        Assertions.assertNotNull(outboxRow(confirmed).get("published_at"));
+        Map<String, Object> failed = outboxRow(nacked);
+        Assertions.assertNull(failed.get("published_at"));
+        Assertions.assertEquals(1, ((Number) failed.get("attempts")).intValue());
+        Assertions.assertEquals("nack", failed.get("last_error"));
+        Assertions.assertEquals(Boolean.TRUE, failed.get("delayed"));
+        // backing off, so the next round has nothing due
+        Assertions.assertEquals(0, relay.drainOnce());
+    }
+
+    @Test
+    public void claimIsCommittedBeforeTheBrokerIsAwaited() {
+        Alert alert = commit("relay-lease");
+        AtomicReference<Boolean> inTransaction = new AtomicReference<>();
+        AtomicReference<Integer> claimedMeanwhile = new AtomicReference<>();
+        AtomicReference<List<Map<String, Object>>> lockable = new AtomicReference<>();
+        when(publisher.publish(any(Alert.class))).thenAnswer(inv -> {
+            inTransaction.set(TransactionSynchronizationManager.isActualTransactionActive());
+            // another relay round finds the row leased, and nothing holds its row lock
+            claimedMeanwhile.set(relay.drainOnce());
+            lockable.set(jdbc.queryForList("SELECT alert_id FROM alert_outbox WHERE alert_id = ? FOR UPDATE NOWAIT",
+                    alert.getId()));
+            return CompletableFuture.completedFuture(null);
+        });
+
+        Assertions.assertEquals(1, relay.drainOnce());
+
+        Assertions.assertEquals(Boolean.FALSE, inTransaction.get());
+        Assertions.assertEquals(0, claimedMeanwhile.get());
+        Assertions.assertEquals(1, lockable.get().size());
+        Assertions.assertNotNull(outboxRow(alert).get("published_at"));
+    }
+}
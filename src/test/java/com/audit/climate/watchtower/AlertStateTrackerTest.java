@@ -0,0 +1,109 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.detection.AlertStateTracker;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class AlertStateTrackerTest {
+
+    private static final long COOLDOWN = 1_000;
+    private static final long SUMMARY = 10_000;
+
+    private final AlertStateTracker tracker = new AlertStateTracker(true, 0.05, COOLDOWN, SUMMARY, 60_000, 64);
+
+    @Test
+    public void seriesOpensOnceAndResolvesAfterCooldown() {
+        Assertions.assertEquals(Alert.State.OPENED, tracker.breach(1, 0, 31, 1, false, 0).state);
+        Assertions.assertNull(tracker.breach(1, 0, 33, 3, false, 100));
+
+        // in range but inside the hysteresis band does not clear
+        Assertions.assertNull(tracker.recover(1, 0, false, 200));
+        Assertions.assertNull(tracker.recover(1, 0, true, 300));
+        // a breach during the cooldown continues the series without an alert
+        Assertions.assertNull(tracker.breach(1, 0, 32, 2, false, 400));
+        Assertions.assertNull(tracker.recover(1, 0, true, 500));
+        Assertions.assertNull(tracker.recover(1, 0, true, 500 + COOLDOWN - 1));
+
+        AlertStateTracker.Transition resolved = tracker.recover(1, 0, true, 500 + COOLDOWN);
+        Assertions.assertEquals(Alert.State.RESOLVED, resolved.state);
+        Assertions.assertEquals(0, resolved.openedAtMs);
+        Assertions.assertEquals(3, resolved.readings);
+        Assertions.assertEquals(33, resolved.peak, 0.0);
+        Assertions.assertEquals(0, tracker.tracked());
+
+        Assertions.assertEquals(Alert.State.OPENED, tracker.breach(1, 0, 31, 1, false, 5_000).state);
+    }
+
+    @Test
+    public void escalationAndSummariesAreReported() {
+        tracker.breach(2, 1, 31, 1, false, 0);
+        Assertions.assertEquals(Alert.State.ESCALATED, tracker.breach(2, 1, 50, 20, true, 10).state);
+        Assertions.assertNull(tracker.breach(2, 1, 50, 20, true, 20));
+        Assertions.assertEquals(Alert.State.ONGOING, tracker.breach(2, 1, 40, 10, true, 10 + SUMMARY).state);
+        // other series are independent
+        Assertions.assertEquals(Alert.State.OPENED, tracker.breach(2, 2, 31, 1, false, 30).state);
+    }
+
+    @Test
+    public void fullTableReportsEveryViolation() {
+        AlertStateTracker small = new AlertStateTracker(true, 0.05, COOLDOWN, SUMMARY, 60_000, 16 * 16);
+        for (int module = 0; module < 2_000; module++) {
+            small.breach(module, 0, 31, 1, false, 0);
+        }
+        Assertions.assertTrue(small.tracked() <= 16 * 16);
+
+        int untracked = -1;
+        for (int module = 0; module < 2_000 && untracked < 0; module++) {
+            if (small.breach(module, 0, 31, 1, false, 1) != null) {
+                untracked = module;
+            }
+        }
+        Assertions.assertTrue(untracked >= 0);
+        Assertions.assertNotNull(small.breach(untracked, 0, 31, 1, false, 2));
+
+        // a reading well after the others moves event time past the stale horizon
+        int tracked = small.tracked();
+        small.recover(untracked, 1, true, 61_000);
+        Assertions.assertEquals(tracked, small.dropStale().size());
+        Assertions.assertEquals(0, small.tracked());
+    }
+
+    @Test
+    public void stagedChangesApplyOnlyOnCommit() {
+        AlertStateTracker.Staged rolledBack = tracker.stage();
+        Assertions.assertEquals(Alert.State.OPENED, rolledBack.breach(3, 0, 31, 1, false, 0).state);
+        // later readings of the same batch see the staged state
+        Assertions.assertNull(rolledBack.breach(3, 0, 32, 2, false, 10));
+        Assertions.assertEquals(0, tracker.tracked());
+
+        // the redelivered batch opens the series again, and this time it sticks
+        AlertStateTracker.Staged redelivered = tracker.stage();
+        Assertions.assertEquals(Alert.State.OPENED, redelivered.breach(3, 0, 31, 1, false, 0).state);
+        redelivered.commit();
+        Assertions.assertEquals(1, tracker.tracked());
+        Assertions.assertNull(tracker.breach(3, 0, 32, 2, false, 20));
+    }
+
+    @Test
+    public void seriesWithoutReadingsExpireByEventTime() {
+        tracker.breach(4, 0, 31, 1, false, 1_000);
+        tracker.breach(4, 0, 35, 5, false, 2_000);
+        tracker.breach(5, 0, 31, 1, false, 2_000);
+        Assertions.assertTrue(tracker.dropStale().isEmpty());
+
+        // module 5 keeps reporting; module 4 has been silent for the stale horizon
+        tracker.recover(5, 0, false, 62_500);
+        List<AlertStateTracker.Expired> expired = tracker.dropStale();
+        Assertions.assertEquals(1, expired.size());
+        AlertStateTracker.Expired series = expired.get(0);
+        Assertions.assertEquals(4, series.moduleId);
+        Assertions.assertEquals(2_000, series.lastSeenMs);
+        Assertions.assertEquals(Alert.State.EXPIRED, series.transition.state);
+        Assertions.assertEquals(1_000, series.transition.openedAtMs);
+        Assertions.assertEquals(2, series.transition.readings);
+        Assertions.assertEquals(1, tracker.tracked());
+    }
+}
@@ -0,0 +1,31 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.audit.AuditCursor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+public class AuditCursorTest {
+
+    @Test
+    public void tokensRoundTrip() {
+        Instant at = Instant.parse("2024-03-01T12:00:00.123456Z");
+        UUID id = UUID.randomUUID();
+
+        AuditCursor next = AuditCursor.decode(AuditCursor.after(at, id).encode());
+        Assertions.assertEquals(at, next.getReceivedAt());
+        Assertions.assertEquals(id, next.getId());
+        Assertions.assertFalse(next.isBefore());
+
+        Assertions.assertTrue(AuditCursor.decode(AuditCursor.before(at, id).encode()).isBefore());
+    }
+
+    @Test
+    public void rejectsForeignTokens() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AuditCursor.decode("not a cursor"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AuditCursor.decode("eDIwMjQ"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AuditCursor.decode(""));
+    }
+}
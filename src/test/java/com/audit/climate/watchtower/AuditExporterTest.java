@@ -0,0 +1,76 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.audit.AuditCursor;
+import com.audit.climate.watchtower.audit.AuditExporter;
+import com.audit.climate.watchtower.audit.RawEvent;
+import com.audit.climate.watchtower.audit.RawEventQueries;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class AuditExporterTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final RawEventQueries queries = mock(RawEventQueries.class);
+    private final AuditExporter exporter = new AuditExporter(queries, mapper, 100, 31, 60_000);
+
+    private RawEvent event(String payload) {
+        RawEvent e = new RawEvent(payload);
+        e.ensureIdentity();
+        e.setClassification("{\"channel\":\"c\"}");
+        return e;
+    }
+
+    private void ledger(RawEvent... events) {
+        doAnswer(inv -> {
+            Consumer<RawEvent> consumer = inv.getArgument(3);
+            for (RawEvent e : events) {
+                consumer.accept(e);
+            }
+            return null;
+        }).when(queries).stream(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    public void ndjsonLinesCarryAResumeCursor() throws Exception {
+        RawEvent first = event("{\"temperature\": 20}");
+        RawEvent second = event("not json, \"quoted\"");
+        ledger(first, second);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(AuditExporter.Format.NDJSON, true, new RawEventQueries.Filter(null, null, null, null), null, out);
+
+        String text = new String(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())).readAllBytes(), StandardCharsets.UTF_8);
+        List<String> lines = text.lines().toList();
+        Assertions.assertEquals(2, lines.size());
+        JsonNode line = mapper.readTree(lines.get(1));
+        Assertions.assertEquals(second.getPayload(), line.get("payload").asText());
+        Assertions.assertEquals("c", line.get("classification").get("channel").asText());
+        Assertions.assertEquals(second.getId(), AuditCursor.decode(line.get("cursor").asText()).getId());
+    }
+
+    @Test
+    public void csvQuotesPayloads() throws Exception {
+        ledger(event("a,\"b\""));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(AuditExporter.Format.CSV, false, new RawEventQueries.Filter(null, null, null, null), null, out);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        Assertions.assertEquals(2, lines.length);
+        Assertions.assertTrue(lines[1].contains(",\"a,\"\"b\"\"\","), lines[1]);
+    }
+}
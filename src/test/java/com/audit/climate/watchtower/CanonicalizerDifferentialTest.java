@@ -0,0 +1,205 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.canonical.PayloadEncoding;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the streaming Canonicalizer against the original tree-based implementation
+ * over a generated corpus, including malformed and oddly typed payloads.
+ */
+public class CanonicalizerDifferentialTest {
+
+    private static final String[] FIELDS = {
+            "type", "timestamp", "module", "temperature", "humidity", "pressure",
+            "ts", "id", "deviceId", "extra", "nested"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Canonicalizer canonicalizer = new Canonicalizer(mapper);
+
+    @Test
+    public void streamingOutputMatchesTreeImplementation() {
+        Random rnd = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            byte[] body = randomDocument(rnd);
+            Message message = randomMessage(rnd, body);
+            String context = "document #" + i + ": " + new String(body, StandardCharsets.UTF_8);
+
+            Instant before = Instant.now();
+            CanonicalEvent expected = null;
+            Exception expectedError = null;
+            try {
+                expected = treeCanonicalize(new String(body, StandardCharsets.UTF_8), message);
+            } catch (Exception ex) {
+                expectedError = ex;
+            }
+            CanonicalEvent actual = null;
+            Exception actualError = null;
+            try {
+                actual = canonicalizer.canonicalize(body, message);
+            } catch (Exception ex) {
+                actualError = ex;
+            }
+            Instant after = Instant.now();
+
+            if (expectedError != null) {
+                Assertions.assertNotNull(actualError, "expected failure for " + context);
+                continue;
+            }
+            Assertions.assertNull(actualError, () -> "unexpected failure for " + context);
+            Assertions.assertEquals(expected.getEventType(), actual.getEventType(), context);
+            Assertions.assertEquals(expected.getChannel(), actual.getChannel(), context);
+            Assertions.assertEquals(expected.getPayload(), actual.getPayload(), context);
+            if (isDefaulted(expected.getTimestamp(), before, after)) {
+                Assertions.assertTrue(isDefaulted(actual.getTimestamp(), before, after), context);
+            } else {
+                Assertions.assertEquals(expected.getTimestamp(), actual.getTimestamp(), context);
+            }
+        }
+    }
+
+    @Test
+    public void leadingBomIsSkipped() throws Exception {
+        byte[] body = "\uFEFF{\"module\":\"bom\",\"temperature\":21}".getBytes(StandardCharsets.UTF_8);
+        CanonicalEvent event = canonicalizer.canonicalize(body, new Message(body, new MessageProperties()));
+        Assertions.assertEquals("bom", event.getPayload().get("module"));
+        Assertions.assertEquals(21, event.getPayload().get("temperature"));
+    }
+
+    @Test
+    public void binaryEncodingsMatchJson() throws Exception {
+        Random rnd = new Random(43);
+        for (PayloadEncoding encoding : new PayloadEncoding[]{PayloadEncoding.CBOR, PayloadEncoding.SMILE}) {
+            ObjectMapper binary = encoding.newMapper();
+            for (int i = 0; i < 1000; i++) {
+                byte[] json = randomDocument(rnd);
+                JsonNode tree;
+                try {
+                    tree = mapper.readTree(json);
+                } catch (Exception ex) {
+                    continue;
+                }
+                if (tree == null || !tree.isObject()) {
+                    continue;
+                }
+                MessageProperties props = new MessageProperties();
+                props.setContentType(encoding.contentType());
+                Message message = new Message(binary.writeValueAsBytes(tree), props);
+                String context = encoding + " #" + i + ": " + new String(json, StandardCharsets.UTF_8);
+
+                CanonicalEvent expected = canonicalizer.canonicalize(json, new Message(json, new MessageProperties()));
+                CanonicalEvent actual = canonicalizer.canonicalize(message.getBody(), message);
+                Assertions.assertEquals(expected.getEventType(), actual.getEventType(), context);
+                Assertions.assertEquals(expected.getPayload(), actual.getPayload(), context);
+            }
+        }
+    }
+
+    private static boolean isDefaulted(Instant ts, Instant before, Instant after) {
+        return !ts.isBefore(before) && !ts.isAfter(after);
+    }
+
+    // The canonicalizer as it was before the streaming rewrite, plus the `ts` alias of the built-in schema
+    // and skipping a leading BOM
+    private CanonicalEvent treeCanonicalize(String rawJson, Message amqpMessage) throws Exception {
+        JsonNode node = mapper.readTree(rawJson.startsWith("\uFEFF") ? rawJson.substring(1) : rawJson);
+        String eventType = node.has("type") ? node.get("type").asText() : "weather";
+        Instant timestamp;
+        String timestampField = node.has("timestamp") ? "timestamp" : node.has("ts") ? "ts" : null;
+        if (timestampField != null) {
+            try {
+                timestamp = Instant.parse(node.get(timestampField).asText());
+            } catch (Exception ex) {
+                timestamp = Instant.now();
+            }
+        } else {
+            timestamp = Instant.now();
+        }
+        String channel = canonicalizer.extractChannel(amqpMessage);
+        Map<String, Object> payload = new HashMap<>();
+        if (node.has("module")) payload.put("module", mapper.treeToValue(node.get("module"), Object.class));
+        if (node.has("temperature")) payload.put("temperature", mapper.treeToValue(node.get("temperature"), Object.class));
+        if (node.has("humidity")) payload.put("humidity", mapper.treeToValue(node.get("humidity"), Object.class));
+        if (node.has("pressure")) payload.put("pressure", mapper.treeToValue(node.get("pressure"), Object.class));
+        return new CanonicalEvent(channel, eventType, timestamp, payload);
+    }
+
+    private static Message randomMessage(Random rnd, byte[] body) {
+        MessageProperties props = new MessageProperties();
+        switch (rnd.nextInt(3)) {
+            case 0: props.setReceivedRoutingKey("sensors.weather"); break;
+            case 1: props.setConsumerQueue("test.queue"); break;
+            default: break;
+        }
+        return new Message(body, props);
+    }
+
+    private static byte[] randomDocument(Random rnd) {
+        switch (rnd.nextInt(25)) {
+            case 0: return new byte[0];
+            case 1: return "   ".getBytes(StandardCharsets.UTF_8);
+            case 2: return "[1, {\"module\": \"in-array\"}]".getBytes(StandardCharsets.UTF_8);
+            case 3: return String.valueOf(rnd.nextInt()).getBytes(StandardCharsets.UTF_8);
+            case 4: return "{\"module\": \"truncated\"".getBytes(StandardCharsets.UTF_8);
+            case 5: return "{\"module\": \"trailing\"} garbage".getBytes(StandardCharsets.UTF_8);
+            case 6: return new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF, '{', '}'};
+            case 7: return new byte[]{'{', '"', 'm', 'o', 'd', 'u', 'l', 'e', '"', ':', '"', (byte) 0xC3, '"', '}'};
+            default: break;
+        }
+        StringBuilder sb = new StringBuilder("{");
+        int fields = rnd.nextInt(9);
+        for (int i = 0; i < fields; i++) {
+            if (i > 0) sb.append(',');
+            String name = FIELDS[rnd.nextInt(FIELDS.length)];
+            sb.append('"').append(name).append("\":");
+            appendValue(sb, rnd, name, 0);
+        }
+        sb.append('}');
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void appendValue(StringBuilder sb, Random rnd, String field, int depth) {
+        int kind = rnd.nextInt(depth < 2 ? 14 : 12);
+        switch (kind) {
+            case 0: sb.append(rnd.nextInt(200) - 100); break;
+            case 1: sb.append(3_000_000_000L + rnd.nextInt(1000)); break;
+            case 2: sb.append("123456789012345678901234567890"); break;
+            case 3: sb.append(String.format(Locale.ROOT, "%.3f", rnd.nextDouble() * 100)); break;
+            case 4: sb.append(rnd.nextBoolean() ? "1.50" : "-0.0"); break;
+            case 5: sb.append(rnd.nextBoolean() ? "2.5e3" : "1E400"); break;
+            case 6: sb.append('"').append(rnd.nextBoolean() ? Instant.ofEpochSecond(rnd.nextInt(2_000_000_000)) : "not-a-time").append('"'); break;
+            case 7: sb.append("\"green-").append(rnd.nextInt(5)).append("\\u00e9\\\"\""); break;
+            case 8: sb.append('"').append(rnd.nextInt(50)).append(".5\""); break;
+            case 9: sb.append(rnd.nextBoolean()); break;
+            case 10: sb.append("null"); break;
+            case 11: sb.append("\"").append(field).append("\""); break;
+            case 12:
+                sb.append("{\"module\":");
+                appendValue(sb, rnd, "module", depth + 1);
+                sb.append(",\"list\":[");
+                appendValue(sb, rnd, field, depth + 1);
+                sb.append("]}");
+                break;
+            default:
+                sb.append('[');
+                appendValue(sb, rnd, field, depth + 1);
+                sb.append(',');
+                appendValue(sb, rnd, field, depth + 1);
+                sb.append(']');
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.alerts.AlertOutboxRelay;
+import com.audit.climate.watchtower.alerts.AlertPublisher;
+import com.audit.climate.watchtower.alerts.AlertService;
+import com.audit.climate.watchtower.config.RabbitConfig;
+import com.audit.climate.watchtower.incidents.Incident;
+import com.audit.climate.watchtower.incidents.IncidentCoalescer;
+import com.audit.climate.watchtower.incidents.IncidentQueries;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@Testcontainers
+@SpringBootTest(properties = {
+        // drainOnce is driven by the tests, not by the relay thread
+        "audit.alerts.outbox.relay-enabled=false",
+        "audit.incidents.enabled=true",
+        "audit.incidents.group-by=metric",
+        "audit.incidents.window-ms=60000"
+})
+public class IncidentsIntegrationTest {
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("timescale/timescaledb:2.9.0-pg15").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("watchtower_audit")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Container
+    public static RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3.12-management");
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry reg) {
+        reg.add("spring.datasource.url", postgres::getJdbcUrl);
+        reg.add("spring.datasource.username", postgres::getUsername);
+        reg.add("spring.datasource.password", postgres::getPassword);
+        reg.add("spring.rabbitmq.host", rabbit::getHost);
+        reg.add("spring.rabbitmq.port", () -> rabbit.getAmqpPort());
+        reg.add("spring.rabbitmq.username", rabbit::getAdminUsername);
+        reg.add("spring.rabbitmq.password", rabbit::getAdminPassword);
+    }
+
+    @MockitoBean
+    private AlertPublisher publisher;
+
+    @Autowired
+    private AlertOutboxRelay relay;
+
+    @Autowired
+    private AlertService alertService;
+
+    @Autowired
+    private IncidentCoalescer coalescer;
+
+    @Autowired
+    private IncidentQueries queries;
+
+    @Autowired
+    private JdbcTemplate jdbc;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @AfterEach
+    public void cleanup() {
+        reset(publisher);
+        jdbc.update("DELETE FROM incident_alerts");
+        jdbc.update("DELETE FROM incidents");
+        jdbc.update("DELETE FROM alert_outbox");
+        jdbc.update("DELETE FROM alerts");
+    }
+
+    private static Alert alert(String module, String metric) {
+        return new Alert(module, metric, 42.0, null, 30.0, "too high", Alert.Severity.WARNING);
+    }
+
+    private Alert commit(String module, String metric) {
+        Alert alert = alert(module, metric);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> alertService.persist(List.of(alert)));
+        return alert;
+    }
+
+    private List<Incident> coalesce(List<Alert> alerts) {
+        return new TransactionTemplate(transactionManager).execute(status -> coalescer.coalesce(alerts));
+    }
+
+    private Map<String, Object> incidentRow(UUID id) {
+        return jdbc.queryForMap("SELECT alert_count, published_count, publish_at IS NOT NULL AS due "
+                + "FROM incidents WHERE id = ?", id);
+    }
+
+    @Test
+    public void alertsOfAGroupShareAnIncidentWithinTheWindow() {
+        Alert a = alert("inc-a", "inc_temperature");
+        Alert b = alert("inc-b", "inc_temperature");
+        Alert other = alert("inc-a", "inc_humidity");
+        List<Incident> first = coalesce(List.of(a, b, other));
+
+        Assertions.assertEquals(2, first.size());
+        // snapshots come in group key order
+        Assertions.assertEquals("inc_humidity", first.get(0).getGroupKey());
+        Incident temperature = first.get(1);
+        Assertions.assertEquals(2, temperature.getAlertCount());
+        Assertions.assertEquals(List.of("inc-a", "inc-b"), temperature.getModules());
+
+        Alert later = alert("inc-c", "inc_temperature");
+        List<Incident> second = coalesce(List.of(later));
+        Assertions.assertEquals(temperature.getId(), second.get(0).getId());
+        Assertions.assertEquals(3, second.get(0).getAlertCount());
+        Assertions.assertEquals(1, second.get(0).getNewAlerts());
+
+        // once the window has passed, the group opens a new incident
+        jdbc.update("UPDATE incidents SET last_alert_at = last_alert_at - interval '10 minutes', "
+                + "opened_at = opened_at - interval '10 minutes' WHERE id = ?", temperature.getId());
+        List<Incident> third = coalesce(List.of(alert("inc-a", "inc_temperature")));
+        Assertions.assertNotEquals(temperature.getId(), third.get(0).getId());
+        Assertions.assertEquals(1, third.get(0).getAlertCount());
+    }
+
+    @Test
+    public void queriesListIncidentsAndTheirAlerts() {
+        Alert a = alert("inc-q1", "inc_pressure");
+        Alert b = alert("inc-q2", "inc_pressure");
+        Incident incident = coalesce(List.of(a, b)).get(0);
+        Incident closed = coalesce(List.of(alert("inc-q1", "inc_co2"))).get(0);
+        jdbc.update("UPDATE incidents SET last_alert_at = last_alert_at - interval '10 minutes', "
+                + "opened_at = opened_at - interval '10 minutes' WHERE id = ?", closed.getId());
+
+        List<Incident> all = queries.latest(false, 10);
+        Assertions.assertEquals(List.of(incident.getId(), closed.getId()), all.stream().map(Incident::getId).toList());
+        List<Incident> open = queries.latest(true, 10);
+        Assertions.assertEquals(1, open.size());
+        Assertions.assertEquals(incident.getId(), open.get(0).getId());
+        Assertions.assertEquals(2, open.get(0).getModuleCount());
+
+        List<UUID> ids = queries.alertIds(incident.getId(), 10);
+        Assertions.assertEquals(2, ids.size());
+        Assertions.assertTrue(ids.containsAll(List.of(a.getId(), b.getId())));
+        Assertions.assertEquals(1, queries.alertIds(incident.getId(), 1).size());
+    }
+
+    @Test
+    public void incidentsAreCommittedBeforeTheyArePublished() {
+        Alert alert = commit("inc-relay", "inc_wind");
+        when(publisher.publish(any(UUID.class), any(), eq(RabbitConfig.INCIDENTS_ROUTING_KEY)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("nack")));
+
+        Assertions.assertEquals(2, relay.drainOnce());
+
+        // the alert is in its incident and the row is done, though the snapshot was not confirmed
+        UUID incidentId = jdbc.queryForObject("SELECT incident_id FROM incident_alerts WHERE alert_id = ?",
+                UUID.class, alert.getId());
+        Assertions.assertNotNull(jdbc.queryForMap("SELECT published_at FROM alert_outbox WHERE alert_id = ?",
+                alert.getId()).get("published_at"));
+        Map<String, Object> row = incidentRow(incidentId);
+        Assertions.assertEquals(1L, ((Number) row.get("alert_count")).longValue());
+        Assertions.assertEquals(0L, ((Number) row.get("published_count")).longValue());
+        Assertions.assertEquals(Boolean.TRUE, row.get("due"));
+
+        // leased meanwhile, so the next round neither claims the row again nor resends the incident
+        reset(publisher);
+        Assertions.assertEquals(0, relay.drainOnce());
+        verify(publisher, never()).publish(any(UUID.class), any(), any());
+        Assertions.assertEquals(1L, ((Number) incidentRow(incidentId).get("alert_count")).longValue());
+
+        // once the lease ran out the incident is sent again, and marked when confirmed
+        jdbc.update("UPDATE incidents SET publish_at = now() WHERE id = ?", incidentId);
+        List<Incident> sent = new ArrayList<>();
+        when(publisher.publish(any(UUID.class), any(), eq(RabbitConfig.INCIDENTS_ROUTING_KEY))).thenAnswer(inv -> {
+            sent.add(inv.getArgument(1));
+            return CompletableFuture.completedFuture(null);
+        });
+        Assertions.assertEquals(1, relay.drainOnce());
+        Assertions.assertEquals(1, sent.size());
+        Assertions.assertEquals(1, sent.get(0).getNewAlerts());
+        row = incidentRow(incidentId);
+        Assertions.assertEquals(1L, ((Number) row.get("published_count")).longValue());
+        Assertions.assertEquals(Boolean.FALSE, row.get("due"));
+        Assertions.assertEquals(0, relay.drainOnce());
+    }
+
+    @Test
+    public void confirmedIncidentsAreMarkedOneByOne() {
+        commit("inc-one", "inc_rain");
+        commit("inc-two", "inc_snow");
+        when(publisher.publish(any(UUID.class), any(), eq(RabbitConfig.INCIDENTS_ROUTING_KEY))).thenAnswer(inv -> {
+            Incident incident = inv.getArgument(1);
+            return incident.getGroupKey().equals("inc_rain")
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.failedFuture(new IllegalStateException("nack"));
+        });
+
+        relay.drainOnce();
+
+        Map<String, Object> rain = jdbc.queryForMap("SELECT published_count, publish_at IS NOT NULL AS due "
+                + "FROM incidents WHERE group_key = 'inc_rain'");
+        Map<String, Object> snow = jdbc.queryForMap("SELECT published_count, publish_at IS NOT NULL AS due "
+                + "FROM incidents WHERE group_key = 'inc_snow'");
+        Assertions.assertEquals(1L, ((Number) rain.get("published_count")).longValue());
+        Assertions.assertEquals(Boolean.FALSE, rain.get("due"));
+        Assertions.assertEquals(0L, ((Number) snow.get("published_count")).longValue());
+        Assertions.assertEquals(Boolean.TRUE, snow.get("due"));
+    }
+
+    @Test
+    public void overlappingGroupsCoalesceConcurrentlyWithoutDeadlock() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            for (int round = 0; round < 20; round++) {
+                Future<?> forward = pool.submit(() -> coalesce(List.of(
+                        alert("inc-f", "inc_g1"), alert("inc-f", "inc_g2"), alert("inc-f", "inc_g3"))));
+                Future<?> backward = pool.submit(() -> coalesce(List.of(
+                        alert("inc-b", "inc_g3"), alert("inc-b", "inc_g2"), alert("inc-b", "inc_g1"))));
+                forward.get(30, TimeUnit.SECONDS);
+                backward.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Assertions.assertEquals(3, jdbc.queryForObject("SELECT count(*) FROM incidents", Integer.class));
+        Assertions.assertEquals(120, jdbc.queryForObject("SELECT sum(alert_count) FROM incidents", Integer.class));
+    }
+}
@@ -0,0 +1,45 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.ingest.IngestLanes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IngestLanesTest {
+
+    @Test
+    public void virtualLanesRunManyKeysButOnlyMaxConcurrencyAtOnce() throws Exception {
+        IngestLanes lanes = new IngestLanes(true, 0, 10, true, 3, 10);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        try {
+            Assertions.assertTrue(lanes.laneCount() > Runtime.getRuntime().availableProcessors());
+            for (int lane = 0; lane < 32; lane++) {
+                futures.add(lanes.submit(lane, () -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    running.decrementAndGet();
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } finally {
+            lanes.shutdown();
+        }
+        Assertions.assertTrue(peak.get() > 1, "Lanes should overlap");
+        Assertions.assertTrue(peak.get() <= 3, "At most max-concurrency lane tasks may run at once, saw " + peak.get());
+    }
+
+    @Test
+    public void virtualThreadsWithoutLanesFailStartup() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new IngestLanes(false, 0, 10, true, 3, 10));
+    }
+}
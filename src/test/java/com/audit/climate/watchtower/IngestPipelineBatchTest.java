@@ -0,0 +1,261 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.AlertService;
+import com.audit.climate.watchtower.audit.RawEvent;
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.detection.AlertStateTracker;
+import com.audit.climate.watchtower.detection.Detector;
+import com.audit.climate.watchtower.detection.DetectorRegistry;
+import com.audit.climate.watchtower.ingest.DuplicateFilter;
+import com.audit.climate.watchtower.ingest.EventWriter;
+import com.audit.climate.watchtower.ingest.IngestBatch;
+import com.audit.climate.watchtower.ingest.IngestLanes;
+import com.audit.climate.watchtower.ingest.IngestPipeline;
+import com.audit.climate.watchtower.measurements.Measurement;
+import com.audit.climate.watchtower.measurements.MeasurementKeys;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IngestPipelineBatchTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EventWriter eventWriter = mock(EventWriter.class);
+    private final AlertService alertService = mock(AlertService.class);
+    private final AlertStateTracker tracker = new AlertStateTracker(true, 0.05, 1_000, 10_000, 60_000, 64);
+    private final List<Detector> detectors = new ArrayList<>();
+
+    private IngestPipeline pipeline() {
+        return pipeline(new DuplicateFilter(null, false, 60, 6, 1000, 0.01, 24));
+    }
+
+    private IngestPipeline pipeline(DuplicateFilter duplicates) {
+        return pipeline(duplicates, new MeasurementKeys(null, false));
+    }
+
+    private IngestPipeline pipeline(DuplicateFilter duplicates, MeasurementKeys measurementKeys) {
+        return pipeline(duplicates, measurementKeys, new IngestLanes(false, 0, 0, false, 0, 10));
+    }
+
+    private IngestPipeline pipeline(DuplicateFilter duplicates, MeasurementKeys measurementKeys, IngestLanes lanes) {
+        return new IngestPipeline(
+                eventWriter,
+                new Canonicalizer(objectMapper),
+                new DetectorRegistry(detectors, tracker),
+                alertService,
+                objectMapper,
+                lanes,
+                duplicates,
+                measurementKeys);
+    }
+
+    private static Message message(String body) {
+        return new Message(body.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+    }
+
+    private static boolean poisoned(IngestBatch batch) {
+        return batch.getRawEvents().stream()
+                .anyMatch(e -> e.getPayload().contains("poison") && !e.getClassification().contains("persist_failed"));
+    }
+
+    private static List<Message> batchWithPoisonAt(int poison) {
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            batch.add(message(i == poison ? "{\"module\":\"poison\"}" : "{\"module\":\"m" + i + "\"}"));
+        }
+        return batch;
+    }
+
+    @Test
+    public void failedBatchIsSplitUntilTheBadMessageIsIsolated() {
+        List<String> committed = new ArrayList<>();
+        List<RawEvent> quarantined = new ArrayList<>();
+        doAnswer(inv -> {
+            IngestBatch batch = inv.getArgument(0);
+            if (poisoned(batch)) {
+                throw new DataIntegrityViolationException("rejected");
+            }
+            for (RawEvent e : batch.getRawEvents()) {
+                if (e.getClassification().contains("persist_failed")) {
+                    quarantined.add(e);
+                } else {
+                    committed.add(e.getPayload());
+                }
+            }
+            return null;
+        }).when(eventWriter).write(any());
+        doAnswer(inv -> {
+            if (poisoned(inv.getArgument(0))) {
+                throw new DataIntegrityViolationException("rejected");
+            }
+            return null;
+        }).when(eventWriter).probe(any());
+
+        pipeline().processBatch(batchWithPoisonAt(5));
+
+        Assertions.assertEquals(7, committed.size(), "All healthy messages should be committed");
+        Assertions.assertEquals(1, quarantined.size(), "Only the bad message should be quarantined");
+        Assertions.assertTrue(quarantined.get(0).getPayload().contains("poison"));
+        // the first failed write and the final one; isolating commits nothing in between
+        verify(eventWriter, times(2)).write(any());
+    }
+
+    @Test
+    public void transientFailureWhileIsolatingLeavesNothingCommitted() {
+        List<IngestBatch> written = new ArrayList<>();
+        doAnswer(inv -> {
+            IngestBatch batch = inv.getArgument(0);
+            if (poisoned(batch)) {
+                throw new DataIntegrityViolationException("rejected");
+            }
+            return written.add(batch);
+        }).when(eventWriter).write(any());
+        doThrow(new DataAccessResourceFailureException("down")).when(eventWriter).probe(any());
+
+        Assertions.assertThrows(DataAccessResourceFailureException.class,
+                () -> pipeline().processBatch(batchWithPoisonAt(6)));
+        Assertions.assertTrue(written.isEmpty(), "Redelivery must not find half of the batch already stored");
+    }
+
+    @Test
+    public void unreachableDatabaseFailsTheWholeBatchForRedelivery() {
+        doThrow(new DataAccessResourceFailureException("down")).when(eventWriter).write(any());
+
+        Assertions.assertThrows(DataAccessResourceFailureException.class,
+                () -> pipeline().processBatch(List.of(message("{}"), message("{}"))));
+        verify(eventWriter, times(1)).write(any());
+    }
+
+    @Test
+    public void lanesCommitTheWholeBatchTogether() throws Exception {
+        List<IngestBatch> written = new ArrayList<>();
+        doAnswer(inv -> written.add(inv.getArgument(0))).when(eventWriter).write(any());
+        IngestLanes lanes = new IngestLanes(true, 4, 10, false, 0, 10);
+        DuplicateFilter noDedup = new DuplicateFilter(null, false, 60, 6, 1000, 0.01, 24);
+        List<Message> batch = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            batch.add(message("{\"module\":\"m" + i + "\"}"));
+        }
+
+        try {
+            pipeline(noDedup, new MeasurementKeys(null, false), lanes).processBatch(batch);
+        } finally {
+            lanes.shutdown();
+        }
+
+        Assertions.assertEquals(1, written.size(), "Lanes must not commit their shares separately");
+        Assertions.assertEquals(16, written.get(0).getRawEvents().size());
+        Assertions.assertTrue(written.get(0).getRawEvents().get(3).getPayload().contains("m3"), "Delivery order is kept");
+    }
+
+    private static Message message(String body, String messageId) {
+        MessageProperties properties = new MessageProperties();
+        properties.setMessageId(messageId);
+        return new Message(body.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @Test
+    public void copiesWithinABatchAreWrittenOnce() {
+        List<IngestBatch> written = new ArrayList<>();
+        doAnswer(inv -> written.add(inv.getArgument(0))).when(eventWriter).write(any());
+        DuplicateFilter duplicates = new DuplicateFilter(mock(JdbcTemplate.class), true, 60, 6, 1000, 0.01, 24);
+
+        pipeline(duplicates).processBatch(List.of(
+                message("{\"module\":\"a\"}", "msg-1"), message("{\"module\":\"a\"}", "msg-1"),
+                message("{\"id\":\"r-7\",\"module\":\"b\",\"ts\":\"2026-01-01T00:00:00Z\"}"),
+                message("{\"module\":\"b\",\"id\":\"r-7\",\"ts\":\"2026-01-01T00:00:00Z\"}")));
+
+        Assertions.assertEquals(1, written.size());
+        Assertions.assertEquals(2, written.get(0).getRawEvents().size());
+        Assertions.assertEquals(2, written.get(0).getFingerprints().size());
+    }
+
+    @Test
+    public void identicalReadingsWithoutAnIdentityAreAllKept() {
+        List<IngestBatch> written = new ArrayList<>();
+        doAnswer(inv -> written.add(inv.getArgument(0))).when(eventWriter).write(any());
+        DuplicateFilter duplicates = new DuplicateFilter(mock(JdbcTemplate.class), true, 60, 6, 1000, 0.01, 24);
+
+        pipeline(duplicates).processBatch(List.of(
+                message("{\"module\":\"a\",\"temperature\":20}"), message("{\"module\":\"a\",\"temperature\":20}"),
+                message("{\"id\":\"r-8\",\"module\":\"a\"}"), message("{\"id\":\"r-8\",\"module\":\"a\"}")));
+
+        Assertions.assertEquals(4, written.get(0).getRawEvents().size());
+        Assertions.assertTrue(written.get(0).getFingerprints().isEmpty());
+    }
+
+    @Test
+    public void numericMetricsBecomeMeasurementsInTheSameBatch() {
+        List<IngestBatch> written = new ArrayList<>();
+        doAnswer(inv -> written.add(inv.getArgument(0))).when(eventWriter).write(any());
+        JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        when(jdbc.queryForObject(anyString(), eq(Integer.class), any())).thenReturn(7);
+        DuplicateFilter noDedup = new DuplicateFilter(null, false, 60, 6, 1000, 0.01, 24);
+
+        pipeline(noDedup, new MeasurementKeys(jdbc, true)).processBatch(List.of(
+                message("{\"module\":\"a\",\"temperature\":21.5,\"humidity\":\"n/a\"}"),
+                message("{\"module\":\"b\"}")));
+
+        Assertions.assertEquals(1, written.size());
+        List<Measurement> measurements = written.get(0).getMeasurements();
+        Assertions.assertEquals(1, measurements.size(), "Only the numeric value should be recorded");
+        Assertions.assertEquals(21.5, measurements.get(0).getValue());
+        Assertions.assertEquals(7, measurements.get(0).getModuleId());
+    }
+
+    // opens a series per module on every reading and counts the readings committed
+    private AtomicInteger openSeriesPerModule() {
+        AtomicInteger committed = new AtomicInteger();
+        detectors.add((event, staged) -> {
+            staged.breach(event.getModuleId(), 1, 1.0, 1.0, false, event.getTimestamp().toEpochMilli());
+            staged.onCommit(committed::incrementAndGet);
+            return List.of();
+        });
+        return committed;
+    }
+
+    @Test
+    public void quarantinedMessagesLeaveNoSeriesBehind() {
+        AtomicInteger committed = openSeriesPerModule();
+        doAnswer(inv -> {
+            if (poisoned(inv.getArgument(0))) {
+                throw new DataIntegrityViolationException("rejected");
+            }
+            return null;
+        }).when(eventWriter).write(any());
+        doAnswer(inv -> {
+            if (poisoned(inv.getArgument(0))) {
+                throw new DataIntegrityViolationException("rejected");
+            }
+            return null;
+        }).when(eventWriter).probe(any());
+
+        pipeline().processBatch(batchWithPoisonAt(2));
+        Assertions.assertEquals(7, tracker.tracked(), "Only the stored messages should open series");
+        Assertions.assertEquals(7, committed.get());
+
+        pipeline().process(message("{\"module\":\"poison\"}"));
+        Assertions.assertEquals(7, tracker.tracked());
+        Assertions.assertEquals(7, committed.get());
+    }
+}
@@ -0,0 +1,73 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.canonical.Canonicalizer;
+import com.audit.climate.watchtower.canonical.CompiledSchemas;
+import com.audit.climate.watchtower.canonical.MetricSchemaEntry;
+import com.audit.climate.watchtower.canonical.MetricSchemaRegistry;
+import com.audit.climate.watchtower.canonical.MetricSchemaRepository;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetricSchemaRegistryTest {
+
+    private final MetricSchemaRepository repository = mock(MetricSchemaRepository.class);
+    private final MetricSchemaRegistry registry = new MetricSchemaRegistry(repository);
+    private final Canonicalizer canonicalizer = new Canonicalizer(new ObjectMapper(), registry);
+
+    private CanonicalEvent canonicalize(String json) throws Exception {
+        return canonicalizer.canonicalize(json.getBytes(StandardCharsets.UTF_8), new Message(new byte[0], new MessageProperties()));
+    }
+
+    private void load(MetricSchemaEntry... extra) {
+        List<MetricSchemaEntry> rows = new ArrayList<>(CompiledSchemas.defaults());
+        rows.addAll(List.of(extra));
+        when(repository.findAll()).thenReturn(rows);
+        registry.reload();
+    }
+
+    @Test
+    public void typeSpecificFieldsAndAliasesAreExtracted() throws Exception {
+        load(new MetricSchemaEntry("wind", "wind_speed", "METRIC", "m/s", "ws,speed"));
+
+        // type arrives after the fields it selects
+        CanonicalEvent wind = canonicalize("{\"ws\": 7.5, \"module\": \"roof\", \"temperature\": 3, \"type\": \"wind\"}");
+        Assertions.assertEquals(7.5, wind.getPayload().get("wind_speed"));
+        Assertions.assertEquals(3, wind.getPayload().get("temperature"));
+        Assertions.assertEquals("roof", wind.getModule());
+
+        CanonicalEvent weather = canonicalize("{\"ws\": 7.5, \"temperature\": 3}");
+        Assertions.assertFalse(weather.getPayload().containsKey("wind_speed"));
+    }
+
+    @Test
+    public void primaryNameWinsOverAlias() throws Exception {
+        load();
+        CanonicalEvent both = canonicalize("{\"ts\": \"2024-01-01T00:00:00Z\", \"timestamp\": \"2024-06-01T00:00:00Z\"}");
+        Assertions.assertEquals(Instant.parse("2024-06-01T00:00:00Z"), both.getTimestamp());
+
+        CanonicalEvent aliasOnly = canonicalize("{\"ts\": \"2024-01-01T00:00:00Z\"}");
+        Assertions.assertEquals(Instant.parse("2024-01-01T00:00:00Z"), aliasOnly.getTimestamp());
+    }
+
+    @Test
+    public void inconsistentSchemaKeepsPreviousTable() {
+        load(new MetricSchemaEntry("wind", "gust", "METRIC", "m/s", null));
+        CompiledSchemas before = registry.current();
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> load(new MetricSchemaEntry("heartbeat", "seen_at", "TIMESTAMP", null, null)));
+        Assertions.assertSame(before, registry.current());
+    }
+}
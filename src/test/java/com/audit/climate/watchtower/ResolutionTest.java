@@ -0,0 +1,28 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.measurements.Resolution;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class ResolutionTest {
+
+    @Test
+    public void picksTheCoarsestAggregateThatTilesTheStep() {
+        Assertions.assertEquals(Resolution.DAY, Resolution.coarsestFor(Duration.ofDays(7)));
+        Assertions.assertEquals(Resolution.HOUR, Resolution.coarsestFor(Duration.ofHours(6)));
+        Assertions.assertEquals(Resolution.HOUR, Resolution.coarsestFor(Duration.ofHours(36)));
+        Assertions.assertEquals(Resolution.MINUTE, Resolution.coarsestFor(Duration.ofMinutes(90)));
+        Assertions.assertNull(Resolution.coarsestFor(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    public void parsesShortAndIsoSteps() {
+        Assertions.assertEquals(Duration.ofMinutes(15), Resolution.parseStep("15m"));
+        Assertions.assertEquals(Duration.ofDays(14), Resolution.parseStep("2w"));
+        Assertions.assertEquals(Duration.ofHours(1), Resolution.parseStep("PT1H"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Resolution.parseStep("1y"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Resolution.parseStep("Pxyz"));
+    }
+}
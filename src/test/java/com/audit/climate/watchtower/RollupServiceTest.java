@@ -0,0 +1,51 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.measurements.RollupService.Stats;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class RollupServiceTest {
+
+    private static Stats summary(double[] values) {
+        double avg = Arrays.stream(values).average().orElse(0);
+        double m2 = Arrays.stream(values).map(v -> (v - avg) * (v - avg)).sum();
+        return Stats.of(Arrays.stream(values).min().orElse(0), Arrays.stream(values).max().orElse(0), avg,
+                values.length, values.length > 1 ? Math.sqrt(m2 / (values.length - 1)) : null);
+    }
+
+    @Test
+    public void mergedBucketsMatchTheSamplesTheyCover() {
+        SplittableRandom random = new SplittableRandom(7);
+        // pressure-like values: a large mean with a small spread, where sum-of-squares merging cancels
+        double[] all = new double[1000];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = 101_325 + random.nextDouble(-0.5, 0.5);
+        }
+        Stats merged = summary(Arrays.copyOfRange(all, 0, 1));
+        int[] cuts = {1, 3, 60, 61, 500, 1000};
+        for (int c = 1; c < cuts.length; c++) {
+            merged.merge(summary(Arrays.copyOfRange(all, cuts[c - 1], cuts[c])));
+        }
+        Stats direct = summary(all);
+
+        Assertions.assertEquals(direct.getCount(), merged.getCount());
+        Assertions.assertEquals(direct.getMin(), merged.getMin());
+        Assertions.assertEquals(direct.getMax(), merged.getMax());
+        Assertions.assertEquals(direct.getAvg(), merged.getAvg(), 1e-9);
+        Assertions.assertEquals(direct.getStddev(), merged.getStddev(), 1e-9);
+    }
+
+    @Test
+    public void singleSamplesHaveNoStddevUntilMerged() {
+        Stats a = Stats.of(2, 2, 2, 1, null);
+        Assertions.assertNull(a.getStddev());
+        a.merge(Stats.of(4, 4, 4, 1, null));
+        Assertions.assertEquals(3.0, a.getAvg(), 1e-12);
+        Assertions.assertEquals(Math.sqrt(2), a.getStddev(), 1e-12);
+        Assertions.assertEquals(2.0, a.getMin());
+        Assertions.assertEquals(4.0, a.getMax());
+    }
+}
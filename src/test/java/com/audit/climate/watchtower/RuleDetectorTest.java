@@ -0,0 +1,96 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.detection.AlertStateTracker;
+import com.audit.climate.watchtower.detection.RuleDetector;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.rules.RuleEngine;
+import com.audit.climate.watchtower.rules.RuleEntry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+public class RuleDetectorTest {
+
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+
+    private final RuleEngine engine = new RuleEngine(null, 60_000, 86_400_000);
+    private final AlertStateTracker tracker = new AlertStateTracker(true, 0.05, 300_000, 900_000, 3_600_000, 1024);
+    private final RuleDetector detector = new RuleDetector(engine, tracker);
+
+    private static CanonicalEvent event(long atSeconds, Map<String, Object> payload) {
+        return new CanonicalEvent("q", "telemetry", START.plusSeconds(atSeconds), payload);
+    }
+
+    // detect one event as its own committed batch
+    private List<Alert> detect(CanonicalEvent event) {
+        AlertStateTracker.Staged staged = tracker.stage();
+        List<Alert> alerts = detector.detect(event, staged);
+        staged.commit();
+        return alerts;
+    }
+
+    @Test
+    public void seriesAreTimedByEventTimestamps() {
+        engine.install(List.of(new RuleEntry("rd-muggy", "humidity > 90 && temperature > 25", "warning", true)));
+        Map<String, Object> muggy = Map.of("module", "rd-time", "humidity", 95, "temperature", 30);
+        Map<String, Object> fine = Map.of("module", "rd-time", "humidity", 50, "temperature", 30);
+
+        List<Alert> opened = detect(event(0, muggy));
+        Assertions.assertEquals(1, opened.size());
+        Assertions.assertEquals("rule:rd-muggy", opened.get(0).getMetric());
+        Assertions.assertEquals(Alert.State.OPENED.tag(), opened.get(0).getState());
+        Assertions.assertEquals(Alert.State.ONGOING.tag(), detect(event(900, muggy)).get(0).getState());
+        Assertions.assertTrue(detect(event(901, fine)).isEmpty());
+        // replayed at once, the cooldown still passes in event time
+        Assertions.assertEquals(Alert.State.RESOLVED.tag(), detect(event(1201, fine)).get(0).getState());
+    }
+
+    @Test
+    public void rulesKeepSeparateSeries() {
+        engine.install(List.of(
+                new RuleEntry("rd-hot", "temperature > 30", "warning", true),
+                new RuleEntry("rd-hotter", "temperature > 35", "critical", true)));
+        Map<String, Object> hot = Map.of("module", "rd-series", "temperature", 40);
+
+        List<Alert> alerts = detect(event(0, hot));
+        Assertions.assertEquals(2, alerts.size());
+        Assertions.assertTrue(alerts.stream().allMatch(a -> a.getState().equals(Alert.State.OPENED.tag())));
+        Assertions.assertTrue(detect(event(60, hot)).isEmpty());
+    }
+
+    @Test
+    public void uncommittedReadingsAreNotInTheRateHistory() {
+        engine.install(List.of(new RuleEntry("rd-drop", "pressure_drop_1h > 4", "warning", true)));
+
+        // the first delivery is detected but its batch is never committed
+        detector.detect(event(0, Map.of("module", "rd-rate", "pressure", 1010.0)), tracker.stage());
+        Assertions.assertTrue(detect(event(3660, Map.of("module", "rd-rate", "pressure", 1000.0))).isEmpty());
+
+        detect(event(3720, Map.of("module", "rd-rate", "pressure", 1010.0)));
+        List<Alert> alerts = detect(event(7380, Map.of("module", "rd-rate", "pressure", 1000.0)));
+        Assertions.assertEquals(1, alerts.size());
+        Assertions.assertEquals(Alert.State.OPENED.tag(), alerts.get(0).getState());
+    }
+
+    @Test
+    public void expiredRuleSeriesCloseWithAnAlert() {
+        engine.install(List.of(new RuleEntry("rd-stale", "humidity > 90", "warning", true)));
+        detect(event(0, Map.of("module", "rd-expire", "humidity", 95)));
+        detect(event(7200, Map.of("module", "rd-other", "humidity", 50)));
+
+        List<AlertStateTracker.Expired> expired = tracker.dropStale();
+        Assertions.assertEquals(1, expired.size());
+        Alert alert = detector.expired(expired.get(0));
+        Assertions.assertEquals("rd-expire", alert.getModule());
+        Assertions.assertEquals("rule:rd-stale", alert.getMetric());
+        Assertions.assertEquals(Alert.State.EXPIRED.tag(), alert.getState());
+
+        // a rule deleted meanwhile has nothing to report
+        engine.install(List.of());
+        Assertions.assertNull(detector.expired(expired.get(0)));
+    }
+}
@@ -0,0 +1,154 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.rules.CompiledRule;
+import com.audit.climate.watchtower.rules.RuleEngine;
+import com.audit.climate.watchtower.rules.RuleEntry;
+import com.audit.climate.watchtower.rules.RuleExpression;
+import com.audit.climate.watchtower.rules.RuleRepository;
+import com.audit.climate.watchtower.rules.RuleSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RuleEngineTest {
+
+    private static CompiledRule rule(int seriesId, String expression) {
+        return new CompiledRule(UUID.randomUUID(), seriesId, "re-" + seriesId, Alert.Severity.WARNING,
+                RuleExpression.compile(expression));
+    }
+
+    @Test
+    public void rulesAreIndexedByTriggerAndSeries() {
+        CompiledRule humid = rule(-1, "humidity > 90");
+        CompiledRule both = rule(-2, "humidity > 90 && temperature > 30");
+        CompiledRule either = rule(-4, "humidity > 90 || pressure < 990");
+        RuleSet set = RuleSet.of(List.of(humid, both, either));
+
+        Assertions.assertEquals(3, set.size());
+        Assertions.assertEquals(List.of(humid, both), List.of(set.triggeredBy(MetricDictionary.HUMIDITY)));
+        Assertions.assertEquals(0, set.triggeredBy(MetricDictionary.PRESSURE).length);
+        Assertions.assertEquals(List.of(either), List.of(set.untriggered()));
+        CanonicalEvent event = new CanonicalEvent("q", "telemetry", Instant.now(),
+                Map.of("module", "re-index", "humidity", 95, "pressure", 1000));
+        Assertions.assertEquals(3, set.candidates(event));
+
+        Assertions.assertSame(humid, set.bySeriesId(-1));
+        Assertions.assertSame(either, set.bySeriesId(-4));
+        Assertions.assertNull(set.bySeriesId(-3));
+        Assertions.assertNull(set.bySeriesId(-5));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleSet.of(List.of(humid, rule(-1, "pressure < 990"))));
+    }
+
+    @Test
+    public void seriesIdsAreDenseAndStable() {
+        RuleEngine engine = new RuleEngine(null, 60_000, 86_400_000);
+        RuleEntry a = new RuleEntry("re-a", "humidity > 90", "warning", true);
+        RuleEntry b = new RuleEntry("re-b", "temperature > 30", "warning", true);
+        engine.install(List.of(a, b));
+        int idA = seriesId(engine, a);
+        int idB = seriesId(engine, b);
+        Assertions.assertEquals(-1, idA);
+        Assertions.assertEquals(-2, idB);
+
+        // recompiled without a and with a new rule: b keeps its id, a's is not handed on
+        RuleEntry c = new RuleEntry("re-c", "pressure < 990", "warning", true);
+        engine.install(List.of(c, b));
+        Assertions.assertEquals(idB, seriesId(engine, b));
+        Assertions.assertEquals(-3, seriesId(engine, c));
+        Assertions.assertNull(engine.rules().bySeriesId(idA));
+
+        engine.install(List.of(a, b, c));
+        Assertions.assertEquals(idA, seriesId(engine, a));
+    }
+
+    @Test
+    public void refreshRecompilesOnlyWhenTheTableChanged() {
+        RuleRepository repository = mock(RuleRepository.class);
+        List<RuleEntry> stored = new ArrayList<>();
+        stored.add(new RuleEntry("re-stored", "humidity > 90", "warning", true));
+        when(repository.findAll()).thenAnswer(inv -> new ArrayList<>(stored));
+        when(repository.count()).thenAnswer(inv -> (long) stored.size());
+        when(repository.findTopByOrderByUpdatedAtDesc()).thenAnswer(inv -> stored.stream()
+                .max((x, y) -> x.getUpdatedAt().compareTo(y.getUpdatedAt())));
+        RuleEngine engine = new RuleEngine(repository, 60_000, 86_400_000);
+        engine.loadFromDb();
+        RuleSet loaded = engine.rules();
+        Assertions.assertEquals(1, loaded.size());
+
+        engine.refresh();
+        Assertions.assertSame(loaded, engine.rules());
+
+        // another instance added a rule
+        stored.add(new RuleEntry("re-added", "temperature > 30", "warning", true));
+        engine.refresh();
+        Assertions.assertEquals(2, engine.rules().size());
+
+        // and then disabled one, which only moves the latest update
+        RuleEntry disabled = stored.get(0);
+        disabled.setEnabled(false);
+        disabled.touch();
+        when(repository.findTopByOrderByUpdatedAtDesc()).thenReturn(Optional.of(disabled));
+        engine.refresh();
+        Assertions.assertEquals(1, engine.rules().size());
+        Assertions.assertEquals(-2, seriesId(engine, stored.get(1)));
+    }
+
+    @Test
+    public void metricsAreInternedOnlyForInstalledRules() {
+        RuleRepository repository = mock(RuleRepository.class);
+        List<RuleEntry> stored = new ArrayList<>();
+        when(repository.findByName(any())).thenAnswer(inv -> stored.stream()
+                .filter(e -> e.getName().equals(inv.getArgument(0))).findFirst());
+        when(repository.save(any())).thenAnswer(inv -> {
+            RuleEntry entry = inv.getArgument(0);
+            if (!stored.contains(entry)) {
+                stored.add(entry);
+            }
+            return entry;
+        });
+        when(repository.findAll()).thenAnswer(inv -> new ArrayList<>(stored));
+        when(repository.findTopByOrderByUpdatedAtDesc()).thenReturn(Optional.empty());
+        RuleEngine engine = new RuleEngine(repository, 60_000, 3_600_000);
+        MetricDictionary dictionary = MetricDictionary.global();
+
+        // rejected saves: a syntax error after the metric, a window over the limit
+        Assertions.assertThrows(IllegalArgumentException.class, () -> engine.save("re-bad", "re_gust > 1 &&", "warning", true));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> engine.save("re-bad", "re_gust_rise_2h > 1", "warning", true));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleExpression.compile("re_gust > 1 > 2"));
+        Assertions.assertEquals(-1, dictionary.findMetric("re_gust"));
+        Assertions.assertTrue(stored.isEmpty());
+
+        // stored but disabled, so not installed either
+        engine.save("re-gusty", "re_gust > 20", "warning", false);
+        Assertions.assertEquals(-1, dictionary.findMetric("re_gust"));
+
+        engine.save("re-gusty", "re_gust > 20", "warning", true);
+        Assertions.assertTrue(dictionary.findMetric("re_gust") >= 0);
+        Assertions.assertEquals(1, engine.rules().size());
+    }
+
+    private static int seriesId(RuleEngine engine, RuleEntry entry) {
+        RuleSet set = engine.rules();
+        for (int id = -1; id >= -16; id--) {
+            CompiledRule rule = set.bySeriesId(id);
+            if (rule != null && rule.getId().equals(entry.getId())) {
+                return id;
+            }
+        }
+        throw new AssertionError("no series for " + entry.getName());
+    }
+}
@@ -0,0 +1,69 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.rules.MetricHistory;
+import com.audit.climate.watchtower.rules.RuleExpression;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Map;
+
+public class RuleExpressionTest {
+
+    private final MetricHistory history = new MetricHistory(60_000);
+
+    private static CanonicalEvent event(Instant at, Map<String, Object> payload) {
+        return new CanonicalEvent("q", "telemetry", at, payload);
+    }
+
+    @Test
+    public void evaluatesMultiMetricConditions() {
+        RuleExpression rule = RuleExpression.compile("humidity > 90 && (temperature - 10) * 2 >= 30 || !(pressure < 1000)");
+        Instant now = Instant.now();
+
+        Assertions.assertTrue(rule.test(event(now, Map.of("module", "re-1", "humidity", 95, "temperature", 25)), history));
+        Assertions.assertFalse(rule.test(event(now, Map.of("module", "re-1", "humidity", 95, "temperature", 20, "pressure", 990)), history));
+        Assertions.assertTrue(rule.test(event(now, Map.of("module", "re-1", "pressure", 1010)), history));
+        // a missing metric makes its comparison false
+        Assertions.assertFalse(RuleExpression.compile("humidity > 90").test(event(now, Map.of("module", "re-1")), history));
+    }
+
+    @Test
+    public void indexesRulesUnderARequiredMetric() {
+        MetricDictionary dict = MetricDictionary.global();
+        int custom = dict.metricId("re_wind_speed");
+        Assertions.assertEquals(custom, RuleExpression.compile("humidity > 90 && re_wind_speed > 20").triggerMetric());
+        Assertions.assertEquals(MetricDictionary.HUMIDITY,
+                RuleExpression.compile("humidity > 90 && (pressure < 1 || humidity > 99)").triggerMetric());
+        Assertions.assertEquals(-1, RuleExpression.compile("humidity > 90 || pressure < 1").triggerMetric());
+        Assertions.assertEquals(-1, RuleExpression.compile("!(humidity > 90)").triggerMetric());
+    }
+
+    @Test
+    public void ratesLookBackOverTheWindow() {
+        RuleExpression rule = RuleExpression.compile("pressure_drop_1h > 4");
+        int moduleId = MetricDictionary.global().moduleId("re-rate");
+        Instant start = Instant.parse("2026-01-01T00:00:00Z");
+        for (int minute = 0; minute <= 90; minute++) {
+            Instant at = start.plusSeconds(minute * 60L);
+            double pressure = 1010 - minute * 0.1;
+            CanonicalEvent e = event(at, Map.of("module", "re-rate", "pressure", pressure));
+            // an hour of history is needed before the rule can hold
+            Assertions.assertEquals(minute >= 60 && minute * 0.1 - (minute - 60) * 0.1 > 4, rule.test(e, history));
+            history.record(moduleId, MetricDictionary.PRESSURE, at.toEpochMilli(), pressure, 3_600_000);
+        }
+        Assertions.assertTrue(rule.test(event(start.plusSeconds(91 * 60L), Map.of("module", "re-rate", "pressure", 1000.0)), history));
+    }
+
+    @Test
+    public void reportsErrorsWithTheirPosition() {
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> RuleExpression.compile("humidity > 90 &&"));
+        Assertions.assertTrue(ex.getMessage().contains("position 17"), ex.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleExpression.compile("humidity + 1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleExpression.compile("humidity > 90 > 1"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> RuleExpression.compile("(humidity > 90) + 1 > 2"));
+    }
+}
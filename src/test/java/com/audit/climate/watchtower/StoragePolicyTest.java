@@ -0,0 +1,30 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.storage.StoragePolicy;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class StoragePolicyTest {
+
+    @Test
+    public void parsesAndNormalizesSettings() {
+        StoragePolicy p = new StoragePolicy("alerts", "7 Days", "module", "occurred_at  DESC, id", "30 days", "");
+        Assertions.assertEquals("7 days", p.getChunkInterval());
+        Assertions.assertEquals(List.of("module"), p.getSegmentBy());
+        Assertions.assertEquals(List.of("occurred_at desc", "id"), p.getOrderBy());
+        Assertions.assertTrue(p.compresses());
+        Assertions.assertNull(p.getDropAfter());
+    }
+
+    @Test
+    public void rejectsAnythingThatIsNotAPlainIdentifierOrInterval() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StoragePolicy("alerts; drop table alerts", "1 day", null, null, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StoragePolicy("alerts", "1 day", "module')", null, null, null));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new StoragePolicy("alerts", "1 day'::interval", null, null, null, null));
+    }
+}
@@ -0,0 +1,140 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.processing.ThresholdBulkService;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdEntry;
+import com.audit.climate.watchtower.processing.ThresholdRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.containers.RabbitMQContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Testcontainers
+@SpringBootTest
+public class ThresholdBulkIntegrationTest {
+
+    @Container
+    public static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("timescale/timescaledb:2.9.0-pg15").asCompatibleSubstituteFor("postgres"))
+            .withDatabaseName("watchtower_audit")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Container
+    public static RabbitMQContainer rabbit = new RabbitMQContainer("rabbitmq:3.12-management");
+
+    @DynamicPropertySource
+    static void props(DynamicPropertyRegistry reg) {
+        reg.add("spring.datasource.url", postgres::getJdbcUrl);
+        reg.add("spring.datasource.username", postgres::getUsername);
+        reg.add("spring.datasource.password", postgres::getPassword);
+        reg.add("spring.rabbitmq.host", rabbit::getHost);
+        reg.add("spring.rabbitmq.port", () -> rabbit.getAmqpPort());
+        reg.add("spring.rabbitmq.username", rabbit::getAdminUsername);
+        reg.add("spring.rabbitmq.password", rabbit::getAdminPassword);
+    }
+
+    @Autowired
+    private ThresholdBulkService bulk;
+
+    @Autowired
+    private ThresholdConfig config;
+
+    @Autowired
+    private ThresholdRepository repository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @AfterEach
+    public void cleanup() {
+        repository.deleteAll();
+        config.reload();
+    }
+
+    private static ThresholdBulkService.Row row(String module, String metric, Double min, Double max) {
+        return new ThresholdBulkService.Row(module, metric, min, max);
+    }
+
+    private String stored() {
+        return repository.findAll().stream()
+                .sorted(Comparator.comparing(ThresholdEntry::getModule).thenComparing(ThresholdEntry::getMetric))
+                .map(e -> e.getModule() + "/" + e.getMetric() + "=" + e.getMin() + ".." + e.getMax())
+                .collect(Collectors.joining(" "));
+    }
+
+    private String export(boolean csv) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulk.export(csv, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void lastRowForAThresholdWins() {
+        int imported = bulk.importAll(List.of(
+                row("bulk-1", "temperature", null, 30.0),
+                row("bulk-2", "humidity", 10.0, 90.0),
+                row("bulk-1", "temperature", 5.0, 35.0)), false);
+
+        Assertions.assertEquals(2, imported);
+        Assertions.assertEquals("bulk-1/temperature=5.0..35.0 bulk-2/humidity=10.0..90.0", stored());
+        // reloaded after commit
+        Assertions.assertEquals(35.0, config.getThreshold("bulk-1", "temperature").max);
+    }
+
+    @Test
+    public void replaceDeletesThresholdsNotImported() {
+        bulk.importAll(List.of(row("bulk-1", "temperature", null, 30.0), row("bulk-2", "humidity", null, 90.0)), false);
+
+        bulk.importAll(List.of(row("bulk-2", "humidity", null, 80.0), row("bulk-3", "pressure", 990.0, null)), false);
+        Assertions.assertEquals(3, repository.count());
+
+        bulk.importAll(List.of(row("bulk-3", "pressure", 980.0, null)), true);
+        Assertions.assertEquals("bulk-3/pressure=980.0..null", stored());
+        Assertions.assertNull(config.getThreshold("bulk-1", "temperature"));
+
+        // an empty replacing import is refused and leaves the thresholds alone
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.importAll(List.of(), true));
+        Assertions.assertEquals(1, repository.count());
+    }
+
+    @Test
+    public void exportsImportBackUnchanged() throws Exception {
+        bulk.importAll(List.of(
+                row("*", "temperature", null, 40.0),
+                row("green, \"north\"", "humidity", 10.0, null),
+                row(" padded ", "pressure", 990.5, 1030.25),
+                row("tag:coastal", "wind_speed", null, 1.0E10)), false);
+        String before = stored();
+
+        String csv = export(true);
+        Assertions.assertTrue(csv.startsWith("module,metric,min,max\n"), csv);
+        Assertions.assertTrue(csv.contains("\"green, \"\"north\"\"\",humidity,10.0,\n"), csv);
+        List<ThresholdBulkService.Row> fromCsv = bulk.parseCsv(new StringReader(csv));
+        String json = export(false);
+        List<ThresholdBulkService.Row> fromJson = objectMapper.readValue(json, new TypeReference<>() {});
+        Assertions.assertEquals(4, fromCsv.size());
+        Assertions.assertEquals(4, fromJson.size());
+
+        bulk.importAll(fromCsv, true);
+        Assertions.assertEquals(before, stored());
+        bulk.importAll(fromJson, true);
+        Assertions.assertEquals(before, stored());
+    }
+}
@@ -0,0 +1,84 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.processing.ThresholdBulkService;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ThresholdBulkServiceTest {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+    private final ThresholdBulkService bulk = new ThresholdBulkService(jdbc, mock(ThresholdConfig.class),
+            new ObjectMapper(), transactionManager, 100);
+
+    private List<ThresholdBulkService.Row> parse(String csv) throws Exception {
+        return bulk.parseCsv(new StringReader(csv));
+    }
+
+    @Test
+    public void parsesQuotedFields() throws Exception {
+        List<ThresholdBulkService.Row> rows = parse("module,metric,min,max\n"
+                + "plain, temperature , 1.5 ,30\n"
+                + "\"green,north\",\"say \"\"hi\"\"\",,40\n"
+                + " \" padded \" ,humidity,,\n");
+
+        Assertions.assertEquals(3, rows.size());
+        Assertions.assertEquals("plain", rows.get(0).getModule());
+        Assertions.assertEquals("temperature", rows.get(0).getMetric());
+        Assertions.assertEquals(1.5, rows.get(0).getMin());
+        Assertions.assertEquals(30.0, rows.get(0).getMax());
+        Assertions.assertEquals("green,north", rows.get(1).getModule());
+        Assertions.assertEquals("say \"hi\"", rows.get(1).getMetric());
+        Assertions.assertNull(rows.get(1).getMin());
+        // whitespace inside quotes is kept, outside it is not
+        Assertions.assertEquals(" padded ", rows.get(2).getModule());
+        Assertions.assertNull(rows.get(2).getMax());
+    }
+
+    @Test
+    public void rejectsMalformedCsv() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("module,metric,max\nm,t,1\n"));
+        IllegalArgumentException fields = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> parse("module,metric,min,max\nm,t,1\n"));
+        Assertions.assertTrue(fields.getMessage().startsWith("line 2"), fields.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("module,metric,min,max\n\"m,t,1,2\n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("module,metric,min,max\n\"m\"x,t,1,2\n"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> parse("module,metric,min,max\nm,t,low,2\n"));
+    }
+
+    @Test
+    public void emptyReplaceIsRejected() throws Exception {
+        Assertions.assertTrue(parse("").isEmpty());
+        Assertions.assertTrue(parse("module,metric,min,max\n").isEmpty());
+
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> bulk.importAll(parse("module,metric,min,max\n"), true));
+        Assertions.assertTrue(ex.getMessage().contains("replace"), ex.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.importAll(List.of(), true));
+        // without replace an empty import is a no-op
+        Assertions.assertEquals(0, bulk.importAll(List.of(), false));
+        verify(jdbc, never()).update(any(String.class));
+        verify(transactionManager, never()).getTransaction(any());
+    }
+
+    @Test
+    public void invalidRowsAreNamed() {
+        IllegalArgumentException ex = Assertions.assertThrows(IllegalArgumentException.class, () -> bulk.importAll(List.of(
+                new ThresholdBulkService.Row("m", "temperature", 1.0, 2.0),
+                new ThresholdBulkService.Row("m", "humidity", 5.0, 2.0)), false));
+        Assertions.assertEquals("row 2: min must be <= max", ex.getMessage());
+        verify(transactionManager, never()).getTransaction(any());
+    }
+}
@@ -0,0 +1,157 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.alerts.Alert;
+import com.audit.climate.watchtower.detection.AlertStateTracker;
+import com.audit.climate.watchtower.detection.ThresholdDetector;
+import com.audit.climate.watchtower.preprocess.CanonicalEvent;
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.processing.ModuleTagRepository;
+import com.audit.climate.watchtower.processing.ThresholdChangeBus;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.mock;
+
+public class ThresholdDetectorTest {
+
+    private final ThresholdConfig config = new ThresholdConfig(mock(ThresholdRepository.class), mock(ModuleTagRepository.class),
+            mock(ThresholdChangeBus.class));
+    private final AlertStateTracker tracker = new AlertStateTracker(true, 0.05, 300_000, 900_000, 3_600_000, 1024);
+    private final ThresholdDetector detector = new ThresholdDetector(config, tracker);
+
+    private static CanonicalEvent event(String channel, Map<String, Object> payload) {
+        return new CanonicalEvent(channel, "telemetry", Instant.now(), payload);
+    }
+
+    // detect one event as its own committed batch
+    private List<Alert> detect(CanonicalEvent event) {
+        AlertStateTracker.Staged staged = tracker.stage();
+        List<Alert> alerts = detector.detect(event, staged);
+        staged.commit();
+        return alerts;
+    }
+
+    @Test
+    public void compactViewMirrorsPayload() {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("module", "dt-compact");
+        payload.put("temperature", 21);
+        payload.put("humidity", "55.5");
+        payload.put("pressure", "n/a");
+        CanonicalEvent e = event("q", payload);
+
+        MetricDictionary dict = MetricDictionary.global();
+        Assertions.assertEquals("dt-compact", e.getModule());
+        Assertions.assertEquals(dict.findModule("dt-compact"), e.getModuleId());
+        Assertions.assertEquals(21.0, e.metricValue(MetricDictionary.TEMPERATURE), 0.0);
+        Assertions.assertEquals(55.5, e.metricValue(MetricDictionary.HUMIDITY), 0.0);
+        // a value that is not a number stays in the payload but is not a metric
+        Assertions.assertFalse(e.hasMetric(MetricDictionary.PRESSURE));
+        Assertions.assertEquals(MetricDictionary.TEMPERATURE, e.nextMetric(0));
+        Assertions.assertEquals(-1, e.nextMetric(MetricDictionary.HUMIDITY + 1));
+    }
+
+    @Test
+    public void violationsAreDetectedPerModule() {
+        config.setThreshold("dt-hot", "temperature", null, 30.0);
+
+        Map<String, Object> hot = new HashMap<>();
+        hot.put("module", "dt-hot");
+        hot.put("temperature", 35.0);
+        hot.put("humidity", 40.0);
+        List<Alert> alerts = detect(event("q", hot));
+        Assertions.assertEquals(1, alerts.size());
+        Assertions.assertEquals("dt-hot", alerts.get(0).getModule());
+        Assertions.assertEquals("temperature", alerts.get(0).getMetric());
+
+        Map<String, Object> other = new HashMap<>();
+        other.put("module", "dt-other");
+        other.put("temperature", 35.0);
+        Assertions.assertTrue(detect(event("q", other)).isEmpty());
+
+        // without a module the channel is used
+        config.setThreshold("dt-channel", "humidity", 10.0, null);
+        Assertions.assertEquals(1, detect(event("dt-channel", Map.of("humidity", 5))).size());
+
+        config.deleteThreshold("dt-hot", "temperature");
+        Assertions.assertTrue(detect(event("q", hot)).isEmpty());
+        Assertions.assertNull(config.getThreshold("dt-hot", "temperature"));
+    }
+
+    @Test
+    public void farOutOfRangeReadingsAreCritical() {
+        config.setThreshold("dt-severity", "temperature", 10.0, 30.0);
+
+        Alert warning = detect(event("q", Map.of("module", "dt-severity", "temperature", 32.0))).get(0);
+        Assertions.assertEquals(Alert.Severity.WARNING.tag(), warning.getSeverity());
+
+        Alert critical = detect(event("q", Map.of("module", "dt-severity", "temperature", 0.0))).get(0);
+        Assertions.assertEquals(Alert.Severity.CRITICAL.tag(), critical.getSeverity());
+        Assertions.assertEquals(Alert.State.ESCALATED.tag(), critical.getState());
+    }
+
+    @Test
+    public void repeatedViolationsOnlyOpenTheSeriesOnce() {
+        config.setThreshold("dt-repeat", "temperature", null, 30.0);
+        Map<String, Object> hot = Map.of("module", "dt-repeat", "temperature", 31.0);
+
+        Assertions.assertEquals(Alert.State.OPENED.tag(), detect(event("q", hot)).get(0).getState());
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(detect(event("q", hot)).isEmpty());
+        }
+        // back in range, but within the cooldown: nothing yet
+        Assertions.assertTrue(detect(event("q", Map.of("module", "dt-repeat", "temperature", 20.0))).isEmpty());
+    }
+
+    @Test
+    public void seriesAreTimedByEventTimestamps() {
+        config.setThreshold("dt-replay", "temperature", null, 30.0);
+        Instant start = Instant.parse("2026-01-01T00:00:00Z");
+        Map<String, Object> hot = Map.of("module", "dt-replay", "temperature", 31.0);
+        Map<String, Object> cool = Map.of("module", "dt-replay", "temperature", 20.0);
+
+        Assertions.assertEquals(Alert.State.OPENED.tag(),
+                detect(new CanonicalEvent("q", "telemetry", start, hot)).get(0).getState());
+        Assertions.assertEquals(Alert.State.ONGOING.tag(),
+                detect(new CanonicalEvent("q", "telemetry", start.plusSeconds(900), hot)).get(0).getState());
+        Assertions.assertTrue(detect(new CanonicalEvent("q", "telemetry", start.plusSeconds(901), cool)).isEmpty());
+        // a backlog replayed at once resolves after the cooldown in event time
+        Assertions.assertEquals(Alert.State.RESOLVED.tag(),
+                detect(new CanonicalEvent("q", "telemetry", start.plusSeconds(1201), cool)).get(0).getState());
+    }
+
+    @Test
+    public void uncommittedDetectionIsRepeatedOnRedelivery() {
+        config.setThreshold("dt-redeliver", "temperature", null, 30.0);
+        CanonicalEvent hot = event("q", Map.of("module", "dt-redeliver", "temperature", 31.0));
+
+        // the first delivery is detected but its batch is never committed
+        Assertions.assertEquals(Alert.State.OPENED.tag(), detector.detect(hot, tracker.stage()).get(0).getState());
+        Assertions.assertEquals(Alert.State.OPENED.tag(), detect(hot).get(0).getState());
+        Assertions.assertTrue(detect(hot).isEmpty());
+    }
+
+    @Test
+    public void expiredSeriesCloseWithAnAlert() {
+        config.setThreshold("dt-expire", "humidity", null, 80.0);
+        config.setThreshold("dt-other", "humidity", null, 80.0);
+        Instant start = Instant.parse("2026-01-01T00:00:00Z");
+        detect(new CanonicalEvent("q", "telemetry", start, Map.of("module", "dt-expire", "humidity", 90.0)));
+        detect(new CanonicalEvent("q", "telemetry", start.plusSeconds(7200), Map.of("module", "dt-other", "humidity", 50.0)));
+
+        List<AlertStateTracker.Expired> expired = tracker.dropStale();
+        Assertions.assertEquals(1, expired.size());
+        Alert alert = detector.expired(expired.get(0));
+        Assertions.assertEquals("dt-expire", alert.getModule());
+        Assertions.assertEquals("humidity", alert.getMetric());
+        Assertions.assertEquals(Alert.State.EXPIRED.tag(), alert.getState());
+        Assertions.assertEquals(Alert.Severity.INFO.tag(), alert.getSeverity());
+    }
+}
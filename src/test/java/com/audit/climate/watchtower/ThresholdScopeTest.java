@@ -0,0 +1,85 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.preprocess.MetricDictionary;
+import com.audit.climate.watchtower.processing.ModuleTagRepository;
+import com.audit.climate.watchtower.processing.ThresholdChangeBus;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdDelta;
+import com.audit.climate.watchtower.processing.ThresholdRepository;
+import com.audit.climate.watchtower.processing.ThresholdSnapshot;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.Mockito.mock;
+
+public class ThresholdScopeTest {
+
+    private final MetricDictionary dict = MetricDictionary.global();
+
+    @Test
+    public void mostSpecificScopeWins() {
+        int temp = MetricDictionary.TEMPERATURE;
+        ThresholdSnapshot snapshot = new ThresholdSnapshot.Builder()
+                .scope("*", temp, new ThresholdConfig.Range(null, 40.0))
+                .scope("ts-green-*", temp, new ThresholdConfig.Range(null, 35.0))
+                .scope("ts-green-north-*", temp, new ThresholdConfig.Range(null, 30.0))
+                .scope("tag:ts-coastal", temp, new ThresholdConfig.Range(null, 25.0))
+                .tag("ts-green-north-2", "ts-coastal")
+                .put(dict.moduleId("ts-green-north-3"), temp, new ThresholdConfig.Range(null, 20.0))
+                .build(1);
+
+        Assertions.assertEquals(40.0, max(snapshot, "ts-red-1"), 0.0);
+        Assertions.assertEquals(35.0, max(snapshot, "ts-green-south-1"), 0.0);
+        Assertions.assertEquals(30.0, max(snapshot, "ts-green-north-1"), 0.0);
+        Assertions.assertEquals(25.0, max(snapshot, "ts-green-north-2"), 0.0);
+        Assertions.assertEquals(20.0, max(snapshot, "ts-green-north-3"), 0.0);
+        Assertions.assertNull(snapshot.lookup(dict.moduleId("ts-red-1"), MetricDictionary.HUMIDITY));
+    }
+
+    @Test
+    public void changesInvalidateResolvedModules() {
+        int temp = MetricDictionary.TEMPERATURE;
+        ThresholdSnapshot snapshot = new ThresholdSnapshot.Builder()
+                .scope("ts-blue-?", temp, new ThresholdConfig.Range(null, 35.0))
+                .build(1);
+        Assertions.assertEquals(35.0, max(snapshot, "ts-blue-1"), 0.0);
+        Assertions.assertNull(snapshot.lookup(dict.moduleId("ts-blue-10"), temp));
+
+        ThresholdSnapshot next = snapshot.withScope("ts-blue-?", temp, new ThresholdConfig.Range(null, 31.0), 2);
+        Assertions.assertEquals(31.0, max(next, "ts-blue-1"), 0.0);
+        Assertions.assertEquals(35.0, max(snapshot, "ts-blue-1"), 0.0);
+
+        ThresholdSnapshot removed = next.withScope("ts-blue-?", temp, null, 3);
+        Assertions.assertNull(removed.lookup(dict.moduleId("ts-blue-1"), temp));
+        Assertions.assertEquals(0, removed.size());
+    }
+
+    @Test
+    public void unknownModulesResolveWithoutInterning() {
+        int temp = MetricDictionary.TEMPERATURE;
+        ThresholdSnapshot snapshot = new ThresholdSnapshot.Builder()
+                .scope("*", temp, new ThresholdConfig.Range(null, 40.0))
+                .scope("ts-grey-*", temp, new ThresholdConfig.Range(null, 33.0))
+                .scope("tag:ts-inland", temp, new ThresholdConfig.Range(null, 28.0))
+                .tag("ts-grey-tagged", "ts-inland")
+                .build(1);
+        ThresholdConfig config = new ThresholdConfig(mock(ThresholdRepository.class), mock(ModuleTagRepository.class),
+                mock(ThresholdChangeBus.class));
+        config.onDelta(new ThresholdDelta(1, "ts-grey-*", "temperature", null, 33.0, false));
+
+        Assertions.assertEquals(40.0, snapshot.lookupUnknown("ts-unseen-1", temp).max, 0.0);
+        Assertions.assertEquals(33.0, snapshot.lookupUnknown("ts-grey-unseen", temp).max, 0.0);
+        Assertions.assertEquals(28.0, snapshot.lookupUnknown("ts-grey-tagged", temp).max, 0.0);
+        Assertions.assertNull(snapshot.lookupUnknown("ts-grey-unseen", MetricDictionary.HUMIDITY));
+        Assertions.assertEquals(33.0, config.getThreshold("ts-grey-unseen-2", "temperature").max, 0.0);
+        Assertions.assertNull(config.getThreshold("ts-red-unseen", "temperature"));
+        Assertions.assertEquals(-1, dict.findModule("ts-unseen-1"));
+        Assertions.assertEquals(-1, dict.findModule("ts-grey-unseen"));
+        Assertions.assertEquals(-1, dict.findModule("ts-grey-unseen-2"));
+        Assertions.assertEquals(-1, dict.findModule("ts-red-unseen"));
+    }
+
+    private double max(ThresholdSnapshot snapshot, String module) {
+        return snapshot.lookup(dict.moduleId(module), MetricDictionary.TEMPERATURE).max;
+    }
+}
@@ -0,0 +1,110 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.processing.ModuleTagRepository;
+import com.audit.climate.watchtower.processing.ThresholdChangeBus;
+import com.audit.climate.watchtower.processing.ThresholdConfig;
+import com.audit.climate.watchtower.processing.ThresholdDelta;
+import com.audit.climate.watchtower.processing.ThresholdEntry;
+import com.audit.climate.watchtower.processing.ThresholdRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ThresholdSyncTest {
+
+    private final ThresholdRepository repository = mock(ThresholdRepository.class);
+    private final ModuleTagRepository tags = mock(ModuleTagRepository.class);
+    private final ThresholdChangeBus bus = mock(ThresholdChangeBus.class);
+    private final ThresholdConfig config = new ThresholdConfig(repository, tags, bus);
+
+    // what the database holds
+    private final List<ThresholdEntry> rows = new ArrayList<>();
+    private long dbVersion;
+
+    @BeforeEach
+    public void setUp() {
+        when(bus.isEnabled()).thenReturn(true);
+        when(bus.currentVersion()).thenAnswer(inv -> dbVersion);
+        when(repository.findAll()).thenAnswer(inv -> new ArrayList<>(rows));
+        when(tags.findAll()).thenReturn(List.of());
+        rows.add(new ThresholdEntry("sync-1", "temperature", null, 30.0));
+        dbVersion = 5;
+        config.reload();
+    }
+
+    private Double max(String module) {
+        ThresholdConfig.Range range = config.getThreshold(module, "temperature");
+        return range == null ? null : range.max;
+    }
+
+    @Test
+    public void nextVersionIsApplied() {
+        config.onDelta(new ThresholdDelta(6, "sync-1", "temperature", null, 25.0, false));
+
+        Assertions.assertEquals(6, config.snapshot().getVersion());
+        Assertions.assertEquals(25.0, max("sync-1"));
+        config.onDelta(new ThresholdDelta(7, "sync-1", "temperature", null, null, true));
+        Assertions.assertNull(max("sync-1"));
+    }
+
+    @Test
+    public void staleDeltasAreIgnored() {
+        config.onDelta(new ThresholdDelta(6, "sync-1", "temperature", null, 25.0, false));
+        // redelivered, or older than what the last reload read
+        config.onDelta(new ThresholdDelta(6, "sync-1", "temperature", null, 99.0, false));
+        config.onDelta(new ThresholdDelta(4, "sync-2", "temperature", null, 99.0, false));
+
+        Assertions.assertEquals(6, config.snapshot().getVersion());
+        Assertions.assertEquals(25.0, max("sync-1"));
+        Assertions.assertNull(max("sync-2"));
+    }
+
+    @Test
+    public void gapReloadsFromTheDatabase() {
+        // version 6 was missed; the database has it, and 7 on top
+        rows.add(new ThresholdEntry("sync-2", "temperature", null, 20.0));
+        rows.add(new ThresholdEntry("sync-3", "temperature", null, 15.0));
+        dbVersion = 7;
+        config.onDelta(new ThresholdDelta(7, "sync-3", "temperature", null, 15.0, false));
+
+        Assertions.assertEquals(7, config.snapshot().getVersion());
+        Assertions.assertEquals(20.0, max("sync-2"));
+        Assertions.assertEquals(15.0, max("sync-3"));
+        // the delta after the reload applies in order again
+        config.onDelta(new ThresholdDelta(8, "sync-3", "temperature", null, 12.0, false));
+        Assertions.assertEquals(12.0, max("sync-3"));
+    }
+
+    @Test
+    public void bulkChangeReloads() {
+        rows.clear();
+        rows.add(new ThresholdEntry("sync-4", "temperature", null, 10.0));
+        dbVersion = 6;
+        ThresholdDelta bulk = new ThresholdDelta(6, null, null, null, null, false);
+        bulk.setReload(true);
+        config.onDelta(bulk);
+
+        Assertions.assertEquals(6, config.snapshot().getVersion());
+        Assertions.assertNull(max("sync-1"));
+        Assertions.assertEquals(10.0, max("sync-4"));
+    }
+
+    @Test
+    public void versionCheckCatchesUpWithoutDeltas() {
+        rows.add(new ThresholdEntry("sync-5", "temperature", null, 18.0));
+        config.checkVersion();
+        // the database version did not move, so nothing is reloaded
+        Assertions.assertNull(max("sync-5"));
+
+        dbVersion = 9;
+        config.checkVersion();
+        Assertions.assertEquals(9, config.snapshot().getVersion());
+        Assertions.assertEquals(18.0, max("sync-5"));
+    }
+}
@@ -0,0 +1,51 @@
+package com.audit.climate.watchtower;
+
+import com.audit.climate.watchtower.ingest.TimePartitionedBloomFilter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class TimePartitionedBloomFilterTest {
+
+    @Test
+    public void insertedFingerprintsAreFoundUntilTheirPartitionExpires() {
+        TimePartitionedBloomFilter filter = new TimePartitionedBloomFilter(4, 1000, 10_000, 0.01, 0);
+        Random rnd = new Random(7);
+        long[][] keys = new long[5_000][];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new long[]{rnd.nextLong(), rnd.nextLong()};
+            filter.put(keys[i][0], keys[i][1], 0);
+        }
+        for (long[] k : keys) {
+            Assertions.assertTrue(filter.mightContain(k[0], k[1], 3_999));
+        }
+        // four partitions of one second: at t=4000 the first partition is recycled
+        int stillPresent = 0;
+        for (long[] k : keys) {
+            if (filter.mightContain(k[0], k[1], 4_000)) {
+                stillPresent++;
+            }
+        }
+        Assertions.assertEquals(0, stillPresent);
+    }
+
+    @Test
+    public void falsePositiveRateStaysNearTarget() {
+        TimePartitionedBloomFilter filter = new TimePartitionedBloomFilter(1, 60_000, 10_000, 0.01, 0);
+        Random rnd = new Random(11);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put(rnd.nextLong(), rnd.nextLong(), 0);
+        }
+        int hits = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(rnd.nextLong(), rnd.nextLong(), 0)) {
+                hits++;
+            }
+        }
+        double observed = (double) hits / probes;
+        Assertions.assertTrue(observed < 0.02, "observed fpp " + observed);
+        Assertions.assertEquals(0.01, filter.estimatedFalsePositiveRate(), 0.005);
+    }
+}